@@ -0,0 +1,295 @@
+/*
+    AccountBook class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Pattern;
+
+// Lots of separate accounts (households, clients...) in one app. Every account is its own shard:
+// its own Ledger, Budget, undo history and folder with its own snapshot + journal, so work on one
+// account never touches another and many of them can load or save at the same time.
+//
+// Where the files go, under the root folder:
+//   the "main" account      -> the root itself (where the single-account app always kept them)
+//   any other account       -> accounts/<name>/
+//
+// The cross-account numbers (rollup) come from adding up every account's Budget totals, which are
+// already kept per category and per day, so nothing goes back over the rows themselves.
+//
+// The background work (journal group commits, compactions) for every account runs on one small
+// scheduler owned here, and one shutdown hook closes every loaded account, so a thousand open
+// accounts don't mean a thousand threads and hooks.
+public class AccountBook implements Closeable {
+
+    public static final String MAIN_ACCOUNT = "main";
+    public static final String ACCOUNTS_FOLDER = "accounts";
+
+    // Account names double as folder names, so keep them plain
+    private static final Pattern NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,63}");
+
+    // Threads the accounts share for their background disk work. More than one, so a long
+    // compaction doesn't hold up every other account's group commits
+    private static final int IO_THREADS = Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors()));
+
+    private final Path root;
+    private final ConcurrentHashMap<String, Account> accounts;
+    private final ScheduledExecutorService scheduler;
+    private final Thread shutdownHook;
+
+    // One account's shard. Nothing is read from disk until load()
+    public static final class Account {
+        private final String name;
+        private final Path directory;
+        private final Ledger ledger;
+        private final Budget budget;
+        private final LedgerPersistence persistence;
+        private final CommandLog history;
+        private final ReentrantLock lock;   // held while the book itself loads or reads this account
+
+        private Account(String name, Path directory, ScheduledExecutorService scheduler) {
+            this.name = name;
+            this.directory = directory;
+            ledger = new Ledger();
+            budget = new Budget();
+            persistence = new LedgerPersistence(directory, scheduler);
+            history = new CommandLog();
+            persistence.setHistory(history);
+            lock = new ReentrantLock();
+
+            Metrics.gauge("budget_ledger_heap_bytes", "account", name, ledger::estimatedHeapBytes);
+            Metrics.gauge("budget_ledger_rows", "account", name, ledger::size);
+            Metrics.gauge("budget_sealed_rows", "account", name, ledger.getSealedYears()::size);
+            Metrics.gauge("budget_report_cache_hits", "account", name, budget.getReportCache()::getHits);
+            Metrics.gauge("budget_report_cache_misses", "account", name, budget.getReportCache()::getMisses);
+            Metrics.gauge("budget_report_cache_bytes", "account", name, budget.getReportCache()::getUsedBytes);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public Path getDirectory() {
+            return directory;
+        }
+
+        public Ledger getLedger() {
+            return ledger;
+        }
+
+        public Budget getBudget() {
+            return budget;
+        }
+
+        public LedgerPersistence getPersistence() {
+            return persistence;
+        }
+
+        public CommandLog getHistory() {
+            return history;
+        }
+
+        public boolean isLoaded() {
+            return persistence.isOpen();
+        }
+
+        // Reads the account's snapshot + journal (a new account just gets its folder). Gives back
+        // how many journal records were replayed, or 0 if it was already loaded
+        public int load() throws IOException {
+            lock.lock();
+            try {
+                if (isLoaded()) {
+                    return 0;
+                }
+                Files.createDirectories(directory);
+                int replayed = persistence.recover(ledger, budget);
+                history.clear();
+                return replayed;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // Adds this account's totals into another budget
+        private void addTotalsTo(Budget total) {
+            lock.lock();
+            try {
+                total.mergeFrom(budget);
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public AccountBook(Path root) {
+        this.root = root;
+        accounts = new ConcurrentHashMap<>();
+        scheduler = Executors.newScheduledThreadPool(IO_THREADS, runnable -> {
+            Thread thread = new Thread(runnable, "account-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        // The group commit holds changes for a few milliseconds; if the app exits in that window
+        // (an error, Ctrl+C) this still gets them into the files
+        shutdownHook = new Thread(this::closeOnExit, "accounts-shutdown");
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    public static boolean isValidName(String name) {
+        return name != null && NAME.matcher(name).matches();
+    }
+
+    public Path directoryOf(String name) {
+        if (!isValidName(name)) {
+            throw new IllegalArgumentException("Account names are letters, digits, '.', '-' or '_' (up to 64): " + name);
+        }
+        return name.equals(MAIN_ACCOUNT) ? root : root.resolve(ACCOUNTS_FOLDER).resolve(name);
+    }
+
+    public boolean exists(String name) {
+        return accounts.containsKey(name) || name.equals(MAIN_ACCOUNT) || Files.isDirectory(directoryOf(name));
+    }
+
+    // The account with this name (a new one if it doesn't exist yet, its folder shows up on load())
+    public Account getAccount(String name) {
+        Path directory = directoryOf(name);
+        return accounts.computeIfAbsent(name, key -> new Account(key, directory, scheduler));
+    }
+
+    // Every account on disk or open right now, sorted ("main" is always there)
+    public List<String> getNames() throws IOException {
+        TreeSet<String> names = new TreeSet<>(accounts.keySet());
+        names.add(MAIN_ACCOUNT);
+        Path folder = root.resolve(ACCOUNTS_FOLDER);
+        if (Files.isDirectory(folder)) {
+            try (DirectoryStream<Path> entries = Files.newDirectoryStream(folder, Files::isDirectory)) {
+                for (Path entry : entries) {
+                    String name = entry.getFileName().toString();
+                    if (isValidName(name)) {
+                        names.add(name);
+                    }
+                }
+            }
+        }
+        return new ArrayList<>(names);
+    }
+
+    // Every account, loaded. The ones not loaded yet load side by side (one thread per core)
+    public List<Account> loadAll() throws IOException {
+        List<String> names = getNames();
+        ArrayList<Account> all = new ArrayList<>();
+        ArrayList<Account> waiting = new ArrayList<>();
+        for (String name : names) {
+            Account account = getAccount(name);
+            all.add(account);
+            if (!account.isLoaded()) {
+                waiting.add(account);
+            }
+        }
+        if (waiting.isEmpty()) {
+            return all;
+        }
+
+        int threads = Math.max(1, Math.min(waiting.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "account-load");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ArrayList<Future<Integer>> running = new ArrayList<>();
+            for (Account account : waiting) {
+                running.add(pool.submit(account::load));
+            }
+
+            Throwable failure = null;
+            for (Future<Integer> task : running) {
+                try {
+                    task.get();
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while loading accounts", e);
+                }
+            }
+            if (failure != null) {
+                throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+            }
+            return all;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    // One Budget with every account's totals added together (summary, categories and date ranges
+    // across all accounts). It's a new copy each time, so it can be read while the accounts change
+    public Budget rollup() throws IOException {
+        List<Account> all = loadAll();
+        return all.parallelStream().collect(Budget::new, (total, account) -> account.addTotalsTo(total),
+                                            Budget::mergeFrom);
+    }
+
+    // Closes every loaded account (flushes its journal and waits for any save in progress),
+    // then the shared scheduler
+    @Override
+    public void close() throws IOException {
+        try {
+            closeAccounts();
+        } finally {
+            removeShutdownHook();
+            scheduler.shutdown();
+        }
+    }
+
+    // For an owner that closes the book itself on exit, under its own lock (the server does):
+    // then only the owner's hook runs, not this one alongside it
+    public void removeShutdownHook() {
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // The JVM is already exiting, and the hook closes the accounts anyway
+        }
+    }
+
+    private void closeOnExit() {
+        try {
+            closeAccounts();
+        } catch (IOException e) {
+            System.out.println("Could not save every account on exit: " + e.getMessage());
+        }
+    }
+
+    private void closeAccounts() throws IOException {
+        IOException failure = null;
+        for (Account account : accounts.values()) {
+            try {
+                account.persistence.close();
+            } catch (IOException e) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
@@ -0,0 +1,982 @@
+/*
+    BatchRunner class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Supplier;
+
+// Headless mode: runs commands from a script (or stdin) with no prompts and no colors, and writes
+// every result as data (TSV or JSON lines) so other programs can read it.
+//
+//   java Main --batch [--json] [--dir=DIR] [--account=NAME] [script]
+//
+// One command per line, options as key=value (put "quotes" around values with spaces):
+//   add category=Food amount=-12.50 description="Lunch out" date=03/04/2025
+//   remove index=0 (or handle=7)       undo      redo
+//   list [category=Food] [from=1/1/2025] [to=3/31/2025] [offset=0] [limit=50]
+//   search q="amazon OR walm*" [category=Food] [from=1/1/2025] [to=3/31/2025] [offset=0] [limit=50]
+//   summary                   categories                monthly
+//   report month=3 [year=2025]      report year=2025
+//   range from=1/1/2025 to=3/31/2025 [category=Food]
+//   top-expenses [limit=10] [year=2025 [month=3]]       top-categories [limit=10]
+//   schedule category=Rent amount=1200 due=4/1/2025 [description=...]
+//            [repeat=daily|weekly|monthly] [every=1] [until=12/31/2025] [times=12]
+//   bills [limit=50]          upcoming through=6/30/2025 [limit=100]
+//   cancel-bill bill=3        reschedule-bill bill=3 due=4/5/2025       process-bills [through=4/1/2025]
+//   save    load    export-text [file=...]    import-text [file=...]
+//   seal [year=2023]   (every year before this one if no year)     sealed
+//   accounts        all-summary        all-categories        all-range from=1/1/2025 to=3/31/2025 [category=Food]
+//   all-top-categories [limit=10]
+//   metrics   (timings so far, needs --metrics)
+//   import-csv file=a.csv[;b.csv...] [delimiter=;] [dates=mdy|dmy|ymd] [expenses-positive=yes] [header=no]
+//              [date-col=1] [amount-col=2] [debit-col=] [credit-col=] [description-col=] [category-col=]
+//   quit
+//
+// TSV: each result starts with a "#command" line naming the columns, then one line per row.
+// JSON: one object per command, like {"line":1,"command":"summary","ok":true,"rows":[{...}]}.
+// Errors don't stop the script; they come out as "!error" lines (or "ok":false) instead.
+// Commands work on one account (--account, "main" if not given); the accounts and all-* commands
+// read across every account in the folder (see AccountBook).
+public class BatchRunner {
+
+    private final AccountBook book;
+    private final AccountBook.Account account;
+    private final Ledger ledger;
+    private final Budget budget;
+    private final LedgerPersistence persistence;
+    private final CommandLog history;
+    private final Writer out;
+    private final boolean json;
+
+    public BatchRunner(Path directory, String accountName, Writer out, boolean json) {
+        this(new AccountBook(directory), accountName, out, json);
+    }
+
+    private BatchRunner(AccountBook book, String accountName, Writer out, boolean json) {
+        this(book, book.getAccount(accountName), out, json);
+    }
+
+    // Runs commands against an account someone else already owns (LedgerServer makes one of these
+    // per request, each writing to its own response). Whoever calls this keeps the threads apart
+    BatchRunner(AccountBook book, AccountBook.Account account, Writer out, boolean json) {
+        this.book = book;
+        this.account = account;
+        ledger = account.getLedger();
+        budget = account.getBudget();
+        persistence = account.getPersistence();
+        history = account.getHistory();
+        this.out = out;
+        this.json = json;
+    }
+
+    // Entry point from Main. Gives back the exit code: 0 if every command worked, 1 if any failed
+    public static int main(String[] args) throws IOException {
+        boolean json = false;
+        Path directory = Paths.get(".");
+        String accountName = AccountBook.MAIN_ACCOUNT;
+        String script = null;
+        for (String arg : args) {
+            if (arg.equals("--batch")) {
+                continue;
+            } else if (arg.equals("--json")) {
+                json = true;
+            } else if (arg.equals("--tsv")) {
+                json = false;
+            } else if (arg.startsWith("--dir=")) {
+                directory = Paths.get(arg.substring("--dir=".length()));
+            } else if (arg.startsWith("--account=")) {
+                accountName = arg.substring("--account=".length());
+            } else {
+                script = arg;
+            }
+        }
+
+        if (!AccountBook.isValidName(accountName)) {
+            System.err.println("Not a valid account name: " + accountName);
+            return 2;
+        }
+
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        BufferedReader in = script == null || script.equals("-")
+                ? new BufferedReader(new InputStreamReader(System.in, StandardCharsets.UTF_8))
+                : Files.newBufferedReader(Paths.get(script), StandardCharsets.UTF_8);
+        try (in) {
+            BatchRunner runner = new BatchRunner(directory, accountName, out, json);
+            return runner.run(in) == 0 ? 0 : 1;
+        } finally {
+            out.flush();
+        }
+    }
+
+    // Loads the saved data, runs every command, then flushes the journal. Gives back how many failed
+    public int run(BufferedReader commands) throws IOException {
+        int failed = 0;
+        try {
+            int replayed = account.load();
+            table(0, "start", new String[] {"rows", "replayed"}, row(ledger.size(), replayed));
+        } catch (IOException | RuntimeException e) {
+            error(0, "start", e.getMessage());
+            failed++;
+        }
+
+        String line;
+        int lineNumber = 0;
+        while (true) {
+            // Only flush when the next command isn't already waiting, so a script is one big write
+            // but a program talking to us line by line still sees each answer right away
+            if (!commands.ready()) {
+                out.flush();
+            }
+            line = commands.readLine();
+            if (line == null) {
+                break;
+            }
+            lineNumber++;
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) {
+                continue;
+            }
+
+            String command = line.split(" ", 2)[0].toLowerCase(Locale.ROOT);
+            if (command.equals("quit") || command.equals("exit")) {
+                break;
+            }
+            try {
+                execute(lineNumber, command, options(split(line)));
+            } catch (IOException | RuntimeException e) {
+                error(lineNumber, command, e.getMessage() == null ? e.toString() : e.getMessage());
+                failed++;
+            }
+        }
+
+        try {
+            book.close(); // every account the all-* commands loaded, too
+        } catch (IOException e) {
+            error(lineNumber, "close", e.getMessage());
+            failed++;
+        }
+        out.flush();
+        return failed;
+    }
+
+    // Runs one command that's already been split into options, writing its result (or its error).
+    // Gives back false if it failed
+    boolean runCommand(int line, String command, Map<String, String> options) {
+        try {
+            execute(line, command, options);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            error(line, command, e.getMessage() == null ? e.toString() : e.getMessage());
+            return false;
+        }
+    }
+
+    // ---------- the commands ----------
+
+    private void execute(int line, String command, Map<String, String> options) throws IOException {
+        long started = Metrics.start();
+        switch (command) {
+            case "add":
+                add(line, options);
+                break;
+            case "remove":
+                remove(line, options);
+                break;
+            case "undo":
+                undoOrRedo(line, command, history.undo(ledger, budget, persistence));
+                break;
+            case "redo":
+                undoOrRedo(line, command, history.redo(ledger, budget, persistence));
+                break;
+            case "list":
+                list(line, options);
+                break;
+            case "search":
+                search(line, options);
+                break;
+            case "summary":
+                table(line, command, new String[] {"income", "expenses", "net", "rows"},
+                      row(money(budget.getTotalIncome()), money(budget.getTotalExpenses()),
+                          money(budget.getTotalIncome() - budget.getTotalExpenses()), allRows(ledger)));
+                break;
+            case "categories":
+                categories(line, command, budget);
+                break;
+            case "monthly":
+                partitions(line, command, "monthly", ReportCache.Scope.everything(), ledger::getAllMonthTotals);
+                break;
+            case "report":
+                report(line, options);
+                break;
+            case "range":
+                range(line, command, options, budget);
+                break;
+            case "top-expenses":
+                topExpenses(line, options);
+                break;
+            case "top-categories":
+                topCategories(line, command, options, budget);
+                break;
+            case "schedule":
+                schedule(line, options);
+                break;
+            case "bills":
+                bills(line, options);
+                break;
+            case "upcoming":
+                upcoming(line, options);
+                break;
+            case "cancel-bill":
+                int cancelled = number(required(options, "bill"));
+                BillScheduler scheduled = ledger.getBills();
+                Object[] cancelledRow = billRow(scheduled, cancelled);
+                scheduled.cancel(cancelled);
+                persistence.logCancelBill(cancelled);
+                table(line, command, BILL_COLUMNS, row(cancelledRow));
+                break;
+            case "reschedule-bill":
+                int moved = number(required(options, "bill"));
+                billRow(ledger.getBills(), moved); // complains if there's no such bill
+                int dueDay = date(required(options, "due"));
+                ledger.getBills().reschedule(moved, dueDay);
+                persistence.logRescheduleBill(moved, dueDay);
+                table(line, command, BILL_COLUMNS, row(billRow(ledger.getBills(), moved)));
+                break;
+            case "process-bills":
+                processBills(line, options);
+                break;
+            case "save":
+                persistence.waitFor(persistence.compact(ledger, budget));
+                table(line, command, new String[] {"rows", "bytes"}, row(ledger.size(), persistence.snapshotSize()));
+                break;
+            case "load":
+                int replayed = persistence.recover(ledger, budget);
+                history.clear();
+                table(line, command, new String[] {"rows", "replayed"}, row(ledger.size(), replayed));
+                break;
+            case "seal":
+                seal(line, options);
+                break;
+            case "sealed":
+                sealed(line);
+                break;
+            case "export-text":
+                int written = TextFormat.write(ledger, Paths.get(options.getOrDefault("file", Main.TEXT_FILE)));
+                table(line, command, new String[] {"rows"}, row(written));
+                break;
+            case "import-text":
+                importText(line, options);
+                break;
+            case "import-csv":
+                importCsv(line, options);
+                break;
+            case "accounts":
+                accounts(line);
+                break;
+            case "all-summary":
+                Budget total = book.rollup();
+                table(line, command, new String[] {"income", "expenses", "net", "accounts"},
+                      row(money(total.getTotalIncome()), money(total.getTotalExpenses()),
+                          money(total.getTotalIncome() - total.getTotalExpenses()), book.getNames().size()));
+                break;
+            case "all-categories":
+                categories(line, command, book.rollup());
+                break;
+            case "all-range":
+                range(line, command, options, book.rollup());
+                break;
+            case "all-top-categories":
+                topCategories(line, command, options, book.rollup());
+                break;
+            case "metrics":
+                metrics(line);
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown command: " + command);
+        }
+        Metrics.commandDone(command, started);
+    }
+
+    private void add(int line, Map<String, String> options) {
+        String category = required(options, "category");
+        long cents = amount(required(options, "amount"));
+        String type = options.get("type");
+        if (type != null) {
+            // type=income / type=expense decides the sign, like the menu's I/E question
+            cents = type.toLowerCase(Locale.ROOT).startsWith("e") ? -Math.abs(cents) : Math.abs(cents);
+        }
+        int epochDay = date(required(options, "date"));
+
+        Transaction t = new Transaction(category, cents / 100.0, options.getOrDefault("description", ""), epochDay);
+        ledger.addTransaction(t);
+        budget.addTransaction(t);
+        persistence.logAdd(t);
+        persistence.maybeCompact(ledger, budget);
+        history.recordAdd(t.getHandle());
+
+        table(line, "add", ROW_COLUMNS, row(transactionRow(ledger.size() - 1, t)));
+    }
+
+    private void remove(int line, Map<String, String> options) {
+        int index;
+        if (options.containsKey("handle")) {
+            index = ledger.getStore().positionOf(number(options.get("handle")));
+        } else {
+            index = number(required(options, "index"));
+        }
+        if (index < 0 || index >= ledger.size()) {
+            throw new IllegalArgumentException("No transaction at that index/handle.");
+        }
+
+        Transaction removed = ledger.removeAt(index);
+        budget.removeTransaction(removed);
+        persistence.logRemove(index);
+        persistence.maybeCompact(ledger, budget);
+        history.recordRemove(removed.getHandle());
+        table(line, "remove", ROW_COLUMNS, row(transactionRow(index, removed)));
+    }
+
+    // type is what CommandLog.undo/redo gave back (0 = nothing done)
+    private void undoOrRedo(int line, String command, byte type) {
+        if (type == 0) {
+            throw new IllegalArgumentException("Nothing to " + command + ".");
+        }
+        int handle = history.getLastRowHandle();
+        TransactionStore store = ledger.getStore();
+        String change = type == CommandLog.ADD ? "add" : (type == CommandLog.REMOVE ? "remove" : "post-bill");
+        table(line, command, new String[] {"change", "index", "handle", "date", "category", "amount", "description"},
+              row(change, store.positionOf(handle), handle, store.getDate(handle),
+                  store.getCategoryName(store.getCategoryId(handle)), cents(store.getAmountCents(handle)),
+                  store.getDescription(handle)));
+    }
+
+    private void schedule(int line, Map<String, String> options) {
+        String category = required(options, "category");
+        long cents = -Math.abs(amount(required(options, "amount")));
+        int dueDay = date(required(options, "due"));
+
+        int unit = BillScheduler.ONCE;
+        String repeat = options.getOrDefault("repeat", "once").toLowerCase(Locale.ROOT);
+        if (repeat.startsWith("d")) {
+            unit = BillScheduler.DAYS;
+        } else if (repeat.startsWith("w")) {
+            unit = BillScheduler.WEEKS;
+        } else if (repeat.startsWith("m")) {
+            unit = BillScheduler.MONTHS;
+        } else if (!repeat.equals("once") && !repeat.equals("no")) {
+            throw new IllegalArgumentException("repeat has to be daily, weekly or monthly: " + repeat);
+        }
+        int every = options.containsKey("every") ? number(options.get("every")) : 1;
+        int endDay = options.containsKey("until") ? date(options.get("until")) : BillScheduler.NO_END;
+        int times = options.containsKey("times") ? number(options.get("times")) : -1;
+
+        BillScheduler bills = ledger.getBills();
+        int handle = bills.scheduleRepeating(category, cents, options.getOrDefault("description", ""), dueDay,
+                                             unit, every, endDay, times);
+        persistence.logScheduleBill(bills, handle);
+        table(line, "schedule", BILL_COLUMNS, row(billRow(bills, handle)));
+    }
+
+    private void bills(int line, Map<String, String> options) {
+        int limit = options.containsKey("limit") ? number(options.get("limit")) : Integer.MAX_VALUE;
+        BillScheduler bills = ledger.getBills();
+        int[] order = bills.handlesInDueOrder();
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < order.length && rows.size() < limit; i++) {
+            rows.add(billRow(bills, order[i]));
+        }
+        table(line, "bills", BILL_COLUMNS, rows);
+    }
+
+    // Every occurrence due through= (repeating bills worked out on the fly), nothing gets posted
+    private void upcoming(int line, Map<String, String> options) {
+        int throughDay = date(required(options, "through"));
+        int limit = options.containsKey("limit") ? number(options.get("limit")) : Integer.MAX_VALUE;
+        BillScheduler bills = ledger.getBills();
+        ArrayList<Object[]> rows = new ArrayList<>();
+        bills.forEachOccurrence(throughDay, limit, (handle, day) ->
+                rows.add(new Object[] {handle, DateKey.format(day), bills.getCategory(handle),
+                                       cents(bills.getAmountCents(handle)), bills.getDescription(handle)}));
+        table(line, "upcoming", new String[] {"bill", "date", "category", "amount", "description"}, rows);
+    }
+
+    // Posts the bills due on or before through= (today if it's left out), earliest first
+    private void processBills(int line, Map<String, String> options) {
+        int throughDay = options.containsKey("through") ? date(options.get("through")) : DateKey.today();
+        BillScheduler bills = ledger.getBills();
+        ArrayList<Object[]> rows = new ArrayList<>();
+        int handle;
+        while ((handle = bills.nextDue(throughDay)) >= 0) {
+            int dueBefore = bills.getDueDay(handle);
+            int remainingBefore = bills.getRemaining(handle);
+            Transaction t = ledger.postBill(handle);
+            budget.addTransaction(t);
+            persistence.logPostBill(handle);
+            history.recordPostBill(t.getHandle(), handle, dueBefore, remainingBefore);
+            rows.add(transactionRow(ledger.size() - 1, t));
+        }
+        persistence.maybeCompact(ledger, budget);
+        table(line, "process-bills", ROW_COLUMNS, rows);
+    }
+
+    private void list(int line, Map<String, String> options) {
+        int fromDay = options.containsKey("from") ? date(options.get("from")) : Integer.MIN_VALUE;
+        int toDay = options.containsKey("to") ? date(options.get("to")) : Integer.MAX_VALUE;
+        int offset = options.containsKey("offset") ? number(options.get("offset")) : 0;
+        int limit = options.containsKey("limit") ? number(options.get("limit")) : Integer.MAX_VALUE;
+
+        ArrayList<Object[]> rows = new ArrayList<>();
+        String category = options.get("category");
+        if (category != null) {
+            for (Transaction t : ledger.getTransactionsByCategory(category, fromDay, toDay, offset, limit)) {
+                rows.add(transactionRow(ledger.getStore().positionOf(t.getHandle()), t));
+            }
+        } else {
+            TransactionStore store = ledger.getStore();
+            int matched = 0;
+            for (int i = 0; i < store.size() && rows.size() < limit; i++) {
+                int day = store.getEpochDay(store.handleAt(i));
+                if (day < fromDay || day > toDay) {
+                    continue;
+                }
+                if (matched++ >= offset) {
+                    rows.add(transactionRow(i, store.getTransaction(store.handleAt(i))));
+                }
+            }
+        }
+        table(line, "list", ROW_COLUMNS, rows);
+    }
+
+    private void categories(int line, String command, Budget totals) {
+        List<Object[]> rows = cachedRows(totals, "categories", ReportCache.Scope.everything(), () -> {
+            ArrayList<Object[]> found = new ArrayList<>();
+            for (Map.Entry<String, Double> entry : totals.getCategoryTotals().entrySet()) {
+                found.add(new Object[] {entry.getKey(), money(entry.getValue())});
+            }
+            return found;
+        });
+        table(line, command, new String[] {"category", "total"}, rows);
+    }
+
+    // Word search over the descriptions (see DescriptionIndex for what a query can say)
+    private void search(int line, Map<String, String> options) {
+        int fromDay = options.containsKey("from") ? date(options.get("from")) : Integer.MIN_VALUE;
+        int toDay = options.containsKey("to") ? date(options.get("to")) : Integer.MAX_VALUE;
+        int offset = options.containsKey("offset") ? number(options.get("offset")) : 0;
+        int limit = options.containsKey("limit") ? number(options.get("limit")) : Integer.MAX_VALUE;
+
+        List<Transaction> found = ledger.searchDescriptions(required(options, "q"), options.get("category"), fromDay, toDay);
+        TransactionStore store = ledger.getStore();
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (int i = Math.max(offset, 0); i < found.size() && rows.size() < limit; i++) {
+            // Rows from a sealed year have no index or handle (-1)
+            Transaction t = found.get(i);
+            rows.add(transactionRow(store.positionOf(t.getHandle()), t));
+        }
+        table(line, "search", ROW_COLUMNS, rows);
+    }
+
+    // The biggest expenses, all time or for a year or one month of a year
+    private void topExpenses(int line, Map<String, String> options) {
+        int limit = options.containsKey("limit") ? number(options.get("limit")) : TOP_LIMIT;
+        List<Transaction> largest;
+        if (options.containsKey("year")) {
+            int year = number(options.get("year"));
+            int fromMonth = 1;
+            int toMonth = 12;
+            if (options.containsKey("month")) {
+                fromMonth = number(options.get("month"));
+                if (fromMonth < 1 || fromMonth > 12) {
+                    throw new IllegalArgumentException("month has to be 1-12.");
+                }
+                toMonth = fromMonth;
+            }
+            largest = ledger.getLargestExpenses(year * 12 + fromMonth - 1, year * 12 + toMonth - 1, limit);
+        } else if (options.containsKey("month")) {
+            throw new IllegalArgumentException("top-expenses needs year= with month=.");
+        } else {
+            largest = ledger.getLargestExpenses(limit);
+        }
+
+        TransactionStore store = ledger.getStore();
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (Transaction t : largest) {
+            rows.add(transactionRow(store.positionOf(t.getHandle()), t));
+        }
+        table(line, "top-expenses", ROW_COLUMNS, rows);
+    }
+
+    // The categories with the most spending (expenses only), biggest first
+    private void topCategories(int line, String command, Map<String, String> options, Budget totals) {
+        int limit = options.containsKey("limit") ? number(options.get("limit")) : TOP_LIMIT;
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (String category : totals.getTopCategories(limit)) {
+            rows.add(new Object[] {category, money(totals.getCategorySpending(category))});
+        }
+        table(line, command, new String[] {"category", "spent"}, rows);
+    }
+
+    // Timing so far for everything that has run (needs --metrics)
+    private void metrics(int line) {
+        if (!Metrics.ENABLED) {
+            throw new IllegalArgumentException("Metrics are off (start with --metrics).");
+        }
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (Metrics.Timer timer : Metrics.getTimers()) {
+            rows.add(new Object[] {timer.getName(), timer.getCount(), micros(timer.quantileNanos(0.5)),
+                                   micros(timer.quantileNanos(0.99)), micros(timer.getMaxNanos()), timer.getRows()});
+        }
+        rows.add(new Object[] {"bytes_read", Metrics.getBytesRead(), "", "", "", ""});
+        rows.add(new Object[] {"bytes_written", Metrics.getBytesWritten(), "", "", "", ""});
+        table(line, "metrics", new String[] {"name", "count", "p50_us", "p99_us", "max_us", "rows"}, rows);
+    }
+
+    private static BigDecimal micros(long nanos) {
+        return BigDecimal.valueOf(nanos, 3);
+    }
+
+    // One row per account with its own totals (loads any account that isn't loaded yet)
+    private void accounts(int line) throws IOException {
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (AccountBook.Account each : book.loadAll()) {
+            Budget totals = each.getBudget();
+            rows.add(new Object[] {each.getName(), money(totals.getTotalIncome()), money(totals.getTotalExpenses()),
+                                   money(totals.getTotalIncome() - totals.getTotalExpenses()),
+                                   allRows(each.getLedger())});
+        }
+        table(line, "accounts", new String[] {"account", "income", "expenses", "net", "rows"}, rows);
+    }
+
+    // Rows in a ledger, sealed years included
+    private static long allRows(Ledger each) {
+        return each.size() + each.getSealedYears().size();
+    }
+
+    // seal year=2023 seals one closed year; with no year, every year before this one that still has
+    // live rows. The positions of the rows left change, so the undo history goes
+    private void seal(int line, Map<String, String> options) throws IOException {
+        Collection<Integer> years;
+        if (options.containsKey("year")) {
+            int year = number(options.get("year"));
+            if (year >= DateKey.yearOf(DateKey.today())) {
+                throw new IllegalArgumentException("Only years that are over can be sealed.");
+            }
+            years = Collections.singletonList(year);
+        } else {
+            years = ledger.getLiveYears().headSet(DateKey.yearOf(DateKey.today()));
+        }
+        int sealed = persistence.seal(ledger, budget, years);
+        history.clear();
+        table(line, "seal", new String[] {"sealed", "rows", "years"},
+              row(sealed, ledger.size(), ledger.getSealedYears().getSegments().size()));
+    }
+
+    // One row per sealed year, from the headers (nothing gets paged in)
+    private void sealed(int line) {
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (ColdSegment segment : ledger.getSealedYears().getSegments()) {
+            long net = segment.getIncomeCents() - segment.getExpenseCents();
+            rows.add(new Object[] {segment.getYear(), segment.size(), cents(segment.getIncomeCents()),
+                                   cents(segment.getExpenseCents()), cents(net),
+                                   segment.getPath().getFileName().toString()});
+        }
+        table(line, "sealed", new String[] {"year", "rows", "income", "expenses", "net", "file"}, rows);
+    }
+
+    // report month=3 [year=2025] or report year=2025
+    private void report(int line, Map<String, String> options) {
+        if (options.containsKey("month")) {
+            int month = number(options.get("month"));
+            if (month < 1 || month > 12) {
+                throw new IllegalArgumentException("month has to be 1-12.");
+            }
+            if (options.containsKey("year")) {
+                int yearMonth = number(options.get("year")) * 12 + month - 1;
+                partitions(line, "report", "report:" + yearMonth, ReportCache.Scope.month(yearMonth),
+                           () -> ledger.getMonthTotals(yearMonth, yearMonth));
+            } else {
+                partitions(line, "report", "report:month" + month, ReportCache.Scope.monthOfYear(month), () -> {
+                    ArrayList<MonthPartition> months = new ArrayList<>();
+                    for (MonthPartition partition : ledger.getAllMonthTotals()) {
+                        if (partition.getMonth() == month) {
+                            months.add(partition);
+                        }
+                    }
+                    return months;
+                });
+            }
+        } else if (options.containsKey("year")) {
+            int year = number(options.get("year"));
+            partitions(line, "report", "report:year" + year, ReportCache.Scope.months(year * 12, year * 12 + 11),
+                       () -> ledger.getMonthTotals(year * 12, year * 12 + 11));
+        } else {
+            throw new IllegalArgumentException("report needs month= and/or year=.");
+        }
+    }
+
+    // One row per month partition, straight from the totals the partitions keep
+    private void partitions(int line, String command, String key, ReportCache.Scope scope,
+                            Supplier<Iterable<MonthPartition>> months) {
+        List<Object[]> rows = cachedRows(budget, key, scope, () -> {
+            ArrayList<Object[]> found = new ArrayList<>();
+            for (MonthPartition partition : months.get()) {
+                long net = partition.getIncomeCents() - partition.getExpenseCents();
+                found.add(new Object[] {partition.getYear(), partition.getMonth(), cents(partition.getIncomeCents()),
+                                        cents(partition.getExpenseCents()), cents(net), partition.size()});
+            }
+            return found;
+        });
+        table(line, command, new String[] {"year", "month", "income", "expenses", "net", "rows"}, rows);
+    }
+
+    private void range(int line, String command, Map<String, String> options, Budget totals) {
+        int fromDay = date(required(options, "from"));
+        int toDay = date(required(options, "to"));
+        String category = options.get("category");
+        ReportCache.Scope scope = ReportCache.Scope.months(DateKey.yearMonthOf(fromDay), DateKey.yearMonthOf(toDay));
+        if (category != null) {
+            scope = scope.onlyCategory(category);
+        }
+        List<Object[]> rows = cachedRows(totals, "range:" + fromDay + ":" + toDay + ":" + category, scope, () -> {
+            double income = totals.getIncomeBetween(fromDay, toDay, category);
+            double expenses = totals.getExpensesBetween(fromDay, toDay, category);
+            return row(DateKey.format(fromDay), DateKey.format(toDay), category == null ? "" : category,
+                       money(income), money(expenses), money(income - expenses));
+        });
+        table(line, command, new String[] {"from", "to", "category", "income", "expenses", "net"}, rows);
+    }
+
+    // Rows for a read-only answer, from the account budget's report cache when they're still good.
+    // The all-* commands add up a new Budget every time, so there's nothing to keep for those
+    private List<Object[]> cachedRows(Budget totals, String key, ReportCache.Scope scope,
+                                      Supplier<List<Object[]>> answer) {
+        if (totals != budget) {
+            return answer.get();
+        }
+        ReportCache cache = budget.getReportCache();
+        @SuppressWarnings("unchecked")
+        List<Object[]> rows = (List<Object[]>) cache.get("batch:" + key);
+        if (rows == null) {
+            rows = answer.get();
+            long bytes = 64;
+            for (Object[] values : rows) {
+                bytes += 32 + 40L * values.length;   // the array plus a small boxed value or BigDecimal each
+            }
+            cache.put("batch:" + key, rows, bytes, scope);
+        }
+        return rows;
+    }
+
+    private void importText(int line, Map<String, String> options) throws IOException {
+        Path file = Paths.get(options.getOrDefault("file", Main.TEXT_FILE));
+        ParallelTextLoader.Result result;
+        try {
+            result = new ParallelTextLoader().load(file, ledger, budget, null);
+        } catch (IOException e) {
+            // The snapshot + journal weren't touched, so go back to them
+            persistence.recover(ledger, budget);
+            throw e;
+        }
+        history.clear();
+        persistence.waitFor(persistence.compact(ledger, budget));
+        table(line, "import-text", new String[] {"rows", "skipped", "ms", "rows_per_second"},
+              row(result.getRows(), result.getSkipped(), result.getElapsedNanos() / 1_000_000,
+                  result.getRowsPerSecond()));
+    }
+
+    private void importCsv(int line, Map<String, String> options) throws IOException {
+        CsvImporter.Mapping mapping = new CsvImporter.Mapping();
+        if (options.containsKey("delimiter")) {
+            String delimiter = options.get("delimiter");
+            mapping.setDelimiter(delimiter.equalsIgnoreCase("tab") ? '\t' : delimiter.charAt(0));
+        }
+        if (options.containsKey("dates")) {
+            String dates = options.get("dates").toLowerCase(Locale.ROOT);
+            if (dates.equals("dmy")) {
+                mapping.setDateOrder(CsvImporter.DateOrder.DAY_MONTH_YEAR);
+            } else if (dates.equals("ymd")) {
+                mapping.setDateOrder(CsvImporter.DateOrder.YEAR_MONTH_DAY);
+            } else if (!dates.equals("mdy")) {
+                throw new IllegalArgumentException("dates has to be mdy, dmy or ymd.");
+            }
+        }
+        mapping.setExpensesPositive(yes(options.get("expenses-positive")));
+        if (options.containsKey("header")) {
+            mapping.setHasHeader(yes(options.get("header")));
+        }
+        if (options.containsKey("default-category")) {
+            mapping.setDefaultCategory(options.get("default-category"));
+        }
+        mapping.setDateColumn(column(options, "date-col"));
+        mapping.setAmountColumn(column(options, "amount-col"));
+        mapping.setDebitColumn(column(options, "debit-col"));
+        mapping.setCreditColumn(column(options, "credit-col"));
+        mapping.setDescriptionColumn(column(options, "description-col"));
+        mapping.setCategoryColumn(column(options, "category-col"));
+
+        // file=a.csv;b.csv imports several statements in parallel (same layout for all of them)
+        ArrayList<Path> files = new ArrayList<>();
+        for (String name : required(options, "file").split(";")) {
+            if (!name.trim().isEmpty()) {
+                files.add(Paths.get(name.trim()));
+            }
+        }
+        int before = ledger.size();
+        List<CsvImporter.Report> reports;
+        try {
+            if (files.size() == 1) {
+                reports = Collections.singletonList(new CsvImporter(mapping).importFile(files.get(0), ledger, budget));
+            } else {
+                reports = new CsvImporter(mapping).importFiles(files, new ConcurrentLedger(ledger, budget));
+            }
+        } finally {
+            // Snapshot whatever got in, even if one of the files failed part way
+            if (ledger.size() > before) {
+                history.clear();
+                persistence.waitFor(persistence.compact(ledger, budget));
+            }
+        }
+
+        // One row for the totals, then one per rejection reason (prefixed with the file name if there are several)
+        ArrayList<Object[]> rows = new ArrayList<>();
+        for (int i = 0; i < reports.size(); i++) {
+            CsvImporter.Report report = reports.get(i);
+            String from = files.size() > 1 ? files.get(i).getFileName() + " " : "";
+            rows.add(new Object[] {from + "accepted", report.getAccepted()});
+            rows.add(new Object[] {from + "rejected", report.getRejected()});
+            for (Map.Entry<String, Integer> reason : report.getReasons().entrySet()) {
+                rows.add(new Object[] {from + "rejected: " + reason.getKey(), reason.getValue()});
+            }
+        }
+        table(line, "import-csv", new String[] {"result", "count"}, rows);
+    }
+
+    // ---------- reading options ----------
+
+    // Splits a line on spaces, keeping "quoted parts" together (\" and \\ work inside quotes)
+    static List<String> split(String line) {
+        ArrayList<String> words = new ArrayList<>();
+        StringBuilder word = new StringBuilder();
+        boolean quoted = false;
+        boolean any = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted && c == '\\' && i + 1 < line.length()) {
+                word.append(line.charAt(++i));
+            } else if (c == '"') {
+                quoted = !quoted;
+                any = true;
+            } else if (c == ' ' && !quoted) {
+                if (any) {
+                    words.add(word.toString());
+                    word.setLength(0);
+                    any = false;
+                }
+            } else {
+                word.append(c);
+                any = true;
+            }
+        }
+        if (quoted) {
+            throw new IllegalArgumentException("Missing closing quote.");
+        }
+        if (any) {
+            words.add(word.toString());
+        }
+        return words;
+    }
+
+    private static Map<String, String> options(List<String> words) {
+        HashMap<String, String> options = new HashMap<>();
+        for (int i = 1; i < words.size(); i++) {
+            String word = words.get(i);
+            int equals = word.indexOf('=');
+            if (equals <= 0) {
+                throw new IllegalArgumentException("Expected key=value but got: " + word);
+            }
+            options.put(word.substring(0, equals).toLowerCase(Locale.ROOT), word.substring(equals + 1));
+        }
+        return options;
+    }
+
+    private static String required(Map<String, String> options, String key) {
+        String value = options.get(key);
+        if (value == null || value.isEmpty()) {
+            throw new IllegalArgumentException("Missing " + key + "=");
+        }
+        return value;
+    }
+
+    private static int number(String value) {
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Not a whole number: " + value);
+        }
+    }
+
+    private static long amount(String value) {
+        long cents = CsvImporter.parseAmount(value);
+        if (cents == Long.MIN_VALUE) {
+            throw new IllegalArgumentException("Not an amount: " + value);
+        }
+        return cents;
+    }
+
+    private static int date(String value) {
+        int epochDay = DateKey.parse(value.trim());
+        if (epochDay == DateKey.INVALID) {
+            throw new IllegalArgumentException("Not a date (M/D/YYYY): " + value);
+        }
+        return epochDay;
+    }
+
+    // 1-based column number in the options, -1 if it's not given
+    private static int column(Map<String, String> options, String key) {
+        return options.containsKey(key) ? number(options.get(key)) - 1 : -1;
+    }
+
+    private static boolean yes(String value) {
+        return value != null && (value.equalsIgnoreCase("yes") || value.equalsIgnoreCase("true")
+                                 || value.equalsIgnoreCase("y"));
+    }
+
+    // ---------- writing results ----------
+
+    // How many rows the top-* commands give when there's no limit=
+    private static final int TOP_LIMIT = 10;
+
+    private static final String[] ROW_COLUMNS = {"index", "handle", "date", "category", "amount", "description"};
+
+    private static Object[] transactionRow(int index, Transaction t) {
+        return new Object[] {index, t.getHandle(), t.getDate(), t.getCategory(),
+                             cents(TransactionStore.toCents(t.getAmount())), t.getDescription()};
+    }
+
+    private static final String[] BILL_COLUMNS = {"bill", "due", "category", "amount", "description", "repeat"};
+
+    private static Object[] billRow(BillScheduler bills, int handle) {
+        if (!bills.isScheduled(handle)) {
+            throw new IllegalArgumentException("There's no scheduled bill " + handle + ".");
+        }
+        return new Object[] {handle, DateKey.format(bills.getDueDay(handle)), bills.getCategory(handle),
+                             cents(bills.getAmountCents(handle)), bills.getDescription(handle),
+                             bills.describeRepeat(handle)};
+    }
+
+    private static List<Object[]> row(Object... values) {
+        ArrayList<Object[]> rows = new ArrayList<>(1);
+        rows.add(values);
+        return rows;
+    }
+
+    private static BigDecimal cents(long cents) {
+        return BigDecimal.valueOf(cents, 2);
+    }
+
+    private static BigDecimal money(double amount) {
+        return cents(TransactionStore.toCents(amount));
+    }
+
+    private void table(int line, String command, String[] columns, List<Object[]> rows) {
+        try {
+            if (json) {
+                out.write("{\"line\":" + line + ",\"command\":" + jsonString(command) + ",\"ok\":true,\"rows\":[");
+                for (int r = 0; r < rows.size(); r++) {
+                    out.write(r == 0 ? "{" : ",{");
+                    Object[] values = rows.get(r);
+                    for (int c = 0; c < columns.length; c++) {
+                        if (c > 0) {
+                            out.write(',');
+                        }
+                        out.write(jsonString(columns[c]));
+                        out.write(':');
+                        out.write(values[c] instanceof Number ? values[c].toString() : jsonString(String.valueOf(values[c])));
+                    }
+                    out.write('}');
+                }
+                out.write("]}\n");
+            } else {
+                out.write('#');
+                out.write(command);
+                for (String column : columns) {
+                    out.write('\t');
+                    out.write(column);
+                }
+                out.write('\n');
+                for (Object[] values : rows) {
+                    for (int c = 0; c < values.length; c++) {
+                        if (c > 0) {
+                            out.write('\t');
+                        }
+                        out.write(tsvField(String.valueOf(values[c])));
+                    }
+                    out.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write output", e);
+        }
+    }
+
+    private void error(int line, String command, String message) {
+        try {
+            if (json) {
+                out.write("{\"line\":" + line + ",\"command\":" + jsonString(command) + ",\"ok\":false,\"error\":"
+                          + jsonString(String.valueOf(message)) + "}\n");
+            } else {
+                out.write("!error\t" + line + '\t' + tsvField(command) + '\t' + tsvField(String.valueOf(message)) + '\n');
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not write output", e);
+        }
+    }
+
+    private static String tsvField(String value) {
+        if (value.indexOf('\t') < 0 && value.indexOf('\n') < 0 && value.indexOf('\\') < 0
+                && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return value.replace("\\", "\\\\").replace("\t", "\\t").replace("\n", "\\n").replace("\r", "\\r");
+    }
+
+    static String jsonString(String value) {
+        StringBuilder sb = new StringBuilder(value.length() + 2);
+        sb.append('"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else if (c == '\r') {
+                sb.append("\\r");
+            } else if (c == '\t') {
+                sb.append("\\t");
+            } else if (c < 0x20) {
+                sb.append(String.format("\\u%04x", (int) c));
+            } else {
+                sb.append(c);
+            }
+        }
+        return sb.append('"').toString();
+    }
+}
@@ -0,0 +1,447 @@
+/*
+    BillScheduler class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+// Future bills ordered by due date, so "what's due by today" never has to look at bills that
+// aren't due yet. It's a binary min-heap of bill numbers (handles); each bill also remembers where
+// it sits in the heap, so cancelling or moving a bill is O(log n) instead of a scan.
+//
+// Bills due the same day come out in the order they were scheduled.
+//
+// A bill can repeat (every N days, weeks or months, until a date or for a number of times). A
+// repeating bill is still just one entry: its due date is the next occurrence, and posting it moves
+// it on to the one after. Occurrences past that are only worked out when something asks for them
+// (see forEachOccurrence), so an open-ended rule never takes more room than a one-off bill.
+public class BillScheduler {
+
+    // How a bill repeats
+    public static final int ONCE = 0;
+    public static final int DAYS = 1;
+    public static final int WEEKS = 2;
+    public static final int MONTHS = 3;
+
+    // endDay when a repeating bill never ends
+    public static final int NO_END = Integer.MAX_VALUE;
+
+    // What forEachOccurrence hands each upcoming occurrence to
+    public interface OccurrenceVisitor {
+        void visit(int handle, int epochDay);
+    }
+
+    private int[] heap;        // bill handles, earliest due date at heap[0]
+    private int heapSize;
+
+    // Everything below is indexed by bill handle
+    private int[] position;    // where the bill is in the heap, -1 if it isn't scheduled
+    private int[] dueDays;
+    private long[] amountCents;
+    private String[] categories;
+    private String[] descriptions;
+    private byte[] units;      // ONCE, DAYS, WEEKS or MONTHS
+    private int[] intervals;   // every N units
+    private int[] endDays;     // no occurrence after this day (NO_END if there's no end date)
+    private int[] remaining;   // occurrences left counting the next one, -1 if there's no limit
+    private byte[] anchors;    // day of the month a monthly bill is due (so 1/31 goes to 2/28 and back to 3/31)
+    private int nextHandle;
+
+    public BillScheduler() {
+        clear();
+    }
+
+    public void clear() {
+        heap = new int[16];
+        heapSize = 0;
+        position = new int[16];
+        Arrays.fill(position, -1);
+        dueDays = new int[16];
+        amountCents = new long[16];
+        categories = new String[16];
+        descriptions = new String[16];
+        units = new byte[16];
+        intervals = new int[16];
+        endDays = new int[16];
+        remaining = new int[16];
+        anchors = new byte[16];
+        nextHandle = 0;
+    }
+
+    public int size() {
+        return heapSize;
+    }
+
+    public boolean isEmpty() {
+        return heapSize == 0;
+    }
+
+    // Adds a one-off bill and gives back its handle (the number used to cancel or reschedule it)
+    public int schedule(String category, long cents, String description, int dueDay) {
+        return scheduleRepeating(category, cents, description, dueDay, ONCE, 1, NO_END, -1);
+    }
+
+    // Adds a bill that repeats every `every` units starting at firstDue. It stops after endDay
+    // (NO_END for never) or after `times` occurrences (-1 for no limit), whichever comes first
+    public int scheduleRepeating(String category, long cents, String description, int firstDue,
+                                 int unit, int every, int endDay, int times) {
+        if (unit < ONCE || unit > MONTHS || every < 1) {
+            throw new IllegalArgumentException("A bill has to repeat every 1 or more days, weeks or months.");
+        }
+        if (firstDue > endDay || times == 0) {
+            throw new IllegalArgumentException("That bill would never come due.");
+        }
+        int handle = nextHandle;
+        restore(handle, category, cents, description, firstDue, unit, every, endDay, times);
+        return handle;
+    }
+
+    // Puts a bill back under the handle it had before (used when loading and replaying the journal)
+    void restore(int handle, String category, long cents, String description, int dueDay,
+                 int unit, int every, int endDay, int times) {
+        ensureCapacity(handle + 1);
+        if (position[handle] >= 0) {
+            removeAt(position[handle]);
+        }
+        nextHandle = Math.max(nextHandle, handle + 1);
+        dueDays[handle] = dueDay;
+        amountCents[handle] = cents;
+        categories[handle] = category;
+        descriptions[handle] = description == null ? "" : description;
+        units[handle] = (byte) unit;
+        intervals[handle] = every;
+        endDays[handle] = endDay;
+        remaining[handle] = times;
+        anchors[handle] = (byte) DateKey.dayOf(dueDay);
+
+        heap[heapSize] = handle;
+        position[handle] = heapSize;
+        heapSize++;
+        siftUp(heapSize - 1);
+    }
+
+    public boolean isScheduled(int handle) {
+        return handle >= 0 && handle < nextHandle && position[handle] >= 0;
+    }
+
+    // Takes a bill off the schedule, false if there's no such bill
+    public boolean cancel(int handle) {
+        if (!isScheduled(handle)) {
+            return false;
+        }
+        removeAt(position[handle]);
+        categories[handle] = null;
+        descriptions[handle] = null;
+        return true;
+    }
+
+    // Moves a bill to a new due date, false if there's no such bill.
+    // A repeating bill carries on from the new date (a monthly one keeps the new day of the month)
+    public boolean reschedule(int handle, int dueDay) {
+        if (!isScheduled(handle)) {
+            return false;
+        }
+        anchors[handle] = (byte) DateKey.dayOf(dueDay);
+        moveTo(handle, dueDay);
+        return true;
+    }
+
+    // Called once the bill's current occurrence has been posted: a repeating bill moves on to its
+    // next occurrence, anything else (or a rule that just ran out) leaves the schedule
+    public void markPosted(int handle) {
+        if (!isScheduled(handle)) {
+            return;
+        }
+        int next = followingDay(handle, dueDays[handle]);
+        int left = remaining[handle] < 0 ? -1 : remaining[handle] - 1;
+        if (units[handle] == ONCE || left == 0 || next > endDays[handle]) {
+            cancel(handle);
+            return;
+        }
+        remaining[handle] = left;
+        moveTo(handle, next);
+    }
+
+    // Every occurrence due on or before throughDay (up to limit of them), earliest first, without
+    // changing anything. Only bills whose next occurrence is in range get looked at, and each of
+    // those is stepped forward one occurrence at a time. Gives back how many were visited
+    public int forEachOccurrence(int throughDay, int limit, OccurrenceVisitor visitor) {
+        // {day, handle, occurrences left after this one (-1 = no limit)}
+        PriorityQueue<int[]> upcoming = new PriorityQueue<>(
+                (a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+        collectDue(0, throughDay, upcoming);
+
+        int visited = 0;
+        while (!upcoming.isEmpty() && visited < limit) {
+            int[] next = upcoming.poll();
+            int handle = next[1];
+            visitor.visit(handle, next[0]);
+            visited++;
+
+            if (units[handle] == ONCE || next[2] == 1) {
+                continue;
+            }
+            int day = followingDay(handle, next[0]);
+            if (day <= throughDay && day <= endDays[handle]) {
+                next[0] = day;
+                next[2] = next[2] < 0 ? -1 : next[2] - 1;
+                upcoming.add(next);
+            }
+        }
+        return visited;
+    }
+
+    // The earliest bill if it's due on or before throughDay, otherwise -1 (nothing gets removed)
+    public int nextDue(int throughDay) {
+        if (heapSize == 0 || dueDays[heap[0]] > throughDay) {
+            return -1;
+        }
+        return heap[0];
+    }
+
+    // The bill's next occurrence as the transaction it becomes once it's posted
+    public Transaction toTransaction(int handle) {
+        return new Transaction(categories[handle], amountCents[handle] / 100.0, descriptions[handle], dueDays[handle]);
+    }
+
+    public int getDueDay(int handle) {
+        return dueDays[handle];
+    }
+
+    public long getAmountCents(int handle) {
+        return amountCents[handle];
+    }
+
+    public String getCategory(int handle) {
+        return categories[handle];
+    }
+
+    public String getDescription(int handle) {
+        return descriptions[handle];
+    }
+
+    public boolean isRepeating(int handle) {
+        return units[handle] != ONCE;
+    }
+
+    public int getUnit(int handle) {
+        return units[handle];
+    }
+
+    public int getInterval(int handle) {
+        return intervals[handle];
+    }
+
+    public int getEndDay(int handle) {
+        return endDays[handle];
+    }
+
+    // Occurrences left counting the next one, -1 if there's no limit
+    public int getRemaining(int handle) {
+        return remaining[handle];
+    }
+
+    // Day of the month a monthly bill goes back to (it can differ from the due date, like 31 vs 2/28)
+    public int getAnchorDay(int handle) {
+        return anchors[handle];
+    }
+
+    // Used after restore() when the saved anchor isn't just the due date's day
+    void setAnchorDay(int handle, int dayOfMonth) {
+        if (dayOfMonth >= 1 && dayOfMonth <= 31) {
+            anchors[handle] = (byte) dayOfMonth;
+        }
+    }
+
+    // "once", "monthly", "every 2 weeks, 3 left", "weekly until 12/31/2025"...
+    public String describeRepeat(int handle) {
+        int unit = units[handle];
+        if (unit == ONCE) {
+            return "once";
+        }
+        String[] names = {"", "day", "week", "month"};
+        String[] every = {"", "daily", "weekly", "monthly"};
+        StringBuilder sb = new StringBuilder();
+        if (intervals[handle] == 1) {
+            sb.append(every[unit]);
+        } else {
+            sb.append("every ").append(intervals[handle]).append(' ').append(names[unit]).append('s');
+        }
+        if (endDays[handle] != NO_END) {
+            sb.append(" until ").append(DateKey.format(endDays[handle]));
+        }
+        if (remaining[handle] > 0) {
+            sb.append(", ").append(remaining[handle]).append(" left");
+        }
+        return sb.toString();
+    }
+
+    public int getNextHandle() {
+        return nextHandle;
+    }
+
+    // Every scheduled bill's handle from the earliest due date on (a sorted copy, the heap isn't touched)
+    public int[] handlesInDueOrder() {
+        Integer[] order = new Integer[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            order[i] = heap[i];
+        }
+        Arrays.sort(order, (a, b) -> before(a, b) ? -1 : (before(b, a) ? 1 : 0));
+        int[] handles = new int[heapSize];
+        for (int i = 0; i < heapSize; i++) {
+            handles[i] = order[i];
+        }
+        return handles;
+    }
+
+    // A separate copy, so a snapshot can be written while this one keeps changing
+    public BillScheduler copy() {
+        BillScheduler copy = new BillScheduler();
+        copy.heap = Arrays.copyOf(heap, heap.length);
+        copy.heapSize = heapSize;
+        copy.position = Arrays.copyOf(position, position.length);
+        copy.dueDays = Arrays.copyOf(dueDays, dueDays.length);
+        copy.amountCents = Arrays.copyOf(amountCents, amountCents.length);
+        copy.categories = Arrays.copyOf(categories, categories.length);
+        copy.descriptions = Arrays.copyOf(descriptions, descriptions.length);
+        copy.units = Arrays.copyOf(units, units.length);
+        copy.intervals = Arrays.copyOf(intervals, intervals.length);
+        copy.endDays = Arrays.copyOf(endDays, endDays.length);
+        copy.remaining = Arrays.copyOf(remaining, remaining.length);
+        copy.anchors = Arrays.copyOf(anchors, anchors.length);
+        copy.nextHandle = nextHandle;
+        return copy;
+    }
+
+    // Handles never get reused, so a new bill never gets the number of one that was cancelled
+    void setNextHandle(int handle) {
+        ensureCapacity(handle);
+        nextHandle = Math.max(nextHandle, handle);
+    }
+
+    // Heap position i, used by the snapshot writer (any order is fine there)
+    int handleAt(int i) {
+        return heap[i];
+    }
+
+    // ---------- stepping a repeating bill ----------
+
+    // The occurrence after `day` for this bill (ignores the end date and count)
+    private int followingDay(int handle, int day) {
+        int every = intervals[handle];
+        switch (units[handle]) {
+            case DAYS:
+                return day + every;
+            case WEEKS:
+                return day + 7 * every;
+            case MONTHS:
+                int months = DateKey.yearOf(day) * 12 + DateKey.monthOf(day) - 1 + every;
+                int year = months / 12;
+                int month = months % 12 + 1;
+                return DateKey.toEpochDay(year, month, Math.min(anchors[handle], DateKey.daysInMonth(year, month)));
+            default:
+                return day;
+        }
+    }
+
+    private void moveTo(int handle, int dueDay) {
+        int old = dueDays[handle];
+        dueDays[handle] = dueDay;
+        if (dueDay < old) {
+            siftUp(position[handle]);
+        } else {
+            siftDown(position[handle]);
+        }
+    }
+
+    // Every bill whose next occurrence is on or before throughDay. A heap entry is never earlier
+    // than its parent, so a whole subtree can be skipped as soon as its top is past the day
+    private void collectDue(int index, int throughDay, PriorityQueue<int[]> into) {
+        if (index >= heapSize || dueDays[heap[index]] > throughDay) {
+            return;
+        }
+        int handle = heap[index];
+        into.add(new int[] {dueDays[handle], handle, remaining[handle]});
+        collectDue(2 * index + 1, throughDay, into);
+        collectDue(2 * index + 2, throughDay, into);
+    }
+
+    // ---------- heap basics ----------
+
+    // Earlier due date first, then whichever was scheduled first
+    private boolean before(int a, int b) {
+        return dueDays[a] < dueDays[b] || (dueDays[a] == dueDays[b] && a < b);
+    }
+
+    private void removeAt(int index) {
+        int handle = heap[index];
+        heapSize--;
+        position[handle] = -1;
+        if (index == heapSize) {
+            return;
+        }
+        int last = heap[heapSize];
+        heap[index] = last;
+        position[last] = index;
+        siftDown(index);
+        if (heap[index] == last) {
+            siftUp(index);
+        }
+    }
+
+    private void siftUp(int index) {
+        int handle = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(handle, heap[parent])) {
+                break;
+            }
+            heap[index] = heap[parent];
+            position[heap[index]] = index;
+            index = parent;
+        }
+        heap[index] = handle;
+        position[handle] = index;
+    }
+
+    private void siftDown(int index) {
+        int handle = heap[index];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= heapSize) {
+                break;
+            }
+            if (child + 1 < heapSize && before(heap[child + 1], heap[child])) {
+                child++;
+            }
+            if (!before(heap[child], handle)) {
+                break;
+            }
+            heap[index] = heap[child];
+            position[heap[index]] = index;
+            index = child;
+        }
+        heap[index] = handle;
+        position[handle] = index;
+    }
+
+    private void ensureCapacity(int handles) {
+        if (handles > position.length) {
+            int newCapacity = Math.max(handles, position.length * 2);
+            int oldLength = position.length;
+            position = Arrays.copyOf(position, newCapacity);
+            Arrays.fill(position, oldLength, newCapacity, -1);
+            dueDays = Arrays.copyOf(dueDays, newCapacity);
+            amountCents = Arrays.copyOf(amountCents, newCapacity);
+            categories = Arrays.copyOf(categories, newCapacity);
+            descriptions = Arrays.copyOf(descriptions, newCapacity);
+            units = Arrays.copyOf(units, newCapacity);
+            intervals = Arrays.copyOf(intervals, newCapacity);
+            endDays = Arrays.copyOf(endDays, newCapacity);
+            remaining = Arrays.copyOf(remaining, newCapacity);
+            anchors = Arrays.copyOf(anchors, newCapacity);
+            heap = Arrays.copyOf(heap, newCapacity);
+        }
+    }
+}
@@ -2,28 +2,61 @@
     Budget class for Personal Finance Budget App
     Name: Brenda Romero Torres
 */
-import java.util.Arrays;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
-import java.util.LinkedList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
 
 // This class handles all the money logic: totals, categories, monthly breakdowns, and recursion
 public class Budget {
 
+    // Timing for the hot paths (only kept with --metrics, see Metrics)
+    private static final Metrics.Timer ADD_TIMER = Metrics.timer("budget_add_transaction");
+    private static final Metrics.Timer REMOVE_TIMER = Metrics.timer("budget_remove_transaction");
+    private static final Metrics.Timer TOTAL_TIMER = Metrics.timer("budget_total_spending");
+    private static final Metrics.Timer MONTH_REPORT_TIMER = Metrics.timer("budget_monthly_report");
+    private static final Metrics.Timer YEAR_REPORT_TIMER = Metrics.timer("budget_year_report");
+    private static final Metrics.Timer RANGE_TIMER = Metrics.timer("budget_range_totals");
+    private static final Metrics.Timer TOP_CATEGORIES_TIMER = Metrics.timer("budget_top_categories");
+
     private double totalIncome;
     private double totalExpenses;
     private HashMap<String, Double> categoryTotals;
 
-    // Arrays to track income and expenses for each month (index 0 = Jan, 11 = Dec)
-    private double[] monthlyIncome;
-    private double[] monthlyExpenses;
+    // Categories by how much was spent in them, biggest first (kept in order as rows come and go)
+    private CategoryRanking spending;
+
+    // Income and expenses by date (every year, not just 12 months), also split by category
+    private RollupIndex rollup;
+
+    // Used to recompute everything straight from the ledger
+    private BudgetAggregator aggregator;
+
+    // Reports that were already printed once, dropped when a row lands in a month they read
+    private ReportCache reports;
 
     public Budget() {
         totalIncome = 0.0;
         totalExpenses = 0.0;
         categoryTotals = new HashMap<>();
+        spending = new CategoryRanking();
+
+        rollup = new RollupIndex();
 
-        monthlyIncome = new double[12];
-        monthlyExpenses = new double[12];
+        aggregator = new BudgetAggregator();
+        reports = new ReportCache();
     }
 
     // I call this when I load from a file to reset everything
@@ -31,56 +64,81 @@ public class Budget {
         totalIncome = 0.0;
         totalExpenses = 0.0;
         categoryTotals.clear();
-        Arrays.fill(monthlyIncome, 0.0);
-        Arrays.fill(monthlyExpenses, 0.0);
+        spending.clear();
+        rollup.clear();
+        reports.clear();
     }
 
     // Add a transaction and keep all totals updated
     public void addTransaction(Transaction t) {
-        double amount = t.getAmount();
-        String category = t.getCategory();
-        int month = extractMonthFromDate(t.getDate());
+        long started = Metrics.start();
+        // The date was already decoded when the transaction was made, so this is just an int
+        addRow(t.getCategory(), TransactionStore.toCents(t.getAmount()), t.getEpochDay());
+        ADD_TIMER.stop(started);
+    }
+
+    // Same as addTransaction but straight from the ledger's columns, no Transaction object needed
+    public void addRow(String category, long cents, int epochDay) {
+        double amount = cents / 100.0;
 
         if (amount > 0) {
             totalIncome += amount;
-            if (month >= 1 && month <= 12) {
-                monthlyIncome[month - 1] += amount;
-            }
         } else {
-            double expense = Math.abs(amount);
-            totalExpenses += expense;
-            if (month >= 1 && month <= 12) {
-                monthlyExpenses[month - 1] += expense;
-            }
+            totalExpenses += Math.abs(amount);
         }
 
+        rollup.add(epochDay, category, cents);
+        if (cents < 0) {
+            spending.add(category, -cents);
+        }
+        reports.touched(DateKey.yearMonthOf(epochDay), category);
+
         double current = categoryTotals.getOrDefault(category, 0.0);
         categoryTotals.put(category, current + Math.abs(amount));
     }
 
+    // Starts over and adds up every row that's in the ledger right now (used after loading).
+    // Sealed years count too, from the day totals their files keep (no rows get paged in)
+    public void rebuildFrom(Ledger ledger) {
+        resetAll();
+        ColdStorage sealed = ledger.getSealedYears();
+        for (ColdSegment segment : sealed.getSegments()) {
+            sealed.dayTotals(segment.getYear(), this::addRow);
+        }
+        TransactionStore store = ledger.getStore();
+        for (int i = 0; i < store.size(); i++) {
+            int handle = store.handleAt(i);
+            addRow(store.getCategoryName(store.getCategoryId(handle)), store.getAmountCents(handle),
+                   store.getEpochDay(handle));
+        }
+    }
+
     // Undo a transaction inside the budget (used for remove and undo)
     public void removeTransaction(Transaction t) {
         if (t == null) {
             return;
         }
+        long started = Metrics.start();
+        removeRow(t.getCategory(), TransactionStore.toCents(t.getAmount()), t.getEpochDay());
+        REMOVE_TIMER.stop(started);
+    }
 
-        double amount = t.getAmount();
-        String category = t.getCategory();
-        int month = extractMonthFromDate(t.getDate());
+    // Same as removeTransaction but straight from the ledger's columns
+    public void removeRow(String category, long cents, int epochDay) {
+        double amount = cents / 100.0;
 
         if (amount > 0) {
             totalIncome -= amount;
-            if (month >= 1 && month <= 12) {
-                monthlyIncome[month - 1] -= amount;
-            }
         } else {
-            double expense = Math.abs(amount);
-            totalExpenses -= expense;
-            if (month >= 1 && month <= 12) {
-                monthlyExpenses[month - 1] -= expense;
-            }
+            totalExpenses -= Math.abs(amount);
         }
 
+        rollup.remove(epochDay, category, cents);
+        if (cents < 0) {
+            spending.remove(category, -cents);
+        }
+        reports.touched(DateKey.yearMonthOf(epochDay), category);
+
         Double current = categoryTotals.get(category);
         if (current != null) {
             double updated = current - Math.abs(amount);
@@ -92,151 +150,390 @@ public class Budget {
         }
     }
 
-    // Main summary for the whole budget, with a nicer layout
-    public void showSummary() {
-        System.out.println();
-        System.out.println("=============== BUDGET SUMMARY ===============");
-        System.out.printf("Total Income   : $%.2f%n", totalIncome);
-        System.out.printf("Total Expenses : $%.2f%n", totalExpenses);
-        System.out.printf("Net Balance    : $%.2f%n", (totalIncome - totalExpenses));
-        System.out.println("----------------------------------------------");
-        System.out.println("Category breakdown:");
-
-        if (categoryTotals.isEmpty()) {
-            System.out.println("No category data yet.");
-        } else {
+    // Adds another budget's totals into this one (the loader adds up each chunk on its own, then merges)
+    public void mergeFrom(Budget other) {
+        totalIncome += other.totalIncome;
+        totalExpenses += other.totalExpenses;
+        for (Map.Entry<String, Double> entry : other.categoryTotals.entrySet()) {
+            categoryTotals.merge(entry.getKey(), entry.getValue(), Double::sum);
+        }
+        spending.mergeFrom(other.spending);
+        rollup.mergeFrom(other.rollup);
+        reports.clear();
+    }
+
+    // A separate copy of all the totals, so a checkpoint can be saved in the background
+    public Budget copy() {
+        Budget copy = new Budget();
+        copy.totalIncome = totalIncome;
+        copy.totalExpenses = totalExpenses;
+        copy.categoryTotals.putAll(categoryTotals);
+        copy.spending = spending.copy();
+        copy.rollup = rollup.copy();
+        return copy;
+    }
+
+    // ---------- checkpoint support (see BudgetCheckpoint) ----------
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeDouble(totalIncome);
+        out.writeDouble(totalExpenses);
+        out.writeInt(categoryTotals.size());
+        for (Map.Entry<String, Double> entry : categoryTotals.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            out.writeDouble(entry.getValue());
+        }
+        rollup.writeTo(out);
+    }
+
+    // Replaces every total with what writeTo wrote, no transactions needed
+    void readFrom(ByteBuffer in) {
+        resetAll();
+        totalIncome = in.getDouble();
+        totalExpenses = in.getDouble();
+        int categories = in.getInt();
+        for (int i = 0; i < categories; i++) {
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            categoryTotals.put(new String(name, StandardCharsets.UTF_8), in.getDouble());
+        }
+        rollup.readFrom(in);
+
+        // The checkpoint doesn't keep the ranking, but the rollup already has each category's spending
+        if (!rollup.isEmpty()) {
             for (String category : categoryTotals.keySet()) {
-                double value = categoryTotals.get(category);
-                System.out.printf("- %-12s : $%.2f%n", category, value);
+                spending.add(category, rollup.expensesBetween(rollup.getMinDay(), rollup.getMaxDay(), category));
             }
         }
+    }
 
-        System.out.println("==============================================");
+    // BatchRunner keeps its own answers in here too, so they get dropped by the same changes
+    public ReportCache getReportCache() {
+        return reports;
     }
 
-    // Public method that I call from Main to use my recursive algorithm
-    public double calculateTotalSpendingRecursive(LinkedList<Transaction> transactions) {
-        return sumExpensesRecursive(transactions, 0);
+    public double getTotalIncome() {
+        return totalIncome;
     }
 
-    // This is the actual recursive function that walks through the list
-    private double sumExpensesRecursive(LinkedList<Transaction> list, int index) {
-        // Base case: once index hits the end, I stop
-        if (index == list.size()) {
-            return 0.0;
-        }
+    public double getTotalExpenses() {
+        return totalExpenses;
+    }
 
-        Transaction current = list.get(index);
-        double thisAmount = 0.0;
+    // Category -> total, read-only (the batch mode prints it as data instead of text)
+    public Map<String, Double> getCategoryTotals() {
+        return Collections.unmodifiableMap(categoryTotals);
+    }
 
-        // Only count expenses (negative amounts)
-        if (current.getAmount() < 0) {
-            thisAmount = Math.abs(current.getAmount());
-        }
+    // The k categories with the most spending (expenses only), biggest first
+    public List<String> getTopCategories(int k) {
+        long started = Metrics.start();
+        List<String> top = spending.top(k);
+        TOP_CATEGORIES_TIMER.stop(started, top.size());
+        return top;
+    }
+
+    // What was spent in one category, as a positive number
+    public double getCategorySpending(String category) {
+        return spending.getSpentCents(category) / 100.0;
+    }
+
+    // Main summary for the whole budget, with a nicer layout
+    public void showSummary() {
+        printCached("summary", ReportCache.Scope.everything(), out -> {
+            out.println();
+            out.println("=============== BUDGET SUMMARY ===============");
+            out.printf("Total Income   : $%.2f%n", totalIncome);
+            out.printf("Total Expenses : $%.2f%n", totalExpenses);
+            out.printf("Net Balance    : $%.2f%n", (totalIncome - totalExpenses));
+            out.println("----------------------------------------------");
+            out.println("Category breakdown:");
+
+            if (categoryTotals.isEmpty()) {
+                out.println("No category data yet.");
+            } else {
+                for (Map.Entry<String, Double> entry : categoryTotals.entrySet()) {
+                    out.printf("- %-12s : $%.2f%n", entry.getKey(), entry.getValue());
+                }
+            }
 
-        // Recursive step: add this expense and move to the next one
-        return thisAmount + sumExpensesRecursive(list, index + 1);
+            out.println("==============================================");
+        });
     }
 
-    // This gives a more detailed report for a single month
-    public void showMonthlyReport(LinkedList<Transaction> transactions, int monthNumber) {
+    // Public method that I call from Main to double-check total expenses.
+    // It used to walk the list one row per recursive call, which blew the stack on big ledgers,
+    // so now it splits the ledger in halves (still recursive) and runs the halves on a ForkJoinPool.
+    // It's a check on the running totals, so it always adds the rows up again (never cached).
+    // Sealed years don't change, so their part comes straight from their headers
+    public double calculateTotalSpendingRecursive(Ledger ledger) {
+        long started = Metrics.start();
+        double total = aggregateLedger(ledger).getTotalExpenses() + ledger.getSealedYears().getExpenseCents() / 100.0;
+        TOTAL_TIMER.stop(started, ledger.size());
+        return total;
+    }
+
+    // One pass over the ledger that gives income, expenses, category and month totals together
+    public BudgetAggregator.Result aggregateLedger(Ledger ledger) {
+        return aggregator.aggregate(ledger.getStore(), ForkJoinPool.commonPool());
+    }
+
+    // This gives a more detailed report for a single month number, across every year that has it.
+    // It only reads the ledger's partitions for that month, not every row
+    public void showMonthlyReport(Ledger ledger, int monthNumber) {
         if (monthNumber < 1 || monthNumber > 12) {
             System.out.println("Invalid month number.");
             return;
         }
 
-        double monthIncome = 0.0;
-        double monthExpenses = 0.0;
-        HashMap<String, Double> monthCategoryTotals = new HashMap<>();
+        // The partitions are only looked up on a cache miss, since that pages in any sealed years
+        printCached("month:" + monthNumber, ReportCache.Scope.monthOfYear(monthNumber), out -> {
+            ArrayList<MonthPartition> months = new ArrayList<>();
+            for (MonthPartition partition : ledger.getAllPartitions()) {
+                if (partition.getMonth() == monthNumber) {
+                    months.add(partition);
+                }
+            }
+            printPartitionReport(out, "MONTH " + monthNumber, ledger.getStore(), months, true, MONTH_REPORT_TIMER);
+        });
+    }
 
-        System.out.println();
-        System.out.println("============== MONTH " + monthNumber + " REPORT ==============");
+    // Report for one month of one year, like 3/2025
+    public void showMonthlyReport(Ledger ledger, int year, int monthNumber) {
+        if (monthNumber < 1 || monthNumber > 12) {
+            System.out.println("Invalid month number.");
+            return;
+        }
 
-        for (Transaction t : transactions) {
-            String date = t.getDate();
-            int monthFromDate = extractMonthFromDate(date);
+        int yearMonth = year * 12 + monthNumber - 1;
+        printCached("month:" + year + "/" + monthNumber, ReportCache.Scope.month(yearMonth), out ->
+                printPartitionReport(out, "MONTH " + monthNumber + "/" + year, ledger.getStore(),
+                                     ledger.getPartitions(yearMonth, yearMonth), true, MONTH_REPORT_TIMER));
+    }
 
-            if (monthFromDate == monthNumber) {
-                double amount = t.getAmount();
-                String category = t.getCategory();
+    // Report that covers several months in a row, like 1/2025 through 6/2025 (both included)
+    public void showMultiMonthReport(Ledger ledger, int fromYear, int fromMonth, int toYear, int toMonth) {
+        int fromYearMonth = fromYear * 12 + fromMonth - 1;
+        int toYearMonth = toYear * 12 + toMonth - 1;
+        printCached("months:" + fromYearMonth + "-" + toYearMonth, ReportCache.Scope.months(fromYearMonth, toYearMonth),
+                    out -> printPartitionReport(out, fromMonth + "/" + fromYear + " - " + toMonth + "/" + toYear,
+                                                ledger.getStore(), ledger.getPartitions(fromYearMonth, toYearMonth),
+                                                true, MONTH_REPORT_TIMER));
+    }
 
-                System.out.println(t);
+    // Whole-year report: just the month-by-month totals and categories, not every row
+    // (so a sealed year doesn't even get paged in)
+    public void showYearReport(Ledger ledger, int year) {
+        printCached("year:" + year, ReportCache.Scope.months(year * 12, year * 12 + 11), out ->
+                printPartitionReport(out, "YEAR " + year, ledger.getStore(), ledger.getMonthTotals(year * 12, year * 12 + 11),
+                                     false, YEAR_REPORT_TIMER));
+    }
 
-                if (amount > 0) {
-                    monthIncome += amount;
-                } else {
-                    monthExpenses += Math.abs(amount);
+    // Prints a report for a group of month partitions using the totals they already keep.
+    // Partitions from a sealed year number their categories their own way, so the category totals
+    // are added up by name (the live store's names first, in their usual order)
+    private void printPartitionReport(PrintStream out, String title, TransactionStore store,
+                                      Collection<MonthPartition> months, boolean listRows, Metrics.Timer timer) {
+        long started = Metrics.start();
+        long rowsShown = 0;
+        long periodIncome = 0;
+        long periodExpenses = 0;
+        long[] periodCategories = new long[store.getCategoryCount()];
+        LinkedHashMap<String, Long> sealedCategories = new LinkedHashMap<>();
+
+        out.println();
+        out.println("============== " + title + " REPORT ==============");
+
+        // The rows can be a lot, so they go through one buffer instead of a println each
+        ReportRenderer renderer = new ReportRenderer(out);
+        for (MonthPartition partition : months) {
+            if (listRows) {
+                for (int i = 0; i < partition.size(); i++) {
+                    renderer.row(partition.getStore(), partition.handleAt(i));
                 }
+                rowsShown += partition.size();
+            } else {
+                long net = partition.getIncomeCents() - partition.getExpenseCents();
+                out.printf("%2d/%d | income $%.2f | expenses $%.2f | net $%.2f%n",
+                                  partition.getMonth(), partition.getYear(), partition.getIncomeCents() / 100.0,
+                                  partition.getExpenseCents() / 100.0, net / 100.0);
+            }
 
-                double current = monthCategoryTotals.getOrDefault(category, 0.0);
-                monthCategoryTotals.put(category, current + Math.abs(amount));
+            periodIncome += partition.getIncomeCents();
+            periodExpenses += partition.getExpenseCents();
+            if (partition.getStore() == store) {
+                for (int id = 0; id < periodCategories.length; id++) {
+                    periodCategories[id] += partition.getCategoryCents(id);
+                }
+            } else {
+                for (int id = 0; id < partition.getCategorySlots(); id++) {
+                    if (partition.getCategoryCents(id) != 0) {
+                        sealedCategories.merge(partition.getStore().getCategoryName(id), partition.getCategoryCents(id),
+                                               Long::sum);
+                    }
+                }
             }
         }
 
-        System.out.println("----------------------------------------------");
-        System.out.printf("Monthly Income  : $%.2f%n", monthIncome);
-        System.out.printf("Monthly Expenses: $%.2f%n", monthExpenses);
-        System.out.printf("Monthly Net     : $%.2f%n", (monthIncome - monthExpenses));
-        System.out.println("----------------------------------------------");
-        System.out.println("Monthly totals by category:");
-
-        if (monthCategoryTotals.isEmpty()) {
-            System.out.println("No transactions found for this month.");
-        } else {
-            for (String category : monthCategoryTotals.keySet()) {
-                double value = monthCategoryTotals.get(category);
-                System.out.printf("- %-12s : $%.2f%n", category, value);
+        renderer.flush();
+        out.println("----------------------------------------------");
+        out.printf("Income          : $%.2f%n", periodIncome / 100.0);
+        out.printf("Expenses        : $%.2f%n", periodExpenses / 100.0);
+        out.printf("Net             : $%.2f%n", (periodIncome - periodExpenses) / 100.0);
+        out.println("----------------------------------------------");
+        out.println("Totals by category:");
+
+        boolean anyCategory = false;
+        for (int id = 0; id < periodCategories.length; id++) {
+            Long sealed = sealedCategories.remove(store.getCategoryName(id));
+            long cents = periodCategories[id] + (sealed == null ? 0 : sealed);
+            if (cents != 0) {
+                anyCategory = true;
+                out.printf("- %-12s : $%.2f%n", store.getCategoryName(id), cents / 100.0);
             }
         }
+        for (Map.Entry<String, Long> category : sealedCategories.entrySet()) {
+            anyCategory = true;
+            out.printf("- %-12s : $%.2f%n", category.getKey(), category.getValue() / 100.0);
+        }
+        if (!anyCategory) {
+            out.println("No transactions found for this period.");
+        }
 
-        System.out.println("==============================================");
+        out.println("==============================================");
+        timer.stop(started, rowsShown);
     }
 
-    // This prints out any month that actually has values in the arrays
+    // Income between two dates (both included). Pass null as the category to include every category
+    public double getIncomeBetween(int fromDay, int toDay, String category) {
+        return rollup.incomeBetween(fromDay, toDay, category) / 100.0;
+    }
+
+    // Expenses between two dates (both included), as a positive number
+    public double getExpensesBetween(int fromDay, int toDay, String category) {
+        return rollup.expensesBetween(fromDay, toDay, category) / 100.0;
+    }
+
+    public double getNetBetween(int fromDay, int toDay, String category) {
+        return getIncomeBetween(fromDay, toDay, category) - getExpensesBetween(fromDay, toDay, category);
+    }
+
+    // Prints income, expenses and net for any date range, optionally just one category
+    public void showRangeReport(int fromDay, int toDay, String category) {
+        ReportCache.Scope scope = ReportCache.Scope.months(DateKey.yearMonthOf(fromDay), DateKey.yearMonthOf(toDay));
+        if (category != null) {
+            scope = scope.onlyCategory(category);
+        }
+        printCached("range:" + fromDay + ":" + toDay + ":" + category, scope, out -> {
+            long started = Metrics.start();
+            double income = getIncomeBetween(fromDay, toDay, category);
+            double expenses = getExpensesBetween(fromDay, toDay, category);
+            RANGE_TIMER.stop(started);
+
+            out.println();
+            out.println("=============== RANGE TOTALS ===============");
+            out.println("From " + DateKey.format(fromDay) + " to " + DateKey.format(toDay)
+                        + (category == null ? "" : " (category: " + category + ")"));
+            out.println("--------------------------------------------");
+            out.printf("Income   : $%.2f%n", income);
+            out.printf("Expenses : $%.2f%n", expenses);
+            out.printf("Net      : $%.2f%n", (income - expenses));
+            out.println("============================================");
+        });
+    }
+
+    // This prints out every month (in every year) that actually has values in the rollup
     public void showAllMonthlyTotalsFromArrays() {
-        System.out.println();
-        System.out.println("=============== MONTHLY TOTALS ===============");
-        boolean anyData = false;
-
-        System.out.println("Month |   Income   |  Expenses  |   Net   ");
-        System.out.println("------|------------|-----------|----------");
-
-        for (int i = 0; i < 12; i++) {
-            double income = monthlyIncome[i];
-            double expenses = monthlyExpenses[i];
-
-            if (income != 0.0 || expenses != 0.0) {
-                anyData = true;
-                int monthNumber = i + 1;
-                double net = income - expenses;
-                System.out.printf("%5d | %10.2f | %9.2f | %8.2f%n",
-                                  monthNumber, income, expenses, net);
+        printCached("monthly-totals", ReportCache.Scope.everything(), out -> {
+            out.println();
+            out.println("=============== MONTHLY TOTALS ===============");
+            boolean anyData = false;
+
+            out.println("  Month |   Income   |  Expenses  |   Net   ");
+            out.println("--------|------------|-----------|----------");
+
+            if (!rollup.isEmpty()) {
+                int firstMonth = DateKey.yearMonthOf(rollup.getMinDay());
+                int lastMonth = DateKey.yearMonthOf(rollup.getMaxDay());
+
+                for (int yearMonth = firstMonth; yearMonth <= lastMonth; yearMonth++) {
+                    int year = yearMonth / 12;
+                    int monthNumber = yearMonth % 12 + 1;
+                    int fromDay = DateKey.toEpochDay(year, monthNumber, 1);
+                    int toDay = DateKey.toEpochDay(year, monthNumber, DateKey.daysInMonth(year, monthNumber));
+
+                    double income = getIncomeBetween(fromDay, toDay, null);
+                    double expenses = getExpensesBetween(fromDay, toDay, null);
+
+                    if (income != 0.0 || expenses != 0.0) {
+                        anyData = true;
+                        double net = income - expenses;
+                        out.printf("%2d/%d | %10.2f | %9.2f | %8.2f%n",
+                                   monthNumber, year, income, expenses, net);
+                    }
+                }
             }
-        }
 
-        if (!anyData) {
-            System.out.println("No monthly data recorded yet.");
-        }
+            if (!anyData) {
+                out.println("No monthly data recorded yet.");
+            }
 
-        System.out.println("============================================");
+            out.println("============================================");
+        });
     }
 
-    // Reads a month from a date like "11/03/2025" or "1/03/2025"
-    private int extractMonthFromDate(String date) {
-        if (date == null || date.isEmpty()) {
-            return -1;
+    // Prints a report from the cache if it's there. If not, the report is printed as usual and a copy
+    // of what it printed gets cached (under the months it read). A listing too big for the cache
+    // stops being copied part way, so it still streams out without sitting in memory
+    private void printCached(String key, ReportCache.Scope scope, Consumer<PrintStream> report) {
+        String text = (String) reports.get(key);
+        if (text != null) {
+            System.out.print(text);
+            return;
+        }
+        Capture capture = new Capture(System.out, reports.getMaxEntryBytes() / 2);
+        PrintStream out = new PrintStream(capture, false, StandardCharsets.UTF_8);
+        report.accept(out);
+        out.flush();
+        if (capture.copy != null) {
+            text = capture.copy.toString(StandardCharsets.UTF_8);
+            reports.put(key, text, 2L * text.length() + 64, scope);
+        }
+    }
+
+    // Passes everything through to the console and keeps a copy until it gets past the limit
+    private static final class Capture extends OutputStream {
+        private final PrintStream target;
+        private final long limit;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        Capture(PrintStream target, long limit) {
+            this.target = target;
+            this.limit = limit;
         }
 
-        int slashIndex = date.indexOf('/');
-        if (slashIndex <= 0) {
-            return -1;
+        @Override
+        public void write(int b) {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) {
+            target.write(bytes, offset, length);
+            if (copy != null) {
+                if (copy.size() + (long) length > limit) {
+                    copy = null;
+                } else {
+                    copy.write(bytes, offset, length);
+                }
+            }
         }
 
-        String monthPart = date.substring(0, slashIndex);
-        try {
-            return Integer.parseInt(monthPart);
-        } catch (NumberFormatException e) {
-            return -1;
+        @Override
+        public void flush() {
+            target.flush();
         }
     }
 }
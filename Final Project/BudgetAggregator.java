@@ -0,0 +1,159 @@
+/*
+    BudgetAggregator class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+// Adds up the whole ledger in one pass: income, expenses, each category and each month.
+// It splits the rows in half over and over (divide and conquer), so it can run on a ForkJoinPool
+// or just on the current thread.
+public class BudgetAggregator {
+
+    // Below this many rows a chunk is just added up in a plain loop
+    public static final int DEFAULT_CHUNK_SIZE = 16_384;
+
+    private final int chunkSize;
+
+    public BudgetAggregator() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    public BudgetAggregator(int chunkSize) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1.");
+        }
+        this.chunkSize = chunkSize;
+    }
+
+    // Runs everything on the calling thread
+    public Result aggregate(TransactionStore store) {
+        return aggregate(store, null);
+    }
+
+    // Splits the ledger into chunks and runs them on the pool (or sequentially if pool is null)
+    public Result aggregate(TransactionStore store, ForkJoinPool pool) {
+        int size = store.size();
+        int categories = store.getCategoryCount();
+
+        if (pool == null || size <= chunkSize) {
+            Result result = new Result(categories);
+            sumRange(store, 0, size, result);
+            return result;
+        }
+        return pool.invoke(new ChunkTask(store, 0, size, categories));
+    }
+
+    // The actual work for one chunk, only reads the primitive columns
+    private static void sumRange(TransactionStore store, int from, int to, Result result) {
+        for (int i = from; i < to; i++) {
+            int handle = store.handleAt(i);
+            long cents = store.getAmountCents(handle);
+            long magnitude = Math.abs(cents);
+            int month = DateKey.monthOf(store.getEpochDay(handle));
+
+            if (cents > 0) {
+                result.incomeCents += cents;
+                result.monthlyIncomeCents[month - 1] += cents;
+            } else {
+                result.expenseCents += magnitude;
+                result.monthlyExpenseCents[month - 1] += magnitude;
+            }
+            result.categoryCents[store.getCategoryId(handle)] += magnitude;
+            result.rowCount++;
+        }
+    }
+
+    // One piece of the ledger; splits itself in half until the pieces are small enough
+    private class ChunkTask extends RecursiveTask<Result> {
+        private static final long serialVersionUID = 1L;
+
+        private final TransactionStore store;
+        private final int from;
+        private final int to;
+        private final int categories;
+
+        ChunkTask(TransactionStore store, int from, int to, int categories) {
+            this.store = store;
+            this.from = from;
+            this.to = to;
+            this.categories = categories;
+        }
+
+        @Override
+        protected Result compute() {
+            if (to - from <= chunkSize) {
+                Result result = new Result(categories);
+                sumRange(store, from, to, result);
+                return result;
+            }
+
+            int middle = (from + to) >>> 1;
+            ChunkTask left = new ChunkTask(store, from, middle, categories);
+            ChunkTask right = new ChunkTask(store, middle, to, categories);
+            left.fork();
+            Result rightResult = right.compute();
+            Result leftResult = left.join();
+            leftResult.merge(rightResult);
+            return leftResult;
+        }
+    }
+
+    // Everything the aggregator figured out, all in cents
+    public static class Result {
+        private long incomeCents;
+        private long expenseCents;
+        private long rowCount;
+        private final long[] categoryCents;      // indexed by the store's category id
+        private final long[] monthlyIncomeCents;  // index 0 = Jan, 11 = Dec
+        private final long[] monthlyExpenseCents;
+
+        Result(int categories) {
+            categoryCents = new long[categories];
+            monthlyIncomeCents = new long[12];
+            monthlyExpenseCents = new long[12];
+        }
+
+        void merge(Result other) {
+            incomeCents += other.incomeCents;
+            expenseCents += other.expenseCents;
+            rowCount += other.rowCount;
+            for (int i = 0; i < categoryCents.length; i++) {
+                categoryCents[i] += other.categoryCents[i];
+            }
+            for (int i = 0; i < 12; i++) {
+                monthlyIncomeCents[i] += other.monthlyIncomeCents[i];
+                monthlyExpenseCents[i] += other.monthlyExpenseCents[i];
+            }
+        }
+
+        public double getTotalIncome() {
+            return incomeCents / 100.0;
+        }
+
+        public double getTotalExpenses() {
+            return expenseCents / 100.0;
+        }
+
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        public double getCategoryTotal(int categoryId) {
+            return categoryCents[categoryId] / 100.0;
+        }
+
+        public int getCategoryCount() {
+            return categoryCents.length;
+        }
+
+        public double getMonthlyIncome(int monthNumber) {
+            return monthlyIncomeCents[monthNumber - 1] / 100.0;
+        }
+
+        public double getMonthlyExpenses(int monthNumber) {
+            return monthlyExpenseCents[monthNumber - 1] / 100.0;
+        }
+    }
+}
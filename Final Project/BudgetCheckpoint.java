@@ -0,0 +1,69 @@
+/*
+    BudgetCheckpoint class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+// Saves the Budget's totals next to the snapshot so loading doesn't have to add up every row again.
+//
+// Layout (all numbers big-endian):
+//   int magic "BGTC", int version
+//   long journal sequence + int row count of the snapshot these totals belong to
+//   double total income, double total expenses
+//   category totals: int count, then each name (int length + UTF-8) and its double
+//   the rollup's day values for each month that has money (see RollupIndex.writeTo)
+//
+// The sequence + row count is the consistency marker: the checkpoint is only used if they match
+// the snapshot that was just loaded. Anything else (a crash between the two files, an older
+// checkpoint) and the budget just gets rebuilt from the ledger like before.
+public class BudgetCheckpoint {
+
+    public static final int MAGIC = 0x42475443; // "BGTC"
+    public static final int VERSION = 2; // 1 kept the rollup as per-day trees
+
+    private BudgetCheckpoint() {
+    }
+
+    // Same temp file + fsync + swap as the snapshot (DurableFile), so a crash never leaves half a checkpoint
+    public static void write(Budget budget, long sequence, int rowCount, Path path) throws IOException {
+        DurableFile.replace(path, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(rowCount);
+            budget.writeTo(out);
+        });
+    }
+
+    // Loads the totals into the budget if the checkpoint matches the snapshot (same sequence and
+    // row count). Gives back false and leaves the budget alone if it's missing or doesn't match
+    public static boolean read(Budget budget, Path path, long sequence, int rowCount) throws IOException {
+        if (!Files.exists(path)) {
+            return false;
+        }
+
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < 4 + 4 + 8 + 4 || size > Integer.MAX_VALUE) {
+                return false;
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+                return false;
+            }
+            if (buffer.getLong() != sequence || buffer.getInt() != rowCount) {
+                return false;
+            }
+
+            budget.readFrom(buffer);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/*
+    CategoryIndex class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.HashMap;
+import java.util.Locale;
+
+// Remembers which rows belong to each category, so filtering by category only
+// touches that category's rows instead of the whole ledger.
+// Names are stored lowercase so "Food" and "food" end up in the same list.
+public class CategoryIndex {
+
+    private HashMap<String, IntList> rowsByCategory;
+
+    public CategoryIndex() {
+        rowsByCategory = new HashMap<>();
+    }
+
+    // Handles only go up when rows are added, so each list stays sorted just by appending
+    public void add(String category, int handle) {
+        addTo(listFor(category), handle);
+    }
+
+    // The row list for a category, made on the spot if it's new. Lists are kept even when they
+    // go empty, so the ledger can hold on to them instead of lowercasing the name for every row
+    public IntList listFor(String category) {
+        String key = normalize(category);
+        IntList rows = rowsByCategory.get(key);
+        if (rows == null) {
+            rows = new IntList(8);
+            rowsByCategory.put(key, rows);
+        }
+        return rows;
+    }
+
+    // Adds a handle to a list that came from listFor, appending when it's the newest row
+    public static void addTo(IntList rows, int handle) {
+        if (rows.isEmpty() || rows.get(rows.size() - 1) < handle) {
+            rows.add(handle);
+            return;
+        }
+        int position = rows.binarySearch(handle);
+        if (position < 0) {
+            rows.insertAt(-position - 1, handle);
+        }
+    }
+
+    public void remove(String category, int handle) {
+        String key = normalize(category);
+        IntList rows = rowsByCategory.get(key);
+        if (rows == null) {
+            return;
+        }
+        int position = rows.binarySearch(handle);
+        if (position >= 0) {
+            rows.removeAt(position);
+        }
+    }
+
+    // The sorted handles for one category (empty list if there are none). Don't change it!
+    public IntList rowsFor(String category) {
+        IntList rows = rowsByCategory.get(normalize(category));
+        return rows == null ? new IntList(4) : rows;
+    }
+
+    public int countFor(String category) {
+        IntList rows = rowsByCategory.get(normalize(category));
+        return rows == null ? 0 : rows.size();
+    }
+
+    public void clear() {
+        rowsByCategory.clear();
+    }
+
+    public static String normalize(String category) {
+        return category == null ? "" : category.trim().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,108 @@
+/*
+    CategoryRanking class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Categories in order of how much was spent in them (expenses only), biggest first. The Budget
+// keeps it up to date on every add and remove, so "top 5 categories" is just the first 5 entries
+// instead of sorting every category total each time. A change only moves the one category it
+// touched (O(log c) for c categories).
+//
+// Same spending comes out in name order, so the order never depends on HashMap order.
+public class CategoryRanking {
+
+    // Category -> cents spent. A one-slot array so a change doesn't box a new Long every time
+    private final HashMap<String, long[]> spent;
+    private final TreeSet<String> order;
+
+    public CategoryRanking() {
+        spent = new HashMap<>();
+        order = new TreeSet<>(this::compare);
+    }
+
+    public void clear() {
+        spent.clear();
+        order.clear();
+    }
+
+    public int size() {
+        return order.size();
+    }
+
+    // Some spending went into a category (cents as a positive number)
+    public void add(String category, long cents) {
+        change(category, cents);
+    }
+
+    // Takes spending back out again (remove and undo)
+    public void remove(String category, long cents) {
+        change(category, -cents);
+    }
+
+    // Cents spent in one category, 0 if there's nothing
+    public long getSpentCents(String category) {
+        long[] total = spent.get(category);
+        return total == null ? 0 : total[0];
+    }
+
+    // The k categories with the most spending, biggest first
+    public List<String> top(int k) {
+        ArrayList<String> top = new ArrayList<>(Math.max(0, Math.min(k, order.size())));
+        for (String category : order) {
+            if (top.size() >= k) {
+                break;
+            }
+            top.add(category);
+        }
+        return top;
+    }
+
+    // Adds another ranking's spending into this one (merging budgets)
+    public void mergeFrom(CategoryRanking other) {
+        for (Map.Entry<String, long[]> entry : other.spent.entrySet()) {
+            change(entry.getKey(), entry.getValue()[0]);
+        }
+    }
+
+    public CategoryRanking copy() {
+        CategoryRanking copy = new CategoryRanking();
+        copy.mergeFrom(this);
+        return copy;
+    }
+
+    // The category has to come out of the TreeSet before its total changes, or the set can't find it
+    private void change(String category, long cents) {
+        if (cents == 0) {
+            return;
+        }
+        long[] total = spent.get(category);
+        if (total == null) {
+            if (cents < 0) {
+                return;
+            }
+            total = new long[1];
+            spent.put(category, total);
+        } else {
+            order.remove(category);
+        }
+
+        total[0] += cents;
+        if (total[0] > 0) {
+            order.add(category);
+        } else {
+            spent.remove(category);
+        }
+    }
+
+    // Most spent first, then by name
+    private int compare(String a, String b) {
+        int bySpending = Long.compare(spent.get(b)[0], spent.get(a)[0]);
+        return bySpending != 0 ? bySpending : a.compareTo(b);
+    }
+}
@@ -0,0 +1,1128 @@
+/*
+    ColdSegment class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// One closed year, sealed into its own file and out of the live ledger. The file never changes
+// once it's written (sealing the same year again writes a new file with the next generation).
+//
+// Only the header and the index stay in memory. The header has the category names and each
+// month's totals (rows, income, expenses, per category), which is all the year report, "monthly"
+// and the budget ever need. The index has what the questions that pick out rows need: every
+// row's day, each category's rows, each month's biggest expenses and the description words. So a
+// search, a page of one category or the biggest expenses work out which rows they want from the
+// index, and only the blocks those rows are in get read and inflated (see readBlock). All the
+// rows are only read back (paged in, see rows()) when a report or export lists the whole year,
+// and then they come back as a small read-only Ledger of their own.
+//
+// Layout (numbers big-endian):
+//   int header length, then the header:
+//     int magic "BGTY", int version, int year, int generation, int rowCount
+//     categories: int count, then each name (int length + UTF-8)
+//     12 months: int rows, long income cents, long expense cents, then int count and that many
+//       (int category id, long cents) pairs for the categories used that month
+//     int packed length, int compressed length (all the blocks), long CRC32 of the packed bytes
+//       (0 from version 3 on, where each block has its own in the index)
+//     int day totals length, long CRC32 of the day totals (not in version 1)
+//     int index length, long CRC32 of the index (version 3 and up)
+//   the day totals, as varints: int count, then for each day + category that has money (in date
+//     order) the (zigzag) gap from the day before, the category id, income cents and expense cents.
+//     The budget is rebuilt from these, so it never has to page the rows in
+//   the index (version 3 and up), as varints. Rows are numbered 0, 1, 2... in file order; a list of
+//   rows is its size and then each row as the gap from the one before (starting from -1), and a
+//   name or word is its UTF-8 length and bytes:
+//     the blocks: count, then each one's rows, packed length, compressed length and CRC32
+//     every row's day: the first one, then the gap from the one before (both zigzag)
+//     the categories: count, then each lowercase name and its rows
+//     12 months: how many expenses, how many of the biggest are listed (up to TOP_PER_MONTH), then
+//       each of those as (row, expense cents), biggest first
+//     the description words: count, then each word and the rows that have it
+//   the rows, BLOCK_ROWS at a time (a file before version 3 has them all in one block). Each block
+//   is packed column by column and then deflated on its own:
+//     dates: the first as a varint, then each one as the (zigzag) varint gap from the one before
+//     category ids as varints (the dictionary above)
+//     amounts in cents as zigzag varints
+//     description lengths as varints, then every description's UTF-8 bytes back to back
+//
+// Rows are in ledger order and mostly in date order too, so most date gaps are 0 or 1 and take a
+// byte; most amounts take 2-3 bytes instead of 8. Deflate then squeezes the repeats out of the text.
+public class ColdSegment {
+
+    public static final int MAGIC = 0x42475459; // "BGTY"
+    public static final int VERSION = 3; // 1 had no day totals, 2 had no index and one block of rows
+
+    // Rows per block. Reading one row means inflating its whole block, so not too many
+    public static final int BLOCK_ROWS = 1024;
+
+    // How many of each month's biggest expenses the index lists (asking for more reads the rows)
+    public static final int TOP_PER_MONTH = 100;
+
+    private static final Metrics.Timer SEAL_TIMER = Metrics.timer("cold_segment_write");
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("cold_segment_load");
+
+    private final Path path;
+    private final int year;
+    private final int generation;
+    private final int rowCount;
+    private final String[] categories;
+    private final long dayTotalsOffset;
+    private final int dayTotalsLength;  // -1 for a version 1 file
+    private final long dayTotalsChecksum;
+
+    // Each block's first row, where it is in the file, its lengths and the CRC32 of its packed bytes
+    private int[] blockFirstRows;
+    private long[] blockOffsets;
+    private int[] blockPackedLengths;
+    private int[] blockCompressedLengths;
+    private long[] blockChecksums;
+
+    // Read with the header from version 3 on. An older file builds it from its rows the first time
+    // it's needed (loadIndex), and keeps it from then on
+    private volatile Index index;
+
+    // The month totals, as partitions with no handles (see MonthPartition.totalsOnly). Their
+    // category ids point into this dictionary-only store, which has the same ids the paged-in
+    // ledger gets
+    private final TransactionStore dictionary;
+    private final ArrayList<MonthPartition> months;
+    private long incomeCents;
+    private long expenseCents;
+
+    private ColdSegment(Path path, int year, int generation, int rowCount, String[] categories,
+                        long dayTotalsOffset, int dayTotalsLength, long dayTotalsChecksum) {
+        this.path = path;
+        this.year = year;
+        this.generation = generation;
+        this.rowCount = rowCount;
+        this.categories = categories;
+        this.dayTotalsOffset = dayTotalsOffset;
+        this.dayTotalsLength = dayTotalsLength;
+        this.dayTotalsChecksum = dayTotalsChecksum;
+        dictionary = new TransactionStore(16);
+        for (String category : categories) {
+            dictionary.defineCategory(category);
+        }
+        months = new ArrayList<>(12);
+    }
+
+    // The file name for a year's segment. Each sealing of the same year gets a new generation, so
+    // the file the current snapshot points at is never the one being written
+    public static String fileName(int year, int generation) {
+        return "budget_" + year + "_" + generation + ".seg";
+    }
+
+    // True for names fileName makes (so leftovers can be found and cleaned up)
+    public static boolean isSegmentFile(String name) {
+        return name.matches("budget_-?\\d+_\\d+\\.seg");
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getYear() {
+        return year;
+    }
+
+    public int getGeneration() {
+        return generation;
+    }
+
+    public int size() {
+        return rowCount;
+    }
+
+    public long getIncomeCents() {
+        return incomeCents;
+    }
+
+    public long getExpenseCents() {
+        return expenseCents;
+    }
+
+    // The months that have rows, oldest first (totals only, no handles)
+    public List<MonthPartition> getMonthTotals() {
+        return months;
+    }
+
+    // What the header and the index keep in memory (the rows aren't counted, they're on disk)
+    public long estimatedHeapBytes() {
+        long total = 256 + 32L * blockFirstRows.length;
+        for (String category : categories) {
+            total += 48 + 2L * category.length();
+        }
+        for (MonthPartition month : months) {
+            total += 64 + 8L * month.getCategorySlots();
+        }
+        Index loaded = index;
+        if (loaded != null) {
+            total += loaded.estimatedHeapBytes();
+        }
+        return total;
+    }
+
+    // ---------- writing ----------
+
+    // Seals the rows of one year into a new file: first every row of the sources that falls in
+    // the year (each source in its ledger order), so an already sealed year can be put first and
+    // the live rows added after it. Written through DurableFile like the snapshot
+    public static ColdSegment write(Path path, int year, int generation, List<Ledger> sources) throws IOException {
+        long started = Metrics.start();
+        ArrayList<String> names = new ArrayList<>();
+        HashMap<String, Integer> ids = new HashMap<>();
+        long[][] monthCategories = new long[12][];
+        int[] monthRows = new int[12];
+        long[] monthIncome = new long[12];
+        long[] monthExpenses = new long[12];
+
+        BlockWriter blocks = new BlockWriter();
+        Index index = new Index(year);
+        // (day << 32 | category id) -> {income, expenses}; sorted, so it comes out in date order
+        TreeMap<Long, long[]> dayTotals = new TreeMap<>();
+        int rows = 0;
+
+        for (Ledger source : sources) {
+            TransactionStore store = source.getStore();
+            for (int handle : yearRows(source, year)) {
+                String category = store.getCategoryName(store.getCategoryId(handle));
+                Integer id = ids.get(category);
+                if (id == null) {
+                    id = names.size();
+                    names.add(category);
+                    ids.put(category, id);
+                }
+                int day = store.getEpochDay(handle);
+                long cents = store.getAmountCents(handle);
+                blocks.add(day, id, cents, store.getDescriptionBytes(handle));
+                index.add(day, category, cents, store.getDescription(handle));
+
+                int month = DateKey.monthOf(day) - 1;
+                monthRows[month]++;
+                if (cents > 0) {
+                    monthIncome[month] += cents;
+                } else {
+                    monthExpenses[month] += -cents;
+                }
+                if (monthCategories[month] == null) {
+                    monthCategories[month] = new long[8];
+                }
+                if (id >= monthCategories[month].length) {
+                    monthCategories[month] = Arrays.copyOf(monthCategories[month],
+                                                           Math.max(id + 1, monthCategories[month].length * 2));
+                }
+                monthCategories[month][id] += Math.abs(cents);
+                long[] totals = dayTotals.computeIfAbsent(((long) day << 32) | id, key -> new long[2]);
+                if (cents > 0) {
+                    totals[0] += cents;
+                } else {
+                    totals[1] += -cents;
+                }
+                rows++;
+            }
+        }
+        blocks.flush();
+        index.finish();
+
+        Packer days = new Packer();
+        days.varint(dayTotals.size());
+        long previousDay = 0;
+        for (Map.Entry<Long, long[]> entry : dayTotals.entrySet()) {
+            long day = entry.getKey() >> 32;
+            days.varint(zigzag(day - previousDay));
+            days.varint(entry.getKey() & 0xFFFFFFFFL);
+            days.varint(entry.getValue()[0]);
+            days.varint(entry.getValue()[1]);
+            previousDay = day;
+        }
+        ByteArrayOutputStream dayBytes = new ByteArrayOutputStream(days.length);
+        days.writeTo(dayBytes);
+        CRC32 dayCrc = new CRC32();
+        dayCrc.update(dayBytes.toByteArray());
+
+        Packer indexPacker = new Packer();
+        blocks.writeTableTo(indexPacker);
+        index.writeTo(indexPacker);
+        ByteArrayOutputStream indexBytes = new ByteArrayOutputStream(indexPacker.length);
+        indexPacker.writeTo(indexBytes);
+        CRC32 indexCrc = new CRC32();
+        indexCrc.update(indexBytes.toByteArray());
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(year);
+        header.writeInt(generation);
+        header.writeInt(rows);
+        header.writeInt(names.size());
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            header.writeInt(bytes.length);
+            header.write(bytes);
+        }
+        for (int month = 0; month < 12; month++) {
+            header.writeInt(monthRows[month]);
+            header.writeLong(monthIncome[month]);
+            header.writeLong(monthExpenses[month]);
+            long[] used = monthCategories[month];
+            int count = 0;
+            for (int id = 0; used != null && id < used.length; id++) {
+                if (used[id] != 0) {
+                    count++;
+                }
+            }
+            header.writeInt(count);
+            for (int id = 0; used != null && id < used.length; id++) {
+                if (used[id] != 0) {
+                    header.writeInt(id);
+                    header.writeLong(used[id]);
+                }
+            }
+        }
+        header.writeInt(blocks.packedLength);
+        header.writeInt(blocks.body.size());
+        header.writeLong(0);
+        header.writeInt(dayBytes.size());
+        header.writeLong(dayCrc.getValue());
+        header.writeInt(indexBytes.size());
+        header.writeLong(indexCrc.getValue());
+        header.flush();
+
+        DurableFile.replace(path, out -> {
+            out.writeInt(headerBytes.size());
+            headerBytes.writeTo(out);
+            dayBytes.writeTo(out);
+            indexBytes.writeTo(out);
+            blocks.body.writeTo(out);
+        });
+        if (Metrics.ENABLED) {
+            Metrics.bytesWritten(Files.size(path));
+        }
+        SEAL_TIMER.stop(started, rows);
+        return open(path);
+    }
+
+    // Packs the rows a block at a time (see the layout above) and keeps the deflated blocks back to
+    // back in body, along with what the index needs to find each one again
+    private static final class BlockWriter {
+        private final Packer dates = new Packer();
+        private final Packer categoryColumn = new Packer();
+        private final Packer amounts = new Packer();
+        private final Packer lengths = new Packer();
+        private final ByteArrayOutputStream text = new ByteArrayOutputStream();
+        private final ByteArrayOutputStream body = new ByteArrayOutputStream();
+        private final IntList blockRows = new IntList();
+        private final IntList packedLengths = new IntList();
+        private final IntList compressedLengths = new IntList();
+        private long[] checksums = new long[8];
+        private int count;
+        private int lastDay;
+        private int packedLength;
+
+        void add(int day, int categoryId, long cents, byte[] description) throws IOException {
+            if (count == 0) {
+                dates.varint(zigzag(day));
+            } else {
+                dates.varint(zigzag((long) day - lastDay));
+            }
+            lastDay = day;
+            categoryColumn.varint(categoryId);
+            amounts.varint(zigzag(cents));
+            lengths.varint(description.length);
+            text.write(description, 0, description.length);
+            count++;
+            if (count == BLOCK_ROWS) {
+                flush();
+            }
+        }
+
+        // Closes the block that's being filled (nothing happens if it's empty)
+        void flush() throws IOException {
+            if (count == 0) {
+                return;
+            }
+            ByteArrayOutputStream packed = new ByteArrayOutputStream(dates.length + categoryColumn.length
+                                                                     + amounts.length + lengths.length + text.size());
+            dates.writeTo(packed);
+            categoryColumn.writeTo(packed);
+            amounts.writeTo(packed);
+            lengths.writeTo(packed);
+            text.writeTo(packed);
+            byte[] raw = packed.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(raw);
+            byte[] compressed = deflate(raw);
+            body.write(compressed, 0, compressed.length);
+
+            if (blockRows.size() == checksums.length) {
+                checksums = Arrays.copyOf(checksums, checksums.length * 2);
+            }
+            checksums[blockRows.size()] = crc.getValue();
+            blockRows.add(count);
+            packedLengths.add(raw.length);
+            compressedLengths.add(compressed.length);
+            packedLength += raw.length;
+
+            dates.clear();
+            categoryColumn.clear();
+            amounts.clear();
+            lengths.clear();
+            text.reset();
+            count = 0;
+        }
+
+        void writeTableTo(Packer out) {
+            out.varint(blockRows.size());
+            for (int i = 0; i < blockRows.size(); i++) {
+                out.varint(blockRows.get(i));
+                out.varint(packedLengths.get(i));
+                out.varint(compressedLengths.get(i));
+                out.varint(checksums[i]);
+            }
+        }
+    }
+
+    // Handles of one year's rows in a ledger, in ledger order (handles only go up, so sorting
+    // them puts them back in that order)
+    private static int[] yearRows(Ledger source, int year) {
+        int count = 0;
+        for (MonthPartition month : source.getLivePartitions(year * 12, year * 12 + 11)) {
+            count += month.size();
+        }
+        int[] handles = new int[count];
+        int filled = 0;
+        for (MonthPartition month : source.getLivePartitions(year * 12, year * 12 + 11)) {
+            for (int i = 0; i < month.size(); i++) {
+                handles[filled++] = month.handleAt(i);
+            }
+        }
+        Arrays.sort(handles);
+        return handles;
+    }
+
+    // ---------- reading ----------
+
+    // Reads the header (names and month totals) and the index; the rows stay in the file
+    public static ColdSegment open(Path path) throws IOException {
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(file)) {
+            int headerLength = in.readInt();
+            byte[] headerBytes = new byte[headerLength];
+            in.readFully(headerBytes);
+            ByteBuffer header = ByteBuffer.wrap(headerBytes);
+
+            if (header.getInt() != MAGIC) {
+                throw new IOException("Not a sealed year file: " + path);
+            }
+            int version = header.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported sealed year version " + version + ": " + path);
+            }
+            int year = header.getInt();
+            int generation = header.getInt();
+            int rows = header.getInt();
+            String[] categories = new String[header.getInt()];
+            for (int id = 0; id < categories.length; id++) {
+                byte[] name = new byte[header.getInt()];
+                header.get(name);
+                categories[id] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            int[] monthRows = new int[12];
+            long[] monthIncome = new long[12];
+            long[] monthExpenses = new long[12];
+            long[][] monthCategories = new long[12][];
+            for (int month = 0; month < 12; month++) {
+                monthRows[month] = header.getInt();
+                monthIncome[month] = header.getLong();
+                monthExpenses[month] = header.getLong();
+                monthCategories[month] = new long[categories.length];
+                int count = header.getInt();
+                for (int i = 0; i < count; i++) {
+                    int id = header.getInt();
+                    monthCategories[month][id] = header.getLong();
+                }
+            }
+
+            int packedLength = header.getInt();
+            int compressedLength = header.getInt();
+            long checksum = header.getLong();
+            int dayTotalsLength = -1;
+            long dayTotalsChecksum = 0;
+            if (version >= 2) {
+                dayTotalsLength = header.getInt();
+                dayTotalsChecksum = header.getLong();
+            }
+            int indexLength = 0;
+            long indexChecksum = 0;
+            if (version >= 3) {
+                indexLength = header.getInt();
+                indexChecksum = header.getLong();
+            }
+            long dayTotalsOffset = 4L + headerLength;
+            long indexOffset = dayTotalsOffset + Math.max(dayTotalsLength, 0);
+            long bodyOffset = indexOffset + indexLength;
+            ColdSegment segment = new ColdSegment(path, year, generation, rows, categories, dayTotalsOffset,
+                                                  dayTotalsLength, dayTotalsChecksum);
+            for (int month = 0; month < 12; month++) {
+                if (monthRows[month] > 0) {
+                    segment.months.add(MonthPartition.totalsOnly(year * 12 + month, segment.dictionary,
+                                                                  monthRows[month], monthIncome[month],
+                                                                  monthExpenses[month], monthCategories[month]));
+                }
+                segment.incomeCents += monthIncome[month];
+                segment.expenseCents += monthExpenses[month];
+            }
+
+            if (version >= 3) {
+                segment.readIndex(indexOffset, indexLength, indexChecksum, bodyOffset);
+            } else {
+                // Every row in one block, and the index gets built the first time it's needed
+                segment.blockFirstRows = new int[] {0};
+                segment.blockOffsets = new long[] {bodyOffset};
+                segment.blockPackedLengths = new int[] {packedLength};
+                segment.blockCompressedLengths = new int[] {compressedLength};
+                segment.blockChecksums = new long[] {checksum};
+            }
+            return segment;
+        }
+    }
+
+    // The block table and the rest of the index, checked against their CRC32
+    private void readIndex(long offset, int length, long checksum, long bodyOffset) throws IOException {
+        byte[] bytes = readAt(offset, length);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != checksum) {
+            throw new IOException("Sealed year file is damaged (index checksum doesn't match): " + path);
+        }
+        int[] at = {0};
+        int blocks = (int) readVarint(bytes, at);
+        blockFirstRows = new int[blocks];
+        blockOffsets = new long[blocks];
+        blockPackedLengths = new int[blocks];
+        blockCompressedLengths = new int[blocks];
+        blockChecksums = new long[blocks];
+        int row = 0;
+        long position = bodyOffset;
+        for (int block = 0; block < blocks; block++) {
+            blockFirstRows[block] = row;
+            blockOffsets[block] = position;
+            row += (int) readVarint(bytes, at);
+            blockPackedLengths[block] = (int) readVarint(bytes, at);
+            blockCompressedLengths[block] = (int) readVarint(bytes, at);
+            blockChecksums[block] = readVarint(bytes, at);
+            position += blockCompressedLengths[block];
+        }
+        if (row != rowCount) {
+            throw new IOException("Sealed year file is damaged (its blocks have " + row + " rows, not "
+                                  + rowCount + "): " + path);
+        }
+        index = Index.read(bytes, at, year, rowCount);
+        if (Metrics.ENABLED) {
+            Metrics.bytesRead(length);
+        }
+    }
+
+    // Pages the rows in: reads and inflates every block and decodes them into a new read-only
+    // Ledger (its own store, partitions and indexes, categories numbered like the dictionary, and
+    // handles that are the row numbers the index uses)
+    public Ledger rows() throws IOException {
+        long started = Metrics.start();
+        int blocks = blockFirstRows.length;
+        long bodyLength = 0;
+        for (int block = 0; block < blocks; block++) {
+            bodyLength += blockCompressedLengths[block];
+        }
+        byte[] body = blocks == 0 ? new byte[0] : readAt(blockOffsets[0], (int) bodyLength);
+
+        int[] days = new int[rowCount];
+        int[] categoryIds = new int[rowCount];
+        long[] cents = new long[rowCount];
+        int[] offsets = new int[rowCount + 1];
+        ByteArrayOutputStream heap = new ByteArrayOutputStream();
+        for (int block = 0; block < blocks; block++) {
+            RowBlock rows = decode(block, body, (int) (blockOffsets[block] - blockOffsets[0]));
+            int first = blockFirstRows[block];
+            int count = rows.days.length;
+            System.arraycopy(rows.days, 0, days, first, count);
+            System.arraycopy(rows.categoryIds, 0, categoryIds, first, count);
+            System.arraycopy(rows.cents, 0, cents, first, count);
+            for (int i = 0; i < count; i++) {
+                offsets[first + i + 1] = offsets[first] + rows.offsets[i + 1];
+            }
+            heap.write(rows.text, 0, rows.offsets[count]);
+        }
+
+        Ledger ledger = new Ledger();
+        ledger.loadColumns(categories, cents, days, categoryIds, heap.toByteArray(), offsets);
+        if (Metrics.ENABLED) {
+            Metrics.bytesRead(bodyLength);
+        }
+        LOAD_TIMER.stop(started, rowCount);
+        return ledger;
+    }
+
+    // One block's rows, decoded (see readBlock)
+    public static final class RowBlock {
+        private final String[] categories;
+        private final int firstRow;
+        private final int[] days;
+        private final int[] categoryIds;
+        private final long[] cents;
+        private final int[] offsets;   // row i's description is text[offsets[i] .. offsets[i + 1])
+        private final byte[] text;
+
+        private RowBlock(String[] categories, int firstRow, int[] days, int[] categoryIds, long[] cents,
+                         int[] offsets, byte[] text) {
+            this.categories = categories;
+            this.firstRow = firstRow;
+            this.days = days;
+            this.categoryIds = categoryIds;
+            this.cents = cents;
+            this.offsets = offsets;
+            this.text = text;
+        }
+
+        // A row of the year (numbered like the index), which has to be in this block
+        public Transaction getTransaction(int row) {
+            int i = row - firstRow;
+            return new Transaction(categories[categoryIds[i]], cents[i] / 100.0,
+                                   new String(text, offsets[i], offsets[i + 1] - offsets[i], StandardCharsets.UTF_8),
+                                   days[i]);
+        }
+
+        public long estimatedHeapBytes() {
+            return 64 + 20L * days.length + text.length;
+        }
+    }
+
+    public int getBlockCount() {
+        return blockFirstRows.length;
+    }
+
+    // Which block a row (numbered like the index) is in
+    public int blockOf(int row) {
+        int block = Arrays.binarySearch(blockFirstRows, row);
+        return block >= 0 ? block : -block - 2;
+    }
+
+    // Reads and inflates just one block of rows
+    public RowBlock readBlock(int block) throws IOException {
+        byte[] compressed = readAt(blockOffsets[block], blockCompressedLengths[block]);
+        if (Metrics.ENABLED) {
+            Metrics.bytesRead(compressed.length);
+        }
+        return decode(block, compressed, 0);
+    }
+
+    // Inflates one block out of bytes read from the file (it starts at from) and decodes its columns
+    private RowBlock decode(int block, byte[] compressed, int from) throws IOException {
+        int packedLength = blockPackedLengths[block];
+        byte[] raw = inflate(compressed, from, blockCompressedLengths[block], packedLength);
+        CRC32 crc = new CRC32();
+        crc.update(raw);
+        if (crc.getValue() != blockChecksums[block]) {
+            throw new IOException("Sealed year file is damaged (checksum doesn't match): " + path);
+        }
+
+        int first = blockFirstRows[block];
+        int count = (block + 1 < blockFirstRows.length ? blockFirstRows[block + 1] : rowCount) - first;
+        int[] at = {0};
+        int[] days = new int[count];
+        int day = 0;
+        for (int i = 0; i < count; i++) {
+            day = (int) (i == 0 ? unzigzag(readVarint(raw, at)) : day + unzigzag(readVarint(raw, at)));
+            days[i] = day;
+        }
+        int[] categoryIds = new int[count];
+        for (int i = 0; i < count; i++) {
+            categoryIds[i] = (int) readVarint(raw, at);
+        }
+        long[] cents = new long[count];
+        for (int i = 0; i < count; i++) {
+            cents[i] = unzigzag(readVarint(raw, at));
+        }
+        int[] offsets = new int[count + 1];
+        for (int i = 0; i < count; i++) {
+            offsets[i + 1] = offsets[i] + (int) readVarint(raw, at);
+        }
+        byte[] text = Arrays.copyOfRange(raw, at[0], at[0] + offsets[count]);
+        return new RowBlock(categories, first, days, categoryIds, cents, offsets, text);
+    }
+
+    // ---------- the index ----------
+
+    // Makes sure the index is there. Only a file from before version 3 has any work to do: it reads
+    // its rows once (this can throw) and keeps the index, so it never has to again
+    public void loadIndex() throws IOException {
+        if (index != null) {
+            return;
+        }
+        synchronized (this) {
+            if (index != null) {
+                return;
+            }
+            Index built = new Index(year);
+            for (int block = 0; block < blockFirstRows.length; block++) {
+                RowBlock rows = readBlock(block);
+                for (int i = 0; i < rows.days.length; i++) {
+                    built.add(rows.days[i], categories[rows.categoryIds[i]], rows.cents[i],
+                              new String(rows.text, rows.offsets[i], rows.offsets[i + 1] - rows.offsets[i],
+                                         StandardCharsets.UTF_8));
+                }
+            }
+            built.finish();
+            index = built;
+        }
+    }
+
+    private Index index() {
+        Index loaded = index;
+        if (loaded == null) {
+            throw new IllegalStateException("The index of " + path + " isn't loaded (see loadIndex)");
+        }
+        return loaded;
+    }
+
+    // A row's date (rows numbered like the index)
+    public int getEpochDay(int row) {
+        Index loaded = index();
+        return loaded.firstDay + loaded.days[row];
+    }
+
+    // The rows of one category (any capitalization), or null if the year has none
+    public PostingList getCategoryRows(String category) {
+        return index().categoryRows.get(CategoryIndex.normalize(category));
+    }
+
+    // How many rows of one category are between two dates
+    public int countByCategory(String category, int fromDay, int toDay) {
+        PostingList rows = getCategoryRows(category);
+        if (rows == null) {
+            return 0;
+        }
+        if (fromDay == Integer.MIN_VALUE && toDay == Integer.MAX_VALUE) {
+            return rows.size();
+        }
+        int count = 0;
+        PostingList.Cursor cursor = rows.cursor();
+        while (cursor.next()) {
+            int day = getEpochDay(cursor.getHandle());
+            if (day >= fromDay && day <= toDay) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The rows whose description matches a word search (see DescriptionIndex), narrowed down by
+    // category and dates the same way the live ledger does it, in order
+    public IntList search(String query, String category, int fromDay, int toDay) {
+        int[] matches = index().search.matching(query);
+        PostingList.Cursor inCategory = null;
+        if (category != null) {
+            PostingList rows = getCategoryRows(category);
+            if (rows == null) {
+                return new IntList(4);
+            }
+            inCategory = rows.cursor();
+        }
+        IntList found = new IntList(Math.min(matches.length, 1024));
+        for (int row : matches) {
+            if (inCategory != null) {
+                if (!inCategory.advanceTo(row)) {
+                    break;
+                }
+                if (inCategory.getHandle() != row) {
+                    continue;
+                }
+            }
+            int day = getEpochDay(row);
+            if (day >= fromDay && day <= toDay) {
+                found.add(row);
+            }
+        }
+        return found;
+    }
+
+    // Adds the k biggest expenses from one month to another as {cents, year, row}, biggest first
+    // (same amount: the earlier row first). Gives back false, and adds nothing, when k is more
+    // than the index lists for a month that has more expenses than that; then the rows are needed
+    public boolean addLargestExpenses(int fromYearMonth, int toYearMonth, int k, List<long[]> into) {
+        Index loaded = index();
+        ArrayList<long[]> candidates = new ArrayList<>();
+        for (int month = 0; month < 12; month++) {
+            int yearMonth = year * 12 + month;
+            if (yearMonth < fromYearMonth || yearMonth > toYearMonth) {
+                continue;
+            }
+            int[] top = loaded.monthTop[month];
+            if (k > top.length && top.length < loaded.monthExpenses[month]) {
+                return false;
+            }
+            for (int i = 0; i < Math.min(k, top.length); i++) {
+                candidates.add(new long[] {-loaded.monthTopCents[month][i], year, top[i]});
+            }
+        }
+        candidates.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(a[2], b[2]));
+        into.addAll(candidates.subList(0, Math.min(Math.max(k, 0), candidates.size())));
+        return true;
+    }
+
+    // What stays in memory next to the header (see the layout at the top). It's built a row at a
+    // time by add() and finish(), when a year is sealed or an older file needs one, or read back
+    private static final class Index {
+        private final int firstDay;   // January 1st of the year; days[] counts from there
+        private char[] days;
+        private final HashMap<String, PostingList> categoryRows;   // by CategoryIndex.normalize
+        private final int[] monthExpenses;                          // how many expense rows each month has
+        private final int[][] monthTop;                             // its biggest ones, biggest first
+        private final long[][] monthTopCents;                       // and how big (positive cents)
+        private final HashMap<String, PostingList> words;
+        private DescriptionIndex search;
+
+        // Only while it's being built
+        private IntList addedDays;
+        private long[] addedCents;
+        private IntList[] monthExpenseRows;
+
+        Index(int year) {
+            firstDay = DateKey.toEpochDay(year, 1, 1);
+            categoryRows = new HashMap<>();
+            monthExpenses = new int[12];
+            monthTop = new int[12][];
+            monthTopCents = new long[12][];
+            words = new HashMap<>();
+            addedDays = new IntList();
+            addedCents = new long[256];
+            monthExpenseRows = new IntList[12];
+            for (int month = 0; month < 12; month++) {
+                monthExpenseRows[month] = new IntList();
+            }
+        }
+
+        // The next row (rows have to come in file order)
+        void add(int day, String category, long cents, String description) {
+            int row = addedDays.size();
+            addedDays.add(day);
+            listFor(categoryRows, CategoryIndex.normalize(category)).add(row);
+            if (cents < 0) {
+                if (row >= addedCents.length) {
+                    addedCents = Arrays.copyOf(addedCents, Math.max(row + 1, addedCents.length * 2));
+                }
+                addedCents[row] = cents;
+                monthExpenseRows[DateKey.monthOf(day) - 1].add(row);
+            }
+            if (description != null) {
+                ArrayList<String> rowWords = new ArrayList<>(8);
+                DescriptionIndex.split(description, rowWords);
+                for (String word : rowWords) {
+                    listFor(words, word).add(row);
+                }
+            }
+        }
+
+        // Sorts out each month's biggest expenses and lets go of what was only needed to build it
+        void finish() {
+            days = new char[addedDays.size()];
+            for (int row = 0; row < days.length; row++) {
+                days[row] = (char) (addedDays.get(row) - firstDay);
+            }
+            long[] cents = addedCents;
+            for (int month = 0; month < 12; month++) {
+                IntList expenses = monthExpenseRows[month];
+                Integer[] rows = new Integer[expenses.size()];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = expenses.get(i);
+                }
+                Arrays.sort(rows, (a, b) -> cents[a] != cents[b] ? Long.compare(cents[a], cents[b])
+                                                                : Integer.compare(a, b));
+                monthExpenses[month] = rows.length;
+                int listed = Math.min(rows.length, TOP_PER_MONTH);
+                monthTop[month] = new int[listed];
+                monthTopCents[month] = new long[listed];
+                for (int i = 0; i < listed; i++) {
+                    monthTop[month][i] = rows[i];
+                    monthTopCents[month][i] = -cents[rows[i]];
+                }
+            }
+            addedDays = null;
+            addedCents = null;
+            monthExpenseRows = null;
+            search = DescriptionIndex.of(words, days.length);
+        }
+
+        void writeTo(Packer out) {
+            for (int row = 0; row < days.length; row++) {
+                out.varint(zigzag(row == 0 ? firstDay + days[0] : days[row] - days[row - 1]));
+            }
+            writeLists(out, categoryRows);
+            for (int month = 0; month < 12; month++) {
+                out.varint(monthExpenses[month]);
+                out.varint(monthTop[month].length);
+                for (int i = 0; i < monthTop[month].length; i++) {
+                    out.varint(monthTop[month][i]);
+                    out.varint(monthTopCents[month][i]);
+                }
+            }
+            writeLists(out, words);
+        }
+
+        static Index read(byte[] bytes, int[] at, int year, int rowCount) {
+            Index index = new Index(year);
+            index.days = new char[rowCount];
+            int day = 0;
+            for (int row = 0; row < rowCount; row++) {
+                day += (int) unzigzag(readVarint(bytes, at));
+                index.days[row] = (char) (day - index.firstDay);
+            }
+            readLists(bytes, at, index.categoryRows);
+            for (int month = 0; month < 12; month++) {
+                index.monthExpenses[month] = (int) readVarint(bytes, at);
+                int listed = (int) readVarint(bytes, at);
+                index.monthTop[month] = new int[listed];
+                index.monthTopCents[month] = new long[listed];
+                for (int i = 0; i < listed; i++) {
+                    index.monthTop[month][i] = (int) readVarint(bytes, at);
+                    index.monthTopCents[month][i] = readVarint(bytes, at);
+                }
+            }
+            readLists(bytes, at, index.words);
+            index.addedDays = null;
+            index.addedCents = null;
+            index.monthExpenseRows = null;
+            index.search = DescriptionIndex.of(index.words, rowCount);
+            return index;
+        }
+
+        long estimatedHeapBytes() {
+            long total = 2L * days.length + 12L * 12 * TOP_PER_MONTH;
+            for (PostingList rows : categoryRows.values()) {
+                total += rows.estimatedHeapBytes() + 64;
+            }
+            for (PostingList rows : words.values()) {
+                total += rows.estimatedHeapBytes() + 64;
+            }
+            return total;
+        }
+
+        private static PostingList listFor(HashMap<String, PostingList> lists, String key) {
+            PostingList rows = lists.get(key);
+            if (rows == null) {
+                rows = new PostingList();
+                lists.put(key, rows);
+            }
+            return rows;
+        }
+
+        // Names in order, so sealing the same rows always writes the same bytes
+        private static void writeLists(Packer out, HashMap<String, PostingList> lists) {
+            out.varint(lists.size());
+            for (Map.Entry<String, PostingList> entry : new TreeMap<>(lists).entrySet()) {
+                byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                out.varint(name.length);
+                out.bytes(name);
+                PostingList rows = entry.getValue();
+                out.varint(rows.size());
+                PostingList.Cursor cursor = rows.cursor();
+                int last = -1;
+                while (cursor.next()) {
+                    out.varint(cursor.getHandle() - last);
+                    last = cursor.getHandle();
+                }
+            }
+        }
+
+        private static void readLists(byte[] bytes, int[] at, HashMap<String, PostingList> into) {
+            long count = readVarint(bytes, at);
+            for (long i = 0; i < count; i++) {
+                int length = (int) readVarint(bytes, at);
+                String name = new String(bytes, at[0], length, StandardCharsets.UTF_8);
+                at[0] += length;
+                PostingList rows = new PostingList();
+                long size = readVarint(bytes, at);
+                int row = -1;
+                for (long j = 0; j < size; j++) {
+                    row += (int) readVarint(bytes, at);
+                    rows.add(row);
+                }
+                into.put(name, rows);
+            }
+        }
+    }
+
+    // Called once per day and category with money: income as positive cents, expenses as negative
+    public interface DayTotals {
+        void add(String category, long cents, int epochDay);
+    }
+
+    // True if the file has day totals (version 2 and up); older ones need rows() instead
+    public boolean hasDayTotals() {
+        return dayTotalsLength >= 0;
+    }
+
+    // Hands every day's totals per category to the sink, straight from the small section after the
+    // header (the rows aren't read). Adding these up gives the same totals the rows would
+    public void readDayTotals(DayTotals sink) throws IOException {
+        if (!hasDayTotals()) {
+            throw new IllegalStateException("No day totals in " + path);
+        }
+        byte[] bytes = readAt(dayTotalsOffset, dayTotalsLength);
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        if (crc.getValue() != dayTotalsChecksum) {
+            throw new IOException("Sealed year file is damaged (day totals checksum doesn't match): " + path);
+        }
+        int[] at = {0};
+        long count = readVarint(bytes, at);
+        int day = 0;
+        for (long i = 0; i < count; i++) {
+            day += (int) unzigzag(readVarint(bytes, at));
+            String category = categories[(int) readVarint(bytes, at)];
+            long income = readVarint(bytes, at);
+            long expenses = readVarint(bytes, at);
+            if (income != 0) {
+                sink.add(category, income, day);
+            }
+            if (expenses != 0) {
+                sink.add(category, -expenses, day);
+            }
+        }
+        if (Metrics.ENABLED) {
+            Metrics.bytesRead(dayTotalsLength);
+        }
+    }
+
+    private byte[] readAt(long offset, int length) throws IOException {
+        byte[] bytes = new byte[length];
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            long position = offset;
+            while (buffer.hasRemaining()) {
+                int read = channel.read(buffer, position);
+                if (read < 0) {
+                    throw new IOException("Sealed year file is cut short: " + path);
+                }
+                position += read;
+            }
+        }
+        return bytes;
+    }
+
+    // ---------- varints ----------
+
+    // Signed numbers folded so small negatives are small too (-1 -> 1, 1 -> 2, -2 -> 3 ...)
+    private static long zigzag(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    private static long unzigzag(long value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    private static long readVarint(byte[] bytes, int[] at) {
+        long value = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[at[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return value;
+    }
+
+    // One growing column of varints (7 bits per byte, the top bit says more bytes follow)
+    private static final class Packer {
+        private byte[] bytes = new byte[256];
+        private int length;
+
+        void varint(long value) {
+            if (length + 10 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        // Raw bytes, as they are
+        void bytes(byte[] raw) {
+            if (length + raw.length > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + raw.length));
+            }
+            System.arraycopy(raw, 0, bytes, length, raw.length);
+            length += raw.length;
+        }
+
+        void clear() {
+            length = 0;
+        }
+
+        void writeTo(ByteArrayOutputStream out) {
+            out.write(bytes, 0, length);
+        }
+    }
+
+    private static byte[] deflate(byte[] raw) {
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            ByteArrayOutputStream out = new ByteArrayOutputStream(Math.max(64, raw.length / 3));
+            byte[] chunk = new byte[1 << 16];
+            while (!deflater.finished()) {
+                out.write(chunk, 0, deflater.deflate(chunk));
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] compressed, int from, int length, int packedLength) throws IOException {
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed, from, length);
+            byte[] raw = new byte[packedLength];
+            int filled = 0;
+            while (filled < packedLength) {
+                int read = inflater.inflate(raw, filled, packedLength - filled);
+                if (read == 0 && (inflater.finished() || inflater.needsInput())) {
+                    throw new IOException("Sealed year file is cut short");
+                }
+                filled += read;
+            }
+            return raw;
+        } catch (DataFormatException e) {
+            throw new IOException("Sealed year file is damaged: " + e.getMessage(), e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
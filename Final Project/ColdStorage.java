@@ -0,0 +1,272 @@
+/*
+    ColdStorage class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+// The sealed years of one ledger (see ColdSegment). Each year's header and index are always in
+// memory. Searches, category pages and the biggest expenses find their rows in the index and then
+// read just those rows (rowAt), a block at a time; the last BLOCKS_KEPT blocks stay around, so
+// paging through a category doesn't inflate the same block again for every page. A whole year's
+// rows are only paged in for the reports and exports that list all of them, and kept for the next
+// few questions, but only for the last PAGED_IN_YEARS years asked about, so going through ten
+// years of history one report at a time never has all ten in memory at once.
+//
+// Sealing and loading change the years (the one writer); readers in server mode can page rows
+// in at the same time, so that part is synchronized.
+public class ColdStorage {
+
+    // How many paged-in years stay around after the question that needed them
+    private static final int PAGED_IN_YEARS = 2;
+
+    // How many blocks of rows read for single rows stay around (about 1024 rows each)
+    private static final int BLOCKS_KEPT = 16;
+
+    private final TreeMap<Integer, ColdSegment> years;
+    private final LinkedHashMap<Integer, Ledger> pagedIn;   // least recently used first
+    private final LinkedHashMap<Long, ColdSegment.RowBlock> blocks;   // (year << 32 | block), same order
+
+    public ColdStorage() {
+        years = new TreeMap<>();
+        pagedIn = new LinkedHashMap<>(8, 0.75f, true);
+        blocks = new LinkedHashMap<>(32, 0.75f, true);
+    }
+
+    public void clear() {
+        years.clear();
+        synchronized (this) {
+            pagedIn.clear();
+            blocks.clear();
+        }
+    }
+
+    // Adds a sealed year, or replaces the one that was there (its paged-in rows are dropped too)
+    public void put(ColdSegment segment) {
+        int year = segment.getYear();
+        years.put(year, segment);
+        synchronized (this) {
+            pagedIn.remove(year);
+            blocks.keySet().removeIf(key -> (int) (key >> 32) == year);
+        }
+    }
+
+    public boolean isEmpty() {
+        return years.isEmpty();
+    }
+
+    // The segment for a year, or null if it isn't sealed
+    public ColdSegment get(int year) {
+        return years.get(year);
+    }
+
+    // Every sealed year, oldest first
+    public Collection<ColdSegment> getSegments() {
+        return years.values();
+    }
+
+    // The sealed years from one year to another (both included), oldest first
+    public List<Integer> yearsBetween(int fromYear, int toYear) {
+        if (years.isEmpty() || fromYear > toYear) {
+            return new ArrayList<>();
+        }
+        return new ArrayList<>(years.subMap(fromYear, true, toYear, true).keySet());
+    }
+
+    // Rows in every sealed year
+    public long size() {
+        long rows = 0;
+        for (ColdSegment segment : years.values()) {
+            rows += segment.size();
+        }
+        return rows;
+    }
+
+    public long getExpenseCents() {
+        long cents = 0;
+        for (ColdSegment segment : years.values()) {
+            cents += segment.getExpenseCents();
+        }
+        return cents;
+    }
+
+    // The month totals of the sealed years from one month to another (no rows paged in), oldest first
+    public List<MonthPartition> getMonthTotals(int fromYearMonth, int toYearMonth) {
+        ArrayList<MonthPartition> months = new ArrayList<>();
+        for (int year : yearsBetween(Math.floorDiv(fromYearMonth, 12), Math.floorDiv(toYearMonth, 12))) {
+            for (MonthPartition month : years.get(year).getMonthTotals()) {
+                if (month.getYearMonth() >= fromYearMonth && month.getYearMonth() <= toYearMonth) {
+                    months.add(month);
+                }
+            }
+        }
+        return months;
+    }
+
+    // A sealed year's rows as a read-only Ledger, paged in from its file if they aren't already
+    public synchronized Ledger rows(int year) {
+        Ledger rows = pagedIn.get(year);
+        if (rows != null) {
+            return rows;
+        }
+        ColdSegment segment = segment(year);
+        try {
+            rows = segment.rows();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the sealed rows for " + year + ": " + e.getMessage(), e);
+        }
+        pagedIn.put(year, rows);
+        Iterator<Map.Entry<Integer, Ledger>> oldest = pagedIn.entrySet().iterator();
+        while (pagedIn.size() > PAGED_IN_YEARS) {
+            oldest.next();
+            oldest.remove();
+        }
+        return rows;
+    }
+
+    // One row of a sealed year (numbered like its index), with handle -1. It comes from the paged-in
+    // rows if the year is paged in, otherwise only the block it's in gets read
+    public synchronized Transaction rowAt(int year, int row) {
+        Ledger paged = pagedIn.get(year);
+        Transaction transaction;
+        if (paged != null) {
+            transaction = paged.getStore().getTransaction(row);
+        } else {
+            ColdSegment segment = segment(year);
+            int block = segment.blockOf(row);
+            long key = ((long) year << 32) | block;
+            ColdSegment.RowBlock rows = blocks.get(key);
+            if (rows == null) {
+                try {
+                    rows = segment.readBlock(block);
+                } catch (IOException e) {
+                    throw new IllegalStateException("Could not read the sealed rows for " + year + ": " + e.getMessage(), e);
+                }
+                blocks.put(key, rows);
+                Iterator<Long> oldest = blocks.keySet().iterator();
+                while (blocks.size() > BLOCKS_KEPT) {
+                    oldest.next();
+                    oldest.remove();
+                }
+            }
+            transaction = rows.getTransaction(row);
+        }
+        transaction.setHandle(-1);
+        return transaction;
+    }
+
+    // A sealed year's rows in one category (any capitalization) between two dates, added to the
+    // page once skip[0] of them have gone by (like Ledger.getTransactionsByCategory). The index picks
+    // them out, so only the rows that go on the page are read. Gives back how many it looked at
+    public int pageByCategory(int year, String category, int fromDay, int toDay, int[] skip, int limit,
+                              List<Transaction> page) {
+        ColdSegment segment = indexed(year);
+        PostingList rows = segment.getCategoryRows(category);
+        if (rows == null) {
+            return 0;
+        }
+        PostingList.Cursor cursor = rows.cursor();
+        int looked = 0;
+        while (page.size() < limit && cursor.next()) {
+            looked++;
+            int day = segment.getEpochDay(cursor.getHandle());
+            if (day < fromDay || day > toDay) {
+                continue;
+            }
+            if (skip[0] > 0) {
+                skip[0]--;
+                continue;
+            }
+            page.add(rowAt(year, cursor.getHandle()));
+        }
+        return looked;
+    }
+
+    // How many rows of a sealed year are in one category between two dates (nothing gets read)
+    public int countByCategory(int year, String category, int fromDay, int toDay) {
+        return indexed(year).countByCategory(category, fromDay, toDay);
+    }
+
+    // The rows of a sealed year that match a word search (see ColdSegment.search), numbered like its
+    // index; read them with rowAt
+    public IntList search(int year, String query, String category, int fromDay, int toDay) {
+        return indexed(year).search(query, category, fromDay, toDay);
+    }
+
+    // Adds a sealed year's k biggest expenses from one month to another as {cents, year, row},
+    // biggest first. They come from the index, unless k is more than it lists for a busy month;
+    // then the year gets paged in and its own ranking answers
+    public void addLargestExpenses(int year, int fromYearMonth, int toYearMonth, int k, List<long[]> into) {
+        if (indexed(year).addLargestExpenses(fromYearMonth, toYearMonth, k, into)) {
+            return;
+        }
+        for (Transaction row : rows(year).getLargestExpenses(fromYearMonth, toYearMonth, k)) {
+            into.add(new long[] {TransactionStore.toCents(row.getAmount()), year, row.getHandle()});
+        }
+    }
+
+    private ColdSegment segment(int year) {
+        ColdSegment segment = years.get(year);
+        if (segment == null) {
+            throw new IllegalArgumentException(year + " isn't sealed.");
+        }
+        return segment;
+    }
+
+    // The segment with its index there (a file from before the index builds it once, see loadIndex)
+    private ColdSegment indexed(int year) {
+        ColdSegment segment = segment(year);
+        try {
+            segment.loadIndex();
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the sealed rows for " + year + ": " + e.getMessage(), e);
+        }
+        return segment;
+    }
+
+    // Every day's totals per category in a sealed year (see ColdSegment.readDayTotals). A file from
+    // before there were day totals gets its rows paged in instead, one call per row
+    public void dayTotals(int year, ColdSegment.DayTotals sink) {
+        ColdSegment segment = segment(year);
+        if (!segment.hasDayTotals()) {
+            TransactionStore store = rows(year).getStore();
+            for (int i = 0; i < store.size(); i++) {
+                int handle = store.handleAt(i);
+                sink.add(store.getCategoryName(store.getCategoryId(handle)), store.getAmountCents(handle),
+                         store.getEpochDay(handle));
+            }
+            return;
+        }
+        try {
+            segment.readDayTotals(sink);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read the sealed totals for " + year + ": " + e.getMessage(), e);
+        }
+    }
+
+    // The headers and indexes plus whatever is paged in or read right now
+    public synchronized long estimatedHeapBytes() {
+        long total = 0;
+        for (ColdSegment segment : years.values()) {
+            total += segment.estimatedHeapBytes();
+        }
+        for (Ledger rows : pagedIn.values()) {
+            total += rows.estimatedHeapBytes();
+        }
+        for (ColdSegment.RowBlock rows : blocks.values()) {
+            total += rows.estimatedHeapBytes();
+        }
+        return total;
+    }
+
+    public synchronized int getPagedInYears() {
+        return pagedIn.size();
+    }
+}
@@ -0,0 +1,224 @@
+/*
+    CommandLog class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.BitSet;
+
+// Undo/redo history for every change made through the menu (or batch mode): adds, removes and
+// posted bills. It replaces the old Stack<Transaction>.
+//
+// Rows are remembered by handle, not as Transaction objects. The store keeps a removed row's
+// columns, so undoing a remove just brings the same handle back in its old spot, and undoing an
+// add removes that handle again. No searching through the list either way.
+//
+// The history is a fixed-size ring of plain ints, so it never grows past `capacity` commands; the
+// oldest ones fall off the end. Making a new change after undoing clears whatever could be redone.
+// Loading or importing a file starts the history over (it's not saved, and not rebuilt from the file).
+// When a save packs the ledger, the rows here are the removed ones it keeps, and they get renumbered.
+public class CommandLog {
+
+    public static final int DEFAULT_CAPACITY = 1000;
+
+    // What kind of change a command was
+    public static final byte ADD = 1;
+    public static final byte REMOVE = 2;
+    public static final byte POST_BILL = 3;
+
+    private final byte[] types;
+    private final int[] rowHandles;
+    private final int[] billHandles;    // POST_BILL only: the bill that was posted
+    private final int[] billDueDays;    // ...and what its due date and occurrences left were before
+    private final int[] billRemaining;
+
+    private int oldest;   // ring slot of the oldest command
+    private int size;     // commands kept (undoable + redoable)
+    private int applied;  // the first `applied` of them are done, the rest can be redone
+    private int lastRowHandle = -1;
+
+    public CommandLog() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public CommandLog(int capacity) {
+        types = new byte[capacity];
+        rowHandles = new int[capacity];
+        billHandles = new int[capacity];
+        billDueDays = new int[capacity];
+        billRemaining = new int[capacity];
+    }
+
+    public boolean canUndo() {
+        return applied > 0;
+    }
+
+    public boolean canRedo() {
+        return applied < size;
+    }
+
+    public void clear() {
+        oldest = 0;
+        size = 0;
+        applied = 0;
+        lastRowHandle = -1;
+    }
+
+    // The row the last undo/redo touched (read it with ledger.getStore().getTransaction)
+    public int getLastRowHandle() {
+        return lastRowHandle;
+    }
+
+    // Adds the row of every command that's kept (undoable or redoable) to handles. Those are the
+    // removed rows the ledger has to hold on to
+    public void addRowHandlesTo(BitSet handles) {
+        for (int i = 0; i < size; i++) {
+            int handle = rowHandles[slot(i)];
+            if (handle >= 0) {
+                handles.set(handle);
+            }
+        }
+    }
+
+    // After the ledger was packed (see Ledger.pack): newHandles has each row's new handle
+    public void renumber(int[] newHandles) {
+        for (int i = 0; i < size; i++) {
+            int slot = slot(i);
+            rowHandles[slot] = renumbered(rowHandles[slot], newHandles);
+        }
+        lastRowHandle = renumbered(lastRowHandle, newHandles);
+    }
+
+    private static int renumbered(int handle, int[] newHandles) {
+        return handle >= 0 && handle < newHandles.length ? newHandles[handle] : -1;
+    }
+
+    // ---------- recording (call right after the change is made) ----------
+
+    public void recordAdd(int rowHandle) {
+        record(ADD, rowHandle, -1, 0, 0);
+    }
+
+    public void recordRemove(int rowHandle) {
+        record(REMOVE, rowHandle, -1, 0, 0);
+    }
+
+    // dueDayBefore / remainingBefore are the bill's due date and occurrences left from before it was posted
+    public void recordPostBill(int rowHandle, int billHandle, int dueDayBefore, int remainingBefore) {
+        record(POST_BILL, rowHandle, billHandle, dueDayBefore, remainingBefore);
+    }
+
+    // ---------- undo / redo ----------
+
+    // Undoes the newest change (keeping the budget and journal in step). Gives back what kind of
+    // change it was, or 0 if there was nothing to undo or the row is already gone
+    public byte undo(Ledger ledger, Budget budget, LedgerPersistence persistence) {
+        if (!canUndo()) {
+            return 0;
+        }
+        int slot = slot(applied - 1);
+        byte type = types[slot];
+        int handle = rowHandles[slot];
+        TransactionStore store = ledger.getStore();
+
+        if (type == REMOVE) {
+            int position = ledger.reviveHandle(handle);
+            if (position < 0) {
+                return 0;
+            }
+            Transaction t = store.getTransaction(handle);
+            budget.addTransaction(t);
+            persistence.logRestore(position, t);
+        } else {
+            int position = store.positionOf(handle);
+            if (position < 0) {
+                return 0;
+            }
+            Transaction t = ledger.removeAt(position);
+            budget.removeTransaction(t);
+            if (type == ADD) {
+                persistence.logRemove(position);
+            } else {
+                // Put the bill back the way it was before it was posted (one journal record for both)
+                BillScheduler bills = ledger.getBills();
+                int bill = billHandles[slot];
+                int anchorDay = bills.getAnchorDay(bill);
+                bills.restore(bill, t.getCategory(), bills.getAmountCents(bill), t.getDescription(),
+                              billDueDays[slot], bills.getUnit(bill), bills.getInterval(bill),
+                              bills.getEndDay(bill), billRemaining[slot]);
+                bills.setAnchorDay(bill, anchorDay);
+                persistence.logUnpostBill(position, bills, bill);
+            }
+        }
+        applied--;
+        lastRowHandle = handle;
+        persistence.maybeCompact(ledger, budget);
+        return type;
+    }
+
+    // Does the last undone change again. Same return rules as undo
+    public byte redo(Ledger ledger, Budget budget, LedgerPersistence persistence) {
+        if (!canRedo()) {
+            return 0;
+        }
+        int slot = slot(applied);
+        byte type = types[slot];
+        int handle = rowHandles[slot];
+        TransactionStore store = ledger.getStore();
+
+        if (type == REMOVE) {
+            int position = store.positionOf(handle);
+            if (position < 0) {
+                return 0;
+            }
+            Transaction t = ledger.removeAt(position);
+            budget.removeTransaction(t);
+            persistence.logRemove(position);
+        } else {
+            int position = ledger.reviveHandle(handle);
+            if (position < 0) {
+                return 0;
+            }
+            Transaction t = store.getTransaction(handle);
+            budget.addTransaction(t);
+            if (type == ADD) {
+                persistence.logRestore(position, t);
+            } else {
+                // Everything newer was undone, so the row is back at the end, right where posting puts it.
+                // If the bill was cancelled in the meantime, only the row comes back
+                int bill = billHandles[slot];
+                if (ledger.getBills().isScheduled(bill) && position == store.size() - 1) {
+                    ledger.getBills().markPosted(bill);
+                    persistence.logPostBill(bill);
+                } else {
+                    persistence.logRestore(position, t);
+                }
+            }
+        }
+        applied++;
+        lastRowHandle = handle;
+        persistence.maybeCompact(ledger, budget);
+        return type;
+    }
+
+    private void record(byte type, int rowHandle, int billHandle, int dueDay, int remaining) {
+        size = applied; // anything that could have been redone is gone now
+        if (size == types.length) {
+            oldest = slot(1);
+            size--;
+            applied--;
+        }
+        int slot = slot(size);
+        types[slot] = type;
+        rowHandles[slot] = rowHandle;
+        billHandles[slot] = billHandle;
+        billDueDays[slot] = dueDay;
+        billRemaining[slot] = remaining;
+        size++;
+        applied++;
+    }
+
+    // Ring slot of the i-th kept command (0 = oldest)
+    private int slot(int i) {
+        return (oldest + i) % types.length;
+    }
+}
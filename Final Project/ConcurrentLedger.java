@@ -0,0 +1,275 @@
+/*
+    ConcurrentLedger class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+// Lets several threads (one per account feed, say) add rows to the same Ledger + Budget at once,
+// while someone else reads reports. Ledger and Budget themselves aren't thread-safe, so everything
+// goes through here while this is in use:
+//
+// - add() puts a row into one of several "stripes" (a small RowBatch each, with its own lock).
+//   A thread tries its own stripe first and moves on to another if it's busy, so threads almost
+//   never wait on each other. A full stripe gets moved into the ledger in one go.
+// - append() takes a whole RowBatch (what the importers build) and adds it under one short lock.
+// - Income, expenses, every category and every month are also added to LongAdders as rows come
+//   in, so those totals can be read at any moment without any lock.
+// - view() hands out a read-only copy of the Budget (the full range/monthly/category reports).
+//   It's only rebuilt when something changed, and reports run on the copy without holding anything.
+public class ConcurrentLedger {
+
+    // Rows a stripe holds before it gets moved into the ledger
+    private static final int STRIPE_ROWS = 4096;
+
+    private final Ledger ledger;
+    private final Budget budget;
+    private final ReentrantLock ledgerLock;   // held while the ledger + budget change or get copied
+
+    private final Stripe[] stripes;
+
+    // Live totals (rows still sitting in a stripe are included)
+    private final LongAdder rows;
+    private final LongAdder incomeCents;
+    private final LongAdder expenseCents;
+    private final ConcurrentHashMap<String, LongAdder> categoryCents;  // like Budget: income + spending
+    private final ConcurrentHashMap<Integer, MonthTotals> months;      // key is DateKey.yearMonthOf
+
+    private final AtomicLong version;   // goes up every time the ledger changes
+    private volatile View view;
+
+    // One append buffer and its lock
+    private static final class Stripe {
+        final ReentrantLock lock = new ReentrantLock();
+        RowBatch batch;   // the rows carry everything the budget needs, so no totals are kept here
+    }
+
+    private static final class MonthTotals {
+        final LongAdder income = new LongAdder();
+        final LongAdder expenses = new LongAdder();
+    }
+
+    // A Budget copy and the row count it goes with, both as of the same moment
+    public static final class View {
+        private final Budget budget;
+        private final int rowCount;
+        private final long version;
+
+        private View(Budget budget, int rowCount, long version) {
+            this.budget = budget;
+            this.rowCount = rowCount;
+            this.version = version;
+        }
+
+        // Don't change it, other readers may be using the same view
+        public Budget getBudget() {
+            return budget;
+        }
+
+        public int getRowCount() {
+            return rowCount;
+        }
+    }
+
+    // Wraps an existing ledger and budget; their current rows are counted into the live totals
+    public ConcurrentLedger(Ledger ledger, Budget budget) {
+        this.ledger = ledger;
+        this.budget = budget;
+        ledgerLock = new ReentrantLock();
+
+        // A power of two so picking a stripe is just a mask
+        int wanted = Math.max(2, Runtime.getRuntime().availableProcessors() * 2);
+        stripes = new Stripe[Integer.highestOneBit(wanted - 1) << 1];
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+
+        rows = new LongAdder();
+        incomeCents = new LongAdder();
+        expenseCents = new LongAdder();
+        categoryCents = new ConcurrentHashMap<>();
+        months = new ConcurrentHashMap<>();
+        version = new AtomicLong();
+
+        TransactionStore store = ledger.getStore();
+        for (int i = 0; i < store.size(); i++) {
+            int handle = store.handleAt(i);
+            count(store.getCategoryName(store.getCategoryId(handle)), store.getAmountCents(handle),
+                  store.getEpochDay(handle));
+        }
+    }
+
+    // ---------- writing (any thread) ----------
+
+    // Adds one row. It lands in the ledger once its stripe fills up or flush() is called
+    public void add(String category, long cents, String description, int epochDay) {
+        count(category, cents, epochDay);
+
+        int home = (int) Thread.currentThread().getId() & (stripes.length - 1);
+        Stripe stripe = null;
+        for (int i = 0; i < stripes.length; i++) {
+            Stripe candidate = stripes[(home + i) & (stripes.length - 1)];
+            if (candidate.lock.tryLock()) {
+                stripe = candidate;
+                break;
+            }
+        }
+        if (stripe == null) {
+            // Every stripe is busy, so wait for this thread's own
+            stripe = stripes[home];
+            stripe.lock.lock();
+        }
+
+        try {
+            if (stripe.batch == null) {
+                stripe.batch = new RowBatch(STRIPE_ROWS, STRIPE_ROWS * 24);
+            }
+            stripe.batch.appendDescription(description);
+            stripe.batch.add(category, cents, epochDay);
+            if (stripe.batch.size() >= STRIPE_ROWS) {
+                drain(stripe);
+            }
+        } finally {
+            stripe.lock.unlock();
+        }
+    }
+
+    // Adds a whole batch at once (totals are that batch's Budget, like CsvImporter keeps).
+    // The caller can clear and reuse both afterwards
+    public void append(RowBatch batch, Budget totals) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        for (int i = 0; i < batch.size(); i++) {
+            count(batch.getCategory(i), batch.getCents(i), batch.getEpochDay(i));
+        }
+        ledgerLock.lock();
+        try {
+            batch.appendTo(ledger);
+            budget.mergeFrom(totals);
+            version.incrementAndGet();
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    // Moves every row still waiting in a stripe into the ledger
+    public void flush() {
+        for (Stripe stripe : stripes) {
+            stripe.lock.lock();
+            try {
+                drain(stripe);
+            } finally {
+                stripe.lock.unlock();
+            }
+        }
+    }
+
+    // ---------- reading (any thread, never blocks writers) ----------
+
+    public long getRowCount() {
+        return rows.sum();
+    }
+
+    public long getIncomeCents() {
+        return incomeCents.sum();
+    }
+
+    public long getExpenseCents() {
+        return expenseCents.sum();
+    }
+
+    public long getCategoryCents(String category) {
+        LongAdder total = categoryCents.get(category);
+        return total == null ? 0 : total.sum();
+    }
+
+    // Category -> cents right now, sorted by name
+    public Map<String, Long> getCategoryCents() {
+        TreeMap<String, Long> totals = new TreeMap<>();
+        for (Map.Entry<String, LongAdder> entry : categoryCents.entrySet()) {
+            totals.put(entry.getKey(), entry.getValue().sum());
+        }
+        return Collections.unmodifiableMap(totals);
+    }
+
+    public long getMonthIncomeCents(int year, int month) {
+        MonthTotals totals = months.get(year * 12 + month - 1);
+        return totals == null ? 0 : totals.income.sum();
+    }
+
+    public long getMonthExpenseCents(int year, int month) {
+        MonthTotals totals = months.get(year * 12 + month - 1);
+        return totals == null ? 0 : totals.expenses.sum();
+    }
+
+    // A consistent Budget copy of everything that's in the ledger. Rows still in a stripe aren't
+    // in it yet (call flush() first for those). Readers share one view until the ledger changes
+    public View view() {
+        View current = view;
+        if (current != null && current.version == version.get()) {
+            return current;
+        }
+        ledgerLock.lock();
+        try {
+            current = view;
+            long now = version.get();
+            if (current == null || current.version != now) {
+                current = new View(budget.copy(), ledger.size(), now);
+                view = current;
+            }
+            return current;
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    // The rows themselves as of now (a packed copy, so this one costs a pass over the ledger)
+    public TransactionStore copyRows() {
+        ledgerLock.lock();
+        try {
+            return ledger.getStore().copyLive();
+        } finally {
+            ledgerLock.unlock();
+        }
+    }
+
+    // Called with the stripe's lock held. The budget gets the rows one by one, which is cheaper
+    // than keeping a whole Budget per stripe and merging it (that copies every month it has)
+    private void drain(Stripe stripe) {
+        RowBatch batch = stripe.batch;
+        if (batch == null || batch.isEmpty()) {
+            return;
+        }
+        ledgerLock.lock();
+        try {
+            batch.appendTo(ledger);
+            for (int i = 0; i < batch.size(); i++) {
+                budget.addRow(batch.getCategory(i), batch.getCents(i), batch.getEpochDay(i));
+            }
+            version.incrementAndGet();
+        } finally {
+            ledgerLock.unlock();
+        }
+        batch.clear();
+    }
+
+    private void count(String category, long cents, int epochDay) {
+        rows.increment();
+        MonthTotals month = months.computeIfAbsent(DateKey.yearMonthOf(epochDay), key -> new MonthTotals());
+        if (cents > 0) {
+            incomeCents.add(cents);
+            month.income.add(cents);
+        } else {
+            expenseCents.add(-cents);
+            month.expenses.add(-cents);
+        }
+        categoryCents.computeIfAbsent(category, key -> new LongAdder()).add(Math.abs(cents));
+    }
+}
@@ -0,0 +1,589 @@
+/*
+    CsvImporter class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// Brings in bank/CSV statements without typing every row in. The file is read one record at a
+// time, each record goes through the column mapping, date parsing and sign rules, and the good
+// rows are added to the ledger and budget in batches. Rows that can't be used are counted with
+// the reason instead of stopping the whole import.
+public class CsvImporter {
+
+    public static final int DEFAULT_BATCH_SIZE = 10_000;
+
+    // Keep a few bad rows as examples so the user can see what went wrong
+    private static final int MAX_EXAMPLES = 10;
+
+    private static final Metrics.Timer IMPORT_TIMER = Metrics.timer("csv_import");
+
+    // Rejection reasons (also the keys in the report)
+    public static final String WRONG_COLUMNS = "not enough columns";
+    public static final String MISSING_DATE = "missing date";
+    public static final String BAD_DATE = "unreadable date";
+    public static final String MISSING_AMOUNT = "missing amount";
+    public static final String BAD_AMOUNT = "unreadable amount";
+    public static final String DEBIT_AND_CREDIT = "both debit and credit filled in";
+    public static final String UNTERMINATED_QUOTE = "unterminated quote";
+
+    // Which order the numbers in the date column come in
+    public enum DateOrder {
+        MONTH_DAY_YEAR, DAY_MONTH_YEAR, YEAR_MONTH_DAY
+    }
+
+    private final Mapping mapping;
+    private final int batchSize;
+
+    public CsvImporter(Mapping mapping) {
+        this(mapping, DEFAULT_BATCH_SIZE);
+    }
+
+    public CsvImporter(Mapping mapping, int batchSize) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("Batch size must be at least 1.");
+        }
+        this.mapping = mapping;
+        this.batchSize = batchSize;
+    }
+
+    // Where finished batches go: straight into a ledger + budget, or into a ConcurrentLedger
+    private interface BatchTarget {
+        void accept(RowBatch batch, Budget batchTotals);
+    }
+
+    // Reads the whole statement and adds the good rows after the ones already in the ledger.
+    // Throws IllegalArgumentException if the mapping has no date or amount column to work with
+    public Report importFile(Path path, Ledger ledger, Budget budget) throws IOException {
+        return importFile(path, (batch, batchTotals) -> {
+            batch.appendTo(ledger);
+            budget.mergeFrom(batchTotals);
+        });
+    }
+
+    // Same, but safe to run on several threads at once into the same ConcurrentLedger
+    public Report importFile(Path path, ConcurrentLedger target) throws IOException {
+        return importFile(path, target::append);
+    }
+
+    // Imports several statements at the same time (one thread per file, up to the number of cores)
+    // into one ConcurrentLedger, then flushes it. Reports come back in the same order as the paths.
+    // If any file fails, the others still finish and then the first failure is thrown
+    // (rows from the files that worked stay in the ledger)
+    public List<Report> importFiles(List<Path> paths, ConcurrentLedger target) throws IOException {
+        int threads = Math.max(1, Math.min(paths.size(), Runtime.getRuntime().availableProcessors()));
+        ExecutorService pool = Executors.newFixedThreadPool(threads, runnable -> {
+            Thread thread = new Thread(runnable, "csv-import");
+            thread.setDaemon(true);
+            return thread;
+        });
+        try {
+            ArrayList<Future<Report>> running = new ArrayList<>();
+            for (Path path : paths) {
+                running.add(pool.submit(() -> importFile(path, target)));
+            }
+
+            ArrayList<Report> reports = new ArrayList<>();
+            Throwable failure = null;
+            for (Future<Report> task : running) {
+                try {
+                    reports.add(task.get());
+                } catch (ExecutionException e) {
+                    if (failure == null) {
+                        failure = e.getCause();
+                    }
+                    reports.add(null);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IOException("Interrupted while importing", e);
+                }
+            }
+            target.flush();
+            if (failure instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) failure;
+            } else if (failure != null) {
+                throw failure instanceof IOException ? (IOException) failure : new IOException(failure);
+            }
+            return reports;
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Report importFile(Path path, BatchTarget target) throws IOException {
+        long started = System.nanoTime();
+        Report report = new Report();
+
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            ArrayList<String> fields = new ArrayList<>();
+            int[] lineNumber = new int[1];
+            boolean[] unterminated = new boolean[1];
+
+            Mapping columns = mapping;
+            if (mapping.hasHeader) {
+                if (!readRecord(reader, mapping.delimiter, fields, lineNumber, unterminated)) {
+                    report.elapsedNanos = System.nanoTime() - started;
+                    return report;
+                }
+                if (unterminated[0]) {
+                    // The header's open quote swallowed the whole file, so there are no rows to read
+                    report.reject(1, UNTERMINATED_QUOTE, fields);
+                    report.elapsedNanos = System.nanoTime() - started;
+                    return report;
+                }
+                columns = mapping.resolve(fields);
+            }
+            columns.check();
+
+            RowBatch batch = new RowBatch(batchSize, batchSize * 24);
+            Budget batchTotals = new Budget();
+            int recordStart = lineNumber[0] + 1;
+
+            while (readRecord(reader, columns.delimiter, fields, lineNumber, unterminated)) {
+                if (unterminated[0]) {
+                    // Only half a record, so none of it goes in
+                    report.reject(recordStart, UNTERMINATED_QUOTE, fields);
+                    break;
+                }
+                if (fields.size() == 1 && fields.get(0).trim().isEmpty()) {
+                    recordStart = lineNumber[0] + 1;
+                    continue; // blank line
+                }
+
+                String problem = columns.addRow(fields, batch, batchTotals);
+                if (problem == null) {
+                    report.accepted++;
+                } else {
+                    report.reject(recordStart, problem, fields);
+                }
+
+                if (batch.size() >= batchSize) {
+                    applyBatch(batch, batchTotals, target);
+                }
+                recordStart = lineNumber[0] + 1;
+            }
+            applyBatch(batch, batchTotals, target);
+        }
+
+        report.elapsedNanos = System.nanoTime() - started;
+        IMPORT_TIMER.stop(started, report.accepted + report.rejected);
+        if (Metrics.ENABLED) {
+            Metrics.bytesRead(Files.size(path));
+        }
+        return report;
+    }
+
+    private static void applyBatch(RowBatch batch, Budget batchTotals, BatchTarget target) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        target.accept(batch, batchTotals);
+        batch.clear();
+        batchTotals.resetAll();
+    }
+
+    // ---------- reading CSV ----------
+
+    // Reads one record into fields. Quoted fields can hold the delimiter, "" for a quote, and even
+    // line breaks (the record then just keeps going on the next line). Gives back false at the end.
+    // If the file ends while a quote is still open, unterminated[0] is set and fields has what was read
+    static boolean readRecord(BufferedReader reader, char delimiter, List<String> fields, int[] lineNumber,
+                              boolean[] unterminated) throws IOException {
+        unterminated[0] = false;
+        String line = reader.readLine();
+        if (line == null) {
+            return false;
+        }
+        lineNumber[0]++;
+        fields.clear();
+
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        int i = 0;
+        while (true) {
+            if (i == line.length()) {
+                if (!quoted) {
+                    break;
+                }
+                // Still inside quotes, so the field carries on onto the next line
+                String next = reader.readLine();
+                if (next == null) {
+                    unterminated[0] = true;
+                    break;
+                }
+                lineNumber[0]++;
+                field.append('\n');
+                line = next;
+                i = 0;
+                continue;
+            }
+
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == delimiter) {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+            i++;
+        }
+        fields.add(field.toString());
+
+        // Files saved on Windows sometimes start with a byte order mark
+        if (lineNumber[0] == 1 && !fields.isEmpty() && fields.get(0).startsWith("\uFEFF")) {
+            fields.set(0, fields.get(0).substring(1));
+        }
+        return true;
+    }
+
+    // ---------- dates and amounts ----------
+
+    // Reads three numbers separated by '/', '-' or '.', in the given order. Anything after the date
+    // (like a time) is ignored, and two-digit years count as 20xx
+    public static int parseDate(String text, DateOrder order) {
+        int[] parts = new int[3];
+        int[] digits = new int[3];
+        int part = 0;
+        int i = 0;
+        String value = text.trim();
+
+        while (i < value.length() && part < 3) {
+            char c = value.charAt(i);
+            if (c >= '0' && c <= '9') {
+                if (digits[part] == 4) {
+                    return DateKey.INVALID;
+                }
+                parts[part] = parts[part] * 10 + (c - '0');
+                digits[part]++;
+            } else if ((c == '/' || c == '-' || c == '.') && part < 2 && digits[part] > 0) {
+                part++;
+            } else if (part == 2 && digits[2] > 0) {
+                break; // time or other junk after the date
+            } else {
+                return DateKey.INVALID;
+            }
+            i++;
+        }
+        if (part != 2 || digits[2] == 0) {
+            return DateKey.INVALID;
+        }
+
+        int year;
+        int month;
+        int day;
+        if (order == DateOrder.YEAR_MONTH_DAY) {
+            year = parts[0];
+            month = parts[1];
+            day = parts[2];
+            if (digits[0] != 4) {
+                return DateKey.INVALID;
+            }
+        } else {
+            month = order == DateOrder.MONTH_DAY_YEAR ? parts[0] : parts[1];
+            day = order == DateOrder.MONTH_DAY_YEAR ? parts[1] : parts[0];
+            year = parts[2];
+            if (digits[2] == 2) {
+                year += 2000;
+            } else if (digits[2] != 4) {
+                return DateKey.INVALID;
+            }
+        }
+
+        if (!DateKey.isPlausibleYear(year) || month < 1 || month > 12 || day < 1
+            || day > DateKey.daysInMonth(year, month)) {
+            return DateKey.INVALID;
+        }
+        return DateKey.toEpochDay(year, month, day);
+    }
+
+    // Reads amounts the way banks write them: "$1,234.56", "-12.50", "(12.50)", "12.50-", and also
+    // with a decimal comma like "1.234,56" or "-5,00". Gives back Long.MIN_VALUE if it isn't a number
+    public static long parseAmount(String text) {
+        boolean negative = false;
+        StringBuilder cleaned = new StringBuilder(text.length());
+        String value = text.trim();
+
+        if (value.startsWith("(") && value.endsWith(")")) {
+            negative = true;
+            value = value.substring(1, value.length() - 1);
+        }
+        if (value.endsWith("-")) {
+            negative = !negative;
+            value = value.substring(0, value.length() - 1);
+        }
+
+        // Whichever of '.' and ',' comes last is the decimal point, unless it's a lone ',' with three
+        // digits after it ("1,234"), which is a thousands separator
+        int lastComma = value.lastIndexOf(',');
+        int lastDot = value.lastIndexOf('.');
+        boolean decimalComma = lastComma > lastDot
+                && (lastDot >= 0 || value.length() - lastComma - 1 <= 2);
+        char thousands = decimalComma ? '.' : ',';
+
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == thousands || c == '$' || c == ' ' || c == '\u20AC' || c == '\u00A3') {
+                continue; // currency signs and thousands separators
+            }
+            if (c == ',' && decimalComma) {
+                c = '.';
+            }
+            if (c > 127) {
+                return Long.MIN_VALUE;
+            }
+            cleaned.append(c);
+        }
+        if (cleaned.length() == 0) {
+            return Long.MIN_VALUE;
+        }
+
+        byte[] bytes = cleaned.toString().getBytes(StandardCharsets.US_ASCII);
+        long cents = TransactionStore.parseCents(bytes, 0, bytes.length);
+        if (cents == Long.MIN_VALUE) {
+            return cents;
+        }
+        return negative ? -cents : cents;
+    }
+
+    // ---------- the column mapping ----------
+
+    // Which column holds what (0-based, -1 = not in the file) and how to read it.
+    // With hasHeader on, any column left at -1 is looked up by its name in the first row
+    public static class Mapping {
+        private char delimiter = ',';
+        private boolean hasHeader = true;
+        private DateOrder dateOrder = DateOrder.MONTH_DAY_YEAR;
+        private boolean expensesPositive;  // true if the bank shows money going out as positive numbers
+        private String defaultCategory = "Uncategorized";
+
+        private int dateColumn = -1;
+        private int amountColumn = -1;
+        private int debitColumn = -1;
+        private int creditColumn = -1;
+        private int descriptionColumn = -1;
+        private int categoryColumn = -1;
+
+        public void setDelimiter(char delimiter) {
+            this.delimiter = delimiter;
+        }
+
+        public void setHasHeader(boolean hasHeader) {
+            this.hasHeader = hasHeader;
+        }
+
+        public void setDateOrder(DateOrder dateOrder) {
+            this.dateOrder = dateOrder;
+        }
+
+        public void setExpensesPositive(boolean expensesPositive) {
+            this.expensesPositive = expensesPositive;
+        }
+
+        public void setDefaultCategory(String defaultCategory) {
+            this.defaultCategory = defaultCategory;
+        }
+
+        public void setDateColumn(int column) {
+            dateColumn = column;
+        }
+
+        public void setAmountColumn(int column) {
+            amountColumn = column;
+        }
+
+        public void setDebitColumn(int column) {
+            debitColumn = column;
+        }
+
+        public void setCreditColumn(int column) {
+            creditColumn = column;
+        }
+
+        public void setDescriptionColumn(int column) {
+            descriptionColumn = column;
+        }
+
+        public void setCategoryColumn(int column) {
+            categoryColumn = column;
+        }
+
+        // A copy with the blank columns filled in from the header row's names
+        Mapping resolve(List<String> header) {
+            Mapping resolved = copy();
+            for (int i = 0; i < header.size(); i++) {
+                String name = header.get(i).trim().toLowerCase(Locale.ROOT);
+                if (resolved.dateColumn < 0 && (name.equals("date") || name.equals("transaction date")
+                        || name.equals("posted date") || name.equals("posting date") || name.equals("booking date"))) {
+                    resolved.dateColumn = i;
+                } else if (resolved.amountColumn < 0 && (name.equals("amount") || name.equals("amt"))) {
+                    resolved.amountColumn = i;
+                } else if (resolved.debitColumn < 0 && (name.equals("debit") || name.equals("withdrawal")
+                        || name.equals("withdrawals") || name.equals("money out") || name.equals("paid out"))) {
+                    resolved.debitColumn = i;
+                } else if (resolved.creditColumn < 0 && (name.equals("credit") || name.equals("deposit")
+                        || name.equals("deposits") || name.equals("money in") || name.equals("paid in"))) {
+                    resolved.creditColumn = i;
+                } else if (resolved.descriptionColumn < 0 && (name.equals("description") || name.equals("memo")
+                        || name.equals("payee") || name.equals("details") || name.equals("name"))) {
+                    resolved.descriptionColumn = i;
+                } else if (resolved.categoryColumn < 0 && name.equals("category")) {
+                    resolved.categoryColumn = i;
+                }
+            }
+            return resolved;
+        }
+
+        void check() {
+            if (dateColumn < 0) {
+                throw new IllegalArgumentException("No date column was given or found in the header.");
+            }
+            if (amountColumn < 0 && debitColumn < 0 && creditColumn < 0) {
+                throw new IllegalArgumentException("No amount (or debit/credit) column was given or found in the header.");
+            }
+        }
+
+        // Turns one record into a row in the batch. Gives back null if it worked, or why it didn't
+        String addRow(List<String> fields, RowBatch batch, Budget batchTotals) {
+            int needed = Math.max(dateColumn, Math.max(amountColumn, Math.max(debitColumn, creditColumn)));
+            if (fields.size() <= needed) {
+                return WRONG_COLUMNS;
+            }
+
+            String dateText = fields.get(dateColumn);
+            if (dateText.trim().isEmpty()) {
+                return MISSING_DATE;
+            }
+            int epochDay = parseDate(dateText, dateOrder);
+            if (epochDay == DateKey.INVALID) {
+                return BAD_DATE;
+            }
+
+            long cents;
+            if (amountColumn >= 0) {
+                String amountText = fields.get(amountColumn);
+                if (amountText.trim().isEmpty()) {
+                    return MISSING_AMOUNT;
+                }
+                cents = parseAmount(amountText);
+                if (cents == Long.MIN_VALUE) {
+                    return BAD_AMOUNT;
+                }
+                // Sign normalization: in the ledger income is positive and expenses are negative
+                if (expensesPositive) {
+                    cents = -cents;
+                }
+            } else {
+                String debitText = debitColumn >= 0 ? fields.get(debitColumn).trim() : "";
+                String creditText = creditColumn >= 0 ? fields.get(creditColumn).trim() : "";
+                if (debitText.isEmpty() && creditText.isEmpty()) {
+                    return MISSING_AMOUNT;
+                }
+                if (!debitText.isEmpty() && !creditText.isEmpty()) {
+                    return DEBIT_AND_CREDIT;
+                }
+                cents = parseAmount(debitText.isEmpty() ? creditText : debitText);
+                if (cents == Long.MIN_VALUE) {
+                    return BAD_AMOUNT;
+                }
+                // Debits are always money out and credits money in, whatever sign the bank used
+                cents = debitText.isEmpty() ? Math.abs(cents) : -Math.abs(cents);
+            }
+
+            String category = column(fields, categoryColumn);
+            if (category.isEmpty()) {
+                category = defaultCategory;
+            }
+
+            batch.appendDescription(column(fields, descriptionColumn));
+            batch.add(category, cents, epochDay);
+            batchTotals.addRow(category, cents, epochDay);
+            return null;
+        }
+
+        private static String column(List<String> fields, int column) {
+            return column >= 0 && column < fields.size() ? fields.get(column).trim() : "";
+        }
+
+        private Mapping copy() {
+            Mapping copy = new Mapping();
+            copy.delimiter = delimiter;
+            copy.hasHeader = hasHeader;
+            copy.dateOrder = dateOrder;
+            copy.expensesPositive = expensesPositive;
+            copy.defaultCategory = defaultCategory;
+            copy.dateColumn = dateColumn;
+            copy.amountColumn = amountColumn;
+            copy.debitColumn = debitColumn;
+            copy.creditColumn = creditColumn;
+            copy.descriptionColumn = descriptionColumn;
+            copy.categoryColumn = categoryColumn;
+            return copy;
+        }
+    }
+
+    // What happened: how many rows went in, how many didn't and why
+    public static class Report {
+        private int accepted;
+        private int rejected;
+        private final LinkedHashMap<String, Integer> reasons = new LinkedHashMap<>();
+        private final ArrayList<String> examples = new ArrayList<>();
+        private long elapsedNanos;
+
+        void reject(int line, String reason, List<String> fields) {
+            rejected++;
+            reasons.merge(reason, 1, Integer::sum);
+            if (examples.size() < MAX_EXAMPLES) {
+                examples.add("line " + line + ": " + reason + " -> " + String.join(",", fields));
+            }
+        }
+
+        public int getAccepted() {
+            return accepted;
+        }
+
+        public int getRejected() {
+            return rejected;
+        }
+
+        // Reason -> how many rows were rejected for it
+        public LinkedHashMap<String, Integer> getReasons() {
+            return reasons;
+        }
+
+        public List<String> getExamples() {
+            return examples;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getRowsPerSecond() {
+            int rows = accepted + rejected;
+            return elapsedNanos == 0 ? 0 : (long) (rows * 1_000_000_000.0 / elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,257 @@
+/*
+    DateKey class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.time.LocalDate;
+
+// Turns a date like "11/03/2025" into a single int (days since 1/1/1970) and back again
+public class DateKey {
+
+    // Used when a date string could not be read
+    public static final int INVALID = Integer.MIN_VALUE;
+
+    // Years outside this are taken as typos (like 1/1/0202) and rejected, so one bad date can't
+    // stretch every by-month total across centuries
+    public static final int MIN_YEAR = 1900;
+    public static final int MAX_YEAR = 2199;
+
+    private DateKey() {
+    }
+
+    // Reads M/D/YYYY or MM/DD/YYYY by hand so I don't need substring or parseInt for every row
+    public static int parse(String date) {
+        if (date == null) {
+            return INVALID;
+        }
+
+        int length = date.length();
+        int i = 0;
+        int month = 0;
+        int digits = 0;
+        while (i < length && date.charAt(i) != '/') {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9' || digits == 2) {
+                return INVALID;
+            }
+            month = month * 10 + (c - '0');
+            digits++;
+            i++;
+        }
+        if (digits == 0 || i == length) {
+            return INVALID;
+        }
+        i++;
+
+        int day = 0;
+        digits = 0;
+        while (i < length && date.charAt(i) != '/') {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9' || digits == 2) {
+                return INVALID;
+            }
+            day = day * 10 + (c - '0');
+            digits++;
+            i++;
+        }
+        if (digits == 0 || i == length) {
+            return INVALID;
+        }
+        i++;
+
+        int year = 0;
+        digits = 0;
+        while (i < length) {
+            char c = date.charAt(i);
+            if (c < '0' || c > '9' || digits == 4) {
+                return INVALID;
+            }
+            year = year * 10 + (c - '0');
+            digits++;
+            i++;
+        }
+        if (digits != 4 || !isPlausibleYear(year)) {
+            return INVALID;
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+
+        return toEpochDay(year, month, day);
+    }
+
+    // Same rules as parse(String), but straight from ASCII bytes (so a file loader doesn't need a String per date)
+    public static int parse(byte[] bytes, int from, int to) {
+        int i = from;
+        int month = 0;
+        int digits = 0;
+        while (i < to && bytes[i] != '/') {
+            int c = bytes[i] - '0';
+            if (c < 0 || c > 9 || digits == 2) {
+                return INVALID;
+            }
+            month = month * 10 + c;
+            digits++;
+            i++;
+        }
+        if (digits == 0 || i == to) {
+            return INVALID;
+        }
+        i++;
+
+        int day = 0;
+        digits = 0;
+        while (i < to && bytes[i] != '/') {
+            int c = bytes[i] - '0';
+            if (c < 0 || c > 9 || digits == 2) {
+                return INVALID;
+            }
+            day = day * 10 + c;
+            digits++;
+            i++;
+        }
+        if (digits == 0 || i == to) {
+            return INVALID;
+        }
+        i++;
+
+        int year = 0;
+        digits = 0;
+        while (i < to) {
+            int c = bytes[i] - '0';
+            if (c < 0 || c > 9 || digits == 4) {
+                return INVALID;
+            }
+            year = year * 10 + c;
+            digits++;
+            i++;
+        }
+        if (digits != 4 || !isPlausibleYear(year)) {
+            return INVALID;
+        }
+
+        if (month < 1 || month > 12 || day < 1 || day > daysInMonth(year, month)) {
+            return INVALID;
+        }
+
+        return toEpochDay(year, month, day);
+    }
+
+    // Prints an epoch day back out as MM/DD/YYYY
+    public static String format(int epochDay) {
+        int month = monthOf(epochDay);
+        int day = dayOf(epochDay);
+        StringBuilder sb = new StringBuilder(10);
+        if (month < 10) {
+            sb.append('0');
+        }
+        sb.append(month).append('/');
+        if (day < 10) {
+            sb.append('0');
+        }
+        sb.append(day).append('/').append(yearOf(epochDay));
+        return sb.toString();
+    }
+
+    // Today's date on this computer's clock
+    public static int today() {
+        LocalDate now = LocalDate.now();
+        return toEpochDay(now.getYear(), now.getMonthValue(), now.getDayOfMonth());
+    }
+
+    // Days since 1/1/1970, using the usual "civil calendar" math (March-based years)
+    public static int toEpochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = (y >= 0 ? y : y - 399) / 400;
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    // Same as parse, but complains instead of handing back INVALID
+    public static int parseStrict(String date) {
+        int epochDay = parse(date);
+        if (epochDay == INVALID) {
+            throw new IllegalArgumentException("Invalid date \"" + date + "\". Use M/D/YYYY, for example 11/03/2025.");
+        }
+        return epochDay;
+    }
+
+    // The reverse of toEpochDay, gives back {year, month, day}
+    public static int[] toYearMonthDay(int epochDay) {
+        return new int[] { yearOf(epochDay), monthOf(epochDay), dayOf(epochDay) };
+    }
+
+    // These three pull one part out of an epoch day without creating any objects,
+    // so the budget can bucket rows by month in a tight loop
+    public static int yearOf(int epochDay) {
+        int dayOfEra = dayOfEra(epochDay);
+        int yearOfEra = yearOfEra(dayOfEra);
+        int month = monthFromMp(mp(dayOfEra, yearOfEra));
+        return yearOfEra + eraOf(epochDay) * 400 + (month <= 2 ? 1 : 0);
+    }
+
+    public static int monthOf(int epochDay) {
+        int dayOfEra = dayOfEra(epochDay);
+        return monthFromMp(mp(dayOfEra, yearOfEra(dayOfEra)));
+    }
+
+    public static int dayOf(int epochDay) {
+        int dayOfEra = dayOfEra(epochDay);
+        int yearOfEra = yearOfEra(dayOfEra);
+        int dayOfYear = dayOfYear(dayOfEra, yearOfEra);
+        int mp = (5 * dayOfYear + 2) / 153;
+        return dayOfYear - (153 * mp + 2) / 5 + 1;
+    }
+
+    // One number per calendar month (year * 12 + month - 1), handy for bucketing across years
+    public static int yearMonthOf(int epochDay) {
+        return yearOf(epochDay) * 12 + monthOf(epochDay) - 1;
+    }
+
+    private static int eraOf(int epochDay) {
+        int z = epochDay + 719468;
+        return (z >= 0 ? z : z - 146096) / 146097;
+    }
+
+    private static int dayOfEra(int epochDay) {
+        return epochDay + 719468 - eraOf(epochDay) * 146097;
+    }
+
+    private static int yearOfEra(int dayOfEra) {
+        return (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+    }
+
+    private static int dayOfYear(int dayOfEra, int yearOfEra) {
+        return dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+    }
+
+    private static int mp(int dayOfEra, int yearOfEra) {
+        return (5 * dayOfYear(dayOfEra, yearOfEra) + 2) / 153;
+    }
+
+    private static int monthFromMp(int mp) {
+        return mp < 10 ? mp + 3 : mp - 9;
+    }
+
+    public static boolean isPlausibleYear(int year) {
+        return year >= MIN_YEAR && year <= MAX_YEAR;
+    }
+
+    public static int daysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return leap ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+}
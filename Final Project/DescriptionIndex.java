@@ -0,0 +1,356 @@
+/*
+    DescriptionIndex class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+// Word search over the descriptions. Every description is split into lowercase words (runs of
+// letters and digits, so "AMAZON.COM*2X4" is amazon, com and 2x4) and each word keeps a
+// PostingList of the rows that have it. A search only reads the lists for its words, never the rows.
+//
+// Queries (see parse):
+//   amazon               rows with the word amazon
+//   amaz*                any word starting with amaz
+//   amazon refund        both words (AND)
+//   amazon OR walmart    either one; AND goes first, so "a b OR c" is (a AND b) OR c
+//
+// Removed rows stay in the lists and get skipped when a search runs (the store still knows they're
+// dead), so a remove costs nothing and an undo just brings the row back. Once there are more dead
+// rows than live ones the whole index gets rebuilt. Like ExpenseRanking it's only built the first
+// time someone searches, so loading doesn't pay for it; after that adds keep it up to date.
+public class DescriptionIndex {
+
+    // Words longer than this are left out (long reference numbers and such)
+    private static final int MAX_WORD = 40;
+
+    // Dead rows the lists can carry before a rebuild is worth it (and only once they outnumber live rows)
+    private static final int REBUILD_AFTER = 1024;
+
+    private final TransactionStore store;
+    private final HashMap<String, PostingList> postings;
+    private final TreeSet<String> words;   // every word in order, for prefix searches
+    private final BitSet indexed;          // handles that are in the lists (alive or not)
+    private int lastIndexed;
+    private int deadRows;
+
+    // Same rules as ExpenseRanking: readers can build at the same time, changes come from one writer
+    private volatile boolean built;
+
+    public DescriptionIndex(TransactionStore store) {
+        this.store = store;
+        postings = new HashMap<>();
+        words = new TreeSet<>();
+        indexed = new BitSet();
+        clear();
+    }
+
+    // A finished index over rows that never change (a sealed year, see ColdSegment). The lists come
+    // ready made and number the rows 0, 1, 2... in the year's order. There's no store behind it,
+    // so it only answers matching(), and the caller does the category and date checks
+    public static DescriptionIndex of(Map<String, PostingList> lists, int rowCount) {
+        DescriptionIndex index = new DescriptionIndex(null);
+        index.postings.putAll(lists);
+        index.words.addAll(lists.keySet());
+        index.lastIndexed = rowCount - 1;
+        index.built = true;
+        return index;
+    }
+
+    public void clear() {
+        postings.clear();
+        words.clear();
+        indexed.clear();
+        lastIndexed = -1;
+        deadRows = 0;
+        built = false;
+    }
+
+    public long estimatedHeapBytes() {
+        if (!built) {
+            return 0;
+        }
+        long total = indexed.size() / 8;
+        for (PostingList list : postings.values()) {
+            total += list.estimatedHeapBytes() + 64;   // plus the word and the map entry, roughly
+        }
+        return total;
+    }
+
+    // The Ledger calls this for every row it indexes
+    public void add(int handle) {
+        if (!built) {
+            return;
+        }
+        if (indexed.get(handle)) {
+            deadRows--;             // an undone remove, its words are still in the lists
+        } else if (handle > lastIndexed) {
+            indexRow(handle);
+        } else {
+            built = false;          // an old row that was never in here; the lists only take new handles
+        }
+    }
+
+    public void remove(int handle) {
+        if (!built || !indexed.get(handle)) {
+            return;
+        }
+        deadRows++;
+        if (deadRows > REBUILD_AFTER && deadRows > store.size()) {
+            built = false;
+        }
+    }
+
+    // Every live row that matches the query, in ledger order. category (any capitalization) and the
+    // dates narrow it down; pass null / Integer.MIN_VALUE / Integer.MAX_VALUE to leave them out
+    public IntList search(String query, String category, int fromDay, int toDay) {
+        int[] matches = matching(query);
+
+        boolean[] categoryMatches = null;
+        if (category != null) {
+            String wanted = CategoryIndex.normalize(category);
+            categoryMatches = new boolean[store.getCategoryCount()];
+            for (int id = 0; id < categoryMatches.length; id++) {
+                categoryMatches[id] = CategoryIndex.normalize(store.getCategoryName(id)).equals(wanted);
+            }
+        }
+
+        IntList rows = new IntList(Math.min(matches.length, 1024));
+        for (int handle : matches) {
+            if (!store.isAlive(handle)) {
+                continue;
+            }
+            if (categoryMatches != null && !categoryMatches[store.getCategoryId(handle)]) {
+                continue;
+            }
+            int day = store.getEpochDay(handle);
+            if (day >= fromDay && day <= toDay) {
+                rows.add(handle);
+            }
+        }
+        return rows;
+    }
+
+    // Every row in the lists that matches the query (removed ones too), in order
+    public int[] matching(String query) {
+        build();
+        List<List<String>> groups = parse(query);
+        if (groups.isEmpty()) {
+            throw new IllegalArgumentException("Nothing to search for.");
+        }
+
+        int[] matches = new int[0];
+        for (List<String> group : groups) {
+            matches = union(matches, matchAll(group));
+        }
+        return matches;
+    }
+
+    // Splits a query into OR groups of AND words. Each word goes through the same splitting as the
+    // descriptions ("amazon.com" is amazon AND com); a * at the end makes the last part a prefix.
+    // "OR" (capitals) or "|" between words starts a new group
+    static List<List<String>> parse(String query) {
+        ArrayList<List<String>> groups = new ArrayList<>();
+        ArrayList<String> group = new ArrayList<>();
+        for (String part : query.trim().split("\\s+")) {
+            if (part.equals("OR") || part.equals("|")) {
+                if (!group.isEmpty()) {
+                    groups.add(group);
+                    group = new ArrayList<>();
+                }
+                continue;
+            }
+            boolean prefix = part.endsWith("*");
+            ArrayList<String> pieces = new ArrayList<>();
+            split(part, pieces);
+            if (prefix && !pieces.isEmpty()) {
+                pieces.set(pieces.size() - 1, pieces.get(pieces.size() - 1) + "*");
+            }
+            group.addAll(pieces);
+        }
+        if (!group.isEmpty()) {
+            groups.add(group);
+        }
+        return groups;
+    }
+
+    // Lowercase runs of letters and digits. Each word is lowercased into one buffer as it's read, so
+    // it's one new String per word (this runs for every word of every row when the index is built)
+    static void split(String text, List<String> into) {
+        char[] word = new char[MAX_WORD];
+        int length = 0;
+        boolean tooLong = false;
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                if (length < MAX_WORD) {
+                    word[length++] = c < 128 ? (char) (c >= 'A' && c <= 'Z' ? c + 32 : c) : Character.toLowerCase(c);
+                } else {
+                    tooLong = true;
+                }
+            } else if (length > 0) {
+                if (!tooLong) {
+                    into.add(new String(word, 0, length));
+                }
+                length = 0;
+                tooLong = false;
+            }
+        }
+    }
+
+    // ---------- building ----------
+
+    // Reads every live row's description once and fills the lists
+    private synchronized void build() {
+        if (built) {
+            return;
+        }
+        postings.clear();
+        words.clear();
+        indexed.clear();
+        lastIndexed = -1;
+        deadRows = 0;
+        for (int i = 0; i < store.size(); i++) {
+            indexRow(store.handleAt(i));
+        }
+        built = true;
+    }
+
+    // One row's words into the lists (handles have to come in order)
+    private void indexRow(int handle) {
+        String description = store.getDescription(handle);
+        if (description != null) {
+            ArrayList<String> rowWords = new ArrayList<>(8);
+            split(description, rowWords);
+            for (String word : rowWords) {
+                listFor(word).add(handle);
+            }
+        }
+        indexed.set(handle);
+        lastIndexed = handle;
+    }
+
+    private PostingList listFor(String word) {
+        PostingList list = postings.get(word);
+        if (list == null) {
+            list = new PostingList();
+            postings.put(word, list);
+            words.add(word);
+        }
+        return list;
+    }
+
+    // ---------- answering ----------
+
+    // Rows that have every word in the group. The shortest list leads and the others jump ahead to
+    // each handle it proposes (or past it, which moves the lead on), so a rare word keeps it quick
+    private int[] matchAll(List<String> group) {
+        ArrayList<PostingList.Cursor> cursors = new ArrayList<>();
+        for (String word : group) {
+            PostingList list = word.endsWith("*") ? startingWith(word.substring(0, word.length() - 1))
+                                                  : postings.get(word);
+            if (list == null || list.isEmpty()) {
+                return new int[0];
+            }
+            cursors.add(list.cursor());
+        }
+        cursors.sort(Comparator.comparingInt(PostingList.Cursor::size));
+
+        IntList found = new IntList(cursors.size() == 1 ? cursors.get(0).size() : 16);
+        PostingList.Cursor lead = cursors.get(0);
+        if (!lead.next()) {
+            return new int[0];
+        }
+        int candidate = lead.getHandle();
+        while (true) {
+            boolean everyone = true;
+            for (int i = 1; i < cursors.size(); i++) {
+                PostingList.Cursor other = cursors.get(i);
+                if (!other.advanceTo(candidate)) {
+                    return found.toArray();
+                }
+                if (other.getHandle() > candidate) {
+                    candidate = other.getHandle();
+                    everyone = false;
+                    break;
+                }
+            }
+            if (everyone) {
+                found.add(candidate);
+                if (!lead.next()) {
+                    return found.toArray();
+                }
+            } else if (!lead.advanceTo(candidate)) {
+                return found.toArray();
+            }
+            candidate = lead.getHandle();
+        }
+    }
+
+    // One list with the rows of every word that starts with the prefix. Several lists get merged
+    // through a bitmap (one bit per handle), which stays linear however many words match
+    private PostingList startingWith(String prefix) {
+        PostingList only = null;
+        BitSet merged = null;
+        for (String word : words.subSet(prefix, true, prefix + Character.MAX_VALUE, false)) {
+            PostingList list = postings.get(word);
+            if (only == null && merged == null) {
+                only = list;
+                continue;
+            }
+            if (merged == null) {
+                merged = new BitSet(lastIndexed + 1);
+                mark(only, merged);
+            }
+            mark(list, merged);
+        }
+        if (merged == null) {
+            return only;
+        }
+        PostingList list = new PostingList();
+        for (int handle = merged.nextSetBit(0); handle >= 0; handle = merged.nextSetBit(handle + 1)) {
+            list.add(handle);
+        }
+        return list;
+    }
+
+    private static void mark(PostingList list, BitSet into) {
+        PostingList.Cursor cursor = list.cursor();
+        while (cursor.next()) {
+            into.set(cursor.getHandle());
+        }
+    }
+
+    // Two sorted handle arrays merged, without repeats
+    private static int[] union(int[] a, int[] b) {
+        if (a.length == 0) {
+            return b;
+        }
+        if (b.length == 0) {
+            return a;
+        }
+        int[] merged = new int[a.length + b.length];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < a.length || j < b.length) {
+            int next;
+            if (j >= b.length || (i < a.length && a[i] <= b[j])) {
+                next = a[i++];
+            } else {
+                next = b[j++];
+            }
+            if (count == 0 || merged[count - 1] != next) {
+                merged[count++] = next;
+            }
+        }
+        return Arrays.copyOf(merged, count);
+    }
+}
@@ -0,0 +1,54 @@
+/*
+    DurableFile class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AccessDeniedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+// Replaces a whole file so that after a crash (even a power cut) it's either the old file or the
+// complete new one. The new bytes go to a temp file that gets fsynced before it's renamed over the
+// old one, and then the folder is fsynced so the rename itself is on disk too. Only after that is
+// it safe to delete whatever the old file was standing in for (like the journal).
+public class DurableFile {
+
+    // What goes in the file
+    public interface Contents {
+        void writeTo(DataOutputStream out) throws IOException;
+    }
+
+    private DurableFile() {
+    }
+
+    public static void replace(Path path, Contents contents) throws IOException {
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                                    StandardOpenOption.TRUNCATE_EXISTING)) {
+            DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+            contents.writeTo(out);
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        syncDirectory(path);
+    }
+
+    // Fsyncs the folder a file is in, so a rename or a new file in it survives a crash
+    public static void syncDirectory(Path file) throws IOException {
+        Path directory = file.toAbsolutePath().getParent();
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (AccessDeniedException e) {
+            // Windows won't open a folder like this (and doesn't need it, the rename is already logged there)
+        }
+    }
+}
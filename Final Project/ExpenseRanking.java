@@ -0,0 +1,288 @@
+/*
+    ExpenseRanking class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.PriorityQueue;
+import java.util.TreeMap;
+
+// The biggest expenses, overall or for any run of months, without sorting the ledger. Every
+// expense row sits in two binary max-heaps (biggest amount on top): one for the whole ledger and
+// one for its month. Each row also remembers where it sits in both, so taking a row out is
+// O(log n), same trick as cancelling a bill in BillScheduler.
+//
+// Reading the top K doesn't change the heaps. A heap entry is never bigger than its parent, so
+// the reader walks down from the top(s) best-first with a small queue of candidates, and that's
+// O(K log K) (plus one candidate per month asked about) however big the ledger is.
+//
+// The heaps are only built the first time someone asks (one O(n) heapify per heap), so loading a
+// big snapshot or text file doesn't pay for them. From then on every add and remove keeps them
+// up to date.
+//
+// Expenses of the same size come out oldest first (smaller handle). Income rows aren't kept here.
+public class ExpenseRanking {
+
+    private final TransactionStore store;
+    private final Heap overall;
+    private final TreeMap<Integer, Heap> months;   // year * 12 + month - 1 -> that month's heap
+
+    // Indexed by row handle: where the row is in the overall heap and in its month's heap, -1 if it isn't
+    private int[] overallPosition;
+    private int[] monthPosition;
+
+    // False until the first question; the server's readers can ask at the same time, so the build
+    // is synchronized and this is volatile. Adds and removes come from the one writer
+    private volatile boolean built;
+
+    public ExpenseRanking(TransactionStore store) {
+        this.store = store;
+        overall = new Heap(true);
+        months = new TreeMap<>();
+        clear();
+    }
+
+    public void clear() {
+        overall.clear();
+        months.clear();
+        overallPosition = new int[16];
+        monthPosition = new int[16];
+        Arrays.fill(overallPosition, -1);
+        Arrays.fill(monthPosition, -1);
+        built = false;
+    }
+
+    // Rough memory use for the metrics: two positions per handle plus two heap slots per row
+    public long estimatedHeapBytes() {
+        return 8L * overallPosition.length + 8L * overall.size;
+    }
+
+    // The Ledger calls this for every row it indexes (income rows are just skipped)
+    public void add(int handle) {
+        if (!built || store.getAmountCents(handle) >= 0) {
+            return;
+        }
+        ensureCapacity(handle + 1);
+        if (overallPosition[handle] >= 0) {
+            return;
+        }
+        overall.insert(handle);
+        monthHeap(handle).insert(handle);
+    }
+
+    // The store still has a removed row's columns, so the month can be worked out again here
+    public void remove(int handle) {
+        if (!built || handle < 0 || handle >= overallPosition.length || overallPosition[handle] < 0) {
+            return;
+        }
+        overall.removeAt(overallPosition[handle]);
+
+        int yearMonth = DateKey.yearMonthOf(store.getEpochDay(handle));
+        Heap month = months.get(yearMonth);
+        month.removeAt(monthPosition[handle]);
+        if (month.size == 0) {
+            months.remove(yearMonth);
+        }
+    }
+
+    // Handles of the k biggest expenses in the whole ledger, biggest first
+    public int[] largest(int k) {
+        build();
+        return largest(k, Collections.singletonList(overall));
+    }
+
+    // Same, but only months fromYearMonth to toYearMonth (both included, numbered like DateKey.yearMonthOf)
+    public int[] largest(int fromYearMonth, int toYearMonth, int k) {
+        if (fromYearMonth > toYearMonth) {
+            return new int[0];
+        }
+        build();
+        return largest(k, months.subMap(fromYearMonth, true, toYearMonth, true).values());
+    }
+
+    // Best-first walk over one or more heaps. Each candidate is {which heap, position in it}; taking
+    // one out lets its two children in, so the queue never holds more than about 2K + (number of heaps)
+    private int[] largest(int k, Collection<Heap> heaps) {
+        ArrayList<Heap> sources = new ArrayList<>(heaps);
+        PriorityQueue<int[]> candidates = new PriorityQueue<>(
+                (a, b) -> order(sources.get(a[0]).handles[a[1]], sources.get(b[0]).handles[b[1]]));
+        long available = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).size > 0) {
+                candidates.add(new int[] {i, 0});
+                available += sources.get(i).size;
+            }
+        }
+
+        int[] top = new int[(int) Math.min(Math.max(k, 0), available)];
+        int count = 0;
+        while (count < top.length) {
+            int[] best = candidates.poll();
+            Heap heap = sources.get(best[0]);
+            top[count++] = heap.handles[best[1]];
+            int child = 2 * best[1] + 1;
+            if (child < heap.size) {
+                candidates.add(new int[] {best[0], child});
+            }
+            if (child + 1 < heap.size) {
+                candidates.add(new int[] {best[0], child + 1});
+            }
+        }
+        return top;
+    }
+
+    // Puts every live expense row in (ledger order, no sifting), then heapifies each heap bottom-up
+    private synchronized void build() {
+        if (built) {
+            return;
+        }
+        if (store.size() > 0) {
+            ensureCapacity(store.handleAt(store.size() - 1) + 1);   // handles are in order, so that's the biggest
+        }
+        for (int i = 0; i < store.size(); i++) {
+            int handle = store.handleAt(i);
+            if (store.getAmountCents(handle) < 0) {
+                overall.append(handle);
+                monthHeap(handle).append(handle);
+            }
+        }
+        overall.heapify();
+        for (Heap month : months.values()) {
+            month.heapify();
+        }
+        built = true;
+    }
+
+    // The heap for a row's month (a new one if it's the first expense that month)
+    private Heap monthHeap(int handle) {
+        int yearMonth = DateKey.yearMonthOf(store.getEpochDay(handle));
+        Heap month = months.get(yearMonth);
+        if (month == null) {
+            month = new Heap(false);
+            months.put(yearMonth, month);
+        }
+        return month;
+    }
+
+    // Negative if row a ranks above row b: the bigger expense (more negative cents), then the older row
+    private int order(int a, int b) {
+        long centsA = store.getAmountCents(a);
+        long centsB = store.getAmountCents(b);
+        if (centsA != centsB) {
+            return centsA < centsB ? -1 : 1;
+        }
+        return Integer.compare(a, b);
+    }
+
+    private void ensureCapacity(int handles) {
+        if (handles > overallPosition.length) {
+            int newCapacity = Math.max(handles, overallPosition.length * 2);
+            int oldLength = overallPosition.length;
+            overallPosition = Arrays.copyOf(overallPosition, newCapacity);
+            monthPosition = Arrays.copyOf(monthPosition, newCapacity);
+            Arrays.fill(overallPosition, oldLength, newCapacity, -1);
+            Arrays.fill(monthPosition, oldLength, newCapacity, -1);
+        }
+    }
+
+    // One binary max-heap of handles. The overall heap and the month heaps share the code and only
+    // differ in which position array they keep up to date
+    private final class Heap {
+        private final boolean whole;
+        private int[] handles;
+        private int size;
+
+        Heap(boolean whole) {
+            this.whole = whole;
+            handles = new int[16];
+        }
+
+        void clear() {
+            handles = new int[16];
+            size = 0;
+        }
+
+        void insert(int handle) {
+            append(handle);
+            siftUp(size - 1);
+        }
+
+        // Adds to the end without sifting (build() heapifies once everything is in)
+        void append(int handle) {
+            if (size == handles.length) {
+                handles = Arrays.copyOf(handles, handles.length * 2);
+            }
+            place(handle, size);
+            size++;
+        }
+
+        void heapify() {
+            for (int index = size / 2 - 1; index >= 0; index--) {
+                siftDown(index);
+            }
+        }
+
+        void removeAt(int index) {
+            int handle = handles[index];
+            size--;
+            setPosition(handle, -1);
+            if (index == size) {
+                return;
+            }
+            int last = handles[size];
+            place(last, index);
+            siftDown(index);
+            if (handles[index] == last) {
+                siftUp(index);
+            }
+        }
+
+        private void siftUp(int index) {
+            int handle = handles[index];
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (order(handle, handles[parent]) >= 0) {
+                    break;
+                }
+                place(handles[parent], index);
+                index = parent;
+            }
+            place(handle, index);
+        }
+
+        private void siftDown(int index) {
+            int handle = handles[index];
+            while (true) {
+                int child = 2 * index + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && order(handles[child + 1], handles[child]) < 0) {
+                    child++;
+                }
+                if (order(handles[child], handle) >= 0) {
+                    break;
+                }
+                place(handles[child], index);
+                index = child;
+            }
+            place(handle, index);
+        }
+
+        private void place(int handle, int index) {
+            handles[index] = handle;
+            setPosition(handle, index);
+        }
+
+        private void setPosition(int handle, int index) {
+            if (whole) {
+                overallPosition[handle] = index;
+            } else {
+                monthPosition[handle] = index;
+            }
+        }
+    }
+}
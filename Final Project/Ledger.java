@@ -3,62 +3,639 @@
     Name: Brenda Romero Torres
 */
 
-import java.util.LinkedList;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.TreeMap;
+import java.util.TreeSet;
 
 // This class keeps track of all transactions, kind of like a mini bank statement
 public class Ledger {
 
-    private LinkedList<Transaction> transactions;
+    // Timing for the hot paths (only kept with --metrics, see Metrics)
+    private static final Metrics.Timer ADD_TIMER = Metrics.timer("ledger_add_transaction");
+    private static final Metrics.Timer REMOVE_TIMER = Metrics.timer("ledger_remove_transaction");
+    private static final Metrics.Timer CATEGORY_TIMER = Metrics.timer("ledger_transactions_by_category");
+    private static final Metrics.Timer LARGEST_TIMER = Metrics.timer("ledger_largest_expenses");
+    private static final Metrics.Timer SEARCH_TIMER = Metrics.timer("ledger_search_descriptions");
+
+    // Marks a getLargestExpenses candidate from the live store (the others name their sealed year)
+    private static final long LIVE = Long.MAX_VALUE;
+
+    private TransactionStore store;
+
+    // Category -> rows, so filtering by category doesn't have to look at every row
+    private CategoryIndex categoryIndex;
+
+    // One partition per calendar month, sorted by date, so a monthly report only touches its own rows
+    private TreeMap<Integer, MonthPartition> partitions;
+
+    // Expense rows biggest first (overall and per month), for "largest expenses" without a sort
+    private ExpenseRanking largestExpenses;
+
+    // Word -> rows, so searching the descriptions doesn't read every row
+    private DescriptionIndex descriptionIndex;
+
+    // Shortcuts so adding rows doesn't look up the same category list or month over and over
+    private ArrayList<IntList> categoryRowsById;
+    private MonthPartition lastPartition;
+
+    // Bills that haven't been posted yet, earliest due date first
+    private BillScheduler bills;
+
+    // Closed years that were sealed into files of their own (see ColdSegment). Their rows aren't in
+    // the store; reports and exports that list those years page them in, while searches, category
+    // pages and the biggest expenses go through each year's index and only read the rows they give back
+    private final ColdStorage sealedYears;
 
     public Ledger() {
-        // LinkedList lets me add and remove easily while keeping order
-        transactions = new LinkedList<>();
+        // The store keeps rows in plain arrays, which is a lot lighter than a LinkedList of objects
+        store = new TransactionStore();
+        categoryIndex = new CategoryIndex();
+        partitions = new TreeMap<>();
+        largestExpenses = new ExpenseRanking(store);
+        descriptionIndex = new DescriptionIndex(store);
+        categoryRowsById = new ArrayList<>();
+        bills = new BillScheduler();
+        sealedYears = new ColdStorage();
     }
 
-    // Add a new transaction to the history
-    public void addTransaction(Transaction t) {
-        transactions.add(t);
+    // Add a new transaction to the history, the transaction remembers its handle afterwards
+    public int addTransaction(Transaction t) {
+        long started = Metrics.start();
+        int handle = store.add(t.getCategory(), TransactionStore.toCents(t.getAmount()),
+                               t.getDescription(), t.getEpochDay());
+        t.setHandle(handle);
+        indexRow(handle);
+        ADD_TIMER.stop(started);
+        return handle;
     }
 
-    // Show every transaction currently in the ledger
+    // Turns a scheduled bill's next occurrence into a real transaction; a one-off bill leaves the
+    // schedule and a repeating one moves on. Gives back the new transaction, or null if there's no such bill
+    public Transaction postBill(int billHandle) {
+        if (!bills.isScheduled(billHandle)) {
+            return null;
+        }
+        Transaction t = bills.toTransaction(billHandle);
+        bills.markPosted(billHandle);
+        addTransaction(t);
+        return t;
+    }
+
+    // Show every transaction currently in the ledger (buffered, not one println per row)
     public void showAllTransactions() {
-        System.out.println("\n--- Transaction History ---");
-        if (transactions.isEmpty()) {
-            System.out.println("No transactions yet.");
+        showTransactions(0, Integer.MAX_VALUE, false);
+    }
+
+    // Shows up to limit rows starting at a position, with "index: " in front if withIndex is on.
+    // Gives back how many rows were shown
+    public int showTransactions(int fromPosition, int limit, boolean withIndex) {
+        ReportRenderer renderer = new ReportRenderer();
+        renderer.line("\n--- Transaction History ---");
+        int shown = 0;
+        if (store.size() == 0) {
+            renderer.line("No transactions yet.");
         } else {
-            for (Transaction t : transactions) {
-                System.out.println(t);
-            }
+            shown = renderer.rows(store, fromPosition, limit, withIndex);
         }
+        renderer.flush();
+        return shown;
+    }
+
+    // Gives me a read-only view of the whole list when I need it elsewhere (nothing gets copied)
+    public List<Transaction> getTransactions() {
+        return store.asList();
     }
 
-    // Gives me access to the whole list when I need it elsewhere
-    public LinkedList<Transaction> getTransactions() {
-        return transactions;
+    // Lets other classes read the columns directly without building Transaction objects
+    public TransactionStore getStore() {
+        return store;
+    }
+
+    // Rows in the live ledger (what the menu numbers). Sealed years aren't counted, see getSealedYears
+    public int size() {
+        return store.size();
+    }
+
+    public ColdStorage getSealedYears() {
+        return sealedYears;
+    }
+
+    // The scheduled bills (they get saved with the ledger's snapshot and journal)
+    public BillScheduler getBills() {
+        return bills;
     }
 
     // Remove a transaction by index (used when the user picks a number in the menu)
     public Transaction removeTransaction(int index) {
-        if (index < 0 || index >= transactions.size()) {
+        if (index < 0 || index >= store.size()) {
             System.out.println("Invalid index. No transaction removed.");
             return null;
         }
-        Transaction removed = transactions.remove(index);
+        Transaction removed = removeAt(index);
         System.out.println("Removed transaction: " + removed);
         return removed;
     }
 
     // Remove a specific transaction object (used for undo)
     public boolean removeTransaction(Transaction t) {
-        boolean removed = transactions.remove(t);
+        boolean removed = t != null && removeHandle(t.getHandle());
         if (removed) {
             System.out.println("Removed transaction: " + t);
         }
         return removed;
     }
 
+    // Same as removeTransaction(int) but without printing anything (used when replaying the journal)
+    public Transaction removeAt(int index) {
+        long started = Metrics.start();
+        Transaction removed = store.getTransaction(store.handleAt(index));
+        store.removeAt(index);
+        unindexRow(removed.getHandle());
+        REMOVE_TIMER.stop(started);
+        return removed;
+    }
+
+    // Quiet remove by handle, returns false if that row is already gone
+    public boolean removeHandle(int handle) {
+        if (!store.remove(handle)) {
+            return false;
+        }
+        unindexRow(handle);
+        return true;
+    }
+
+    // Undo/redo: brings a removed row back under its old handle and in its old spot.
+    // Gives back its position, or -1 if that handle isn't a removed row
+    public int reviveHandle(int handle) {
+        int position = store.revive(handle);
+        if (position >= 0) {
+            indexRow(handle);
+        }
+        return position;
+    }
+
+    // Replaying an undone remove: revives a removed row's handle, but only if that brings it back at
+    // this position. Gives false (and changes nothing) if it wouldn't
+    public boolean reviveHandleAt(int handle, int position) {
+        if (store.revivePosition(handle) != position) {
+            return false;
+        }
+        reviveHandle(handle);
+        return true;
+    }
+
+    // Puts a row in at a position (replaying an undone remove whose handle is gone). Handles have to
+    // stay in ledger order, so the rows after it are taken off and added again behind it; recovery
+    // only does this when the remove was already in the snapshot, otherwise it uses reviveHandleAt
+    public void insertAt(int position, Transaction t) {
+        if (position >= store.size()) {
+            addTransaction(t);
+            return;
+        }
+        ArrayList<Transaction> after = new ArrayList<>(store.size() - position);
+        for (int i = position; i < store.size(); i++) {
+            after.add(store.getTransaction(store.handleAt(i)));
+        }
+        while (store.size() > position) {
+            removeAt(store.size() - 1);
+        }
+        addTransaction(t);
+        for (Transaction row : after) {
+            addTransaction(row);
+        }
+    }
+
+    // Where a row currently sits in the ledger (what the menu would number it), or -1 if it's gone
+    public int indexOf(Transaction t) {
+        return t == null ? -1 : store.positionOf(t.getHandle());
+    }
+
     // This lets me replace the whole list at once, which I use when loading from a file
-    public void setTransactions(LinkedList<Transaction> newList) {
-        transactions = newList;
+    // (sealed years go too, the list is everything now)
+    public void setTransactions(List<Transaction> newList) {
+        store.clear();
+        clearIndexes();
+        sealedYears.clear();
+        for (Transaction t : newList) {
+            addTransaction(t);
+        }
+    }
+
+    // Replaces everything with rows that were read column by column (used by the snapshot loader).
+    // categoryIds point into the categories array, and row i's description is the UTF-8 bytes
+    // from offsets[i] to offsets[i + 1] in textHeap (they stay as bytes until someone reads them)
+    public void loadColumns(String[] categories, long[] cents, int[] days, int[] categoryIds,
+                            byte[] textHeap, int[] offsets) {
+        store.clear();
+        clearIndexes();
+        sealedYears.clear();
+        appendColumns(categories, cents, days, categoryIds, cents.length, textHeap, offsets);
+    }
+
+    // Same as loadColumns but adds the first rowCount rows after the ones already here
+    // (the text loader hands over one chunk of the file at a time, in file order)
+    public void appendColumns(String[] categories, long[] cents, int[] days, int[] categoryIds, int rowCount,
+                              byte[] textHeap, int[] offsets) {
+        int[] idMap = new int[categories.length];
+        for (int i = 0; i < categories.length; i++) {
+            idMap[i] = store.defineCategory(categories[i]);
+        }
+
+        store.reserve(rowCount);
+        int heapBase = store.appendTextHeap(textHeap, 0, offsets[rowCount]);
+        for (int i = 0; i < rowCount; i++) {
+            int handle = store.addEncoded(idMap[categoryIds[i]], cents[i], heapBase + offsets[i],
+                                          offsets[i + 1] - offsets[i], days[i]);
+            indexRow(handle);
+        }
+    }
+
+    // Rows in one category (any capitalization), between two dates, one page at a time.
+    // Use Integer.MIN_VALUE / Integer.MAX_VALUE for the dates when there's no date limit.
+    // This only looks at that category's rows, not the whole ledger. Sealed years in the range come
+    // first (oldest first); their rows have handle -1, since they can't be removed, and only the
+    // ones on the page get read from the file
+    public List<Transaction> getTransactionsByCategory(String category, int fromDay, int toDay,
+                                                       int offset, int limit) {
+        long started = Metrics.start();
+        ArrayList<Transaction> page = new ArrayList<>();
+        int[] skip = {offset};
+        int looked = 0;
+        for (int year : sealedYearsBetween(fromDay, toDay)) {
+            if (page.size() >= limit) {
+                break;
+            }
+            looked += sealedYears.pageByCategory(year, category, fromDay, toDay, skip, limit, page);
+        }
+        if (page.size() < limit) {
+            looked += pageByCategory(category, fromDay, toDay, skip, limit, page);
+        }
+        CATEGORY_TIMER.stop(started, looked);
+        return page;
+    }
+
+    // Adds this ledger's matching rows to the page once skip[0] matches have gone by. Gives back how
+    // many rows of the category it looked at
+    private int pageByCategory(String category, int fromDay, int toDay, int[] skip, int limit,
+                               List<Transaction> page) {
+        IntList rows = categoryIndex.rowsFor(category);
+        int i = 0;
+        for (; i < rows.size() && page.size() < limit; i++) {
+            int handle = rows.get(i);
+            int day = store.getEpochDay(handle);
+            if (day < fromDay || day > toDay) {
+                continue;
+            }
+            if (skip[0] > 0) {
+                skip[0]--;
+                continue;
+            }
+            page.add(store.getTransaction(handle));
+        }
+        return i;
+    }
+
+    // Rows whose description matches a word search like "amazon OR walm*" (see DescriptionIndex),
+    // narrowed down by category and dates the same way. Sealed years in the range come first, then
+    // the live ledger, each in ledger order. The list reads the rows as it's asked for them (like
+    // getTransactions); rows from a sealed year have handle -1. A sealed year is searched in its
+    // index, so only the rows that get read off the list come out of its file
+    public List<Transaction> searchDescriptions(String query, String category, int fromDay, int toDay) {
+        long started = Metrics.start();
+        // The live ledger goes first so a bad query fails before any sealed year is looked at
+        IntList live = descriptionIndex.search(query, category, fromDay, toDay);
+        IntList years = new IntList(4);
+        ArrayList<IntList> found = new ArrayList<>();
+        int total = live.size();
+        for (int year : sealedYearsBetween(fromDay, toDay)) {
+            IntList rows = sealedYears.search(year, query, category, fromDay, toDay);
+            if (!rows.isEmpty()) {
+                years.add(year);
+                found.add(rows);
+                total += rows.size();
+            }
+        }
+        found.add(live);
+        SEARCH_TIMER.stop(started, total);
+        return rowsOf(years, found, total);
+    }
+
+    // How many rows the same filter would give in total (handy for "showing 1-20 of N")
+    public int countTransactionsByCategory(String category, int fromDay, int toDay) {
+        int count = 0;
+        for (int year : sealedYearsBetween(fromDay, toDay)) {
+            count += sealedYears.countByCategory(year, category, fromDay, toDay);
+        }
+        return count + countLiveByCategory(category, fromDay, toDay);
+    }
+
+    private int countLiveByCategory(String category, int fromDay, int toDay) {
+        IntList rows = categoryIndex.rowsFor(category);
+        if (fromDay == Integer.MIN_VALUE && toDay == Integer.MAX_VALUE) {
+            return rows.size();
+        }
+        int count = 0;
+        for (int i = 0; i < rows.size(); i++) {
+            int day = store.getEpochDay(rows.get(i));
+            if (day >= fromDay && day <= toDay) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    // The live partition for one month, or null if nothing happened that month (a sealed month
+    // isn't in here, use getPartitions for that)
+    public MonthPartition getPartition(int year, int month) {
+        return partitions.get(year * 12 + month - 1);
+    }
+
+    // Every partition from one month to another (both included), oldest first.
+    // The months are year * 12 + month - 1, same as DateKey.yearMonthOf.
+    // Sealed years in the range get paged in, so every partition has its rows. A month can show up
+    // twice (the sealed rows, then rows added after the year was sealed); each partition's
+    // handles and category ids go with its own store (MonthPartition.getStore)
+    public Collection<MonthPartition> getPartitions(int fromYearMonth, int toYearMonth) {
+        Collection<MonthPartition> live = getLivePartitions(fromYearMonth, toYearMonth);
+        List<Integer> years = sealedYears.yearsBetween(Math.floorDiv(fromYearMonth, 12), Math.floorDiv(toYearMonth, 12));
+        if (years.isEmpty()) {
+            return live;
+        }
+        ArrayList<MonthPartition> sealed = new ArrayList<>();
+        for (int year : years) {
+            sealed.addAll(sealedYears.rows(year).getLivePartitions(Math.max(fromYearMonth, year * 12),
+                                                                   Math.min(toYearMonth, year * 12 + 11)));
+        }
+        return mergeByMonth(sealed, live, false);
+    }
+
+    // Same, but sealed years only give their month totals (nothing gets paged in, and a month that's
+    // both sealed and live comes back as one totals-only partition). For reports that don't list rows
+    public Collection<MonthPartition> getMonthTotals(int fromYearMonth, int toYearMonth) {
+        Collection<MonthPartition> live = getLivePartitions(fromYearMonth, toYearMonth);
+        if (sealedYears.isEmpty()) {
+            return live;
+        }
+        return mergeByMonth(sealedYears.getMonthTotals(fromYearMonth, toYearMonth), live, true);
+    }
+
+    // Only the partitions of the rows that are in this ledger's store (sealed years left out)
+    public Collection<MonthPartition> getLivePartitions(int fromYearMonth, int toYearMonth) {
+        if (fromYearMonth > toYearMonth) {
+            return new ArrayList<>();
+        }
+        return partitions.subMap(fromYearMonth, true, toYearMonth, true).values();
+    }
+
+    // Every partition for one year
+    public Collection<MonthPartition> getPartitionsForYear(int year) {
+        return getPartitions(year * 12, year * 12 + 11);
+    }
+
+    // The k biggest expenses in the whole ledger, biggest first. Rows from sealed years have handle -1
+    public List<Transaction> getLargestExpenses(int k) {
+        return getLargestExpenses(Integer.MIN_VALUE, Integer.MAX_VALUE, k);
+    }
+
+    // Same, but only from one month to another (both included, numbered like getPartitions).
+    // Each sealed year's index and the live heaps give their own top k, and those get merged (same
+    // amount: older year first). Only the k that make it are read, so a sealed year's file is only
+    // touched for its winners
+    public List<Transaction> getLargestExpenses(int fromYearMonth, int toYearMonth, int k) {
+        long started = Metrics.start();
+        boolean allTime = fromYearMonth == Integer.MIN_VALUE && toYearMonth == Integer.MAX_VALUE;
+        // Each one is {cents, sealed year or LIVE, row in that year or live handle}
+        ArrayList<long[]> top = new ArrayList<>();
+        for (int year : sealedYears.yearsBetween(Math.floorDiv(fromYearMonth, 12), Math.floorDiv(toYearMonth, 12))) {
+            sealedYears.addLargestExpenses(year, fromYearMonth, toYearMonth, k, top);
+        }
+        int[] live = allTime ? largestExpenses.largest(k) : largestExpenses.largest(fromYearMonth, toYearMonth, k);
+        for (int handle : live) {
+            top.add(new long[] {store.getAmountCents(handle), LIVE, handle});
+        }
+        // A stable sort, so the same amount keeps the year order and each year's own order
+        top.sort(Comparator.comparingLong(candidate -> candidate[0]));
+        ArrayList<Transaction> largest = new ArrayList<>();
+        for (int i = 0; i < Math.min(Math.max(k, 0), top.size()); i++) {
+            long[] candidate = top.get(i);
+            largest.add(candidate[1] == LIVE ? store.getTransaction((int) candidate[2])
+                                             : sealedYears.rowAt((int) candidate[1], (int) candidate[2]));
+        }
+        LARGEST_TIMER.stop(started, largest.size());
+        return largest;
+    }
+
+    // Years that have rows in the live store, oldest first (the ones that could be sealed)
+    public TreeSet<Integer> getLiveYears() {
+        TreeSet<Integer> years = new TreeSet<>();
+        for (int yearMonth : partitions.keySet()) {
+            years.add(Math.floorDiv(yearMonth, 12));
+        }
+        return years;
+    }
+
+    // Handles of every live row in these years (what sealing them takes out of the store)
+    public BitSet getLiveRowsIn(Collection<Integer> years) {
+        BitSet rows = new BitSet();
+        for (int year : years) {
+            for (MonthPartition month : getLivePartitions(year * 12, year * 12 + 11)) {
+                for (int i = 0; i < month.size(); i++) {
+                    rows.set(month.handleAt(i));
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Hands years over to segments that were just written with their rows (LedgerPersistence.seal).
+    // remaining is this store packed without those rows; it takes the store's place, so the arrays
+    // and the text heap shrink to what's left. Handles start over, so the indexes are rebuilt (and
+    // anything holding an old handle, like the undo history, has to be cleared)
+    public void seal(List<ColdSegment> segments, TransactionStore remaining) {
+        useStore(remaining);
+        for (ColdSegment segment : segments) {
+            sealedYears.put(segment);
+        }
+    }
+
+    // Lets go of the removed rows nothing can bring back anymore. The store is packed down to the
+    // live rows plus the removed ones in keepRemoved (what undo can still reach), and the indexes
+    // are rebuilt for the new handles. Positions stay the same, handles don't: gives back the new
+    // handle for each old one (-1 for the rows that are gone)
+    public int[] pack(BitSet keepRemoved) {
+        BitSet kept = (BitSet) keepRemoved.clone();
+        for (int i = 0; i < store.size(); i++) {
+            kept.set(store.handleAt(i));
+        }
+        int[] newHandles = new int[store.getSlotCount()];
+        useStore(store.packed(kept, newHandles));
+        return newHandles;
+    }
+
+    private void useStore(TransactionStore replacement) {
+        store = replacement;
+        largestExpenses = new ExpenseRanking(store);
+        descriptionIndex = new DescriptionIndex(store);
+        clearIndexes();
+        for (int i = 0; i < store.size(); i++) {
+            indexRow(store.handleAt(i));
+        }
+    }
+
+    // Roughly how much memory the rows and the indexes take (for the metrics), sealed years included
+    public long estimatedHeapBytes() {
+        // Every row is in one category list and one month list, 4 bytes each
+        return store.estimatedHeapBytes() + 8L * store.size() + largestExpenses.estimatedHeapBytes()
+               + descriptionIndex.estimatedHeapBytes() + sealedYears.estimatedHeapBytes();
+    }
+
+    // Every partition in the ledger, oldest first (sealed years paged in, see getPartitions)
+    public Collection<MonthPartition> getAllPartitions() {
+        return getPartitions(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // Every month's totals, oldest first, without paging anything in (see getMonthTotals)
+    public Collection<MonthPartition> getAllMonthTotals() {
+        return getMonthTotals(Integer.MIN_VALUE, Integer.MAX_VALUE);
+    }
+
+    // The sealed years that overlap two dates (Integer.MIN_VALUE / MAX_VALUE for no limit)
+    private List<Integer> sealedYearsBetween(int fromDay, int toDay) {
+        if (sealedYears.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int fromYear = fromDay == Integer.MIN_VALUE ? Integer.MIN_VALUE : DateKey.yearOf(fromDay);
+        int toYear = toDay == Integer.MAX_VALUE ? Integer.MAX_VALUE : DateKey.yearOf(toDay);
+        return sealedYears.yearsBetween(fromYear, toYear);
+    }
+
+    // Two month-ordered lists into one (sealed first when both have the same month). With
+    // combine on, a month that's in both becomes one totals-only partition
+    private static List<MonthPartition> mergeByMonth(List<MonthPartition> sealed, Collection<MonthPartition> live,
+                                                     boolean combine) {
+        ArrayList<MonthPartition> merged = new ArrayList<>(sealed.size() + live.size());
+        int next = 0;
+        for (MonthPartition month : live) {
+            // Without combining, a sealed month goes in before the live one for the same month
+            while (next < sealed.size() && (sealed.get(next).getYearMonth() < month.getYearMonth()
+                   || !combine && sealed.get(next).getYearMonth() == month.getYearMonth())) {
+                merged.add(sealed.get(next++));
+            }
+            if (combine && next < sealed.size() && sealed.get(next).getYearMonth() == month.getYearMonth()) {
+                merged.add(combine(sealed.get(next++), month));
+            } else {
+                merged.add(month);
+            }
+        }
+        while (next < sealed.size()) {
+            merged.add(sealed.get(next++));
+        }
+        return merged;
+    }
+
+    // One month's sealed and live totals as one partition. The two stores number their categories
+    // differently, so the totals are matched up by name in a little dictionary of their own
+    private static MonthPartition combine(MonthPartition sealed, MonthPartition live) {
+        TransactionStore names = new TransactionStore(16);
+        long[] cents = new long[8];
+        for (MonthPartition month : new MonthPartition[] {sealed, live}) {
+            for (int id = 0; id < month.getCategorySlots(); id++) {
+                long amount = month.getCategoryCents(id);
+                if (amount == 0) {
+                    continue;
+                }
+                int merged = names.defineCategory(month.getStore().getCategoryName(id));
+                if (merged >= cents.length) {
+                    cents = Arrays.copyOf(cents, Math.max(merged + 1, cents.length * 2));
+                }
+                cents[merged] += amount;
+            }
+        }
+        return MonthPartition.totalsOnly(sealed.getYearMonth(), names, sealed.size() + live.size(),
+                                         sealed.getIncomeCents() + live.getIncomeCents(),
+                                         sealed.getExpenseCents() + live.getExpenseCents(), cents);
+    }
+
+    // A read-only list over matches in sealed years and then this ledger, in the order given (one
+    // row list per sealed year, the live handles last). It builds each Transaction when it's asked
+    // for; rows from sealed years get handle -1
+    private List<Transaction> rowsOf(IntList years, List<IntList> rows, int total) {
+        return new AbstractList<Transaction>() {
+            @Override
+            public Transaction get(int index) {
+                int at = index;
+                for (int t = 0; t < rows.size(); t++) {
+                    IntList found = rows.get(t);
+                    if (at < found.size()) {
+                        return t < years.size() ? sealedYears.rowAt(years.get(t), found.get(at))
+                                                : store.getTransaction(found.get(at));
+                    }
+                    at -= found.size();
+                }
+                throw new IndexOutOfBoundsException("Index " + index + " out of " + total);
+            }
+
+            @Override
+            public int size() {
+                return total;
+            }
+        };
+    }
+
+    private void clearIndexes() {
+        categoryIndex.clear();
+        partitions.clear();
+        largestExpenses.clear();
+        descriptionIndex.clear();
+        categoryRowsById.clear();
+        lastPartition = null;
+    }
+
+    // Keeps the category index and month partitions in step with a row that was just added
+    private void indexRow(int handle) {
+        int categoryId = store.getCategoryId(handle);
+        while (categoryRowsById.size() <= categoryId) {
+            categoryRowsById.add(categoryIndex.listFor(store.getCategoryName(categoryRowsById.size())));
+        }
+        CategoryIndex.addTo(categoryRowsById.get(categoryId), handle);
+
+        int yearMonth = DateKey.yearMonthOf(store.getEpochDay(handle));
+        MonthPartition partition = lastPartition;
+        if (partition == null || partition.getYearMonth() != yearMonth) {
+            partition = partitions.get(yearMonth);
+            if (partition == null) {
+                partition = new MonthPartition(yearMonth, store);
+                partitions.put(yearMonth, partition);
+            }
+            lastPartition = partition;
+        }
+        partition.add(handle, categoryId, store.getAmountCents(handle));
+        largestExpenses.add(handle);
+        descriptionIndex.add(handle);
+    }
+
+    // The store keeps a removed row's columns around, so I can still read them here
+    private void unindexRow(int handle) {
+        largestExpenses.remove(handle);
+        descriptionIndex.remove(handle);
+        int categoryId = store.getCategoryId(handle);
+        categoryIndex.remove(store.getCategoryName(categoryId), handle);
+
+        int yearMonth = DateKey.yearMonthOf(store.getEpochDay(handle));
+        MonthPartition partition = partitions.get(yearMonth);
+        if (partition != null) {
+            partition.remove(handle, categoryId, store.getAmountCents(handle));
+            if (partition.isEmpty()) {
+                partitions.remove(yearMonth);
+                lastPartition = null;
+            }
+        }
     }
 }
@@ -0,0 +1,580 @@
+/*
+    LedgerPersistence class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+
+// Keeps the ledger safe on disk: a snapshot of everything plus a journal of the changes made since.
+// The Budget's totals are checkpointed next to the snapshot, so loading doesn't re-add every row.
+//
+// - Every add/remove (and every scheduled bill change) goes into the journal right away (group-committed in the background).
+// - Once the journal gets big (or the user saves), it gets "compacted": the current journal is
+//   set aside, a fresh one starts, and a background thread writes a new snapshot and then
+//   deletes the old journal.
+// - Recovery loads the snapshot and replays only the journal records that came after it.
+// - Closed years can be sealed into compressed files of their own (see ColdSegment); the snapshot
+//   lists the ones it uses, and files no snapshot points at anymore get deleted after each save.
+public class LedgerPersistence implements Closeable {
+
+    public static final String SNAPSHOT_FILE = "budget_data.bin";
+    public static final String JOURNAL_FILE = "budget_journal.log";
+    public static final String OLD_JOURNAL_FILE = "budget_journal.old";
+    public static final String CHECKPOINT_FILE = "budget_totals.bin";
+
+    // Compact automatically once this many journal bytes pile up
+    private static final long COMPACT_AFTER_BYTES = 8L << 20;
+
+    // A save packs the ledger once this many removed rows pile up (and they're at least half of it)
+    private static final int PACK_AFTER_REMOVED = 4096;
+
+    // How long the group commit waits for more changes before one fsync
+    private static final long GROUP_COMMIT_MILLIS = 20;
+
+    private static final Metrics.Timer SAVE_TIMER = Metrics.timer("snapshot_save");
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("ledger_load");
+
+    private final Path snapshotPath;
+    private final Path journalPath;
+    private final Path oldJournalPath;
+    private final Path checkpointPath;
+
+    private volatile TransactionJournal journal;
+    private final ScheduledExecutorService scheduler;  // shared: group commits and compactions
+    private Future<?> compaction;
+    private CommandLog history;   // what undo can still reach (kept when the ledger gets packed)
+
+    // The scheduler is the one its AccountBook shares between every account (it isn't shut down here)
+    public LedgerPersistence(Path directory, ScheduledExecutorService scheduler) {
+        snapshotPath = directory.resolve(SNAPSHOT_FILE);
+        journalPath = directory.resolve(JOURNAL_FILE);
+        oldJournalPath = directory.resolve(OLD_JOURNAL_FILE);
+        checkpointPath = directory.resolve(CHECKPOINT_FILE);
+        this.scheduler = scheduler;
+    }
+
+    // The undo history that goes with the ledger, so packing keeps (and renumbers) the rows it needs
+    public void setHistory(CommandLog history) {
+        this.history = history;
+    }
+
+    public Path getSnapshotPath() {
+        return snapshotPath;
+    }
+
+    // True if there's anything on disk to recover from
+    public boolean hasSavedData() {
+        return Files.exists(snapshotPath) || Files.exists(journalPath) || Files.exists(oldJournalPath);
+    }
+
+    // True once recover() has run and changes are being journaled
+    public boolean isOpen() {
+        return journal != null;
+    }
+
+    // Replaces the ledger and budget with snapshot + checkpoint + journal tail and opens the journal
+    // for new changes. Gives back how many journal records had to be replayed
+    public int recover(Ledger ledger, Budget budget) throws IOException {
+        long started = Metrics.start();
+        if (Metrics.ENABLED) {
+            Metrics.bytesRead(sizeOf(snapshotPath) + sizeOf(checkpointPath) + sizeOf(oldJournalPath)
+                              + sizeOf(journalPath));
+        }
+        waitForCompaction();
+        if (journal != null) {
+            journal.close();
+            journal = null;
+        }
+        if (history != null) {
+            // Whatever it could undo belongs to the ledger that's being replaced
+            history.clear();
+        }
+
+        long sequence = 0;
+        if (Files.exists(snapshotPath)) {
+            sequence = SnapshotFile.read(ledger, snapshotPath);
+        } else {
+            ledger.setTransactions(new ArrayList<>());
+            ledger.getBills().clear();
+        }
+
+        // If the checkpoint belongs to this snapshot, the budget only has to catch up on the journal
+        boolean restored = false;
+        if (Files.exists(snapshotPath)) {
+            try {
+                restored = BudgetCheckpoint.read(budget, checkpointPath, sequence, ledger.size());
+            } catch (IOException | RuntimeException e) {
+                System.out.println("Could not read the budget checkpoint (" + e.getMessage() + "), recalculating.");
+            }
+        }
+        boolean budgetRestored = restored;
+
+        int[] replayed = new int[1];
+        IntList removedHandles = new IntList(); // rows removed during this replay, newest last
+        TransactionJournal.Listener replay = new TransactionJournal.Listener() {
+            @Override
+            public void onAdd(long seq, String category, long cents, int epochDay, String description) {
+                ledger.addTransaction(new Transaction(category, cents / 100.0, description, epochDay));
+                if (budgetRestored) {
+                    budget.addRow(category, cents, epochDay);
+                }
+                replayed[0]++;
+            }
+
+            @Override
+            public boolean onRemove(long seq, int position) {
+                if (!removeRow(seq, position)) {
+                    return false;
+                }
+                replayed[0]++;
+                return true;
+            }
+
+            @Override
+            public void onScheduleBill(long seq, int handle, String category, long cents, int dueDay,
+                                       String description, int unit, int every, int endDay, int times,
+                                       int anchorDay) {
+                BillScheduler bills = ledger.getBills();
+                bills.restore(handle, category, cents, description, dueDay, unit, every, endDay, times);
+                bills.setAnchorDay(handle, anchorDay);
+                replayed[0]++;
+            }
+
+            @Override
+            public void onCancelBill(long seq, int handle) {
+                ledger.getBills().cancel(handle);
+                replayed[0]++;
+            }
+
+            @Override
+            public void onRescheduleBill(long seq, int handle, int dueDay) {
+                ledger.getBills().reschedule(handle, dueDay);
+                replayed[0]++;
+            }
+
+            @Override
+            public boolean onRestore(long seq, int position, String category, long cents, int epochDay,
+                                     String description) {
+                if (position < 0 || position > ledger.size()) {
+                    return damaged(seq, position);
+                }
+                if (!reviveRemoved(position, category, cents, epochDay, description)) {
+                    // The remove happened before the snapshot, so its handle is gone (rare, and slow)
+                    ledger.insertAt(position, new Transaction(category, cents / 100.0, description, epochDay));
+                }
+                if (budgetRestored) {
+                    budget.addRow(category, cents, epochDay);
+                }
+                replayed[0]++;
+                return true;
+            }
+
+            @Override
+            public boolean onUnpostBill(long seq, int position, int handle, String category, long cents,
+                                        int dueDay, String description, int unit, int every, int endDay,
+                                        int times, int anchorDay) {
+                if (!removeRow(seq, position)) {
+                    return false;
+                }
+                BillScheduler bills = ledger.getBills();
+                bills.restore(handle, category, cents, description, dueDay, unit, every, endDay, times);
+                bills.setAnchorDay(handle, anchorDay);
+                replayed[0]++;
+                return true;
+            }
+
+            private boolean removeRow(long seq, int position) {
+                if (position < 0 || position >= ledger.size()) {
+                    return damaged(seq, position);
+                }
+                Transaction removed = ledger.removeAt(position);
+                removedHandles.add(removed.getHandle());
+                if (budgetRestored) {
+                    budget.removeTransaction(removed);
+                }
+                return true;
+            }
+
+            // An undone remove from earlier in this replay still has its row under the old handle, so
+            // it comes back the way a live undo does it (no rows get moved around)
+            private boolean reviveRemoved(int position, String category, long cents, int epochDay,
+                                          String description) {
+                TransactionStore store = ledger.getStore();
+                for (int i = removedHandles.size() - 1; i >= 0; i--) {
+                    int handle = removedHandles.get(i);
+                    String stored = store.getDescription(handle);
+                    if (store.getAmountCents(handle) == cents && store.getEpochDay(handle) == epochDay
+                            && store.getCategoryName(store.getCategoryId(handle)).equals(category)
+                            && description.equals(stored == null ? "" : stored)
+                            && ledger.reviveHandleAt(handle, position)) {
+                        removedHandles.removeAt(i);
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private boolean damaged(long seq, int position) {
+                System.out.println("The journal is damaged at change #" + seq + " (row " + (position + 1)
+                                   + " isn't in the ledger); that change and the ones after it are skipped.");
+                return false;
+            }
+
+            @Override
+            public void onPostBill(long seq, int handle) {
+                Transaction posted = ledger.postBill(handle);
+                if (posted != null && budgetRestored) {
+                    budget.addTransaction(posted);
+                }
+                replayed[0]++;
+            }
+        };
+
+        // The old journal only exists if a compaction didn't finish, so it always comes first
+        sequence = TransactionJournal.replay(oldJournalPath, sequence, replay);
+        sequence = TransactionJournal.replay(journalPath, sequence, replay);
+
+        if (!budgetRestored) {
+            // No usable checkpoint (first run with one, or it's from a different snapshot)
+            budget.rebuildFrom(ledger);
+        }
+
+        journal = new TransactionJournal(journalPath, sequence, scheduler, GROUP_COMMIT_MILLIS);
+
+        if (Files.exists(oldJournalPath)) {
+            // Leftover from a crash mid-compaction; fold everything into a fresh snapshot now
+            waitFor(compact(ledger, budget));
+        }
+        LOAD_TIMER.stop(started, ledger.size());
+        return replayed[0];
+    }
+
+    // ---------- logging changes (called right after the ledger changes) ----------
+
+    public void logAdd(Transaction t) {
+        try {
+            requireJournal().appendAdd(t.getCategory(), TransactionStore.toCents(t.getAmount()),
+                                       t.getEpochDay(), t.getDescription());
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    // position is where the row was in the ledger right before it was removed
+    public void logRemove(int position) {
+        try {
+            requireJournal().appendRemove(position);
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    // Undo of a remove put this row back at this position
+    public void logRestore(int position, Transaction t) {
+        try {
+            requireJournal().appendRestore(position, t.getCategory(), TransactionStore.toCents(t.getAmount()),
+                                           t.getEpochDay(), t.getDescription());
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    // Undo of a posted bill: the row at this position came out and the bill is back as it is now
+    public void logUnpostBill(int position, BillScheduler bills, int handle) {
+        try {
+            requireJournal().appendUnpostBill(position, handle, bills.getCategory(handle),
+                                              bills.getAmountCents(handle), bills.getDueDay(handle),
+                                              bills.getDescription(handle), bills.getUnit(handle),
+                                              bills.getInterval(handle), bills.getEndDay(handle),
+                                              bills.getRemaining(handle), bills.getAnchorDay(handle));
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    // A new bill was scheduled (call after BillScheduler.schedule)
+    public void logScheduleBill(BillScheduler bills, int handle) {
+        try {
+            requireJournal().appendScheduleBill(handle, bills.getCategory(handle), bills.getAmountCents(handle),
+                                                bills.getDueDay(handle), bills.getDescription(handle),
+                                                bills.getUnit(handle), bills.getInterval(handle),
+                                                bills.getEndDay(handle), bills.getRemaining(handle),
+                                                bills.getAnchorDay(handle));
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    public void logCancelBill(int handle) {
+        logBill(TransactionJournal.CANCEL_BILL, handle);
+    }
+
+    public void logRescheduleBill(int handle, int dueDay) {
+        try {
+            requireJournal().appendRescheduleBill(handle, dueDay);
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    // The bill was posted with Ledger.postBill (this one record covers both the new row and the bill
+    // leaving or moving on to its next occurrence)
+    public void logPostBill(int handle) {
+        logBill(TransactionJournal.POST_BILL, handle);
+    }
+
+    private void logBill(byte type, int handle) {
+        try {
+            requireJournal().appendBill(type, handle);
+        } catch (IOException e) {
+            System.out.println("Could not write to the journal: " + e.getMessage());
+        }
+    }
+
+    // Starts a background compaction if the journal has grown past the limit
+    public void maybeCompact(Ledger ledger, Budget budget) {
+        boolean busy = compaction != null && !compaction.isDone();
+        if (journal == null || busy || journal.sizeInBytes() < COMPACT_AFTER_BYTES) {
+            return;
+        }
+        try {
+            compact(ledger, budget);
+        } catch (IOException e) {
+            System.out.println("Could not compact the journal: " + e.getMessage());
+        }
+    }
+
+    // Sets the journal aside, starts a fresh one and writes a snapshot + budget checkpoint on the
+    // background thread. Copies are taken right here, so both can keep changing while it saves
+    public Future<?> compact(Ledger ledger, Budget budget) throws IOException {
+        TransactionJournal current = requireJournal();
+        try {
+            waitForCompaction();
+        } catch (IOException e) {
+            // The old journal is still there, so the leftover branch below redoes that work
+            System.out.println("The last background save failed (" + e.getMessage() + "), saving again now.");
+        }
+
+        current.close();
+        // Every compaction gets its own sequence number (one past the last record), so a snapshot
+        // and checkpoint always have a marker no other save shares, even after an import that
+        // replaced everything without journaling anything
+        long sequence = current.getLastSequence() + 1;
+        boolean leftover = Files.exists(oldJournalPath);
+        if (!leftover && Files.exists(journalPath)) {
+            Files.move(journalPath, oldJournalPath, StandardCopyOption.ATOMIC_MOVE);
+        }
+        packRemovedRows(ledger, budget);
+        TransactionStore copy = ledger.getStore().copyLive();
+        BillScheduler bills = ledger.getBills().copy();
+        Budget totals = budget.copy();
+        // Segments never change once written, so the list is all the copy they need
+        List<ColdSegment> sealed = new ArrayList<>(ledger.getSealedYears().getSegments());
+
+        if (leftover) {
+            // An earlier compaction never finished, so do this one right away and drop both journals
+            try {
+                writeSnapshot(copy, bills, totals, sealed, sequence);
+                Files.deleteIfExists(oldJournalPath);
+                Files.deleteIfExists(journalPath);
+            } finally {
+                // Even if the snapshot failed, keep journaling (it appends to whatever is still there)
+                journal = new TransactionJournal(journalPath, sequence, scheduler, GROUP_COMMIT_MILLIS);
+            }
+            compaction = CompletableFuture.completedFuture(null);
+            return compaction;
+        }
+
+        journal = new TransactionJournal(journalPath, sequence, scheduler, GROUP_COMMIT_MILLIS);
+        compaction = scheduler.submit(() -> {
+            writeSnapshot(copy, bills, totals, sealed, sequence);
+            Files.deleteIfExists(oldJournalPath);
+            return null;
+        });
+        return compaction;
+    }
+
+    // Moves every live row of these years into sealed year files (a year that's already sealed gets a
+    // new file with its old rows plus the new ones) and saves right away, so the snapshot and the
+    // journal only have the rows that are left. Gives back how many rows were sealed.
+    //
+    // The order keeps a crash safe at every step: the new segments are written first (the current
+    // snapshot doesn't know about them), then the snapshot that points at them replaces the old one,
+    // and only then are the journals and the old segments deleted. Positions in the ledger change
+    // (the undo history has to be cleared after this)
+    public int seal(Ledger ledger, Budget budget, Collection<Integer> years) throws IOException {
+        TransactionJournal current = requireJournal();
+        try {
+            waitForCompaction();
+        } catch (IOException e) {
+            // Everything is saved below anyway, both journals included
+            System.out.println("The last background save failed (" + e.getMessage() + "), saving again now.");
+        }
+
+        TreeSet<Integer> sealing = new TreeSet<>(years);
+        sealing.retainAll(ledger.getLiveYears());
+        if (sealing.isEmpty()) {
+            return 0;
+        }
+
+        ColdStorage sealedYears = ledger.getSealedYears();
+        Path directory = snapshotPath.toAbsolutePath().getParent();
+        ArrayList<ColdSegment> segments = new ArrayList<>();
+        for (int year : sealing) {
+            ArrayList<Ledger> sources = new ArrayList<>();
+            ColdSegment previous = sealedYears.get(year);
+            int generation = 1;
+            if (previous != null) {
+                sources.add(sealedYears.rows(year));
+                generation = previous.getGeneration() + 1;
+            }
+            sources.add(ledger);
+            segments.add(ColdSegment.write(directory.resolve(ColdSegment.fileName(year, generation)), year,
+                                           generation, sources));
+        }
+
+        BitSet dropped = ledger.getLiveRowsIn(sealing);
+        TransactionStore remaining = ledger.getStore().packedCopy(dropped);
+        // What the ledger will have after the swap: the sealed years that stay, plus the new ones
+        TreeSet<Integer> replaced = new TreeSet<>(sealing);
+        ArrayList<ColdSegment> sealedAfter = new ArrayList<>();
+        for (ColdSegment segment : sealedYears.getSegments()) {
+            if (!replaced.contains(segment.getYear())) {
+                sealedAfter.add(segment);
+            }
+        }
+        sealedAfter.addAll(segments);
+
+        current.close();
+        long sequence = current.getLastSequence() + 1;
+        try {
+            writeSnapshot(remaining, ledger.getBills().copy(), budget.copy(), sealedAfter, sequence);
+            Files.deleteIfExists(oldJournalPath);
+            Files.deleteIfExists(journalPath);
+        } finally {
+            journal = new TransactionJournal(journalPath, sequence, scheduler, GROUP_COMMIT_MILLIS);
+        }
+        compaction = CompletableFuture.completedFuture(null);
+
+        ledger.seal(segments, remaining);
+        // The totals didn't change, but cached reports can hold row positions that did
+        budget.getReportCache().clear();
+        return dropped.cardinality();
+    }
+
+    // Removed rows stay in the store so undo can bring them back, but the undo history only reaches
+    // the last few. Once enough pile up, the rest are let go of, which also gives every row a new
+    // handle (a long-running server would otherwise hold on to every row it ever removed)
+    private void packRemovedRows(Ledger ledger, Budget budget) {
+        TransactionStore store = ledger.getStore();
+        int removed = store.getSlotCount() - store.size();
+        if (removed < PACK_AFTER_REMOVED || removed < store.size()) {
+            return;
+        }
+        BitSet undoable = new BitSet();
+        if (history != null) {
+            history.addRowHandlesTo(undoable);
+        }
+        int[] newHandles = ledger.pack(undoable);
+        if (history != null) {
+            history.renumber(newHandles);
+        }
+        // Cached listings can show the old handles
+        budget.getReportCache().clear();
+    }
+
+    private void writeSnapshot(TransactionStore copy, BillScheduler bills, Budget totals,
+                               List<ColdSegment> sealed, long sequence) throws IOException {
+        long started = Metrics.start();
+        SnapshotFile.write(copy, bills, sealed, sequence, snapshotPath);
+        // The snapshot alone is enough to recover, so the checkpoint going second is safe
+        BudgetCheckpoint.write(totals, sequence, copy.size(), checkpointPath);
+        if (Metrics.ENABLED) {
+            Metrics.bytesWritten(sizeOf(snapshotPath) + sizeOf(checkpointPath));
+        }
+        deleteUnusedSegments(sealed);
+        SAVE_TIMER.stop(started, copy.size());
+    }
+
+    // Sealed year files the snapshot that was just written doesn't point at (older generations,
+    // or ones from a seal that crashed before its snapshot)
+    private void deleteUnusedSegments(List<ColdSegment> sealed) throws IOException {
+        Path directory = snapshotPath.toAbsolutePath().getParent();
+        TreeSet<String> used = new TreeSet<>();
+        for (ColdSegment segment : sealed) {
+            used.add(segment.getPath().getFileName().toString());
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (ColdSegment.isSegmentFile(name) && !used.contains(name)) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private static long sizeOf(Path path) throws IOException {
+        return Files.exists(path) ? Files.size(path) : 0;
+    }
+
+    // Waits for a compaction and turns its failure back into an IOException
+    public void waitFor(Future<?> task) throws IOException {
+        try {
+            task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while saving", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    public long snapshotSize() throws IOException {
+        return Files.exists(snapshotPath) ? Files.size(snapshotPath) : 0;
+    }
+
+    // Flushes the journal and waits for any compaction, so everything is on disk before exiting
+    @Override
+    public void close() throws IOException {
+        try {
+            waitForCompaction();
+        } finally {
+            TransactionJournal current = journal;
+            if (current != null) {
+                journal = null;
+                current.close();
+            }
+        }
+    }
+
+    private void waitForCompaction() throws IOException {
+        if (compaction != null) {
+            Future<?> running = compaction;
+            compaction = null;
+            waitFor(running);
+        }
+    }
+
+    private TransactionJournal requireJournal() throws IOException {
+        if (journal == null) {
+            throw new IOException("Journal is not open yet");
+        }
+        return journal;
+    }
+}
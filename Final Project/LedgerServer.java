@@ -0,0 +1,497 @@
+/*
+    LedgerServer class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.lang.reflect.Method;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// Server mode: the batch mode commands over HTTP, so a dashboard or another program on this
+// machine can use the ledger while it stays loaded.
+//
+//   java Main --serve [--port=8080] [--bind=127.0.0.1] [--dir=DIR] [--account=NAME]
+//
+// The path is the command and the options come from the query string or the body (a form, or a
+// flat JSON object). Answers are the same JSON objects batch mode prints:
+//   GET  /summary  /categories  /monthly  /report?month=3&year=2025  /range?from=1/1/2025&to=3/31/2025
+//   GET  /list?category=Food&limit=50  /search?q=amazon+OR+walm*&from=1/1/2025&limit=50
+//   GET  /bills  /upcoming?through=6/30/2025
+//   GET  /top-expenses?limit=10&year=2025&month=3  /top-categories?limit=5
+//   GET  /accounts  /all-summary  /all-categories  /all-range?from=1/1/2025&to=3/31/2025  /all-top-categories
+//   GET  /sealed
+//   POST /add  /remove  /undo  /redo  /schedule  /cancel-bill  /reschedule-bill  /process-bills  /save
+//   POST /seal?year=2023
+// Plus a few shorter names for the common ones:
+//   GET /transactions (list)    POST /transactions (add)    DELETE /transactions/7 (remove handle=7)
+// (a handle is good until the next save or seal, which can number the rows again)
+//   POST /bills (schedule)      DELETE /bills/3 (cancel-bill bill=3)      POST /bills/process
+// And GET /metrics gives the timings in the Prometheus text format when started with --metrics.
+//
+// Every request gets its own thread (a virtual thread on Java 21+). Reports run side by side under
+// a read lock; changes take the write lock, so they happen one at a time like in the menu.
+// The file commands (load, import, export) aren't offered, since they'd take paths on this machine.
+public class LedgerServer {
+
+    public static final int DEFAULT_PORT = 8080;
+
+    // Answers bigger than this start going out (chunked) before they're finished
+    private static final int STREAM_AFTER = 64 * 1024;
+
+    // Biggest request body we'll read
+    private static final int MAX_BODY = 1 << 20;
+
+    private static final Set<String> READS = new HashSet<>(Arrays.asList(
+            "list", "search", "summary", "categories", "monthly", "report", "range", "bills", "upcoming",
+            "top-expenses", "top-categories", "accounts", "all-summary", "all-categories", "all-range",
+            "all-top-categories", "sealed"));
+    private static final Set<String> WRITES = new HashSet<>(Arrays.asList(
+            "add", "remove", "undo", "redo", "schedule", "cancel-bill", "reschedule-bill", "process-bills", "save",
+            "seal"));
+
+    private final AccountBook book;
+    private final AccountBook.Account account;   // the one the commands change
+    private final ReentrantReadWriteLock state;
+    private final AtomicInteger requests;
+    private HttpServer server;
+    private Thread stopHook;
+    private boolean stopped;                     // set under the write lock once the book is closed
+
+    public LedgerServer(Path directory, String accountName) {
+        book = new AccountBook(directory);
+        account = book.getAccount(accountName);
+        state = new ReentrantReadWriteLock();
+        requests = new AtomicInteger();
+    }
+
+    // Entry point from Main. Returns once the server is listening; it runs until the app is stopped
+    public static void main(String[] args) throws IOException {
+        int port = DEFAULT_PORT;
+        String bind = "127.0.0.1";
+        Path directory = Paths.get(".");
+        String accountName = AccountBook.MAIN_ACCOUNT;
+        for (String arg : args) {
+            if (arg.startsWith("--port=")) {
+                port = Integer.parseInt(arg.substring("--port=".length()));
+            } else if (arg.startsWith("--bind=")) {
+                bind = arg.substring("--bind=".length());
+            } else if (arg.startsWith("--dir=")) {
+                directory = Paths.get(arg.substring("--dir=".length()));
+            } else if (arg.startsWith("--account=")) {
+                accountName = arg.substring("--account=".length());
+            }
+        }
+
+        LedgerServer server = new LedgerServer(directory, accountName);
+        InetSocketAddress address = server.start(new InetSocketAddress(InetAddress.getByName(bind), port));
+        System.out.println("Serving " + server.account.getLedger().size() + " transactions ("
+                           + server.account.getName() + ") on http://"
+                           + address.getHostString() + ":" + address.getPort() + "/ (Ctrl+C to stop)");
+    }
+
+    // Loads the saved data and starts answering. Gives back the address it's listening on
+    // (useful with port 0, which picks any free port)
+    public InetSocketAddress start(InetSocketAddress address) throws IOException {
+        account.load();
+
+        server = HttpServer.create(address, 0);
+        server.createContext("/", this::handle);
+        server.setExecutor(requestThreads());
+        server.start();
+
+        // Ctrl+C: let running requests finish, then get the journal onto disk. This is the only
+        // hook: the book's own would close the journals without the write lock, under a running request
+        book.removeShutdownHook();
+        stopHook = new Thread(this::stop, "server-stop");
+        Runtime.getRuntime().addShutdownHook(stopHook);
+        return server.getAddress();
+    }
+
+    // The one way the book gets closed in server mode (Ctrl+C ends up here too)
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+        if (stopHook != null && Thread.currentThread() != stopHook) {
+            try {
+                Runtime.getRuntime().removeShutdownHook(stopHook);
+            } catch (IllegalStateException e) {
+                // The JVM is exiting and the hook is on its way anyway
+            }
+        }
+        state.writeLock().lock();
+        try {
+            if (!stopped) {
+                stopped = true;
+                book.close();
+            }
+        } catch (IOException e) {
+            System.err.println("Could not finish saving: " + e.getMessage());
+        } finally {
+            state.writeLock().unlock();
+        }
+    }
+
+    // One virtual thread per request where the JDK has them (21+). It's looked up by name so this
+    // still builds on 17, which gets a normal thread pool instead
+    private static ExecutorService requestThreads() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            return Executors.newCachedThreadPool(task -> {
+                Thread thread = new Thread(task, "http-request");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+    }
+
+    // ---------- one request ----------
+
+    private void handle(HttpExchange exchange) throws IOException {
+        int request = requests.incrementAndGet();
+        ResponseStream body = new ResponseStream(exchange);
+        Writer out = new BufferedWriter(new OutputStreamWriter(body, StandardCharsets.UTF_8), 8192);
+        exchange.getResponseHeaders().set("Content-Type", "application/json; charset=utf-8");
+
+        String command = "";
+        try {
+            String method = exchange.getRequestMethod().toUpperCase(Locale.ROOT);
+            String[] path = exchange.getRequestURI().getRawPath().substring(1).split("/");
+
+            HashMap<String, String> options = new HashMap<>();
+            readForm(exchange.getRequestURI().getRawQuery(), options);
+            if (!method.equals("GET")) {
+                readBody(exchange, options);
+            }
+
+            if (path.length == 1 && path[0].equals("metrics") && method.equals("GET")) {
+                command = path[0];
+                metrics(exchange, out, body, request);
+                return;
+            }
+
+            command = command(method, path, options);
+            if (command == null) {
+                command = path[0];
+                fail(out, body, request, command, 404, "No such command: /" + String.join("/", path));
+                return;
+            }
+            boolean reading = READS.contains(command);
+            if (reading != method.equals("GET")) {
+                exchange.getResponseHeaders().set("Allow", reading ? "GET" : "POST");
+                fail(out, body, request, command, 405, command + " needs " + (reading ? "GET." : "POST."));
+                return;
+            }
+
+            // The whole answer gets written while the lock is held, so it's all from one moment
+            BatchRunner runner = new BatchRunner(book, account, out, true);
+            Lock lock = reading ? state.readLock() : state.writeLock();
+            boolean ok;
+            lock.lock();
+            try {
+                if (stopped) {
+                    // Got in line before stop() closed the book
+                    fail(out, body, request, command, 503, "The server is stopping.");
+                    return;
+                }
+                ok = runner.runCommand(request, command, options);
+                out.flush();
+            } finally {
+                lock.unlock();
+            }
+            body.finish(ok ? 200 : 400);
+        } catch (IllegalArgumentException e) {
+            // A body or query string we couldn't read
+            fail(out, body, request, command, 400, e.getMessage());
+        } finally {
+            exchange.close();
+        }
+    }
+
+    // Which batch command a method + path means (null if none). Fills in the id from paths like /bills/3
+    private static String command(String method, String[] path, Map<String, String> options) {
+        String name = path[0].toLowerCase(Locale.ROOT);
+        if (name.equals("transactions")) {
+            if (path.length == 1) {
+                return method.equals("POST") ? "add" : "list";
+            }
+            if (path.length == 2 && method.equals("DELETE")) {
+                options.put("handle", path[1]);
+                return "remove";
+            }
+        } else if (name.equals("bills")) {
+            if (path.length == 1) {
+                return method.equals("POST") ? "schedule" : "bills";
+            }
+            if (path.length == 2 && path[1].equals("process")) {
+                return "process-bills";
+            }
+            if (path.length == 2 && method.equals("DELETE")) {
+                options.put("bill", path[1]);
+                return "cancel-bill";
+            }
+        } else if (path.length == 1 && (READS.contains(name) || WRITES.contains(name))) {
+            return name;
+        }
+        return null;
+    }
+
+    // The same text the --metrics file gets. The read lock keeps the per-account numbers steady
+    private void metrics(HttpExchange exchange, Writer out, ResponseStream body, int request) throws IOException {
+        if (!Metrics.ENABLED) {
+            fail(out, body, request, "metrics", 404, "Metrics are off (start the server with --metrics).");
+            return;
+        }
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+        state.readLock().lock();
+        try {
+            Metrics.writeText(out);
+            out.flush();
+        } finally {
+            state.readLock().unlock();
+        }
+        body.finish(200);
+    }
+
+    // An error answer shaped like batch mode's ("ok":false)
+    private static void fail(Writer out, ResponseStream body, int request, String command, int status,
+                             String message) throws IOException {
+        out.write("{\"line\":" + request + ",\"command\":" + BatchRunner.jsonString(command) + ",\"ok\":false,\"error\":"
+                  + BatchRunner.jsonString(String.valueOf(message)) + "}\n");
+        out.flush();
+        body.finish(status);
+    }
+
+    // ---------- reading options ----------
+
+    private static void readBody(HttpExchange exchange, Map<String, String> options) throws IOException {
+        byte[] bytes = exchange.getRequestBody().readNBytes(MAX_BODY + 1);
+        if (bytes.length > MAX_BODY) {
+            throw new IllegalArgumentException("Request body is too big.");
+        }
+        String text = new String(bytes, StandardCharsets.UTF_8).trim();
+        if (text.isEmpty()) {
+            return;
+        }
+        String type = exchange.getRequestHeaders().getFirst("Content-Type");
+        if (text.startsWith("{") || (type != null && type.toLowerCase(Locale.ROOT).contains("json"))) {
+            readJson(text, options);
+        } else {
+            readForm(text, options);
+        }
+    }
+
+    // a=1&b=two+words (a query string or a form body)
+    private static void readForm(String text, Map<String, String> options) {
+        if (text == null || text.isEmpty()) {
+            return;
+        }
+        for (String pair : text.split("&")) {
+            if (pair.isEmpty()) {
+                continue;
+            }
+            int equals = pair.indexOf('=');
+            String key = equals < 0 ? pair : pair.substring(0, equals);
+            String value = equals < 0 ? "" : pair.substring(equals + 1);
+            options.put(URLDecoder.decode(key, StandardCharsets.UTF_8).toLowerCase(Locale.ROOT),
+                        URLDecoder.decode(value, StandardCharsets.UTF_8));
+        }
+    }
+
+    // A flat JSON object like {"category":"Food","amount":-12.5}. Nested objects and arrays aren't
+    // options anything takes, so they're turned away; null values are skipped
+    private static void readJson(String text, Map<String, String> options) {
+        int[] at = {skipSpace(text, 0)};
+        expect(text, at, '{');
+        if (peek(text, at) == '}') {
+            at[0]++;
+        } else {
+            while (true) {
+                String key = jsonString(text, at);
+                expect(text, at, ':');
+                String value;
+                char c = peek(text, at);
+                if (c == '"') {
+                    value = jsonString(text, at);
+                } else if (c == '{' || c == '[') {
+                    throw new IllegalArgumentException("\"" + key + "\" can't be an object or a list.");
+                } else {
+                    int start = at[0];
+                    while (at[0] < text.length() && ",} \t\r\n".indexOf(text.charAt(at[0])) < 0) {
+                        at[0]++;
+                    }
+                    value = text.substring(start, at[0]);
+                    if (value.isEmpty()) {
+                        throw new IllegalArgumentException("Missing value for \"" + key + "\".");
+                    }
+                }
+                if (!value.equals("null") || c == '"') {
+                    options.put(key.toLowerCase(Locale.ROOT), value);
+                }
+                if (peek(text, at) == ',') {
+                    at[0]++;
+                    continue;
+                }
+                expect(text, at, '}');
+                break;
+            }
+        }
+        if (skipSpace(text, at[0]) != text.length()) {
+            throw new IllegalArgumentException("Unexpected text after the JSON object.");
+        }
+    }
+
+    private static String jsonString(String text, int[] at) {
+        expect(text, at, '"');
+        StringBuilder sb = new StringBuilder();
+        while (at[0] < text.length()) {
+            char c = text.charAt(at[0]++);
+            if (c == '"') {
+                return sb.toString();
+            }
+            if (c != '\\') {
+                sb.append(c);
+                continue;
+            }
+            if (at[0] >= text.length()) {
+                break;
+            }
+            char escaped = text.charAt(at[0]++);
+            switch (escaped) {
+                case 'n':
+                    sb.append('\n');
+                    break;
+                case 't':
+                    sb.append('\t');
+                    break;
+                case 'r':
+                    sb.append('\r');
+                    break;
+                case 'b':
+                    sb.append('\b');
+                    break;
+                case 'f':
+                    sb.append('\f');
+                    break;
+                case 'u':
+                    if (at[0] + 4 > text.length()) {
+                        throw new IllegalArgumentException("Bad \\u escape in the JSON body.");
+                    }
+                    try {
+                        sb.append((char) Integer.parseInt(text.substring(at[0], at[0] + 4), 16));
+                    } catch (NumberFormatException e) {
+                        throw new IllegalArgumentException("Bad \\u escape in the JSON body.");
+                    }
+                    at[0] += 4;
+                    break;
+                default:
+                    sb.append(escaped); // \" \\ \/
+            }
+        }
+        throw new IllegalArgumentException("Unfinished string in the JSON body.");
+    }
+
+    private static void expect(String text, int[] at, char wanted) {
+        if (peek(text, at) != wanted) {
+            throw new IllegalArgumentException("Expected '" + wanted + "' in the JSON body.");
+        }
+        at[0]++;
+    }
+
+    // Skips spaces, then gives back the next character (0 at the end)
+    private static char peek(String text, int[] at) {
+        at[0] = skipSpace(text, at[0]);
+        return at[0] < text.length() ? text.charAt(at[0]) : 0;
+    }
+
+    private static int skipSpace(String text, int i) {
+        while (i < text.length() && Character.isWhitespace(text.charAt(i))) {
+            i++;
+        }
+        return i;
+    }
+
+    // ---------- the response body ----------
+
+    // Holds the answer until it's done, so a short one goes out with its real status and length.
+    // A long listing doesn't wait: once it passes STREAM_AFTER it's sent as a chunked 200 while
+    // the rest is still being written (only a command that already worked gets that far)
+    private static final class ResponseStream extends OutputStream {
+        private final HttpExchange exchange;
+        private final byte[] buffer;
+        private int count;
+        private OutputStream body;   // set once the headers have gone out
+
+        ResponseStream(HttpExchange exchange) {
+            this.exchange = exchange;
+            buffer = new byte[STREAM_AFTER];
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            if (body == null && count == buffer.length) {
+                startStreaming();
+            }
+            if (body != null) {
+                body.write(b);
+            } else {
+                buffer[count++] = (byte) b;
+            }
+        }
+
+        @Override
+        public void write(byte[] bytes, int offset, int length) throws IOException {
+            if (body == null && count + length > buffer.length) {
+                startStreaming();
+            }
+            if (body != null) {
+                body.write(bytes, offset, length);
+            } else {
+                System.arraycopy(bytes, offset, buffer, count, length);
+                count += length;
+            }
+        }
+
+        // Sends whatever is left. The status only counts if nothing has gone out yet
+        void finish(int status) throws IOException {
+            if (body == null) {
+                exchange.sendResponseHeaders(status, count == 0 ? -1 : count);
+                body = exchange.getResponseBody();
+                body.write(buffer, 0, count);
+                count = 0;
+            }
+            body.close();
+        }
+
+        private void startStreaming() throws IOException {
+            exchange.sendResponseHeaders(200, 0);
+            body = exchange.getResponseBody();
+            body.write(buffer, 0, count);
+            count = 0;
+        }
+    }
+}
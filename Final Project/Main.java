@@ -20,16 +20,17 @@
      to use throughout the development process.
 */
 
-import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.LinkedList;
-import java.util.Queue;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Scanner;
-import java.util.Stack;
+import java.util.SortedSet;
 
 // Main class that runs the whole Personal Finance Budget App
 public class Main {
@@ -41,20 +42,56 @@ public class Main {
     public static final String YELLOW = "\u001B[33m";
     public static final String CYAN = "\u001B[36m";
 
+    // The text file used for import/export (the snapshot and journal names live in LedgerPersistence)
+    static final String TEXT_FILE = "budget_data.txt";
+
+    // How many rows to show at once when a list could get long
+    private static final int PAGE_SIZE = 20;
+
     public static void main(String[] args) {
+        // "--metrics" has to be looked at before anything else touches the Metrics class
+        startMetrics(args);
+
+        // "--batch" skips the menu and runs commands from a script or stdin (see BatchRunner)
+        if (Arrays.asList(args).contains("--batch")) {
+            try {
+                System.exit(BatchRunner.main(args));
+            } catch (IOException e) {
+                System.err.println("Batch mode failed: " + e);
+                System.exit(2);
+            }
+        }
+        // "--serve" answers the same commands over HTTP instead (see LedgerServer)
+        if (Arrays.asList(args).contains("--serve")) {
+            try {
+                LedgerServer.main(args);
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not start the server: " + e);
+                System.exit(2);
+            }
+            return;
+        }
+
         Scanner scanner = new Scanner(System.in);
 
-        Ledger ledger = new Ledger();
-        Budget budget = new Budget();
+        // Every account has its own ledger, budget, undo history and files (see AccountBook).
+        // "main" keeps its snapshot + journal right in the working directory like before
+        AccountBook book = new AccountBook(Paths.get("."));
+        AccountBook.Account account = book.getAccount(startingAccount(args));
 
-        Stack<Transaction> undoStack = new Stack<>();
-        Queue<Transaction> scheduledBills = new LinkedList<>();
+        Ledger ledger = account.getLedger();
+        Budget budget = account.getBudget();
+        CommandLog history = account.getHistory();            // undo/redo for this session (capped)
+        LedgerPersistence persistence = account.getPersistence(); // every change gets journaled as it happens
 
         // App header
         System.out.println(CYAN + "=========================================" + RESET);
         System.out.println(CYAN + "        Personal Finance Budget App      " + RESET);
         System.out.println(CYAN + "=========================================" + RESET);
 
+        // Pick up where the last session left off (snapshot + whatever the journal has after it)
+        openAccount(account);
+
         boolean running = true;
 
         // Shows menu once at the start
@@ -69,37 +106,37 @@ public class Main {
                 continue;
             }
 
+            long started = Metrics.start();
             switch (choice) {
                 case "1":
-                    addTransaction(scanner, ledger, budget, undoStack);
+                    addTransaction(scanner, ledger, budget, history, persistence);
                     break;
 
                 case "2":
-                    ledger.showAllTransactions();
+                    viewAllTransactions(scanner, ledger);
                     break;
 
                 case "3":
                     budget.showSummary();
-                    // This line uses my recursive method to double-check total expenses
-                    double recursiveTotal =
-                        budget.calculateTotalSpendingRecursive(ledger.getTransactions());
-                    System.out.println("Total expenses (detailed calculation): $" + recursiveTotal);
+                    // This line uses my recursive (divide and conquer) method to double-check total expenses
+                    double recursiveTotal = budget.calculateTotalSpendingRecursive(ledger);
+                    System.out.printf("Total expenses (detailed calculation): $%.2f%n", recursiveTotal);
                     break;
 
                 case "4":
-                    removeTransaction(scanner, ledger, budget, undoStack);
+                    removeTransaction(scanner, ledger, budget, history, persistence);
                     break;
 
                 case "5":
-                    undoLastTransaction(ledger, budget, undoStack);
+                    undoLastChange(ledger, budget, history, persistence);
                     break;
 
                 case "6":
-                    scheduleBill(scanner, scheduledBills);
+                    scheduleBill(scanner, ledger, persistence);
                     break;
 
                 case "7":
-                    processScheduledBills(ledger, budget, scheduledBills, undoStack);
+                    processScheduledBills(scanner, ledger, budget, history, persistence);
                     break;
 
                 case "8":
@@ -111,11 +148,11 @@ public class Main {
                     break;
 
                 case "10":
-                    saveData(ledger);
+                    saveData(ledger, budget, persistence);
                     break;
 
                 case "11":
-                    loadData(ledger, budget, undoStack);
+                    loadData(ledger, budget, history, persistence);
                     break;
 
                 case "12":
@@ -123,13 +160,78 @@ public class Main {
                     break;
 
                 case "13":
+                    closeAccounts(book);
                     System.out.println(CYAN + "Goodbye, thanks for using the app." + RESET);
                     running = false;
                     break;
 
+                case "14":
+                    viewRangeTotals(scanner, budget);
+                    break;
+
+                case "15":
+                    viewYearReport(scanner, ledger, budget);
+                    break;
+
+                case "16":
+                    exportText(ledger);
+                    break;
+
+                case "17":
+                    importText(ledger, budget, history, persistence);
+                    break;
+
+                case "18":
+                    importStatement(scanner, ledger, budget, history, persistence);
+                    break;
+
+                case "19":
+                    manageScheduledBills(scanner, ledger, persistence);
+                    break;
+
+                case "20":
+                    viewUpcomingBills(scanner, ledger);
+                    break;
+
+                case "21":
+                    redoLastChange(ledger, budget, history, persistence);
+                    break;
+
+                case "22":
+                    // Everything below works on whichever account is picked; the old one stays open
+                    account = switchAccount(scanner, book, account);
+                    ledger = account.getLedger();
+                    budget = account.getBudget();
+                    history = account.getHistory();
+                    persistence = account.getPersistence();
+                    break;
+
+                case "23":
+                    viewAllAccounts(book);
+                    break;
+
+                case "24":
+                    showPerformanceStats();
+                    break;
+
+                case "25":
+                    viewLargestExpenses(scanner, ledger, budget);
+                    break;
+
+                case "26":
+                    searchTransactions(scanner, ledger);
+                    break;
+
+                case "27":
+                    sealPastYears(scanner, ledger, budget, history, persistence);
+                    break;
+
                 default:
                     System.out.println(RED + "Invalid input. Type 'menu' to see options." + RESET);
+                    continue;
             }
+            // (this includes the time spent typing at the prompts)
+            Metrics.commandDone("menu_" + choice, started);
         }
 
         scanner.close();
@@ -143,22 +245,59 @@ public class Main {
         System.out.println("2. View all transactions");
         System.out.println("3. View budget summary");
         System.out.println("4. Remove a transaction");
-        System.out.println("5. Undo last added transaction");
-        System.out.println("6. Schedule a future bill");
-        System.out.println("7. Process scheduled bills");
+        System.out.println("5. Undo last change");
+        System.out.println("6. Schedule a future or repeating bill");
+        System.out.println("7. Process bills that are due");
         System.out.println("8. View monthly report");
         System.out.println("9. View monthly totals");
         System.out.println("10. Save data to file");
         System.out.println("11. Load data from file");
         System.out.println("12. View transactions by category");
+        System.out.println("14. View totals between two dates");
+        System.out.println("15. View yearly report");
+        System.out.println("16. Export data to text file");
+        System.out.println("17. Import data from text file");
+        System.out.println("18. Import a bank/CSV statement");
+        System.out.println("19. View, cancel or reschedule future bills");
+        System.out.println("20. Preview upcoming bills");
+        System.out.println("21. Redo last undone change");
+        System.out.println("22. Switch account");
+        System.out.println("23. Summary across all accounts");
+        System.out.println("24. Show performance stats");
+        System.out.println("25. View largest expenses and top categories");
+        System.out.println("26. Search transactions by description");
+        System.out.println("27. Seal past years (keeps old years in compressed files)");
         System.out.println("13. Exit");
         System.out.println(YELLOW + "-----------------------------------------" + RESET);
     }
 
+    // ================== VIEW ALL TRANSACTIONS ==================
+    // One page at a time, so a big ledger doesn't flood the console
+    private static void viewAllTransactions(Scanner scanner, Ledger ledger) {
+        int pageStart = 0;
+        while (true) {
+            int shown = ledger.showTransactions(pageStart, PAGE_SIZE, false);
+            pageStart += shown;
+            if (pageStart >= ledger.size()) {
+                return;
+            }
+            System.out.print("Showing " + pageStart + " of " + ledger.size()
+                             + ". Press Enter for more, 'a' for all the rest, or 'q' to stop: ");
+            String input = scanner.nextLine().trim();
+            if (input.equalsIgnoreCase("q")) {
+                return;
+            }
+            if (input.equalsIgnoreCase("a")) {
+                ledger.showTransactions(pageStart, Integer.MAX_VALUE, false);
+                return;
+            }
+        }
+    }
+
     // ================== ADD TRANSACTION ==================
     // Lets the user add a new income or expense
     private static void addTransaction(Scanner scanner, Ledger ledger, Budget budget,
-                                       Stack<Transaction> undoStack) {
+                                       CommandLog history, LedgerPersistence persistence) {
 
         System.out.print("Enter category (for example: Food, Bills, Income): ");
         String category = scanner.nextLine();
@@ -206,17 +345,24 @@ public class Main {
         System.out.print("Enter description: ");
         String description = scanner.nextLine();
 
+        // Keep asking until the date can actually be read, so every row has a real month and year
         System.out.print("Enter date (for example: 11/03/2025): ");
-        String date = scanner.nextLine();
+        String date = scanner.nextLine().trim();
+        while (!isValidDate(date)) {
+            System.out.print(RED + "Invalid date. Enter it as M/D/YYYY (for example: 11/03/2025): " + RESET);
+            date = scanner.nextLine().trim();
+        }
 
         Transaction t = new Transaction(category, amount, description, date);
 
-        // Add to ledger and budget so everything stays in sync
+        // Add to ledger and budget so everything stays in sync, and journal it so it survives a crash
         ledger.addTransaction(t);
         budget.addTransaction(t);
+        persistence.logAdd(t);
+        persistence.maybeCompact(ledger, budget);
 
-        // Push onto the undo stack so I can undo this later if needed
-        undoStack.push(t);
+        // Remember it so it can be undone later if needed
+        history.recordAdd(t.getHandle());
 
         System.out.println(GREEN + "Transaction added." + RESET);
     }
@@ -224,19 +370,22 @@ public class Main {
     // ================== REMOVE TRANSACTION ==================
     // Lets the user remove a transaction by its index in the list
     private static void removeTransaction(Scanner scanner, Ledger ledger, Budget budget,
-                                          Stack<Transaction> undoStack) {
+                                          CommandLog history, LedgerPersistence persistence) {
 
-        var transactions = ledger.getTransactions();
-
-        if (transactions.isEmpty()) {
+        if (ledger.size() == 0) {
             System.out.println(YELLOW + "No transactions to remove." + RESET);
             return;
         }
 
+        // Only one page of the list is shown at a time, so a big ledger doesn't scroll by on every try
+        int pageStart = 0;
+        boolean showPage = true;
         while (true) {
-            System.out.println("\n--- Transaction List ---");
-            for (int i = 0; i < transactions.size(); i++) {
-                System.out.println(i + ": " + transactions.get(i));
+            if (showPage) {
+                int shown = ledger.showTransactions(pageStart, PAGE_SIZE, true);
+                System.out.println("Showing " + (pageStart + 1) + "-" + (pageStart + shown) + " of " + ledger.size()
+                                   + ". Type 'n' / 'p' for the next / previous page.");
+                showPage = false;
             }
 
             System.out.print("Enter the number of the transaction to remove (or 'c' to cancel): ");
@@ -246,6 +395,16 @@ public class Main {
                 System.out.println("Remove cancelled.");
                 return;
             }
+            if (input.equalsIgnoreCase("n") || input.equalsIgnoreCase("p")) {
+                int next = pageStart + (input.equalsIgnoreCase("n") ? PAGE_SIZE : -PAGE_SIZE);
+                if (next >= 0 && next < ledger.size()) {
+                    pageStart = next;
+                    showPage = true;
+                } else {
+                    System.out.println(YELLOW + "There's no page in that direction." + RESET);
+                }
+                continue;
+            }
 
             int index;
             try {
@@ -255,7 +414,7 @@ public class Main {
                 continue;
             }
 
-            if (index < 0 || index >= transactions.size()) {
+            if (index < 0 || index >= ledger.size()) {
                 System.out.println(RED + "Index out of range. Please try again." + RESET);
                 continue;
             }
@@ -264,11 +423,11 @@ public class Main {
             if (removed != null) {
                 // Roll back this transaction in the budget too
                 budget.removeTransaction(removed);
+                persistence.logRemove(index);
+                persistence.maybeCompact(ledger, budget);
 
-                // If that same transaction is on top of the undo stack, remove it there as well
-                if (!undoStack.isEmpty() && undoStack.peek() == removed) {
-                    undoStack.pop();
-                }
+                // Removes can be undone too (the row comes back in the same spot)
+                history.recordRemove(removed.getHandle());
 
                 System.out.println(GREEN + "Transaction removed." + RESET);
             }
@@ -276,30 +435,56 @@ public class Main {
         }
     }
 
-    // ================== UNDO LAST TRANSACTION (STACK) ==================
-    // Uses the stack to undo whichever transaction was added most recently
-    private static void undoLastTransaction(Ledger ledger, Budget budget,
-                                            Stack<Transaction> undoStack) {
+    // ================== UNDO / REDO ==================
+    // Undoes the most recent add, remove or posted bill (the history remembers rows by handle)
+    private static void undoLastChange(Ledger ledger, Budget budget,
+                                       CommandLog history, LedgerPersistence persistence) {
 
-        if (undoStack.isEmpty()) {
+        if (!history.canUndo()) {
             System.out.println(YELLOW + "Nothing to undo." + RESET);
             return;
         }
 
-        Transaction last = undoStack.pop();
-        boolean removedFromLedger = ledger.removeTransaction(last);
+        byte type = history.undo(ledger, budget, persistence);
+        if (type == 0) {
+            System.out.println(RED + "Undo failed, transaction not found in ledger." + RESET);
+            return;
+        }
+        Transaction t = ledger.getStore().getTransaction(history.getLastRowHandle());
+        if (type == CommandLog.REMOVE) {
+            System.out.println(GREEN + "Put back: " + t + RESET);
+        } else if (type == CommandLog.POST_BILL) {
+            System.out.println(GREEN + "Bill un-posted and back on the schedule: " + t + RESET);
+        } else {
+            System.out.println(GREEN + "Removed: " + t + RESET);
+        }
+    }
+
+    // Does the last undone change again
+    private static void redoLastChange(Ledger ledger, Budget budget,
+                                       CommandLog history, LedgerPersistence persistence) {
+
+        if (!history.canRedo()) {
+            System.out.println(YELLOW + "Nothing to redo." + RESET);
+            return;
+        }
 
-        if (removedFromLedger) {
-            budget.removeTransaction(last);
-            System.out.println(GREEN + "Last transaction undone." + RESET);
+        byte type = history.redo(ledger, budget, persistence);
+        if (type == 0) {
+            System.out.println(RED + "Redo failed, transaction not found in ledger." + RESET);
+            return;
+        }
+        Transaction t = ledger.getStore().getTransaction(history.getLastRowHandle());
+        if (type == CommandLog.REMOVE) {
+            System.out.println(GREEN + "Removed again: " + t + RESET);
         } else {
-            System.out.println(RED + "Undo failed, transaction not found in ledger." + RESET);
+            System.out.println(GREEN + "Redone: " + t + RESET);
         }
     }
 
-    // ================== SCHEDULE BILL (QUEUE) ==================
-    // puts the bill into the queue to be processed later
-    private static void scheduleBill(Scanner scanner, Queue<Transaction> scheduledBills) {
+    // ================== SCHEDULE BILL ==================
+    // puts the bill on the schedule (sorted by due date) to be posted once it's due
+    private static void scheduleBill(Scanner scanner, Ledger ledger, LedgerPersistence persistence) {
 
         System.out.print("Enter category for the future bill: ");
         String category = scanner.nextLine();
@@ -326,47 +511,243 @@ public class Main {
         System.out.print("Enter description: ");
         String description = scanner.nextLine();
 
-        System.out.print("Enter due date: ");
-        String date = scanner.nextLine().trim();
+        int dueDay = askForDate(scanner, "Enter due date (M/D/YYYY, or 'c' to cancel): ");
+        if (dueDay == DateKey.INVALID) {
+            System.out.println("Scheduling cancelled.");
+            return;
+        }
 
-        while (!isValidDate(date)) {
-            System.out.print("Invalid date format. Enter due date as M/D/YYYY (or 'c' to cancel): ");
-            date = scanner.nextLine().trim();
-            if (date.equalsIgnoreCase("c")) {
-                System.out.println("Scheduling cancelled.");
-                return;
+        // Does it repeat? Only the next occurrence is ever stored, the rest get worked out as needed
+        int unit = BillScheduler.ONCE;
+        while (true) {
+            System.out.print("Does it repeat? (N)o, (W)eekly, (M)onthly, every few (D)ays [N]: ");
+            String input = scanner.nextLine().trim().toUpperCase();
+            if (input.isEmpty() || input.equals("N")) {
+                break;
+            } else if (input.equals("W")) {
+                unit = BillScheduler.WEEKS;
+                break;
+            } else if (input.equals("M")) {
+                unit = BillScheduler.MONTHS;
+                break;
+            } else if (input.equals("D")) {
+                unit = BillScheduler.DAYS;
+                break;
             }
+            System.out.println(RED + "Please type N, W, M or D." + RESET);
         }
 
-        Transaction t = new Transaction(category, amount, description, date);
-        scheduledBills.add(t);
+        int every = 1;
+        int endDay = BillScheduler.NO_END;
+        int times = -1;
+        if (unit != BillScheduler.ONCE) {
+            String[] unitNames = {"", "days", "weeks", "months"};
+            while (true) {
+                System.out.print("Every how many " + unitNames[unit] + "? [1]: ");
+                String input = scanner.nextLine().trim();
+                try {
+                    every = input.isEmpty() ? 1 : Integer.parseInt(input);
+                    if (every >= 1) {
+                        break;
+                    }
+                } catch (NumberFormatException e) {
+                    // falls through to the message below
+                }
+                System.out.println(RED + "Please enter a whole number of 1 or more." + RESET);
+            }
+
+            while (true) {
+                System.out.print("When does it stop? Enter for never, a last date (M/D/YYYY) or a number of times: ");
+                String input = scanner.nextLine().trim();
+                if (input.isEmpty()) {
+                    break;
+                }
+                if (input.matches("\\d{1,6}") && Integer.parseInt(input) > 0) {
+                    times = Integer.parseInt(input);
+                    break;
+                }
+                int lastDay = DateKey.parse(input);
+                if (lastDay != DateKey.INVALID && lastDay >= dueDay) {
+                    endDay = lastDay;
+                    break;
+                }
+                System.out.println(RED + "Please enter a date on or after the due date, or a number like 12." + RESET);
+            }
+        }
+
+        BillScheduler bills = ledger.getBills();
+        int handle = bills.scheduleRepeating(category, TransactionStore.toCents(amount), description, dueDay,
+                                             unit, every, endDay, times);
+        persistence.logScheduleBill(bills, handle);
 
-        System.out.println(GREEN + "Future bill scheduled." + RESET);
+        System.out.println(GREEN + "Future bill #" + handle + " scheduled for " + DateKey.format(dueDay)
+                           + " (" + bills.describeRepeat(handle) + ")." + RESET);
     }
 
-    // ================== PROCESS SCHEDULED BILLS (QUEUE) ==================
-    // This pulls bills from the queue in order and applies them to the budget
-    private static void processScheduledBills(Ledger ledger, Budget budget,
-                                              Queue<Transaction> scheduledBills,
-                                              Stack<Transaction> undoStack) {
+    // ================== PROCESS DUE BILLS ==================
+    // Posts every bill due on or before a date (today unless the user picks one), earliest first.
+    // Bills that aren't due yet stay on the schedule; a repeating bill posts each occurrence that's due
+    private static void processScheduledBills(Scanner scanner, Ledger ledger, Budget budget,
+                                              CommandLog history,
+                                              LedgerPersistence persistence) {
 
-        if (scheduledBills.isEmpty()) {
+        BillScheduler bills = ledger.getBills();
+        if (bills.isEmpty()) {
             System.out.println(YELLOW + "No scheduled bills to process." + RESET);
             return;
         }
 
+        int throughDay = DateKey.today();
+        while (true) {
+            System.out.print("Post bills due on or before (M/D/YYYY, Enter for today " + DateKey.format(throughDay) + "): ");
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                break;
+            }
+            int picked = DateKey.parse(input);
+            if (picked != DateKey.INVALID) {
+                throughDay = picked;
+                break;
+            }
+            System.out.println(RED + "Invalid date. Please use M/D/YYYY, for example 11/03/2025." + RESET);
+        }
+
         System.out.println("\nProcessing scheduled bills...");
 
-        while (!scheduledBills.isEmpty()) {
-            Transaction t = scheduledBills.poll();
-            ledger.addTransaction(t);
+        int posted = 0;
+        int handle;
+        while ((handle = bills.nextDue(throughDay)) >= 0) {
+            int dueBefore = bills.getDueDay(handle);
+            int remainingBefore = bills.getRemaining(handle);
+            Transaction t = ledger.postBill(handle);
             budget.addTransaction(t);
-            undoStack.push(t);
+            persistence.logPostBill(handle);
+            history.recordPostBill(t.getHandle(), handle, dueBefore, remainingBefore);
+            posted++;
 
             System.out.println("Processed: " + t);
         }
+        persistence.maybeCompact(ledger, budget);
+
+        if (posted == 0) {
+            System.out.println(YELLOW + "No bills are due by " + DateKey.format(throughDay) + "." + RESET);
+        } else {
+            System.out.println(GREEN + posted + " bill(s) processed." + RESET);
+        }
+        if (!bills.isEmpty()) {
+            System.out.println(bills.size() + " bill(s) still scheduled, next one due "
+                               + DateKey.format(bills.getDueDay(bills.nextDue(Integer.MAX_VALUE))) + ".");
+        }
+    }
+
+    // ================== MANAGE SCHEDULED BILLS ==================
+    // Lists the future bills by due date, then lets the user cancel or move one by its number
+    private static void manageScheduledBills(Scanner scanner, Ledger ledger, LedgerPersistence persistence) {
+        BillScheduler bills = ledger.getBills();
+        if (bills.isEmpty()) {
+            System.out.println(YELLOW + "No scheduled bills." + RESET);
+            return;
+        }
+
+        int[] order = bills.handlesInDueOrder();
+        ReportRenderer renderer = new ReportRenderer();
+        renderer.line("\n--- Scheduled Bills (earliest first) ---");
+        StringBuilder row = new StringBuilder();
+        for (int i = 0; i < order.length; i++) {
+            if (i > 0 && i % PAGE_SIZE == 0) {
+                renderer.flush();
+                System.out.print("Showing " + i + " of " + order.length + ". Press Enter for more or 'q' to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+            }
+            int handle = order[i];
+            row.setLength(0);
+            row.append('#').append(handle).append(": ");
+            ReportRenderer.appendDate(row, bills.getDueDay(handle));
+            row.append(" | ").append(bills.getCategory(handle)).append(" | $");
+            ReportRenderer.appendMoney(row, bills.getAmountCents(handle));
+            row.append(" | ").append(bills.getDescription(handle));
+            if (bills.isRepeating(handle)) {
+                row.append(" | ").append(bills.describeRepeat(handle));
+            }
+            renderer.line(row.toString());
+        }
+        renderer.flush();
+
+        System.out.print("Enter a bill number to change (or press Enter to go back): ");
+        String input = scanner.nextLine().trim();
+        if (input.isEmpty()) {
+            return;
+        }
+        int handle;
+        try {
+            handle = Integer.parseInt(input.startsWith("#") ? input.substring(1) : input);
+        } catch (NumberFormatException e) {
+            System.out.println(RED + "That's not a bill number." + RESET);
+            return;
+        }
+        if (!bills.isScheduled(handle)) {
+            System.out.println(RED + "There's no scheduled bill #" + handle + "." + RESET);
+            return;
+        }
+
+        System.out.print("Type 'c' to cancel bill #" + handle + " or 'r' to reschedule it: ");
+        String action = scanner.nextLine().trim();
+        if (action.equalsIgnoreCase("c")) {
+            bills.cancel(handle);
+            persistence.logCancelBill(handle);
+            System.out.println(GREEN + "Bill #" + handle + " cancelled." + RESET);
+        } else if (action.equalsIgnoreCase("r")) {
+            int dueDay = askForDate(scanner, "Enter the new due date (M/D/YYYY, or 'c' to cancel): ");
+            if (dueDay == DateKey.INVALID) {
+                System.out.println("Reschedule cancelled.");
+                return;
+            }
+            bills.reschedule(handle, dueDay);
+            persistence.logRescheduleBill(handle, dueDay);
+            System.out.println(GREEN + "Bill #" + handle + " is now due " + DateKey.format(dueDay) + "." + RESET);
+        } else {
+            System.out.println("Nothing changed.");
+        }
+    }
+
+    // ================== UPCOMING BILLS ==================
+    // Shows every bill occurrence coming up to a date (repeating bills included) without posting anything
+    private static void viewUpcomingBills(Scanner scanner, Ledger ledger) {
+        BillScheduler bills = ledger.getBills();
+        if (bills.isEmpty()) {
+            System.out.println(YELLOW + "No scheduled bills." + RESET);
+            return;
+        }
+
+        int throughDay = askForDate(scanner, "Show bills due through (M/D/YYYY, or 'c' to cancel): ");
+        if (throughDay == DateKey.INVALID) {
+            return;
+        }
 
-        System.out.println(GREEN + "All scheduled bills processed." + RESET);
+        ReportRenderer renderer = new ReportRenderer();
+        renderer.line("\n--- Bills due through " + DateKey.format(throughDay) + " ---");
+        StringBuilder row = new StringBuilder();
+        long[] total = new long[1];
+        int count = bills.forEachOccurrence(throughDay, Integer.MAX_VALUE, (handle, day) -> {
+            row.setLength(0);
+            ReportRenderer.appendDate(row, day);
+            row.append(" | #").append(handle).append(' ').append(bills.getCategory(handle)).append(" | $");
+            ReportRenderer.appendMoney(row, bills.getAmountCents(handle));
+            row.append(" | ").append(bills.getDescription(handle));
+            renderer.line(row.toString());
+            total[0] += bills.getAmountCents(handle);
+        });
+        if (count == 0) {
+            renderer.line("Nothing is due by then.");
+        } else {
+            row.setLength(0);
+            row.append(count).append(" bill(s), total $");
+            ReportRenderer.appendMoney(row, total[0]);
+            renderer.line(row.toString());
+        }
+        renderer.flush();
     }
 
     // ================== VIEW MONTHLY REPORT ==================
@@ -399,7 +780,153 @@ public class Main {
             break;
         }
 
-        budget.showMonthlyReport(ledger.getTransactions(), month);
+        // A blank year keeps the old behavior: that month in every year
+        int year = askForYear(scanner, "Enter year (or press Enter for every year): ", true);
+        if (year == 0) {
+            budget.showMonthlyReport(ledger, month);
+        } else {
+            budget.showMonthlyReport(ledger, year, month);
+        }
+    }
+
+    // ================== LARGEST EXPENSES / TOP CATEGORIES ==================
+    // The biggest expenses (all time, a year, or one month) and the categories with the most spending.
+    // Both come from rankings the ledger and budget keep up to date, so nothing gets sorted here
+    private static void viewLargestExpenses(Scanner scanner, Ledger ledger, Budget budget) {
+        int count = 10;
+        System.out.print("How many to show? (press Enter for 10): ");
+        String input = scanner.nextLine().trim();
+        if (!input.isEmpty()) {
+            try {
+                count = Math.max(1, Integer.parseInt(input));
+            } catch (NumberFormatException e) {
+                System.out.println(RED + "Not a number, showing 10." + RESET);
+            }
+        }
+
+        int year = askForYear(scanner, "Enter year (or press Enter for all time): ", true);
+        int fromMonth = 1;
+        int toMonth = 12;
+        String title = "ALL TIME";
+        if (year != 0) {
+            title = String.valueOf(year);
+            System.out.print("Enter month number (1 to 12, or press Enter for the whole year): ");
+            input = scanner.nextLine().trim();
+            if (!input.isEmpty()) {
+                try {
+                    int month = Integer.parseInt(input);
+                    if (month >= 1 && month <= 12) {
+                        fromMonth = month;
+                        toMonth = month;
+                        title = month + "/" + year;
+                    } else {
+                        System.out.println(RED + "Month must be between 1 and 12, showing the whole year." + RESET);
+                    }
+                } catch (NumberFormatException e) {
+                    System.out.println(RED + "Invalid month number, showing the whole year." + RESET);
+                }
+            }
+        }
+
+        List<Transaction> largest = year == 0 ? ledger.getLargestExpenses(count)
+                                              : ledger.getLargestExpenses(year * 12 + fromMonth - 1, year * 12 + toMonth - 1, count);
+
+        ReportRenderer renderer = new ReportRenderer();
+        renderer.line("");
+        renderer.line("========== LARGEST EXPENSES (" + title + ") ==========");
+        if (largest.isEmpty()) {
+            renderer.line("No expenses found for this period.");
+        }
+        for (Transaction t : largest) {
+            renderer.line(t.toString());
+        }
+        renderer.flush();
+
+        System.out.println("----------------------------------------------");
+        System.out.println("Top spending categories (all time):");
+        List<String> categories = budget.getTopCategories(count);
+        if (categories.isEmpty()) {
+            System.out.println("No expenses yet.");
+        }
+        for (int i = 0; i < categories.size(); i++) {
+            System.out.printf("%2d. %-12s : $%.2f%n", i + 1, categories.get(i), budget.getCategorySpending(categories.get(i)));
+        }
+        System.out.println("==============================================");
+    }
+
+    // ================== VIEW YEARLY REPORT ==================
+    // Month-by-month totals and category totals for one whole year
+    private static void viewYearReport(Scanner scanner, Ledger ledger, Budget budget) {
+        int year = askForYear(scanner, "Enter year (for example: 2025): ", false);
+        budget.showYearReport(ledger, year);
+    }
+
+    // Keeps asking until it gets a sensible 4-digit year. Gives back 0 for a blank answer when that's allowed
+    private static int askForYear(Scanner scanner, String prompt, boolean allowBlank) {
+        while (true) {
+            System.out.print(prompt);
+            String input = scanner.nextLine().trim();
+
+            if (input.isEmpty() && allowBlank) {
+                return 0;
+            }
+
+            try {
+                int year = Integer.parseInt(input);
+                if (DateKey.isPlausibleYear(year)) {
+                    return year;
+                }
+            } catch (NumberFormatException e) {
+                // falls through to the message below
+            }
+            System.out.println(RED + "Invalid year. Please enter a year from " + DateKey.MIN_YEAR + " to "
+                               + DateKey.MAX_YEAR + ", like 2025." + RESET);
+        }
+    }
+
+    // ================== VIEW TOTALS BETWEEN TWO DATES ==================
+    // Asks for a date range (and maybe a category) and answers straight from the budget's rollup
+    private static void viewRangeTotals(Scanner scanner, Budget budget) {
+        int fromDay = askForDate(scanner, "Enter start date (M/D/YYYY) or 'c' to cancel: ");
+        if (fromDay == DateKey.INVALID) {
+            System.out.println("Range report cancelled.");
+            return;
+        }
+
+        int toDay = askForDate(scanner, "Enter end date (M/D/YYYY) or 'c' to cancel: ");
+        if (toDay == DateKey.INVALID) {
+            System.out.println("Range report cancelled.");
+            return;
+        }
+
+        if (toDay < fromDay) {
+            int swap = fromDay;
+            fromDay = toDay;
+            toDay = swap;
+        }
+
+        System.out.print("Enter category (or press Enter for all categories): ");
+        String category = scanner.nextLine().trim();
+
+        budget.showRangeReport(fromDay, toDay, category.isEmpty() ? null : category);
+    }
+
+    // Keeps asking until the date can be read, gives back DateKey.INVALID if the user cancels
+    private static int askForDate(Scanner scanner, String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            String input = scanner.nextLine().trim();
+
+            if (input.equalsIgnoreCase("c")) {
+                return DateKey.INVALID;
+            }
+
+            int epochDay = DateKey.parse(input);
+            if (epochDay != DateKey.INVALID) {
+                return epochDay;
+            }
+            System.out.println(RED + "Invalid date. Please use M/D/YYYY, for example 11/03/2025." + RESET);
+        }
     }
 
     // ================== VIEW BY CATEGORY ==================
@@ -408,103 +935,518 @@ public class Main {
         System.out.print("Enter category to filter by: ");
         String category = scanner.nextLine().trim();
 
-        var transactions = ledger.getTransactions();
+        // Optional date limit, no limit unless the user asks for one
+        int fromDay = Integer.MIN_VALUE;
+        int toDay = Integer.MAX_VALUE;
+        System.out.print("Limit to a date range? (y/N): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            fromDay = askForDate(scanner, "Enter start date (M/D/YYYY) or 'c' to skip: ");
+            toDay = askForDate(scanner, "Enter end date (M/D/YYYY) or 'c' to skip: ");
+            if (fromDay == DateKey.INVALID) {
+                fromDay = Integer.MIN_VALUE;
+            }
+            if (toDay == DateKey.INVALID) {
+                toDay = Integer.MAX_VALUE;
+            }
+        }
+
+        // The ledger's category index only hands back rows in this category, one page at a time
+        int total = ledger.countTransactionsByCategory(category, fromDay, toDay);
 
         System.out.println("\n--- Transactions in category: " + category + " ---");
-        boolean foundAny = false;
+        if (total == 0) {
+            System.out.println(YELLOW + "No transactions found for that category." + RESET);
+            return;
+        }
+
+        int offset = 0;
+        while (offset < total) {
+            ReportRenderer renderer = new ReportRenderer();
+            for (Transaction t : ledger.getTransactionsByCategory(category, fromDay, toDay, offset, PAGE_SIZE)) {
+                renderer.line(t.toString());
+            }
+            renderer.flush();
+            offset += PAGE_SIZE;
+
+            if (offset < total) {
+                System.out.print("Showing " + offset + " of " + total + ". Press Enter for more or 'q' to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // ================== SEARCH BY DESCRIPTION ==================
+    // Word search over the descriptions ("amazon", "amaz*", "amazon refund", "amazon OR walmart"),
+    // optionally narrowed down to a category and dates. Answered from the ledger's word index
+    private static void searchTransactions(Scanner scanner, Ledger ledger) {
+        System.out.print("Search for (like: amazon, amaz*, amazon refund, amazon OR walmart): ");
+        String query = scanner.nextLine().trim();
+        if (query.isEmpty()) {
+            System.out.println("Search cancelled.");
+            return;
+        }
+
+        System.out.print("Only one category? (press Enter for all categories): ");
+        String category = scanner.nextLine().trim();
 
-        for (Transaction t : transactions) {
-            if (t.getCategory().equalsIgnoreCase(category)) {
-                System.out.println(t);
-                foundAny = true;
+        int fromDay = Integer.MIN_VALUE;
+        int toDay = Integer.MAX_VALUE;
+        System.out.print("Limit to a date range? (y/N): ");
+        if (scanner.nextLine().trim().equalsIgnoreCase("y")) {
+            fromDay = askForDate(scanner, "Enter start date (M/D/YYYY) or 'c' to skip: ");
+            toDay = askForDate(scanner, "Enter end date (M/D/YYYY) or 'c' to skip: ");
+            if (fromDay == DateKey.INVALID) {
+                fromDay = Integer.MIN_VALUE;
+            }
+            if (toDay == DateKey.INVALID) {
+                toDay = Integer.MAX_VALUE;
             }
         }
 
-        if (!foundAny) {
-            System.out.println(YELLOW + "No transactions found for that category." + RESET);
+        List<Transaction> found;
+        try {
+            found = ledger.searchDescriptions(query, category.isEmpty() ? null : category, fromDay, toDay);
+        } catch (IllegalArgumentException e) {
+            System.out.println(RED + e.getMessage() + RESET);
+            return;
+        }
+
+        System.out.println("\n--- Transactions matching: " + query + " ---");
+        if (found.isEmpty()) {
+            System.out.println(YELLOW + "No transactions found." + RESET);
+            return;
+        }
+
+        int offset = 0;
+        while (offset < found.size()) {
+            ReportRenderer renderer = new ReportRenderer();
+            for (int i = offset; i < Math.min(offset + PAGE_SIZE, found.size()); i++) {
+                renderer.line(found.get(i).toString());
+            }
+            renderer.flush();
+            offset += PAGE_SIZE;
+
+            if (offset < found.size()) {
+                System.out.print("Showing " + offset + " of " + found.size() + ". Press Enter for more or 'q' to stop: ");
+                if (scanner.nextLine().trim().equalsIgnoreCase("q")) {
+                    break;
+                }
+            }
+        }
+    }
+
+    // ================== SEAL PAST YEARS ==================
+    // Moves the rows of years that are over into their own compressed files. Reports, search and
+    // export still see them; they just aren't kept in memory (or in the snapshot) anymore
+    private static void sealPastYears(Scanner scanner, Ledger ledger, Budget budget, CommandLog history,
+                                      LedgerPersistence persistence) {
+        int thisYear = DateKey.yearOf(DateKey.today());
+        SortedSet<Integer> closed = ledger.getLiveYears().headSet(thisYear);
+        if (closed.isEmpty()) {
+            System.out.println(YELLOW + "There are no past years left to seal." + RESET);
+            return;
+        }
+        System.out.println("Past years that can be sealed: " + closed);
+        int year = askForYear(scanner, "Enter year (or press Enter for all of them): ", true);
+        Collection<Integer> years = closed;
+        if (year != 0) {
+            if (!closed.contains(year)) {
+                System.out.println(RED + year + " isn't a past year with transactions to seal." + RESET);
+                return;
+            }
+            years = Collections.singletonList(year);
+        }
+
+        try {
+            int sealed = persistence.seal(ledger, budget, years);
+            // Positions changed, so the undo history can't be used anymore
+            history.clear();
+            System.out.println(GREEN + "Sealed " + sealed + " transaction(s). " + ledger.size()
+                               + " stay in the live ledger." + RESET);
+        } catch (IOException | RuntimeException e) {
+            System.out.println(RED + "Something went wrong while sealing: " + e.getMessage() + RESET);
         }
     }
 
     // ================== SAVE DATA TO FILE ==================
-    // Saves all transactions into a text file so I can load them back later
-    private static void saveData(Ledger ledger) {
-        // Use try-with-resources and a safe delimiter ("|") with simple escaping
-        try (FileWriter writer = new FileWriter("budget_data.txt")) {
-            for (Transaction t : ledger.getTransactions()) {
-                String line = escapeField(t.getCategory()) + "|" + t.getAmount() + "|" + escapeField(t.getDescription()) + "|" + escapeField(t.getDate()) + "\n";
-                writer.write(line);
-            }
-            System.out.println(GREEN + "Data saved to budget_data.txt." + RESET);
+    // Changes are already journaled as they happen; saving folds the journal into a fresh snapshot
+    private static void saveData(Ledger ledger, Budget budget, LedgerPersistence persistence) {
+        try {
+            persistence.waitFor(persistence.compact(ledger, budget));
+            System.out.println(GREEN + "Data saved to " + LedgerPersistence.SNAPSHOT_FILE + " ("
+                               + persistence.snapshotSize() + " bytes)." + RESET);
         } catch (IOException e) {
             System.out.println(RED + "Something went wrong while saving the file: " + e.getMessage() + RESET);
         }
     }
 
     // ================== LOAD DATA FROM FILE ==================
-    // Reads the text file and rebuilds ledger, budget, and undo stack
-    private static void loadData(Ledger ledger, Budget budget, Stack<Transaction> undoStack) {
-        File file = new File("budget_data.txt");
-        if (!file.exists()) {
-            System.out.println(YELLOW + "No saved data found." + RESET);
+    // Throws away what's in memory and reloads the snapshot + journal (or an older text save)
+    private static void loadData(Ledger ledger, Budget budget, CommandLog history,
+                                 LedgerPersistence persistence) {
+        if (!persistence.hasSavedData()) {
+            // Older saves were only ever text, so fall back to that if there's no snapshot yet
+            if (Files.exists(Paths.get(TEXT_FILE))) {
+                importText(ledger, budget, history, persistence);
+            } else {
+                System.out.println(YELLOW + "No saved data found." + RESET);
+            }
             return;
         }
 
-        // Read using try-with-resources and a pipe delimiter, undoing simple escaping
-        LinkedList<Transaction> newList = new LinkedList<>();
-        try (Scanner fileReader = new Scanner(file)) {
-            while (fileReader.hasNextLine()) {
-                String line = fileReader.nextLine();
-                String[] parts = line.split("\\|", -1);
-                if (parts.length == 4) {
-                    String category = unescapeField(parts[0]);
-                    double amount = Double.parseDouble(parts[1]);
-                    String description = unescapeField(parts[2]);
-                    String date = unescapeField(parts[3]);
-                    Transaction t = new Transaction(category, amount, description, date);
-                    newList.add(t);
+        if (recoverData(ledger, budget, history, persistence)) {
+            System.out.println(GREEN + "Saved data loaded." + RESET);
+        }
+    }
+
+    // Loads the snapshot and budget checkpoint and replays only the journal records written after them,
+    // so this takes about the same time no matter how many years of history there are
+    private static boolean recoverData(Ledger ledger, Budget budget, CommandLog history,
+                                       LedgerPersistence persistence) {
+        try {
+            int replayed = persistence.recover(ledger, budget);
+            history.clear();
+            showRecovered(ledger, replayed);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println(RED + "Something went wrong while loading your data: " + e.getMessage() + RESET);
+            return false;
+        }
+    }
+
+    // Same thing for an account the first time it's used this session (a new one gets its folder)
+    private static boolean openAccount(AccountBook.Account account) {
+        try {
+            showRecovered(account.getLedger(), account.load());
+            return true;
+        } catch (IOException | RuntimeException e) {
+            System.out.println(RED + "Something went wrong while loading your data: " + e.getMessage() + RESET);
+            return false;
+        }
+    }
+
+    private static void showRecovered(Ledger ledger, int replayed) {
+        if (ledger.size() > 0 || replayed > 0) {
+            System.out.println(GREEN + "Recovered " + ledger.size() + " transaction(s) ("
+                               + replayed + " change(s) replayed from the journal)." + RESET);
+        }
+        if (!ledger.getSealedYears().isEmpty()) {
+            System.out.println(GREEN + ledger.getSealedYears().size() + " more in "
+                               + ledger.getSealedYears().getSegments().size() + " sealed year(s)." + RESET);
+        }
+    }
+
+    // Makes sure every open account's journal is flushed before the app exits
+    private static void closeAccounts(AccountBook book) {
+        try {
+            book.close();
+        } catch (IOException e) {
+            System.out.println(RED + "Something went wrong while flushing the journal: " + e.getMessage() + RESET);
+        }
+    }
+
+    // ================== ACCOUNTS ==================
+    // --account=NAME picks the account to start in, otherwise it's "main"
+    private static String startingAccount(String[] args) {
+        for (String arg : args) {
+            if (arg.startsWith("--account=")) {
+                String name = arg.substring("--account=".length());
+                if (AccountBook.isValidName(name)) {
+                    return name;
                 }
+                System.out.println(RED + "\"" + name + "\" isn't a valid account name, using "
+                                   + AccountBook.MAIN_ACCOUNT + "." + RESET);
             }
-        } catch (Exception e) {
-            System.out.println(RED + "Something went wrong while loading your data: " + e.getMessage() + RESET);
+        }
+        return AccountBook.MAIN_ACCOUNT;
+    }
+
+    // Gives back the account to use from now on (the same one if the user cancels)
+    private static AccountBook.Account switchAccount(Scanner scanner, AccountBook book, AccountBook.Account current) {
+        try {
+            System.out.println("\nAccounts:");
+            for (String name : book.getNames()) {
+                System.out.println((name.equals(current.getName()) ? "* " : "  ") + name);
+            }
+        } catch (IOException e) {
+            System.out.println(RED + "Could not list the accounts: " + e.getMessage() + RESET);
+        }
+
+        while (true) {
+            System.out.print("Enter an account name (or press Enter to stay in " + current.getName() + "): ");
+            String name = scanner.nextLine().trim();
+            if (name.isEmpty() || name.equals(current.getName())) {
+                return current;
+            }
+            if (!AccountBook.isValidName(name)) {
+                System.out.println(RED + "Use letters, digits, '.', '-' or '_' (up to 64 characters)." + RESET);
+                continue;
+            }
+
+            if (!book.exists(name)) {
+                System.out.print("There's no account called " + name + " yet. Create it? (Y/N): ");
+                if (!scanner.nextLine().trim().equalsIgnoreCase("y")) {
+                    continue;
+                }
+            }
+            AccountBook.Account next = book.getAccount(name);
+            if (!next.isLoaded() && !openAccount(next)) {
+                return current;
+            }
+            System.out.println(GREEN + "Now using " + name + " (" + next.getLedger().size() + " transaction(s))."
+                               + RESET);
+            return next;
+        }
+    }
+
+    // Every account's own totals, then all of them added together
+    private static void viewAllAccounts(AccountBook book) {
+        List<AccountBook.Account> accounts;
+        Budget total;
+        try {
+            accounts = book.loadAll();
+            total = book.rollup();
+        } catch (IOException e) {
+            System.out.println(RED + "Could not load every account: " + e.getMessage() + RESET);
             return;
         }
 
-        // Replace everything in the ledger with what I just loaded
-        ledger.setTransactions(newList);
+        System.out.println();
+        System.out.println("================ ALL ACCOUNTS ================");
+        System.out.printf("%-16s %8s %12s %12s %12s%n", "Account", "Rows", "Income", "Expenses", "Net");
+        for (AccountBook.Account each : accounts) {
+            Budget totals = each.getBudget();
+            System.out.printf("%-16s %8d %12.2f %12.2f %12.2f%n", each.getName(), each.getLedger().size(),
+                              totals.getTotalIncome(), totals.getTotalExpenses(),
+                              totals.getTotalIncome() - totals.getTotalExpenses());
+        }
+        total.showSummary();
+    }
 
-        // Reset the budget and undo stack, then rebuild them from the loaded list
-        budget.resetAll();
-        undoStack.clear();
+    // ================== METRICS ==================
+    // --metrics[=FILE] turns the timers on (see Metrics) and keeps FILE up to date with them,
+    // every --metrics-every=N seconds (10 if not given). Works in every mode: menu, batch and server
+    private static void startMetrics(String[] args) {
+        String file = null;
+        long every = 10;
+        for (String arg : args) {
+            if (arg.equals("--metrics")) {
+                file = Metrics.DEFAULT_FILE;
+            } else if (arg.startsWith("--metrics=")) {
+                file = arg.substring("--metrics=".length());
+            } else if (arg.startsWith("--metrics-every=")) {
+                try {
+                    every = Math.max(1, Long.parseLong(arg.substring("--metrics-every=".length())));
+                } catch (NumberFormatException e) {
+                    System.err.println("Not a number of seconds: " + arg + " (using " + every + ")");
+                }
+            }
+        }
+        if (file == null) {
+            return;
+        }
+        System.setProperty("budget.metrics", "true");
+        Metrics.startDumping(Paths.get(file), every);
+    }
 
-        for (Transaction t : newList) {
-            budget.addTransaction(t);
-            undoStack.push(t);
+    // How long each operation has been taking this session (p50/p99 are close, not exact)
+    private static void showPerformanceStats() {
+        if (!Metrics.ENABLED) {
+            System.out.println(YELLOW + "Performance stats are off. Start the app with --metrics to turn them on." + RESET);
+            return;
+        }
+        System.out.println();
+        System.out.println("================ PERFORMANCE ================");
+        System.out.printf("%-34s %8s %10s %10s %10s %10s%n", "Operation", "Count", "p50 ms", "p99 ms", "Max ms", "Rows");
+        for (Metrics.Timer timer : Metrics.getTimers()) {
+            System.out.printf("%-34s %8d %10.3f %10.3f %10.3f %10d%n", timer.getName(), timer.getCount(),
+                              timer.quantileNanos(0.5) / 1e6, timer.quantileNanos(0.99) / 1e6,
+                              timer.getMaxNanos() / 1e6, timer.getRows());
         }
+        System.out.println("Bytes read: " + Metrics.getBytesRead() + "   Bytes written: " + Metrics.getBytesWritten());
+    }
 
-        System.out.println(GREEN + "Saved data loaded." + RESET);
+    // ================== EXPORT / IMPORT TEXT ==================
+    // Writes the old pipe-delimited text format, for reading in other programs
+    private static void exportText(Ledger ledger) {
+        try {
+            int rows = TextFormat.write(ledger, Paths.get(TEXT_FILE));
+            System.out.println(GREEN + "Exported " + rows + " transaction(s) to " + TEXT_FILE + "." + RESET);
+        } catch (IOException e) {
+            System.out.println(RED + "Something went wrong while exporting: " + e.getMessage() + RESET);
+        }
     }
 
-    // Escape '|' characters when saving to a pipe-delimited file
-    private static String escapeField(String s) {
-        if (s == null) return "";
-        return s.replace("%", "%25").replace("|", "%7C");
+    // Reads the pipe-delimited text file and replaces everything with it.
+    // Big files get parsed on every core, with a progress line while it goes
+    private static void importText(Ledger ledger, Budget budget, CommandLog history,
+                                   LedgerPersistence persistence) {
+        Path file = Paths.get(TEXT_FILE);
+        if (!Files.exists(file)) {
+            System.out.println(YELLOW + "No " + TEXT_FILE + " found to import." + RESET);
+            return;
+        }
+
+        ParallelTextLoader.Result result;
+        try {
+            result = new ParallelTextLoader().load(file, ledger, budget, Main::showLoadProgress);
+            System.out.println();
+        } catch (IOException e) {
+            System.out.println();
+            System.out.println(RED + "Something went wrong while loading your data: " + e.getMessage() + RESET);
+            // The saved snapshot + journal weren't touched, so put back what was there before
+            recoverData(ledger, budget, history, persistence);
+            return;
+        }
+        history.clear();
+
+        // The journal can't describe "replace everything", so snapshot the new state right away
+        try {
+            persistence.waitFor(persistence.compact(ledger, budget));
+        } catch (IOException e) {
+            System.out.println(RED + "Imported, but saving the snapshot failed: " + e.getMessage() + RESET);
+        }
+
+        System.out.println(GREEN + "Imported " + result.getRows() + " transaction(s) from " + TEXT_FILE + " in "
+                           + (result.getElapsedNanos() / 1_000_000) + " ms (" + result.getRowsPerSecond()
+                           + " rows/s)." + RESET);
+        if (result.getSkipped() > 0) {
+            System.out.println(YELLOW + "Skipped " + result.getSkipped()
+                               + " row(s) with an unreadable date or amount." + RESET);
+        }
     }
 
-    // undo the escaping when loading from file
-    private static String unescapeField(String s) {
-        if (s == null) return "";
-        return s.replace("%7C", "|").replace("%25", "%");
+    // Rewrites one progress line in place while a file loads
+    private static void showLoadProgress(long bytesDone, long totalBytes, int rows, long elapsedNanos) {
+        int percent = totalBytes == 0 ? 100 : (int) (bytesDone * 100 / totalBytes);
+        long rowsPerSecond = elapsedNanos == 0 ? 0 : (long) (rows * 1_000_000_000.0 / elapsedNanos);
+        System.out.print("\r" + CYAN + "Loading... " + percent + "% (" + rows + " rows, "
+                         + rowsPerSecond + " rows/s)" + RESET);
     }
 
-    // Basic date validation using java.time (accepts M/D/YYYY or MM/DD/YYYY)
-    private static boolean isValidDate(String date) {
-        if (date == null) return false;
-        DateTimeFormatter fmt = DateTimeFormatter.ofPattern("M/d/yyyy");
+    // ================== IMPORT BANK / CSV STATEMENT ==================
+    // Adds every row of a bank export in one go. Columns are found by their names in the first row
+    // (Date, Amount or Debit/Credit, Description, Category); if that doesn't work I ask for them
+    private static void importStatement(Scanner scanner, Ledger ledger, Budget budget, CommandLog history,
+                                        LedgerPersistence persistence) {
+        // Several statements in the same layout (one per account, say) can go in together, separated by ;
+        System.out.print("Enter the path of the CSV file (several files: separate them with ;): ");
+        ArrayList<Path> files = new ArrayList<>();
+        for (String name : scanner.nextLine().split(";")) {
+            if (name.trim().isEmpty()) {
+                continue;
+            }
+            Path file = Paths.get(name.trim());
+            if (!Files.exists(file)) {
+                System.out.println(RED + "That file doesn't exist: " + file + RESET);
+                return;
+            }
+            files.add(file);
+        }
+        if (files.isEmpty()) {
+            System.out.println("Import cancelled.");
+            return;
+        }
+
+        CsvImporter.Mapping mapping = new CsvImporter.Mapping();
+
+        System.out.print("Column separator (press Enter for a comma, or type ; or tab): ");
+        String separator = scanner.nextLine().trim();
+        if (separator.equalsIgnoreCase("tab")) {
+            mapping.setDelimiter('\t');
+        } else if (separator.length() == 1) {
+            mapping.setDelimiter(separator.charAt(0));
+        }
+
+        System.out.println("How are the dates written?");
+        System.out.println("1. MM/DD/YYYY   2. DD/MM/YYYY   3. YYYY-MM-DD");
+        System.out.print("Enter 1, 2 or 3: ");
+        String order = scanner.nextLine().trim();
+        if (order.equals("2")) {
+            mapping.setDateOrder(CsvImporter.DateOrder.DAY_MONTH_YEAR);
+        } else if (order.equals("3")) {
+            mapping.setDateOrder(CsvImporter.DateOrder.YEAR_MONTH_DAY);
+        }
+
+        System.out.print("Does the bank show money you spent as positive numbers? (Y/N): ");
+        mapping.setExpensesPositive(scanner.nextLine().trim().equalsIgnoreCase("Y"));
+
+        System.out.print("Does the first row have the column names? (Y/N): ");
+        if (!scanner.nextLine().trim().equalsIgnoreCase("Y")) {
+            mapping.setHasHeader(false);
+            mapping.setDateColumn(askForColumn(scanner, "Date column number: "));
+            mapping.setAmountColumn(askForColumn(scanner, "Amount column number: "));
+            mapping.setDescriptionColumn(askForColumn(scanner, "Description column number (or press Enter for none): "));
+            mapping.setCategoryColumn(askForColumn(scanner, "Category column number (or press Enter for none): "));
+        }
+
+        List<CsvImporter.Report> reports;
+        int before = ledger.size();
         try {
-            LocalDate.parse(date, fmt);
-            return true;
-        } catch (DateTimeParseException e) {
-            return false;
+            if (files.size() == 1) {
+                reports = Arrays.asList(new CsvImporter(mapping).importFile(files.get(0), ledger, budget));
+            } else {
+                // Each file gets its own thread, all adding into the same ledger
+                reports = new CsvImporter(mapping).importFiles(files, new ConcurrentLedger(ledger, budget));
+            }
+        } catch (IOException | IllegalArgumentException e) {
+            System.out.println(RED + "Could not import the statement: " + e.getMessage() + RESET);
+            reports = null;
         }
+
+        // One snapshot for the whole import instead of a journal record per row
+        // (this also keeps whatever got in before a failure)
+        if (ledger.size() > before) {
+            history.clear();
+            try {
+                persistence.waitFor(persistence.compact(ledger, budget));
+            } catch (IOException e) {
+                System.out.println(RED + "Imported, but saving the snapshot failed: " + e.getMessage() + RESET);
+            }
+        }
+
+        if (reports == null) {
+            return;
+        }
+        for (int i = 0; i < reports.size(); i++) {
+            CsvImporter.Report report = reports.get(i);
+            String from = files.size() > 1 ? files.get(i).getFileName() + ": " : "";
+            System.out.println(GREEN + from + "Accepted " + report.getAccepted() + " row(s), rejected "
+                               + report.getRejected() + " (" + (report.getElapsedNanos() / 1_000_000) + " ms, "
+                               + report.getRowsPerSecond() + " rows/s)." + RESET);
+            for (String reason : report.getReasons().keySet()) {
+                System.out.println(YELLOW + "- " + reason + ": " + report.getReasons().get(reason) + RESET);
+            }
+            for (String example : report.getExamples()) {
+                System.out.println("  " + example);
+            }
+        }
+    }
+
+    // Column numbers are 1-based for the user, -1 means "not in the file"
+    private static int askForColumn(Scanner scanner, String prompt) {
+        while (true) {
+            System.out.print(prompt);
+            String input = scanner.nextLine().trim();
+            if (input.isEmpty()) {
+                return -1;
+            }
+            try {
+                int column = Integer.parseInt(input);
+                if (column >= 1) {
+                    return column - 1;
+                }
+            } catch (NumberFormatException e) {
+                // fall through to the message below
+            }
+            System.out.println(RED + "Please enter a column number like 1, 2, 3..." + RESET);
+        }
+    }
+
+    // Basic date validation (accepts M/D/YYYY or MM/DD/YYYY), same rules the Transaction uses
+    private static boolean isValidDate(String date) {
+        return DateKey.parse(date) != DateKey.INVALID;
     }
 }
@@ -0,0 +1,370 @@
+/*
+    Metrics class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+// Timing for the hot paths (adding/removing, reports, saving/loading, every command), so I can see
+// where the time goes before and after a change. Off unless the app starts with --metrics (or
+// -Dbudget.metrics=true). ENABLED is a static final, so when it's off the JIT drops every
+// "if (ENABLED)" and a timed method costs the same as before.
+//
+// A timed spot looks like this:
+//   long started = Metrics.start();
+//   ... the work ...
+//   SOME_TIMER.stop(started, rowsLookedAt);
+//
+// What gets kept:
+// - a latency histogram per operation and per command (log buckets, 4 per power of two, so
+//   percentiles are within about 20%), plus how many rows each one looked at
+// - bytes read and written by saving, loading, the journal and imports/exports
+// - gauges: an estimate of each account's ledger size in memory, and the JVM heap
+// - a JFR event per timed call (budget.Operation), visible in any flight recording
+//
+// writeText() puts it all out in the Prometheus text format; startDumping() rewrites a file with
+// it every few seconds, and server mode answers GET /metrics with it.
+public final class Metrics {
+
+    public static final boolean ENABLED = Boolean.getBoolean("budget.metrics");
+
+    public static final String DEFAULT_FILE = "budget_metrics.prom";
+
+    private static final ConcurrentSkipListMap<String, Timer> TIMERS = new ConcurrentSkipListMap<>();
+    private static final ConcurrentSkipListMap<String, LongSupplier> GAUGES = new ConcurrentSkipListMap<>();
+    private static final LongAdder BYTES_READ = new LongAdder();
+    private static final LongAdder BYTES_WRITTEN = new LongAdder();
+    private static final Map<String, Timer> COMMANDS = new ConcurrentHashMap<>();
+
+    // Upper bounds of the buckets writeText() reports, in seconds
+    private static final double[] REPORTED_BOUNDS = {1e-6, 1e-5, 1e-4, 1e-3, 1e-2, 0.1, 1, 10};
+
+    private static ScheduledExecutorService dumper;
+
+    private Metrics() {
+    }
+
+    // ---------- recording ----------
+
+    // Where a timed piece of work starts (0 when metrics are off, so nothing even reads the clock)
+    public static long start() {
+        return ENABLED ? System.nanoTime() : 0L;
+    }
+
+    // An engine operation, like "budget_add_transaction". Make these once (static final) and reuse them
+    public static Timer timer(String operation) {
+        return register("budget_operation_seconds", "op", operation);
+    }
+
+    // A menu/batch/HTTP command finished (these are made the first time each command runs)
+    public static void commandDone(String command, long started) {
+        if (ENABLED) {
+            COMMANDS.computeIfAbsent(command, name -> register("budget_command_seconds", "command", name))
+                    .stop(started);
+        }
+    }
+
+    public static void bytesRead(long bytes) {
+        if (ENABLED) {
+            BYTES_READ.add(bytes);
+        }
+    }
+
+    public static void bytesWritten(long bytes) {
+        if (ENABLED) {
+            BYTES_WRITTEN.add(bytes);
+        }
+    }
+
+    // A number that's read each time metrics are written, like "budget_ledger_heap_bytes"{account="main"}
+    public static void gauge(String name, String label, String value, LongSupplier reading) {
+        if (ENABLED) {
+            GAUGES.put(name + "{" + label + "=\"" + escape(value) + "\"}", reading);
+        }
+    }
+
+    private static Timer register(String family, String label, String value) {
+        String key = family + "{" + label + "=\"" + escape(value) + "\"}";
+        return TIMERS.computeIfAbsent(key, k -> new Timer(family, label + "=\"" + escape(value) + "\"", value));
+    }
+
+    // One operation's histogram and counters
+    public static final class Timer {
+        // 64 powers of two, 4 buckets each
+        private static final int SUB_BUCKETS = 4;
+
+        private final String family;
+        private final String labels;
+        private final String name;
+        private final AtomicLongArray buckets;
+        private final LongAdder count;
+        private final LongAdder totalNanos;
+        private final LongAdder rows;
+        private final LongAccumulator maxNanos;
+
+        private Timer(String family, String labels, String name) {
+            this.family = family;
+            this.labels = labels;
+            this.name = name;
+            buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+            count = new LongAdder();
+            totalNanos = new LongAdder();
+            rows = new LongAdder();
+            maxNanos = new LongAccumulator(Math::max, 0);
+        }
+
+        public void stop(long started) {
+            if (ENABLED) {
+                record(System.nanoTime() - started, 0);
+            }
+        }
+
+        // rowsSeen is how many rows the operation had to look at (or write)
+        public void stop(long started, long rowsSeen) {
+            if (ENABLED) {
+                record(System.nanoTime() - started, rowsSeen);
+            }
+        }
+
+        private void record(long nanos, long rowsSeen) {
+            nanos = Math.max(nanos, 0);
+            buckets.incrementAndGet(bucketOf(nanos));
+            count.increment();
+            totalNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+            if (rowsSeen > 0) {
+                rows.add(rowsSeen);
+            }
+
+            OperationEvent event = new OperationEvent();
+            if (event.isEnabled()) {
+                event.operation = name;
+                event.took = nanos;
+                event.rows = rowsSeen;
+                event.commit();
+            }
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public long getCount() {
+            return count.sum();
+        }
+
+        public long getRows() {
+            return rows.sum();
+        }
+
+        public long getMaxNanos() {
+            return maxNanos.get();
+        }
+
+        // Roughly the q-th quantile (0.5, 0.99...) in nanoseconds: the top of the bucket it falls in
+        public long quantileNanos(double q) {
+            long total = 0;
+            long[] counts = new long[buckets.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = buckets.get(i);
+                total += counts[i];
+            }
+            if (total == 0) {
+                return 0;
+            }
+            long wanted = (long) Math.ceil(q * total);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= wanted) {
+                    return Math.min(upperBound(i), getMaxNanos());
+                }
+            }
+            return getMaxNanos();
+        }
+
+        // 0-3 get their own buckets, after that 4 buckets per power of two
+        private static int bucketOf(long nanos) {
+            if (nanos < SUB_BUCKETS) {
+                return (int) nanos;
+            }
+            int power = 63 - Long.numberOfLeadingZeros(nanos);
+            int sub = (int) (nanos >>> (power - 2)) & (SUB_BUCKETS - 1);
+            return (power - 1) * SUB_BUCKETS + sub;
+        }
+
+        // The biggest value that lands in a bucket
+        private static long upperBound(int bucket) {
+            if (bucket < SUB_BUCKETS) {
+                return bucket;
+            }
+            int power = bucket / SUB_BUCKETS + 1;
+            int sub = bucket % SUB_BUCKETS;
+            if (power >= 62) {
+                return Long.MAX_VALUE;
+            }
+            return ((long) (SUB_BUCKETS + sub + 1) << (power - 2)) - 1;
+        }
+    }
+
+    // Shows up in JFR recordings (jfr print --events budget.Operation recording.jfr)
+    @Name("budget.Operation")
+    @Label("Budget Operation")
+    @Category("Budget App")
+    static final class OperationEvent extends Event {
+        @Label("Operation")
+        String operation;
+
+        @Label("Took")
+        @Timespan(Timespan.NANOSECONDS)
+        long took;
+
+        @Label("Rows")
+        long rows;
+    }
+
+    // ---------- reading ----------
+
+    // Every timer that has been used, sorted by name
+    public static List<Timer> getTimers() {
+        ArrayList<Timer> used = new ArrayList<>();
+        for (Timer timer : TIMERS.values()) {
+            if (timer.getCount() > 0) {
+                used.add(timer);
+            }
+        }
+        return used;
+    }
+
+    public static long getBytesRead() {
+        return BYTES_READ.sum();
+    }
+
+    public static long getBytesWritten() {
+        return BYTES_WRITTEN.sum();
+    }
+
+    // Everything in the Prometheus text format (histograms in seconds)
+    public static void writeText(Writer out) throws IOException {
+        String lastFamily = null;
+        for (Timer timer : TIMERS.values()) {
+            long count = timer.getCount();
+            if (count == 0) {
+                continue;
+            }
+            if (!timer.family.equals(lastFamily)) {
+                out.write("# TYPE " + timer.family + " histogram\n");
+                lastFamily = timer.family;
+            }
+
+            // Cumulative counts at each reported bound, from the finer buckets underneath
+            int bound = 0;
+            long cumulative = 0;
+            for (int i = 0; i < timer.buckets.length() && bound < REPORTED_BOUNDS.length; i++) {
+                while (bound < REPORTED_BOUNDS.length && Timer.upperBound(i) > REPORTED_BOUNDS[bound] * 1e9) {
+                    writeBucket(out, timer, REPORTED_BOUNDS[bound], cumulative);
+                    bound++;
+                }
+                cumulative += timer.buckets.get(i);
+            }
+            for (; bound < REPORTED_BOUNDS.length; bound++) {
+                writeBucket(out, timer, REPORTED_BOUNDS[bound], cumulative);
+            }
+            out.write(timer.family + "_bucket{" + timer.labels + ",le=\"+Inf\"} " + count + "\n");
+            out.write(timer.family + "_sum{" + timer.labels + "} " + seconds(timer.totalNanos.sum()) + "\n");
+            out.write(timer.family + "_count{" + timer.labels + "} " + count + "\n");
+        }
+
+        out.write("# TYPE budget_rows_scanned_total counter\n");
+        for (Timer timer : TIMERS.values()) {
+            if (timer.getRows() > 0) {
+                out.write("budget_rows_scanned_total{" + timer.labels + "} " + timer.getRows() + "\n");
+            }
+        }
+
+        out.write("# TYPE budget_bytes_read_total counter\n");
+        out.write("budget_bytes_read_total " + BYTES_READ.sum() + "\n");
+        out.write("# TYPE budget_bytes_written_total counter\n");
+        out.write("budget_bytes_written_total " + BYTES_WRITTEN.sum() + "\n");
+
+        String lastGauge = null;
+        for (Map.Entry<String, LongSupplier> gauge : GAUGES.entrySet()) {
+            String name = gauge.getKey().substring(0, gauge.getKey().indexOf('{'));
+            if (!name.equals(lastGauge)) {
+                out.write("# TYPE " + name + " gauge\n");
+                lastGauge = name;
+            }
+            out.write(gauge.getKey() + " " + gauge.getValue().getAsLong() + "\n");
+        }
+        out.write("# TYPE jvm_heap_used_bytes gauge\n");
+        out.write("jvm_heap_used_bytes " + ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed() + "\n");
+    }
+
+    // Rewrites the file every few seconds (and once more when the app exits). The new text goes to
+    // a temp file that then replaces the old one, so a scraper never sees half a file
+    public static synchronized void startDumping(Path file, long everySeconds) {
+        if (!ENABLED || dumper != null) {
+            return;
+        }
+        dumper = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-dump");
+            thread.setDaemon(true);
+            return thread;
+        });
+        dumper.scheduleAtFixedRate(() -> dump(file), everySeconds, everySeconds, TimeUnit.SECONDS);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> dump(file), "metrics-final-dump"));
+    }
+
+    private static void dump(Path file) {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try {
+            try (BufferedWriter out = Files.newBufferedWriter(temp, StandardCharsets.UTF_8)) {
+                writeText(out);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            System.err.println("Could not write metrics to " + file + ": " + e.getMessage());
+        }
+    }
+
+    private static void writeBucket(Writer out, Timer timer, double bound, long cumulative) throws IOException {
+        out.write(timer.family + "_bucket{" + timer.labels + ",le=\"" + format(bound) + "\"} " + cumulative + "\n");
+    }
+
+    private static String seconds(long nanos) {
+        return format(nanos / 1e9);
+    }
+
+    private static String format(double value) {
+        return String.format(Locale.ROOT, "%.9g", value).replaceFirst("\\.?0+(e|$)", "$1");
+    }
+
+    private static String escape(String value) {
+        return value.replace("\\", "\\\\").replace("\"", "\\\"").replace("\n", "\\n");
+    }
+}
@@ -0,0 +1,125 @@
+/*
+    MonthPartition class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.Arrays;
+
+// All the rows for one calendar month (like March 2025), plus that month's totals already added up.
+// A monthly report only has to look at its own partition instead of the whole ledger.
+//
+// A sealed year (see ColdSegment) keeps "totals only" partitions: the row count and the totals,
+// but no handles, so a report that only needs the totals doesn't have to page the rows in.
+public class MonthPartition {
+
+    private final int yearMonth; // year * 12 + month - 1 (see DateKey.yearMonthOf)
+    private final TransactionStore store; // where the handles (and category ids) point
+    private IntList handles;     // rows in this month, in ledger order
+    private int sealedRows;      // rows counted without handles (totals-only partitions)
+    private long incomeCents;
+    private long expenseCents;
+    private long[] categoryCents; // indexed by the store's category id
+
+    public MonthPartition(int yearMonth, TransactionStore store) {
+        this.yearMonth = yearMonth;
+        this.store = store;
+        handles = new IntList(16);
+        categoryCents = new long[8];
+    }
+
+    // Just the totals for a month, no handles (categoryCents is indexed by the store's category ids)
+    public static MonthPartition totalsOnly(int yearMonth, TransactionStore store, int rows, long incomeCents,
+                                            long expenseCents, long[] categoryCents) {
+        MonthPartition partition = new MonthPartition(yearMonth, store);
+        partition.sealedRows = rows;
+        partition.incomeCents = incomeCents;
+        partition.expenseCents = expenseCents;
+        partition.categoryCents = categoryCents.length == 0 ? new long[1] : categoryCents.clone();
+        return partition;
+    }
+
+    public TransactionStore getStore() {
+        return store;
+    }
+
+    // False for a totals-only partition (size() still counts its rows, but handleAt has nothing)
+    public boolean hasHandles() {
+        return sealedRows == 0;
+    }
+
+    public int getYearMonth() {
+        return yearMonth;
+    }
+
+    public int getYear() {
+        return yearMonth / 12;
+    }
+
+    public int getMonth() {
+        return yearMonth % 12 + 1;
+    }
+
+    public int size() {
+        return handles.size() + sealedRows;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public int handleAt(int index) {
+        return handles.get(index);
+    }
+
+    public long getIncomeCents() {
+        return incomeCents;
+    }
+
+    public long getExpenseCents() {
+        return expenseCents;
+    }
+
+    // Spending + income that went through this category this month, in cents
+    public long getCategoryCents(int categoryId) {
+        return categoryId < categoryCents.length ? categoryCents[categoryId] : 0;
+    }
+
+    public int getCategorySlots() {
+        return categoryCents.length;
+    }
+
+    void add(int handle, int categoryId, long cents) {
+        // New rows almost always have the biggest handle, so just append in that case
+        if (handles.isEmpty() || handles.get(handles.size() - 1) < handle) {
+            handles.add(handle);
+        } else {
+            int position = handles.binarySearch(handle);
+            if (position >= 0) {
+                return;
+            }
+            handles.insertAt(-position - 1, handle);
+        }
+        apply(categoryId, cents, 1);
+    }
+
+    void remove(int handle, int categoryId, long cents) {
+        int position = handles.binarySearch(handle);
+        if (position < 0) {
+            return;
+        }
+        handles.removeAt(position);
+        apply(categoryId, cents, -1);
+    }
+
+    private void apply(int categoryId, long cents, int sign) {
+        if (cents > 0) {
+            incomeCents += sign * cents;
+        } else {
+            expenseCents += sign * -cents;
+        }
+        if (categoryId >= categoryCents.length) {
+            categoryCents = Arrays.copyOf(categoryCents, Math.max(categoryId + 1, categoryCents.length * 2));
+        }
+        categoryCents[categoryId] += sign * Math.abs(cents);
+    }
+}
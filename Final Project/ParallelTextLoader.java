@@ -0,0 +1,243 @@
+/*
+    ParallelTextLoader class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+// Loads the pipe-delimited text file (category|amount|description|date) on every core.
+//
+// The file gets cut into chunks that always end on a line break. Each chunk is read and parsed on
+// the pool straight from its bytes into columns (no Transaction or line String per row), and adds
+// up its own little Budget on the side. Chunks are handed to the ledger strictly in file order,
+// so rows keep the order they had in the file, and only a few chunks are in memory at once.
+public class ParallelTextLoader {
+
+    // How big each piece of the file is before it gets rounded to the next line break
+    public static final int DEFAULT_CHUNK_BYTES = 8 << 20;
+
+    private static final Metrics.Timer LOAD_TIMER = Metrics.timer("text_import");
+
+    // Called after each chunk is added, so the caller can show how far along the load is
+    public interface Progress {
+        void update(long bytesDone, long totalBytes, int rowsLoaded, long elapsedNanos);
+    }
+
+    private final ForkJoinPool pool;
+    private final int chunkBytes;
+
+    public ParallelTextLoader() {
+        this(ForkJoinPool.commonPool(), DEFAULT_CHUNK_BYTES);
+    }
+
+    public ParallelTextLoader(ForkJoinPool pool, int chunkBytes) {
+        if (chunkBytes < 1) {
+            throw new IllegalArgumentException("Chunk size must be at least 1 byte.");
+        }
+        this.pool = pool;
+        this.chunkBytes = chunkBytes;
+    }
+
+    // Replaces everything in the ledger and budget with the file's rows. Lines with the wrong number
+    // of fields are ignored like before; rows with a bad date or amount are counted as skipped
+    public Result load(Path path, Ledger ledger, Budget budget, Progress progress) throws IOException {
+        long started = System.nanoTime();
+        ledger.setTransactions(new ArrayList<>());
+        budget.resetAll();
+
+        Result result = new Result();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int window = Math.max(2, pool.getParallelism() * 2); // chunks being parsed at the same time
+            ArrayDeque<ForkJoinTask<Chunk>> running = new ArrayDeque<>();
+            long nextStart = 0;
+
+            while (nextStart < size || !running.isEmpty()) {
+                // Keep the pool busy, but never with more than a window's worth of chunks in memory
+                while (nextStart < size && running.size() < window) {
+                    long end = findLineEnd(channel, Math.min(size, nextStart + chunkBytes), size);
+                    long chunkStart = nextStart;
+                    running.add(pool.submit(() -> parseChunk(channel, chunkStart, end)));
+                    nextStart = end;
+                }
+
+                // The oldest chunk goes in first, which is what keeps the file order
+                Chunk chunk = join(running.poll());
+                chunk.rows.appendTo(ledger);
+                budget.mergeFrom(chunk.totals);
+                result.rows += chunk.rows.size();
+                result.skipped += chunk.skipped;
+                result.bytes = chunk.end;
+
+                if (progress != null) {
+                    progress.update(chunk.end, size, result.rows, System.nanoTime() - started);
+                }
+            }
+        }
+        result.elapsedNanos = System.nanoTime() - started;
+        LOAD_TIMER.stop(started, result.rows + result.skipped);
+        Metrics.bytesRead(result.bytes);
+        return result;
+    }
+
+    // Moves a chunk boundary forward to just past the next '\n', so no line gets split between chunks
+    private static long findLineEnd(FileChannel channel, long position, long size) throws IOException {
+        if (position >= size) {
+            return size;
+        }
+        ByteBuffer probe = ByteBuffer.allocate(4096);
+        while (position < size) {
+            probe.clear();
+            int read = channel.read(probe, position);
+            if (read <= 0) {
+                return size;
+            }
+            for (int i = 0; i < read; i++) {
+                if (probe.get(i) == '\n') {
+                    return position + i + 1;
+                }
+            }
+            position += read;
+        }
+        return size;
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while loading", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    // ---------- the per-chunk work (runs on the pool) ----------
+
+    private static Chunk parseChunk(FileChannel channel, long start, long end) throws IOException {
+        byte[] bytes = new byte[(int) (end - start)];
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            // Positional reads don't move the channel, so every chunk can read at the same time
+            if (channel.read(buffer, start + buffer.position()) < 0) {
+                throw new IOException("File got shorter while loading");
+            }
+        }
+
+        Chunk chunk = new Chunk(end, bytes.length);
+        int lineStart = 0;
+        while (lineStart < bytes.length) {
+            int lineEnd = lineStart;
+            while (lineEnd < bytes.length && bytes[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            int next = lineEnd + 1;
+            if (lineEnd > lineStart && bytes[lineEnd - 1] == '\r') {
+                lineEnd--; // Windows line endings
+            }
+            chunk.parseLine(bytes, lineStart, lineEnd);
+            lineStart = next;
+        }
+        return chunk;
+    }
+
+    // One chunk's rows as columns, plus its own Budget totals
+    private static class Chunk {
+        final long end;        // where in the file this chunk stops
+        final RowBatch rows;
+        final Budget totals = new Budget();
+        int skipped;
+
+        Chunk(long end, int byteCount) {
+            this.end = end;
+            // Rough rows-per-byte guess so the arrays rarely have to grow
+            rows = new RowBatch(byteCount / 40, byteCount / 2);
+        }
+
+        // Same rules as TextFormat.parseLine, just on the raw bytes
+        void parseLine(byte[] bytes, int from, int to) {
+            int first = indexOfPipe(bytes, from, to);
+            int second = first < 0 ? -1 : indexOfPipe(bytes, first + 1, to);
+            int third = second < 0 ? -1 : indexOfPipe(bytes, second + 1, to);
+            if (third < 0 || indexOfPipe(bytes, third + 1, to) >= 0) {
+                return;
+            }
+
+            int epochDay = hasPercent(bytes, third + 1, to)
+                    ? DateKey.parse(decode(bytes, third + 1, to))
+                    : DateKey.parse(bytes, third + 1, to);
+            long amount = TransactionStore.parseCents(bytes, first + 1, second);
+            if (epochDay == DateKey.INVALID || amount == Long.MIN_VALUE) {
+                skipped++;
+                return;
+            }
+
+            String category = decode(bytes, from, first);
+            rows.appendEscapedDescription(bytes, second + 1, third);
+            rows.add(category, amount, epochDay);
+            totals.addRow(category, amount, epochDay);
+        }
+
+        private static String decode(byte[] bytes, int from, int to) {
+            return TextFormat.unescapeField(new String(bytes, from, to - from, StandardCharsets.UTF_8));
+        }
+    }
+
+    private static int indexOfPipe(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '|') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static boolean hasPercent(byte[] bytes, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '%') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // How the load went
+    public static class Result {
+        private int rows;
+        private int skipped;
+        private long bytes;
+        private long elapsedNanos;
+
+        public int getRows() {
+            return rows;
+        }
+
+        public int getSkipped() {
+            return skipped;
+        }
+
+        public long getBytes() {
+            return bytes;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public long getRowsPerSecond() {
+            return elapsedNanos == 0 ? 0 : (long) (rows * 1_000_000_000.0 / elapsedNanos);
+        }
+    }
+}
@@ -0,0 +1,188 @@
+/*
+    PostingList class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.Arrays;
+
+// A sorted set of row handles, squeezed down for the description index. Handles only go up as
+// rows are added, so each one is stored as the gap from the one before it, in as few bytes as it
+// needs (7 bits per byte, the top bit says "more bytes follow"). Most gaps fit in one or two bytes
+// instead of the four an int[] would take.
+//
+// Every BLOCK handles there's also a skip entry (the handle and where it starts in the bytes), so
+// a cursor can jump ahead to a handle without decoding everything in between. That's what makes
+// "amazon AND refund" fast when one word is everywhere and the other is rare.
+public class PostingList {
+
+    private static final int BLOCK = 64;
+
+    private byte[] bytes;
+    private int length;       // bytes used
+    private int size;         // handles stored
+    private int last;         // the biggest handle so far (-1 when empty)
+    private int[] skipHandles;
+    private int[] skipOffsets;
+
+    public PostingList() {
+        bytes = new byte[8];
+        last = -1;
+        skipHandles = new int[1];
+        skipOffsets = new int[1];
+    }
+
+    // Builds one straight from handles that are already sorted (repeats are skipped)
+    public static PostingList of(int[] sorted, int count) {
+        PostingList list = new PostingList();
+        for (int i = 0; i < count; i++) {
+            list.add(sorted[i]);
+        }
+        return list;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public int getLast() {
+        return last;
+    }
+
+    public long estimatedHeapBytes() {
+        return bytes.length + 8L * skipHandles.length;
+    }
+
+    // Handles have to come in increasing order; the same handle twice in a row is ignored
+    // (a word that shows up twice in one description)
+    public void add(int handle) {
+        if (handle <= last) {
+            if (handle == last) {
+                return;
+            }
+            throw new IllegalArgumentException("Posting lists only take handles in order: " + handle + " after " + last);
+        }
+        if (size % BLOCK == 0) {
+            int block = size / BLOCK;
+            if (block == skipHandles.length) {
+                skipHandles = Arrays.copyOf(skipHandles, block * 2);
+                skipOffsets = Arrays.copyOf(skipOffsets, block * 2);
+            }
+            skipHandles[block] = handle;
+            skipOffsets[block] = length + gapLength(handle - last);   // where the next gap starts
+        }
+        writeGap(handle - last);
+        last = handle;
+        size++;
+    }
+
+    // Every handle in order, unpacked into an int[] (used when merging lists)
+    public int[] toArray() {
+        int[] handles = new int[size];
+        Cursor cursor = cursor();
+        for (int i = 0; cursor.next(); i++) {
+            handles[i] = cursor.handle;
+        }
+        return handles;
+    }
+
+    public Cursor cursor() {
+        return new Cursor();
+    }
+
+    // Reads the handles in order. Start with next(); handle is only good while next/advanceTo say true
+    public final class Cursor {
+        private int index;    // how many handles have been read
+        private int offset;   // where the next gap starts
+        int handle = -1;
+
+        public int getHandle() {
+            return handle;
+        }
+
+        public int size() {
+            return size;
+        }
+
+        // Moves to the next handle, false when there are no more
+        public boolean next() {
+            if (index >= size) {
+                handle = Integer.MAX_VALUE;
+                return false;
+            }
+            int gap = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[offset++];
+                gap |= (b & 0x7F) << shift;
+                shift += 7;
+            } while (b < 0);
+            handle += gap;
+            index++;
+            return true;
+        }
+
+        // Moves to the first handle that's >= target, false if there isn't one. If the target is past
+        // the next block it jumps over whole blocks with the skip entries, then decodes the rest one
+        // by one (so walking two busy lists side by side doesn't pay for a search every step)
+        public boolean advanceTo(int target) {
+            if (index > 0 && handle >= target) {
+                return handle != Integer.MAX_VALUE;
+            }
+            int blocks = (size + BLOCK - 1) / BLOCK;
+            int low = index == 0 ? 0 : (index - 1) / BLOCK + 1;
+            if (low >= blocks || skipHandles[low] > target) {
+                low = blocks;   // it's in the block we're in, just decode
+            }
+            int high = blocks - 1;
+            int jump = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (skipHandles[middle] <= target) {
+                    jump = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            if (jump >= 0 && jump * BLOCK + 1 > index) {
+                index = jump * BLOCK + 1;
+                offset = skipOffsets[jump];
+                handle = skipHandles[jump];
+                if (handle >= target) {
+                    return true;
+                }
+            }
+            while (next()) {
+                if (handle >= target) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private void writeGap(int gap) {
+        if (length + 5 > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+        }
+        while ((gap & ~0x7F) != 0) {
+            bytes[length++] = (byte) ((gap & 0x7F) | 0x80);
+            gap >>>= 7;
+        }
+        bytes[length++] = (byte) gap;
+    }
+
+    private static int gapLength(int gap) {
+        int count = 1;
+        while ((gap & ~0x7F) != 0) {
+            gap >>>= 7;
+            count++;
+        }
+        return count;
+    }
+}
@@ -0,0 +1,231 @@
+/*
+    ReportCache class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+// Finished reports, so asking for the same one again while nothing under it changed is just a
+// lookup. Each entry remembers what it was made from (a Scope: some months, maybe one category).
+// When the Budget adds or removes a row it says which month and category it touched, and only the
+// entries that read that month (and that category, if they're about one) get dropped. So a
+// dashboard asking for March over and over keeps getting the cached March while rows go into April.
+//
+// Entries that cover a few months are listed under each of those months, so a change only looks
+// at the entries for its own month. Wider ones (every month, a whole range of years) go in one
+// list that every change checks.
+//
+// The cache has a memory budget (roughly, from the size each entry says it takes). Once it's over,
+// the least recently used entries go first. Readers in server mode can use it at the same time,
+// so everything is synchronized.
+public class ReportCache {
+
+    public static final long DEFAULT_MAX_BYTES = 8L << 20;
+
+    // Entries covering more months than this go in the "wide" list instead of under each month
+    private static final int LISTED_MONTHS = 24;
+
+    // What a report was made from. Months are year * 12 + month - 1 (see DateKey.yearMonthOf)
+    public static final class Scope {
+        private final int fromMonth;
+        private final int toMonth;
+        private final int monthOfYear;   // 1-12 for "this month in every year", 0 for any
+        private final String category;   // null for every category
+
+        private Scope(int fromMonth, int toMonth, int monthOfYear, String category) {
+            this.fromMonth = fromMonth;
+            this.toMonth = toMonth;
+            this.monthOfYear = monthOfYear;
+            this.category = category;
+        }
+
+        // Anything at all changes it (summaries, totals over the whole ledger)
+        public static Scope everything() {
+            return new Scope(Integer.MIN_VALUE, Integer.MAX_VALUE, 0, null);
+        }
+
+        public static Scope month(int yearMonth) {
+            return new Scope(yearMonth, yearMonth, 0, null);
+        }
+
+        public static Scope months(int fromYearMonth, int toYearMonth) {
+            return new Scope(fromYearMonth, toYearMonth, 0, null);
+        }
+
+        // One month number in every year, like the menu's monthly report without a year
+        public static Scope monthOfYear(int month) {
+            return new Scope(Integer.MIN_VALUE, Integer.MAX_VALUE, month, null);
+        }
+
+        // The same months, but only changes to this category matter
+        public Scope onlyCategory(String name) {
+            return new Scope(fromMonth, toMonth, monthOfYear, name);
+        }
+
+        boolean covers(int yearMonth, String changedCategory) {
+            if (yearMonth < fromMonth || yearMonth > toMonth) {
+                return false;
+            }
+            if (monthOfYear != 0 && yearMonth % 12 + 1 != monthOfYear) {
+                return false;
+            }
+            return category == null || category.equals(changedCategory);
+        }
+
+        boolean isWide() {
+            return (long) toMonth - fromMonth + 1 > LISTED_MONTHS;
+        }
+    }
+
+    private static final class Entry {
+        final String key;
+        final Object value;
+        final long bytes;
+        final Scope scope;
+
+        Entry(String key, Object value, long bytes, Scope scope) {
+            this.key = key;
+            this.value = value;
+            this.bytes = bytes;
+            this.scope = scope;
+        }
+    }
+
+    private final long maxBytes;
+    private final LinkedHashMap<String, Entry> entries;       // least recently used first
+    private final HashMap<Integer, HashSet<Entry>> byMonth;   // month -> the entries that read it
+    private final HashSet<Entry> wide;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+
+    public ReportCache() {
+        this(DEFAULT_MAX_BYTES);
+    }
+
+    public ReportCache(long maxBytes) {
+        this.maxBytes = maxBytes;
+        entries = new LinkedHashMap<>(16, 0.75f, true);
+        byMonth = new HashMap<>();
+        wide = new HashSet<>();
+    }
+
+    // The cached value, or null if there isn't one (or it was dropped since)
+    public synchronized Object get(String key) {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        return entry.value;
+    }
+
+    // Remembers a value. bytes is about how much memory it takes; something bigger than a quarter
+    // of the whole budget isn't kept at all (it would push everything else out)
+    public synchronized void put(String key, Object value, long bytes, Scope scope) {
+        drop(key);
+        if (bytes > getMaxEntryBytes()) {
+            return;
+        }
+        Entry entry = new Entry(key, value, bytes, scope);
+        entries.put(key, entry);
+        usedBytes += bytes;
+        if (scope.isWide()) {
+            wide.add(entry);
+        } else {
+            for (int month = scope.fromMonth; month <= scope.toMonth; month++) {
+                byMonth.computeIfAbsent(month, m -> new HashSet<>()).add(entry);
+            }
+        }
+
+        Iterator<Entry> oldest = entries.values().iterator();
+        while (usedBytes > maxBytes && oldest.hasNext()) {
+            Entry evicted = oldest.next();
+            oldest.remove();
+            forget(evicted);
+        }
+    }
+
+    // A row in this month and category was added or removed: drops every entry that read it
+    public synchronized void touched(int yearMonth, String category) {
+        if (entries.isEmpty()) {
+            return;
+        }
+        dropCovering(wide, yearMonth, category);
+        HashSet<Entry> listed = byMonth.get(yearMonth);
+        if (listed != null) {
+            dropCovering(listed, yearMonth, category);
+        }
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        byMonth.clear();
+        wide.clear();
+        usedBytes = 0;
+    }
+
+    // Anything bigger than this isn't kept (put just skips it)
+    public long getMaxEntryBytes() {
+        return maxBytes / 4;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getUsedBytes() {
+        return usedBytes;
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    private void dropCovering(HashSet<Entry> listed, int yearMonth, String category) {
+        ArrayList<Entry> stale = new ArrayList<>();
+        for (Entry entry : listed) {
+            if (entry.scope.covers(yearMonth, category)) {
+                stale.add(entry);
+            }
+        }
+        for (Entry entry : stale) {
+            entries.remove(entry.key);
+            forget(entry);
+        }
+    }
+
+    private void drop(String key) {
+        Entry entry = entries.remove(key);
+        if (entry != null) {
+            forget(entry);
+        }
+    }
+
+    // Takes an entry that already left `entries` out of the month lists too
+    private void forget(Entry entry) {
+        usedBytes -= entry.bytes;
+        if (entry.scope.isWide()) {
+            wide.remove(entry);
+            return;
+        }
+        for (int month = entry.scope.fromMonth; month <= entry.scope.toMonth; month++) {
+            HashSet<Entry> listed = byMonth.get(month);
+            if (listed != null) {
+                listed.remove(entry);
+                if (listed.isEmpty()) {
+                    byMonth.remove(month);
+                }
+            }
+        }
+    }
+}
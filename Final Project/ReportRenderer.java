@@ -0,0 +1,113 @@
+/*
+    ReportRenderer class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.PrintStream;
+
+// Prints transaction listings fast. Rows are written straight from the store's columns into one
+// big buffer (no Transaction object and no String.format per row) and the buffer goes out to the
+// console in large pieces instead of one println per row.
+//
+// Every row looks the same as Transaction.toString: "03/04/2025 | Food | $-12.50 | Lunch"
+public class ReportRenderer {
+
+    // Send the buffer to the console once it gets this big
+    private static final int FLUSH_AT = 64 * 1024;
+
+    private final PrintStream target;
+    private final StringBuilder buffer;
+
+    public ReportRenderer() {
+        this(System.out);
+    }
+
+    public ReportRenderer(PrintStream target) {
+        this.target = target;
+        buffer = new StringBuilder(FLUSH_AT + 256);
+    }
+
+    public void line(String text) {
+        buffer.append(text).append('\n');
+        flushIfFull();
+    }
+
+    // One row from the store, like Transaction.toString
+    public void row(TransactionStore store, int handle) {
+        appendRow(buffer, store, handle);
+        buffer.append('\n');
+        flushIfFull();
+    }
+
+    // Same, with "index: " in front (the remove menu numbers rows this way)
+    public void indexedRow(int index, TransactionStore store, int handle) {
+        buffer.append(index).append(": ");
+        row(store, handle);
+    }
+
+    // Up to limit rows in ledger order, starting at a position. Gives back how many were printed
+    public int rows(TransactionStore store, int fromPosition, int limit, boolean withIndex) {
+        int end = (int) Math.min(store.size(), (long) fromPosition + limit);
+        for (int i = Math.max(fromPosition, 0); i < end; i++) {
+            if (withIndex) {
+                indexedRow(i, store, store.handleAt(i));
+            } else {
+                row(store, store.handleAt(i));
+            }
+        }
+        return Math.max(end - Math.max(fromPosition, 0), 0);
+    }
+
+    // Writes out whatever is still in the buffer (call this when a listing is done)
+    public void flush() {
+        if (buffer.length() > 0) {
+            target.print(buffer);
+            buffer.setLength(0);
+        }
+        target.flush();
+    }
+
+    private void flushIfFull() {
+        if (buffer.length() >= FLUSH_AT) {
+            target.print(buffer);
+            buffer.setLength(0);
+        }
+    }
+
+    // ---------- the column formatting, shared with Transaction.toString ----------
+
+    static void appendRow(StringBuilder sb, TransactionStore store, int handle) {
+        appendDate(sb, store.getEpochDay(handle));
+        sb.append(" | ").append(store.getCategoryName(store.getCategoryId(handle))).append(" | $");
+        appendMoney(sb, store.getAmountCents(handle));
+        sb.append(" | ").append(store.getDescription(handle));
+    }
+
+    // MM/DD/YYYY, same as DateKey.format but without making a String
+    static void appendDate(StringBuilder sb, int epochDay) {
+        int month = DateKey.monthOf(epochDay);
+        int day = DateKey.dayOf(epochDay);
+        if (month < 10) {
+            sb.append('0');
+        }
+        sb.append(month).append('/');
+        if (day < 10) {
+            sb.append('0');
+        }
+        sb.append(day).append('/').append(DateKey.yearOf(epochDay));
+    }
+
+    // Cents as a plain two-decimal number like "-12.50" (what "%.2f" printed before)
+    static void appendMoney(StringBuilder sb, long cents) {
+        long magnitude = Math.abs(cents);
+        if (cents < 0) {
+            sb.append('-');
+        }
+        sb.append(magnitude / 100).append('.');
+        long fraction = magnitude % 100;
+        if (fraction < 10) {
+            sb.append('0');
+        }
+        sb.append(fraction);
+    }
+}
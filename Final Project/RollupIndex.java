@@ -0,0 +1,363 @@
+/*
+    RollupIndex class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+// Keeps running income/expense totals by month (across every year, not just 12 months) using
+// Fenwick trees, so "how much between these two dates" is O(log n) instead of a full scan.
+// There is one tree pair for everything plus one per category.
+//
+// The trees only have one slot per month. The days inside a month are kept separately, and only
+// for months that actually have money, so a date range that starts or ends mid-month adds up the
+// whole months in between from the tree and just the partial days at each end from those.
+public class RollupIndex {
+
+    // A little extra room on each side when the month range has to grow, so I don't rebuild every time
+    private static final int GROW_SLACK_MONTHS = 24;
+
+    // Day slots per month: income for day 1-31 first, then expenses for day 1-31
+    private static final int DAYS = 31;
+
+    private int baseMonth; // year * 12 + month - 1 stored at tree position 1
+    private int capacity;  // how many months the trees currently cover
+    private int minDay;    // earliest and latest day that ever had money, for reports
+    private int maxDay;
+
+    private Series total;
+    private HashMap<String, Series> byCategory;
+
+    public RollupIndex() {
+        clear();
+    }
+
+    public void clear() {
+        baseMonth = 0;
+        capacity = 0;
+        minDay = Integer.MAX_VALUE;
+        maxDay = Integer.MIN_VALUE;
+        total = new Series(0);
+        byCategory = new HashMap<>();
+    }
+
+    public boolean isEmpty() {
+        return minDay > maxDay;
+    }
+
+    public int getMinDay() {
+        return minDay;
+    }
+
+    public int getMaxDay() {
+        return maxDay;
+    }
+
+    // Positive cents count as income, negative as expenses (same rule the Budget uses)
+    public void add(int epochDay, String category, long cents) {
+        update(epochDay, category, cents, 1);
+    }
+
+    // Takes a transaction back out again
+    public void remove(int epochDay, String category, long cents) {
+        update(epochDay, category, cents, -1);
+    }
+
+    // Income between two dates (both included); pass null for every category
+    public long incomeBetween(int fromDay, int toDay, String category) {
+        Series series = seriesFor(category);
+        return series == null ? 0 : rangeSum(series, false, fromDay, toDay);
+    }
+
+    // Expenses between two dates (both included), as a positive number
+    public long expensesBetween(int fromDay, int toDay, String category) {
+        Series series = seriesFor(category);
+        return series == null ? 0 : rangeSum(series, true, fromDay, toDay);
+    }
+
+    // A separate copy of every tree, so a checkpoint can be written while this one keeps changing
+    public RollupIndex copy() {
+        RollupIndex copy = new RollupIndex();
+        copy.baseMonth = baseMonth;
+        copy.capacity = capacity;
+        copy.minDay = minDay;
+        copy.maxDay = maxDay;
+        copy.total = total.copy();
+        for (Map.Entry<String, Series> entry : byCategory.entrySet()) {
+            copy.byCategory.put(entry.getKey(), entry.getValue().copy());
+        }
+        return copy;
+    }
+
+    // Adds every total from another rollup into this one (used to combine per-chunk results).
+    // Only the other side's months with money get looked at, not its whole range
+    public void mergeFrom(RollupIndex other) {
+        if (other.isEmpty()) {
+            return;
+        }
+        ensureCovers(DateKey.yearMonthOf(other.minDay));
+        ensureCovers(DateKey.yearMonthOf(other.maxDay));
+        minDay = Math.min(minDay, other.minDay);
+        maxDay = Math.max(maxDay, other.maxDay);
+
+        total.addMonths(other.total, baseMonth);
+        for (Map.Entry<String, Series> entry : other.byCategory.entrySet()) {
+            Series series = byCategory.get(entry.getKey());
+            if (series == null) {
+                series = new Series(capacity);
+                byCategory.put(entry.getKey(), series);
+            }
+            series.addMonths(entry.getValue(), baseMonth);
+        }
+    }
+
+    // ---------- checkpoint support (just the day values; the trees get rebuilt from them) ----------
+
+    void writeTo(DataOutputStream out) throws IOException {
+        out.writeInt(baseMonth);
+        out.writeInt(capacity);
+        out.writeInt(minDay);
+        out.writeInt(maxDay);
+        total.writeTo(out);
+        out.writeInt(byCategory.size());
+        for (Map.Entry<String, Series> entry : byCategory.entrySet()) {
+            byte[] name = entry.getKey().getBytes(StandardCharsets.UTF_8);
+            out.writeInt(name.length);
+            out.write(name);
+            entry.getValue().writeTo(out);
+        }
+    }
+
+    // Replaces everything in here with what writeTo wrote
+    void readFrom(ByteBuffer in) {
+        clear();
+        baseMonth = in.getInt();
+        capacity = in.getInt();
+        minDay = in.getInt();
+        maxDay = in.getInt();
+        total = Series.readFrom(in, baseMonth, capacity);
+        int categories = in.getInt();
+        for (int i = 0; i < categories; i++) {
+            byte[] name = new byte[in.getInt()];
+            in.get(name);
+            byCategory.put(new String(name, StandardCharsets.UTF_8), Series.readFrom(in, baseMonth, capacity));
+        }
+    }
+
+    private void update(int epochDay, String category, long cents, int sign) {
+        if (cents == 0) {
+            return;
+        }
+        int yearMonth = DateKey.yearMonthOf(epochDay);
+        ensureCovers(yearMonth);
+        minDay = Math.min(minDay, epochDay);
+        maxDay = Math.max(maxDay, epochDay);
+
+        Series series = byCategory.get(category);
+        if (series == null) {
+            series = new Series(capacity);
+            byCategory.put(category, series);
+        }
+
+        int position = yearMonth - baseMonth + 1;
+        int day = DateKey.dayOf(epochDay) - 1;
+        total.add(yearMonth, position, day, cents, sign);
+        series.add(yearMonth, position, day, cents, sign);
+    }
+
+    private Series seriesFor(String category) {
+        return category == null ? total : byCategory.get(category);
+    }
+
+    // Partial days at the two ends, whole months in between from the tree
+    private long rangeSum(Series series, boolean expenses, int fromDay, int toDay) {
+        // Nothing outside minDay..maxDay ever had money, and this keeps the months inside the trees
+        int from = Math.max(fromDay, minDay);
+        int to = Math.min(toDay, maxDay);
+        if (capacity == 0 || from > to) {
+            return 0;
+        }
+        int fromMonth = DateKey.yearMonthOf(from);
+        int toMonth = DateKey.yearMonthOf(to);
+        int firstDay = DateKey.dayOf(from) - 1;
+        int lastDay = DateKey.dayOf(to) - 1;
+        if (fromMonth == toMonth) {
+            return series.daysBetween(fromMonth, expenses, firstDay, lastDay);
+        }
+
+        long sum = series.daysBetween(fromMonth, expenses, firstDay, DAYS - 1)
+                   + series.daysBetween(toMonth, expenses, 0, lastDay);
+        if (toMonth - fromMonth > 1) {
+            long[] tree = expenses ? series.expenses : series.income;
+            sum += prefixSum(tree, toMonth - baseMonth) - prefixSum(tree, fromMonth - baseMonth + 1);
+        }
+        return sum;
+    }
+
+    // ---------- Fenwick tree basics (positions start at 1) ----------
+
+    private static void addAt(long[] tree, int position, long delta) {
+        for (int i = position; i < tree.length; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    private static long prefixSum(long[] tree, int position) {
+        long sum = 0;
+        for (int i = position; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    // If a month falls outside what the trees cover, rebuild them over a wider range
+    // (from the months that have money, so this is cheap even for a long history)
+    private void ensureCovers(int yearMonth) {
+        if (capacity > 0 && yearMonth >= baseMonth && yearMonth < baseMonth + capacity) {
+            return;
+        }
+
+        int newBase;
+        int newEnd;
+        if (capacity == 0) {
+            newBase = yearMonth - GROW_SLACK_MONTHS;
+            newEnd = yearMonth + GROW_SLACK_MONTHS;
+        } else {
+            // Grow by at least double so a long history only causes a handful of rebuilds
+            newBase = Math.min(baseMonth, yearMonth - Math.max(GROW_SLACK_MONTHS, capacity / 2));
+            newEnd = Math.max(baseMonth + capacity - 1, yearMonth + Math.max(GROW_SLACK_MONTHS, capacity / 2));
+        }
+        int newCapacity = newEnd - newBase + 1;
+
+        total.rebuild(newBase, newCapacity);
+        for (Series series : byCategory.values()) {
+            series.rebuild(newBase, newCapacity);
+        }
+        baseMonth = newBase;
+        capacity = newCapacity;
+    }
+
+    // Income and expenses in cents: a pair of Fenwick trees by month, plus the days of each month
+    // that has any money
+    private static class Series {
+        long[] income;
+        long[] expenses;
+        final HashMap<Integer, long[]> days; // year-month -> income by day, then expenses by day
+
+        Series(int capacity) {
+            income = new long[capacity + 1];
+            expenses = new long[capacity + 1];
+            days = new HashMap<>();
+        }
+
+        Series copy() {
+            Series copy = new Series(0);
+            copy.income = income.clone();
+            copy.expenses = expenses.clone();
+            for (Map.Entry<Integer, long[]> entry : days.entrySet()) {
+                copy.days.put(entry.getKey(), entry.getValue().clone());
+            }
+            return copy;
+        }
+
+        void add(int yearMonth, int position, int day, long cents, int sign) {
+            long[] month = days.computeIfAbsent(yearMonth, key -> new long[2 * DAYS]);
+            if (cents > 0) {
+                addAt(income, position, sign * cents);
+                month[day] += sign * cents;
+            } else {
+                addAt(expenses, position, sign * -cents);
+                month[DAYS + day] += sign * -cents;
+            }
+        }
+
+        long daysBetween(int yearMonth, boolean expenses, int firstDay, int lastDay) {
+            long[] month = days.get(yearMonth);
+            if (month == null) {
+                return 0;
+            }
+            int offset = expenses ? DAYS : 0;
+            long sum = 0;
+            for (int day = firstDay; day <= lastDay; day++) {
+                sum += month[offset + day];
+            }
+            return sum;
+        }
+
+        // Adds another series' months in (the trees here have to cover them already)
+        void addMonths(Series other, int baseMonth) {
+            for (Map.Entry<Integer, long[]> entry : other.days.entrySet()) {
+                long[] month = days.computeIfAbsent(entry.getKey(), key -> new long[2 * DAYS]);
+                long[] values = entry.getValue();
+                for (int slot = 0; slot < values.length; slot++) {
+                    month[slot] += values[slot];
+                }
+                addMonthTotals(entry.getKey() - baseMonth + 1, values);
+            }
+        }
+
+        // New trees over a different range, filled from the months that have money
+        void rebuild(int newBase, int newCapacity) {
+            income = new long[newCapacity + 1];
+            expenses = new long[newCapacity + 1];
+            for (Map.Entry<Integer, long[]> entry : days.entrySet()) {
+                addMonthTotals(entry.getKey() - newBase + 1, entry.getValue());
+            }
+        }
+
+        private void addMonthTotals(int position, long[] values) {
+            long monthIncome = 0;
+            long monthExpenses = 0;
+            for (int day = 0; day < DAYS; day++) {
+                monthIncome += values[day];
+                monthExpenses += values[DAYS + day];
+            }
+            addAt(income, position, monthIncome);
+            addAt(expenses, position, monthExpenses);
+        }
+
+        // Each month as its year-month, a bit mask of the day slots that aren't 0, then those values
+        void writeTo(DataOutputStream out) throws IOException {
+            out.writeInt(days.size());
+            for (Map.Entry<Integer, long[]> entry : days.entrySet()) {
+                long[] values = entry.getValue();
+                long used = 0;
+                for (int slot = 0; slot < values.length; slot++) {
+                    if (values[slot] != 0) {
+                        used |= 1L << slot;
+                    }
+                }
+                out.writeInt(entry.getKey());
+                out.writeLong(used);
+                for (int slot = 0; slot < values.length; slot++) {
+                    if (values[slot] != 0) {
+                        out.writeLong(values[slot]);
+                    }
+                }
+            }
+        }
+
+        static Series readFrom(ByteBuffer in, int baseMonth, int capacity) {
+            Series series = new Series(0);
+            int months = in.getInt();
+            for (int i = 0; i < months; i++) {
+                int yearMonth = in.getInt();
+                long used = in.getLong();
+                long[] values = new long[2 * DAYS];
+                for (int slot = 0; slot < values.length; slot++) {
+                    if ((used & (1L << slot)) != 0) {
+                        values[slot] = in.getLong();
+                    }
+                }
+                series.days.put(yearMonth, values);
+            }
+            series.rebuild(baseMonth, capacity);
+            return series;
+        }
+    }
+}
@@ -0,0 +1,138 @@
+/*
+    RowBatch class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// A bunch of new rows kept as columns (like the store keeps them) until they get added to the
+// ledger all at once. The file loaders fill one of these instead of making a Transaction per row.
+//
+// Write the row's description first (appendDescription...), then call add() for the rest of it.
+public class RowBatch {
+
+    private String[] categories;
+    private final HashMap<String, Integer> categoryLookup;
+    private long[] cents;
+    private int[] days;
+    private int[] categoryIds;
+    private int[] offsets;  // row i's description is heap[offsets[i] .. offsets[i + 1])
+    private byte[] heap;
+    private int heapSize;
+    private int rows;
+
+    public RowBatch(int expectedRows, int expectedTextBytes) {
+        int capacity = Math.max(16, expectedRows);
+        categories = new String[8];
+        categoryLookup = new HashMap<>();
+        cents = new long[capacity];
+        days = new int[capacity];
+        categoryIds = new int[capacity];
+        offsets = new int[capacity + 1];
+        heap = new byte[Math.max(64, expectedTextBytes)];
+    }
+
+    public int size() {
+        return rows;
+    }
+
+    public boolean isEmpty() {
+        return rows == 0;
+    }
+
+    // Finishes a row whose description was just appended
+    public void add(String category, long amountCents, int epochDay) {
+        if (rows == cents.length) {
+            int bigger = rows * 2;
+            cents = Arrays.copyOf(cents, bigger);
+            days = Arrays.copyOf(days, bigger);
+            categoryIds = Arrays.copyOf(categoryIds, bigger);
+            offsets = Arrays.copyOf(offsets, bigger + 1);
+        }
+        Integer id = categoryLookup.get(category);
+        if (id == null) {
+            id = categoryLookup.size();
+            categoryLookup.put(category, id);
+            if (id == categories.length) {
+                categories = Arrays.copyOf(categories, id * 2);
+            }
+            categories[id] = category;
+        }
+        cents[rows] = amountCents;
+        days[rows] = epochDay;
+        categoryIds[rows] = id;
+        rows++;
+        offsets[rows] = heapSize;
+    }
+
+    // Reading a row back (ConcurrentLedger adds these to its running totals)
+    public String getCategory(int row) {
+        return categories[categoryIds[row]];
+    }
+
+    public long getCents(int row) {
+        return cents[row];
+    }
+
+    public int getEpochDay(int row) {
+        return days[row];
+    }
+
+    public void appendDescription(String description) {
+        if (description != null && !description.isEmpty()) {
+            byte[] bytes = description.getBytes(StandardCharsets.UTF_8);
+            appendDescription(bytes, 0, bytes.length);
+        }
+    }
+
+    public void appendDescription(byte[] bytes, int from, int to) {
+        ensureHeap(to - from);
+        System.arraycopy(bytes, from, heap, heapSize, to - from);
+        heapSize += to - from;
+    }
+
+    // Same, but undoes the text format's %7C / %25 escaping on the way in
+    public void appendEscapedDescription(byte[] bytes, int from, int to) {
+        ensureHeap(to - from);
+        for (int i = from; i < to; i++) {
+            if (bytes[i] == '%' && i + 2 < to && bytes[i + 1] == '7' && bytes[i + 2] == 'C') {
+                heap[heapSize++] = '|';
+                i += 2;
+            } else if (bytes[i] == '%' && i + 2 < to && bytes[i + 1] == '2' && bytes[i + 2] == '5') {
+                heap[heapSize++] = '%';
+                i += 2;
+            } else {
+                heap[heapSize++] = bytes[i];
+            }
+        }
+    }
+
+    // Adds every row to the end of the ledger, in the order they were added here
+    public void appendTo(Ledger ledger) {
+        if (rows > 0) {
+            // Only the names that were actually used; the rest of the array is empty slots
+            String[] used = Arrays.copyOf(categories, categoryLookup.size());
+            ledger.appendColumns(used, cents, days, categoryIds, rows, heap, offsets);
+        }
+    }
+
+    // Empties the batch so it can be filled again (the arrays are kept)
+    public void clear() {
+        if (heapSize == heap.length) {
+            // A completely full heap may have been kept by the store as-is (see appendTextHeap)
+            heap = new byte[heap.length];
+        }
+        rows = 0;
+        heapSize = 0;
+        categoryLookup.clear();
+        Arrays.fill(categories, null);
+    }
+
+    private void ensureHeap(int extra) {
+        if (heapSize + extra > heap.length) {
+            heap = Arrays.copyOf(heap, Math.max(heapSize + extra, heap.length * 2));
+        }
+    }
+}
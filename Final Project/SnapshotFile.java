@@ -0,0 +1,212 @@
+/*
+    SnapshotFile class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+// Saves and loads the whole ledger as one binary file instead of a line of text per row.
+//
+// Layout (all numbers big-endian):
+//   int magic "BGTS", int version
+//   long journal sequence (the last journal record already included in this snapshot)
+//   int rowCount, int categoryCount
+//   categories: for each one an int byte length and then its UTF-8 bytes
+//   long[rowCount] amounts in cents
+//   int[rowCount]  dates as epoch days
+//   int[rowCount]  category ids
+//   int[rowCount + 1] where each description starts in the string heap
+//   the string heap: every description's UTF-8 bytes back to back
+//   scheduled bills: int next bill handle, int billCount, then for each bill
+//     int handle, int due date (epoch day), long cents, category and description (length + UTF-8),
+//     then how it repeats: byte unit, int every, int end day, int occurrences left, byte day of month
+//   sealed years: int count, then each segment's file name (length + UTF-8), next to this file
+//
+// Loading memory-maps the file and copies each column out in one bulk read, so there's no
+// Scanner, no regex split and no parseDouble per field, and no String per description either.
+public class SnapshotFile {
+
+    public static final int MAGIC = 0x42475453; // "BGTS"
+    public static final int VERSION = 6; // 1 had no journal sequence, 2 no bills, 3 no repeating bills,
+                                         // 4 no day of the month for monthly bills, 5 no sealed years
+
+    private SnapshotFile() {
+    }
+
+    // Goes through DurableFile (temp file, fsync, swap), so a crash never leaves half a snapshot.
+    // sequence is the last journal record this snapshot already covers (0 if there's no journal).
+    // sealed are the years whose rows live in segment files instead (the files have to be written already)
+    public static long write(TransactionStore store, BillScheduler bills, Collection<ColdSegment> sealed,
+                             long sequence, Path path) throws IOException {
+        int rows = store.size();
+        int categories = store.getCategoryCount();
+
+        DurableFile.replace(path, out -> {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(sequence);
+            out.writeInt(rows);
+            out.writeInt(categories);
+
+            for (int id = 0; id < categories; id++) {
+                byte[] name = store.getCategoryName(id).getBytes(StandardCharsets.UTF_8);
+                out.writeInt(name.length);
+                out.write(name);
+            }
+
+            for (int i = 0; i < rows; i++) {
+                out.writeLong(store.getAmountCents(store.handleAt(i)));
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeInt(store.getEpochDay(store.handleAt(i)));
+            }
+            for (int i = 0; i < rows; i++) {
+                out.writeInt(store.getCategoryId(store.handleAt(i)));
+            }
+
+            // The offsets only need each description's length, then the bytes go straight through
+            // the buffer one at a time (no second copy of the whole text heap)
+            int offset = 0;
+            out.writeInt(0);
+            for (int i = 0; i < rows; i++) {
+                offset += store.getDescriptionByteLength(store.handleAt(i));
+                out.writeInt(offset);
+            }
+            for (int i = 0; i < rows; i++) {
+                store.writeDescription(store.handleAt(i), out);
+            }
+
+            out.writeInt(bills.getNextHandle());
+            out.writeInt(bills.size());
+            for (int i = 0; i < bills.size(); i++) {
+                int handle = bills.handleAt(i);
+                out.writeInt(handle);
+                out.writeInt(bills.getDueDay(handle));
+                out.writeLong(bills.getAmountCents(handle));
+                writeString(out, bills.getCategory(handle));
+                writeString(out, bills.getDescription(handle));
+                out.writeByte(bills.getUnit(handle));
+                out.writeInt(bills.getInterval(handle));
+                out.writeInt(bills.getEndDay(handle));
+                out.writeInt(bills.getRemaining(handle));
+                out.writeByte(bills.getAnchorDay(handle));
+            }
+
+            out.writeInt(sealed.size());
+            for (ColdSegment segment : sealed) {
+                writeString(out, segment.getPath().getFileName().toString());
+            }
+        });
+        return Files.size(path);
+    }
+
+    // Reads a snapshot straight into the ledger and its bills (replacing whatever was there).
+    // Gives back the journal sequence the snapshot covers, so recovery knows where to pick up
+    public static long read(Ledger ledger, Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Snapshot is too big to map in one piece: " + size + " bytes");
+            }
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+
+            if (buffer.getInt() != MAGIC) {
+                throw new IOException("Not a budget snapshot file: " + path);
+            }
+            int version = buffer.getInt();
+            if (version < 1 || version > VERSION) {
+                throw new IOException("Unsupported snapshot version " + version);
+            }
+            long sequence = version >= 2 ? buffer.getLong() : 0;
+
+            int rows = buffer.getInt();
+            int categoryCount = buffer.getInt();
+
+            String[] categories = new String[categoryCount];
+            for (int id = 0; id < categoryCount; id++) {
+                byte[] name = new byte[buffer.getInt()];
+                buffer.get(name);
+                categories[id] = new String(name, StandardCharsets.UTF_8);
+            }
+
+            // Bulk copies, one per column
+            long[] cents = new long[rows];
+            buffer.asLongBuffer().get(cents);
+            buffer.position(buffer.position() + rows * Long.BYTES);
+
+            int[] days = new int[rows];
+            buffer.asIntBuffer().get(days);
+            buffer.position(buffer.position() + rows * Integer.BYTES);
+
+            int[] categoryIds = new int[rows];
+            buffer.asIntBuffer().get(categoryIds);
+            buffer.position(buffer.position() + rows * Integer.BYTES);
+
+            int[] offsets = new int[rows + 1];
+            buffer.asIntBuffer().get(offsets);
+            buffer.position(buffer.position() + (rows + 1) * Integer.BYTES);
+
+            // Descriptions stay as bytes; the store only turns one into a String when it's read
+            byte[] heap = new byte[offsets[rows]];
+            buffer.get(heap);
+
+            ledger.loadColumns(categories, cents, days, categoryIds, heap, offsets);
+
+            BillScheduler bills = ledger.getBills();
+            bills.clear();
+            if (version >= 3) {
+                int nextHandle = buffer.getInt();
+                int billCount = buffer.getInt();
+                for (int i = 0; i < billCount; i++) {
+                    int handle = buffer.getInt();
+                    int dueDay = buffer.getInt();
+                    long amount = buffer.getLong();
+                    String category = readString(buffer);
+                    String description = readString(buffer);
+                    if (version >= 4) {
+                        int unit = buffer.get();
+                        int every = buffer.getInt();
+                        int endDay = buffer.getInt();
+                        bills.restore(handle, category, amount, description, dueDay, unit, every, endDay, buffer.getInt());
+                        if (version >= 5) {
+                            bills.setAnchorDay(handle, buffer.get());
+                        }
+                    } else {
+                        bills.restore(handle, category, amount, description, dueDay,
+                                      BillScheduler.ONCE, 1, BillScheduler.NO_END, -1);
+                    }
+                }
+                bills.setNextHandle(nextHandle);
+            }
+
+            // Only the headers get read here; a year's rows wait until something asks for them
+            if (version >= 6) {
+                int sealedCount = buffer.getInt();
+                for (int i = 0; i < sealedCount; i++) {
+                    ledger.getSealedYears().put(ColdSegment.open(path.resolveSibling(readString(buffer))));
+                }
+            }
+            return sequence;
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(MappedByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
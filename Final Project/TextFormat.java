@@ -0,0 +1,125 @@
+/*
+    TextFormat class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+
+// The original pipe-delimited text format: category|amount|description|date, one row per line.
+// The binary snapshot is the normal save now, but this stays around for import and export.
+public class TextFormat {
+
+    private static final Metrics.Timer WRITE_TIMER = Metrics.timer("text_export");
+
+    private TextFormat() {
+    }
+
+    // Writes every row through one buffered writer, returns how many rows were written.
+    // Sealed years go first (paged in one at a time), then the live rows
+    public static int write(Ledger ledger, Path path) throws IOException {
+        long started = Metrics.start();
+        int rows = 0;
+        try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+            ColdStorage sealed = ledger.getSealedYears();
+            for (ColdSegment segment : sealed.getSegments()) {
+                rows += writeRows(writer, sealed.rows(segment.getYear()).getStore());
+            }
+            rows += writeRows(writer, ledger.getStore());
+        }
+        if (Metrics.ENABLED) {
+            Metrics.bytesWritten(Files.size(path));
+        }
+        WRITE_TIMER.stop(started, rows);
+        return rows;
+    }
+
+    private static int writeRows(BufferedWriter writer, TransactionStore store) throws IOException {
+        for (int i = 0; i < store.size(); i++) {
+            int handle = store.handleAt(i);
+            writer.write(escapeField(store.getCategoryName(store.getCategoryId(handle))));
+            writer.write('|');
+            writer.write(Double.toString(store.getAmountCents(handle) / 100.0));
+            writer.write('|');
+            writer.write(escapeField(store.getDescription(handle)));
+            writer.write('|');
+            writer.write(store.getDate(handle));
+            writer.write('\n');
+        }
+        return store.size();
+    }
+
+    // Reads the file into a list of transactions. Lines with the wrong number of fields are ignored
+    // like before, and rows with a bad date or amount are counted in skipped[0] instead of loaded
+    public static ArrayList<Transaction> read(Path path, int[] skipped) throws IOException {
+        ArrayList<Transaction> rows = new ArrayList<>();
+        try (BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                Transaction t = parseLine(line);
+                if (t != null) {
+                    rows.add(t);
+                } else if (countPipes(line) == 3) {
+                    skipped[0]++;
+                }
+            }
+        }
+        return rows;
+    }
+
+    // Splits on '|' with indexOf instead of a regex split, gives back null for a row that can't be read
+    public static Transaction parseLine(String line) {
+        int first = line.indexOf('|');
+        int second = first < 0 ? -1 : line.indexOf('|', first + 1);
+        int third = second < 0 ? -1 : line.indexOf('|', second + 1);
+        if (third < 0 || line.indexOf('|', third + 1) >= 0) {
+            return null;
+        }
+
+        // The date gets decoded right here, so a bad one is rejected instead of quietly losing its month
+        int epochDay = DateKey.parse(unescapeField(line.substring(third + 1)));
+        if (epochDay == DateKey.INVALID) {
+            return null;
+        }
+
+        double amount;
+        try {
+            amount = Double.parseDouble(line.substring(first + 1, second));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+
+        String category = unescapeField(line.substring(0, first));
+        String description = unescapeField(line.substring(second + 1, third));
+        return new Transaction(category, amount, description, epochDay);
+    }
+
+    // Escape '|' characters when saving to a pipe-delimited file
+    public static String escapeField(String s) {
+        if (s == null) return "";
+        if (s.indexOf('%') < 0 && s.indexOf('|') < 0) return s;
+        return s.replace("%", "%25").replace("|", "%7C");
+    }
+
+    // undo the escaping when loading from file (only does any work if there's a '%' in it)
+    public static String unescapeField(String s) {
+        if (s == null) return "";
+        if (s.indexOf('%') < 0) return s;
+        return s.replace("%7C", "|").replace("%25", "%");
+    }
+
+    private static int countPipes(String line) {
+        int count = 0;
+        for (int i = 0; i < line.length(); i++) {
+            if (line.charAt(i) == '|') {
+                count++;
+            }
+        }
+        return count;
+    }
+}
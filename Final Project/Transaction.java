@@ -9,13 +9,23 @@ public class Transaction {
     private String category;
     private double amount;
     private String description;
-    private String date; // keeping it simple as a String like "11/03/2025"
+    private String date; // the date as the user typed it, like "11/03/2025"
+    private int epochDay; // the same date read once into days since 1/1/1970 (see DateKey)
+    private int handle; // which row this is in the ledger's store, -1 until it gets added
 
+    // Throws IllegalArgumentException if the date can't be read, so bad dates never get in
     public Transaction(String category, double amount, String description, String date) {
+        this(category, amount, description, DateKey.parseStrict(date));
+        this.date = date;
+    }
+
+    // Used when the date is already decoded (like rows coming back out of the store)
+    public Transaction(String category, double amount, String description, int epochDay) {
         this.category = category;
         this.amount = amount;
         this.description = description;
-        this.date = date;
+        this.epochDay = epochDay;
+        this.handle = -1;
     }
 
     public String getCategory() {
@@ -31,12 +41,43 @@ public class Transaction {
     }
 
     public String getDate() {
+        if (date == null) {
+            date = DateKey.format(epochDay);
+        }
         return date;
     }
 
-    // This makes printing a transaction have a nice format
+    public int getEpochDay() {
+        return epochDay;
+    }
+
+    public int getYear() {
+        return DateKey.yearOf(epochDay);
+    }
+
+    public int getMonth() {
+        return DateKey.monthOf(epochDay);
+    }
+
+    public int getDay() {
+        return DateKey.dayOf(epochDay);
+    }
+
+    public int getHandle() {
+        return handle;
+    }
+
+    // Only the ledger's store should set this
+    void setHandle(int handle) {
+        this.handle = handle;
+    }
+
+    // This makes printing a transaction have a nice format (same columns the ReportRenderer prints)
     @Override
     public String toString() {
-        return date + " | " + category + " | $" + String.format("%.2f", amount) + " | " + description;
+        StringBuilder sb = new StringBuilder(48);
+        sb.append(getDate()).append(" | ").append(category).append(" | $");
+        ReportRenderer.appendMoney(sb, TransactionStore.toCents(amount));
+        return sb.append(" | ").append(description).toString();
     }
 }
@@ -0,0 +1,453 @@
+/*
+    TransactionJournal class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+// An append-only log of every change (add, remove and the scheduled bill changes) so nothing is
+// lost if the app crashes.
+// Each change is a small record at the end of the file:
+//
+//   int payload length, byte type, long sequence number, payload..., int CRC32
+//
+// Records pile up in memory and a write + fsync of all of them is scheduled a few milliseconds
+// after the first one ("group commit"), so one slow fsync covers many changes. The scheduler is
+// shared (AccountBook has one for every account), so an open journal doesn't tie up a thread.
+public class TransactionJournal implements Closeable {
+
+    public static final byte ADD = 1;
+    public static final byte REMOVE = 2;
+    public static final byte SCHEDULE_BILL = 3;
+    public static final byte CANCEL_BILL = 4;
+    public static final byte RESCHEDULE_BILL = 5;
+    public static final byte POST_BILL = 6;   // the bill became a transaction and left the schedule
+    public static final byte RESTORE = 7;     // undo of a remove: the row goes back in at its old position
+    public static final byte UNPOST_BILL = 8; // undo of POST_BILL: the row comes out, the bill goes back
+
+    // Far bigger than any real record (a row or a bill); a length past this is junk, not a record
+    private static final int MAX_PAYLOAD = 64 << 20;
+
+    // One group commit: the write plus the fsync
+    private static final Metrics.Timer FLUSH_TIMER = Metrics.timer("journal_flush");
+
+    // What replay hands each record to. The ones that take a position give back false if it doesn't
+    // fit the ledger, which means the journal is damaged: replay cuts it off there, same as a bad CRC
+    public interface Listener {
+        void onAdd(long sequence, String category, long cents, int epochDay, String description);
+
+        boolean onRemove(long sequence, int position);
+
+        // unit/every/endDay/times describe how the bill repeats (see BillScheduler.scheduleRepeating),
+        // anchorDay is the day of the month a monthly bill goes back to
+        void onScheduleBill(long sequence, int handle, String category, long cents, int dueDay, String description,
+                            int unit, int every, int endDay, int times, int anchorDay);
+
+        void onCancelBill(long sequence, int handle);
+
+        void onRescheduleBill(long sequence, int handle, int dueDay);
+
+        void onPostBill(long sequence, int handle);
+
+        boolean onRestore(long sequence, int position, String category, long cents, int epochDay,
+                          String description);
+
+        // Same bill fields as onScheduleBill, plus the position of the row to take out
+        boolean onUnpostBill(long sequence, int position, int handle, String category, long cents, int dueDay,
+                          String description, int unit, int every, int endDay, int times, int anchorDay);
+    }
+
+    private final Path path;
+    private final FileChannel channel;
+    private final ScheduledExecutorService scheduler;
+    private final long groupCommitMillis;
+
+    private ByteArrayOutputStream pending;   // records waiting for the next group commit
+    private final ByteArrayOutputStream recordBytes;
+    private final DataOutputStream record;
+    private final CRC32 crc;
+
+    private long lastSequence;
+    private volatile long sizeInBytes;       // bytes already in the file
+    private final Object writeLock;          // held while writing + fsyncing, so appends never wait on the disk
+    private IOException failure;             // the first write error a group commit ran into
+    private boolean closed;
+    private boolean flushScheduled;          // a group commit is already on its way for pending
+
+    // Opens (or creates) the journal for appending. Sequence numbers continue after lastSequence,
+    // and the group commits run on the scheduler
+    public TransactionJournal(Path path, long lastSequence, ScheduledExecutorService scheduler,
+                              long groupCommitMillis) throws IOException {
+        this.path = path;
+        this.lastSequence = lastSequence;
+        this.scheduler = scheduler;
+        this.groupCommitMillis = groupCommitMillis;
+        boolean created = !Files.exists(path);
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                                   StandardOpenOption.APPEND);
+        if (created) {
+            // Fsyncing the records isn't enough if the file itself could vanish in a power cut
+            // (this also makes the rename of the journal it replaces stick)
+            DurableFile.syncDirectory(path);
+        }
+        sizeInBytes = channel.size();
+        pending = new ByteArrayOutputStream(4096);
+        recordBytes = new ByteArrayOutputStream(256);
+        record = new DataOutputStream(recordBytes);
+        crc = new CRC32();
+        writeLock = new Object();
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public synchronized long getLastSequence() {
+        return lastSequence;
+    }
+
+    // Bytes in the file plus bytes still waiting to be written
+    public synchronized long sizeInBytes() {
+        return sizeInBytes + pending.size();
+    }
+
+    // A new row was added to the end of the ledger
+    public synchronized long appendAdd(String category, long cents, int epochDay, String description)
+            throws IOException {
+        startRecord(ADD);
+        writeRow(category, cents, epochDay, description);
+        return finishRecord();
+    }
+
+    // A removed row was put back at this position (undo)
+    public synchronized long appendRestore(int position, String category, long cents, int epochDay,
+                                           String description) throws IOException {
+        startRecord(RESTORE);
+        record.writeInt(position);
+        writeRow(category, cents, epochDay, description);
+        return finishRecord();
+    }
+
+    private void writeRow(String category, long cents, int epochDay, String description) throws IOException {
+        byte[] categoryBytes = category.getBytes(StandardCharsets.UTF_8);
+        byte[] descriptionBytes = description == null ? new byte[0] : description.getBytes(StandardCharsets.UTF_8);
+
+        record.writeLong(cents);
+        record.writeInt(epochDay);
+        record.writeInt(categoryBytes.length);
+        record.write(categoryBytes);
+        record.writeInt(descriptionBytes.length);
+        record.write(descriptionBytes);
+    }
+
+    // The row at this position (ledger order) was removed
+    public synchronized long appendRemove(int position) throws IOException {
+        startRecord(REMOVE);
+        record.writeInt(position);
+        return finishRecord();
+    }
+
+    // A bill was scheduled under this handle
+    public synchronized long appendScheduleBill(int handle, String category, long cents, int dueDay,
+                                                String description, int unit, int every, int endDay,
+                                                int times, int anchorDay) throws IOException {
+        startRecord(SCHEDULE_BILL);
+        writeBill(handle, category, cents, dueDay, description, unit, every, endDay, times, anchorDay);
+        return finishRecord();
+    }
+
+    // A posted bill was undone: the row at this position comes out and the bill goes back like this
+    public synchronized long appendUnpostBill(int position, int handle, String category, long cents, int dueDay,
+                                              String description, int unit, int every, int endDay,
+                                              int times, int anchorDay) throws IOException {
+        startRecord(UNPOST_BILL);
+        record.writeInt(position);
+        writeBill(handle, category, cents, dueDay, description, unit, every, endDay, times, anchorDay);
+        return finishRecord();
+    }
+
+    private void writeBill(int handle, String category, long cents, int dueDay, String description,
+                           int unit, int every, int endDay, int times, int anchorDay) throws IOException {
+        byte[] categoryBytes = category.getBytes(StandardCharsets.UTF_8);
+        byte[] descriptionBytes = description == null ? new byte[0] : description.getBytes(StandardCharsets.UTF_8);
+
+        record.writeInt(handle);
+        record.writeLong(cents);
+        record.writeInt(dueDay);
+        record.writeInt(categoryBytes.length);
+        record.write(categoryBytes);
+        record.writeInt(descriptionBytes.length);
+        record.write(descriptionBytes);
+        record.writeByte(unit);
+        record.writeInt(every);
+        record.writeInt(endDay);
+        record.writeInt(times);
+        record.writeByte(anchorDay);
+    }
+
+    // CANCEL_BILL or POST_BILL, both only need the handle
+    public synchronized long appendBill(byte type, int handle) throws IOException {
+        startRecord(type);
+        record.writeInt(handle);
+        return finishRecord();
+    }
+
+    public synchronized long appendRescheduleBill(int handle, int dueDay) throws IOException {
+        startRecord(RESCHEDULE_BILL);
+        record.writeInt(handle);
+        record.writeInt(dueDay);
+        return finishRecord();
+    }
+
+    // Writes and fsyncs whatever is waiting right now (used on exit and before rotating)
+    public void flush() throws IOException {
+        synchronized (this) {
+            if (failure != null) {
+                throw failure;
+            }
+        }
+        writePending();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        // A group commit that's still scheduled finds nothing left to write after this
+        try {
+            flush();
+        } finally {
+            channel.close();
+        }
+    }
+
+    // Reads every good record with a sequence number after afterSequence and hands it to the listener.
+    // A half-written record at the end (from a crash) is cut off so new records don't land after junk,
+    // and so is a record the listener turns down (along with everything after it). A good record of a
+    // type this version doesn't know stops the replay with an IOException and leaves the file alone.
+    // Gives back the biggest sequence number seen (or afterSequence if there were none)
+    public static long replay(Path path, long afterSequence, Listener listener) throws IOException {
+        if (!Files.exists(path)) {
+            return afterSequence;
+        }
+
+        long lastSeen = afterSequence;
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            // Read one record at a time, so a journal of any size fits (only the biggest record is in memory)
+            long size = in.size();
+            DataInputStream records = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+            byte[] header = new byte[1 + 8];
+            byte[] bytes = new byte[256];
+
+            CRC32 check = new CRC32();
+            long goodEnd = 0;
+            while (size - goodEnd >= 4 + 1 + 8 + 4) {
+                int payloadLength = records.readInt();
+                if (payloadLength < 0 || payloadLength > MAX_PAYLOAD || size - goodEnd - (4 + 1 + 8 + 4) < payloadLength) {
+                    break;
+                }
+                records.readFully(header);
+                if (bytes.length < payloadLength) {
+                    bytes = new byte[Math.max(payloadLength, bytes.length * 2)];
+                }
+                records.readFully(bytes, 0, payloadLength);
+
+                check.reset();
+                check.update(header);
+                check.update(bytes, 0, payloadLength);
+                if (records.readInt() != (int) check.getValue()) {
+                    break;
+                }
+                ByteBuffer fields = ByteBuffer.wrap(header);
+                byte type = fields.get();
+                long sequence = fields.getLong();
+                long recordEnd = goodEnd + 4 + 1 + 8 + payloadLength + 4;
+
+                if (sequence <= afterSequence) {
+                    goodEnd = recordEnd;
+                    continue;
+                }
+
+                boolean applied = true;
+                ByteBuffer payload = ByteBuffer.wrap(bytes, 0, payloadLength);
+                if (type == ADD) {
+                    long cents = payload.getLong();
+                    int epochDay = payload.getInt();
+                    String category = readString(payload);
+                    String description = readString(payload);
+                    listener.onAdd(sequence, category, cents, epochDay, description);
+                } else if (type == REMOVE) {
+                    applied = listener.onRemove(sequence, payload.getInt());
+                } else if (type == SCHEDULE_BILL) {
+                    int handle = payload.getInt();
+                    long cents = payload.getLong();
+                    int dueDay = payload.getInt();
+                    String category = readString(payload);
+                    String description = readString(payload);
+                    if (payload.hasRemaining()) {
+                        int unit = payload.get();
+                        int every = payload.getInt();
+                        int endDay = payload.getInt();
+                        int times = payload.getInt();
+                        int anchorDay = payload.hasRemaining() ? payload.get() : DateKey.dayOf(dueDay);
+                        listener.onScheduleBill(sequence, handle, category, cents, dueDay, description,
+                                                unit, every, endDay, times, anchorDay);
+                    } else {
+                        // written before bills could repeat
+                        listener.onScheduleBill(sequence, handle, category, cents, dueDay, description,
+                                                BillScheduler.ONCE, 1, BillScheduler.NO_END, -1,
+                                                DateKey.dayOf(dueDay));
+                    }
+                } else if (type == CANCEL_BILL) {
+                    listener.onCancelBill(sequence, payload.getInt());
+                } else if (type == RESCHEDULE_BILL) {
+                    int handle = payload.getInt();
+                    listener.onRescheduleBill(sequence, handle, payload.getInt());
+                } else if (type == POST_BILL) {
+                    listener.onPostBill(sequence, payload.getInt());
+                } else if (type == RESTORE) {
+                    int position = payload.getInt();
+                    long cents = payload.getLong();
+                    int epochDay = payload.getInt();
+                    String category = readString(payload);
+                    applied = listener.onRestore(sequence, position, category, cents, epochDay, readString(payload));
+                } else if (type == UNPOST_BILL) {
+                    int position = payload.getInt();
+                    int handle = payload.getInt();
+                    long cents = payload.getLong();
+                    int dueDay = payload.getInt();
+                    String category = readString(payload);
+                    String description = readString(payload);
+                    int unit = payload.get();
+                    int every = payload.getInt();
+                    int endDay = payload.getInt();
+                    int times = payload.getInt();
+                    applied = listener.onUnpostBill(sequence, position, handle, category, cents, dueDay,
+                                                    description, unit, every, endDay, times, payload.get());
+                } else {
+                    // The checksum is fine, so this was written on purpose, probably by a newer version
+                    // of the app. Cutting it off would throw it away for good, so refuse to go on instead
+                    throw new IOException("The journal has a change of unknown type " + type + " (change #"
+                                          + sequence + ") in " + path + "; it was probably written by a newer"
+                                          + " version of the app");
+                }
+                if (!applied) {
+                    break;
+                }
+                goodEnd = recordEnd;
+                lastSeen = Math.max(lastSeen, sequence);
+            }
+
+            if (goodEnd < size) {
+                in.truncate(goodEnd);
+            }
+        }
+        return lastSeen;
+    }
+
+    private static String readString(ByteBuffer payload) {
+        int length = payload.getInt();
+        String value = new String(payload.array(), payload.position(), length, StandardCharsets.UTF_8);
+        payload.position(payload.position() + length);
+        return value;
+    }
+
+    private void startRecord(byte type) throws IOException {
+        if (failure != null) {
+            throw failure;
+        }
+        if (closed) {
+            throw new IOException("Journal is closed: " + path);
+        }
+        recordBytes.reset();
+        record.writeInt(0); // payload length, filled in by finishRecord
+        record.writeByte(type);
+        record.writeLong(lastSequence + 1);
+    }
+
+    private long finishRecord() throws IOException {
+        byte[] bytes = recordBytes.toByteArray();
+        int payloadLength = bytes.length - (4 + 1 + 8);
+        if (payloadLength > MAX_PAYLOAD) {
+            throw new IOException("Change is too big for the journal (" + payloadLength + " bytes)");
+        }
+        ByteBuffer.wrap(bytes).putInt(0, payloadLength);
+
+        // The checksum covers type, sequence and payload, so a torn write is easy to spot
+        crc.reset();
+        crc.update(bytes, 4, bytes.length - 4);
+        int checksum = (int) crc.getValue();
+
+        pending.write(bytes, 0, bytes.length);
+        pending.write(checksum >>> 24);
+        pending.write(checksum >>> 16);
+        pending.write(checksum >>> 8);
+        pending.write(checksum);
+
+        lastSequence++;
+        if (!flushScheduled) {
+            flushScheduled = true;
+            scheduler.schedule(this::groupCommit, groupCommitMillis, TimeUnit.MILLISECONDS);
+        }
+        return lastSequence;
+    }
+
+    // The group commit: runs a few milliseconds after the first record that's waiting, so the
+    // records that came in meanwhile get written + fsynced together with it
+    private void groupCommit() {
+        synchronized (this) {
+            flushScheduled = false;
+        }
+        try {
+            writePending();
+        } catch (IOException e) {
+            synchronized (this) {
+                if (failure == null) {
+                    failure = e;
+                }
+            }
+        }
+    }
+
+    private void writePending() throws IOException {
+        synchronized (writeLock) {
+            byte[] batch;
+            synchronized (this) {
+                if (pending.size() == 0) {
+                    return;
+                }
+                batch = pending.toByteArray();
+                pending = new ByteArrayOutputStream(4096);
+            }
+
+            long started = Metrics.start();
+            ByteBuffer buffer = ByteBuffer.wrap(batch);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(false);
+            sizeInBytes += batch.length;
+            Metrics.bytesWritten(batch.length);
+            FLUSH_TIMER.stop(started);
+        }
+    }
+}
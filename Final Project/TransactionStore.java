@@ -0,0 +1,486 @@
+/*
+    TransactionStore class for Personal Finance Budget App
+    Name: Brenda Romero Torres
+*/
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+
+// Keeps every transaction "column by column" in plain arrays instead of one object per row.
+// Each row gets a handle (its slot in the arrays) that never changes, even when other rows are removed.
+// Only a packed store (see packed) numbers them again.
+public class TransactionStore {
+
+    private long[] amountCents;
+    private int[] dates;          // days since 1/1/1970 (see DateKey)
+    private int[] categoryIds;    // index into categoryNames
+    private String[] descriptions;
+
+    // Descriptions that came from a snapshot stay as UTF-8 bytes in one big array and only
+    // become Strings when someone reads them. descStart is -1 for rows that use descriptions[]
+    private byte[] textHeap;
+    private int textHeapSize;
+    private int[] descStart;
+    private int[] descLength;
+    private boolean textHeapShared; // true when a copy is borrowing another store's heap
+    private boolean[] alive;
+    private int slotCount;        // how many handles I have handed out so far
+
+    // Live handles in ledger order. Handles only ever go up, so this stays sorted
+    private IntList order;
+
+    // Category dictionary so each row only stores a small int
+    private HashMap<String, Integer> categoryLookup;
+    private ArrayList<String> categoryNames;
+
+    public TransactionStore() {
+        this(64);
+    }
+
+    public TransactionStore(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 16);
+        amountCents = new long[capacity];
+        dates = new int[capacity];
+        categoryIds = new int[capacity];
+        descriptions = new String[capacity];
+        textHeap = new byte[0];
+        textHeapSize = 0;
+        descStart = new int[capacity];
+        descLength = new int[capacity];
+        alive = new boolean[capacity];
+        slotCount = 0;
+        order = new IntList(capacity);
+        categoryLookup = new HashMap<>();
+        categoryNames = new ArrayList<>();
+    }
+
+    // Number of rows currently in the ledger
+    public int size() {
+        return order.size();
+    }
+
+    // Roughly how much memory the columns take: every array at its full length plus the text heap.
+    // Descriptions typed in one at a time are Strings of their own and aren't counted
+    public long estimatedHeapBytes() {
+        long perSlot = 8 + 4 + 4 + 4 + 4 + 4 + 1 + 4; // cents, date, category, description ref, start, length, alive, order
+        return (long) amountCents.length * perSlot + (textHeapShared ? 0 : textHeap.length);
+    }
+
+    // Add one row and give back its handle
+    public int add(String category, long cents, String description, int epochDay) {
+        ensureCapacity(slotCount + 1);
+
+        int handle = slotCount++;
+
+        amountCents[handle] = cents;
+        dates[handle] = epochDay;
+        categoryIds[handle] = categoryId(category);
+        descriptions[handle] = description;
+        descStart[handle] = -1;
+        alive[handle] = true;
+
+        order.add(handle);
+        return handle;
+    }
+
+    // Same as add, but for callers that already know the category id (like loading a snapshot)
+    public int add(int categoryId, long cents, String description, int epochDay) {
+        ensureCapacity(slotCount + 1);
+
+        int handle = slotCount++;
+
+        amountCents[handle] = cents;
+        dates[handle] = epochDay;
+        categoryIds[handle] = categoryId;
+        descriptions[handle] = description;
+        descStart[handle] = -1;
+        alive[handle] = true;
+
+        order.add(handle);
+        return handle;
+    }
+
+    // Adds a row whose description is already sitting in the text heap (see appendTextHeap)
+    public int addEncoded(int categoryId, long cents, int heapStart, int heapLength, int epochDay) {
+        int handle = add(categoryId, cents, null, epochDay);
+        descStart[handle] = heapStart;
+        descLength[handle] = heapLength;
+        return handle;
+    }
+
+    // Copies a block of UTF-8 description bytes in, gives back where the block starts.
+    // If the heap is empty and it's the whole array, the store just keeps that array (don't change it after!)
+    public int appendTextHeap(byte[] bytes, int from, int length) {
+        if (textHeapSize == 0 && from == 0 && length == bytes.length) {
+            textHeap = bytes;
+            textHeapSize = length;
+            return 0;
+        }
+        if (textHeapShared || textHeapSize + length > textHeap.length) {
+            textHeapShared = false;
+            textHeap = Arrays.copyOf(textHeap, Math.max(textHeapSize + length, textHeap.length * 2));
+        }
+        System.arraycopy(bytes, from, textHeap, textHeapSize, length);
+        int start = textHeapSize;
+        textHeapSize += length;
+        return start;
+    }
+
+    // Makes sure a category is in the dictionary and gives back its id
+    public int defineCategory(String category) {
+        return categoryId(category);
+    }
+
+    // Grows the arrays once up front when I already know how many rows are coming
+    public void reserve(int rows) {
+        ensureCapacity(slotCount + rows);
+    }
+
+    // Remove by position in the ledger, gives back the handle that was removed
+    public int removeAt(int position) {
+        int handle = order.removeAt(position);
+        alive[handle] = false;
+        return handle;
+    }
+
+    // Remove by handle, returns false if that row was already gone
+    public boolean remove(int handle) {
+        if (!isAlive(handle)) {
+            return false;
+        }
+        int position = order.binarySearch(handle);
+        order.removeAt(position);
+        alive[handle] = false;
+        return true;
+    }
+
+    // Brings a removed row back under the same handle (its columns are still here), in the spot it
+    // had before. Gives back its position, or -1 if the handle isn't a removed row
+    public int revive(int handle) {
+        int position = revivePosition(handle);
+        if (position < 0) {
+            return -1;
+        }
+        order.insertAt(position, handle);
+        alive[handle] = true;
+        return position;
+    }
+
+    // Where revive(handle) would put the row, or -1 if the handle isn't a removed row
+    public int revivePosition(int handle) {
+        if (handle < 0 || handle >= slotCount || alive[handle]) {
+            return -1;
+        }
+        return -order.binarySearch(handle) - 1;
+    }
+
+    // Position of a handle in ledger order (binary search, since the order is sorted), -1 if it's gone
+    public int positionOf(int handle) {
+        if (!isAlive(handle)) {
+            return -1;
+        }
+        return order.binarySearch(handle);
+    }
+
+    // A packed copy of just the live rows (handles start over at 0), so the copy can be saved
+    // on another thread while this store keeps changing. Description bytes in the text heap
+    // are never overwritten, so the copy can share that array instead of duplicating it
+    public TransactionStore copyLive() {
+        int rows = order.size();
+        TransactionStore copy = new TransactionStore(rows);
+        copy.categoryNames.addAll(categoryNames);
+        copy.categoryLookup.putAll(categoryLookup);
+        copy.textHeap = textHeap;
+        copy.textHeapSize = textHeapSize;
+        copy.textHeapShared = true;
+
+        for (int i = 0; i < rows; i++) {
+            int handle = order.get(i);
+            copy.amountCents[i] = amountCents[handle];
+            copy.dates[i] = dates[handle];
+            copy.categoryIds[i] = categoryIds[handle];
+            copy.descriptions[i] = descriptions[handle];
+            copy.descStart[i] = descStart[handle];
+            copy.descLength[i] = descLength[handle];
+            copy.alive[i] = true;
+            copy.order.add(i);
+        }
+        copy.slotCount = rows;
+        return copy;
+    }
+
+    // Like copyLive, but without the dropped handles and with a text heap of its own that only has
+    // the kept rows' descriptions. Used when years get sealed: copyLive would share the old heap,
+    // and that would keep the sealed rows' bytes around
+    public TransactionStore packedCopy(BitSet dropped) {
+        BitSet kept = new BitSet(slotCount);
+        for (int i = 0; i < order.size(); i++) {
+            int handle = order.get(i);
+            if (!dropped.get(handle)) {
+                kept.set(handle);
+            }
+        }
+        return packed(kept, null);
+    }
+
+    // A new store with just the kept handles, still in the same order but numbered 0, 1, 2... and
+    // with a text heap of its own. A kept row that was removed stays removed (it can still be
+    // revived). If newHandles isn't null it gets each kept row's new handle, -1 for the rest
+    public TransactionStore packed(BitSet kept, int[] newHandles) {
+        if (newHandles != null) {
+            Arrays.fill(newHandles, -1);
+        }
+        int rows = 0;
+        int textBytes = 0;
+        for (int handle = kept.nextSetBit(0); handle >= 0 && handle < slotCount; handle = kept.nextSetBit(handle + 1)) {
+            rows++;
+            if (descStart[handle] >= 0) {
+                textBytes += descLength[handle];
+            }
+        }
+
+        TransactionStore copy = new TransactionStore(rows);
+        copy.categoryNames.addAll(categoryNames);
+        copy.categoryLookup.putAll(categoryLookup);
+        copy.textHeap = new byte[textBytes];
+        for (int handle = kept.nextSetBit(0); handle >= 0 && handle < slotCount; handle = kept.nextSetBit(handle + 1)) {
+            int slot = copy.slotCount++;
+            copy.amountCents[slot] = amountCents[handle];
+            copy.dates[slot] = dates[handle];
+            copy.categoryIds[slot] = categoryIds[handle];
+            copy.descriptions[slot] = descriptions[handle];
+            copy.descStart[slot] = -1;
+            if (descStart[handle] >= 0) {
+                System.arraycopy(textHeap, descStart[handle], copy.textHeap, copy.textHeapSize, descLength[handle]);
+                copy.descStart[slot] = copy.textHeapSize;
+                copy.descLength[slot] = descLength[handle];
+                copy.textHeapSize += descLength[handle];
+            }
+            copy.alive[slot] = alive[handle];
+            if (alive[handle]) {
+                copy.order.add(slot);
+            }
+            if (newHandles != null) {
+                newHandles[handle] = slot;
+            }
+        }
+        return copy;
+    }
+
+    // Every handle handed out so far, removed rows included (size() only counts the live ones)
+    public int getSlotCount() {
+        return slotCount;
+    }
+
+    public boolean isAlive(int handle) {
+        return handle >= 0 && handle < slotCount && alive[handle];
+    }
+
+    // Drops every row but keeps the arrays around so the next load doesn't have to grow them again
+    public void clear() {
+        Arrays.fill(descriptions, 0, slotCount, null);
+        textHeap = new byte[0];
+        textHeapSize = 0;
+        Arrays.fill(alive, 0, slotCount, false);
+        slotCount = 0;
+        order.clear();
+        categoryLookup.clear();
+        categoryNames.clear();
+    }
+
+    // ---------- column access (no objects created) ----------
+
+    public int handleAt(int position) {
+        return order.get(position);
+    }
+
+    public long getAmountCents(int handle) {
+        return amountCents[handle];
+    }
+
+    public int getEpochDay(int handle) {
+        return dates[handle];
+    }
+
+    public int getCategoryId(int handle) {
+        return categoryIds[handle];
+    }
+
+    public String getCategoryName(int categoryId) {
+        return categoryNames.get(categoryId);
+    }
+
+    public int getCategoryCount() {
+        return categoryNames.size();
+    }
+
+    public String getDescription(int handle) {
+        if (descStart[handle] < 0) {
+            return descriptions[handle];
+        }
+        return new String(textHeap, descStart[handle], descLength[handle], StandardCharsets.UTF_8);
+    }
+
+    // The description as UTF-8 bytes. Rows from a snapshot just get copied out, nothing is decoded
+    public byte[] getDescriptionBytes(int handle) {
+        if (descStart[handle] < 0) {
+            String description = descriptions[handle];
+            return description == null ? new byte[0] : description.getBytes(StandardCharsets.UTF_8);
+        }
+        return Arrays.copyOfRange(textHeap, descStart[handle], descStart[handle] + descLength[handle]);
+    }
+
+    // How many UTF-8 bytes the description takes, without copying or encoding it
+    public int getDescriptionByteLength(int handle) {
+        if (descStart[handle] < 0) {
+            return utf8Length(descriptions[handle]);
+        }
+        return descLength[handle];
+    }
+
+    // Writes the description's UTF-8 bytes straight from the text heap (so a save doesn't need a copy)
+    public void writeDescription(int handle, OutputStream out) throws IOException {
+        if (descStart[handle] < 0) {
+            out.write(getDescriptionBytes(handle));
+        } else {
+            out.write(textHeap, descStart[handle], descLength[handle]);
+        }
+    }
+
+    // Same count String.getBytes(UTF_8) gives (a surrogate without its pair becomes one '?')
+    private static int utf8Length(String text) {
+        if (text == null) {
+            return 0;
+        }
+        int bytes = 0;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c < 0x80) {
+                bytes++;
+            } else if (c < 0x800) {
+                bytes += 2;
+            } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                       && Character.isLowSurrogate(text.charAt(i + 1))) {
+                bytes += 4;
+                i++;
+            } else if (Character.isSurrogate(c)) {
+                bytes++;
+            } else {
+                bytes += 3;
+            }
+        }
+        return bytes;
+    }
+
+    public String getDate(int handle) {
+        return DateKey.format(dates[handle]);
+    }
+
+    // Builds a Transaction object only when someone actually asks for one
+    public Transaction getTransaction(int handle) {
+        Transaction t = new Transaction(categoryNames.get(categoryIds[handle]),
+                                        amountCents[handle] / 100.0,
+                                        getDescription(handle),
+                                        dates[handle]);
+        t.setHandle(handle);
+        return t;
+    }
+
+    // A read-only List that looks at the store directly, so get(i) is O(1) and nothing is copied
+    public List<Transaction> asList() {
+        return new AbstractList<Transaction>() {
+            @Override
+            public Transaction get(int index) {
+                return getTransaction(order.get(index));
+            }
+
+            @Override
+            public int size() {
+                return order.size();
+            }
+        };
+    }
+
+    // Turns a dollar amount into whole cents so I don't pile up rounding errors
+    public static long toCents(double amount) {
+        return Math.round(amount * 100.0);
+    }
+
+    // Reads amounts like "-12.5" or "1000" straight into cents. Anything fancier (like "1.0E7",
+    // which Double.toString writes for big amounts) goes through parseDouble like before.
+    // Gives back Long.MIN_VALUE if it isn't a number at all
+    public static long parseCents(byte[] bytes, int from, int to) {
+        int i = from;
+        boolean negative = false;
+        if (i < to && (bytes[i] == '-' || bytes[i] == '+')) {
+            negative = bytes[i] == '-';
+            i++;
+        }
+
+        long whole = 0;
+        int wholeDigits = 0;
+        while (i < to && bytes[i] >= '0' && bytes[i] <= '9' && wholeDigits < 15) {
+            whole = whole * 10 + (bytes[i] - '0');
+            wholeDigits++;
+            i++;
+        }
+
+        long fraction = 0;
+        int fractionDigits = 0;
+        if (i < to && bytes[i] == '.') {
+            i++;
+            while (i < to && bytes[i] >= '0' && bytes[i] <= '9' && fractionDigits < 2) {
+                fraction = fraction * 10 + (bytes[i] - '0');
+                fractionDigits++;
+                i++;
+            }
+        }
+
+        if (i == to && (wholeDigits > 0 || fractionDigits > 0)) {
+            if (fractionDigits == 1) {
+                fraction *= 10;
+            }
+            long value = whole * 100 + fraction;
+            return negative ? -value : value;
+        }
+
+        // Slow path: same parse the old loader used
+        try {
+            return toCents(Double.parseDouble(
+                    new String(bytes, from, to - from, StandardCharsets.ISO_8859_1)));
+        } catch (NumberFormatException e) {
+            return Long.MIN_VALUE;
+        }
+    }
+
+    private int categoryId(String category) {
+        Integer id = categoryLookup.get(category);
+        if (id == null) {
+            id = categoryNames.size();
+            categoryNames.add(category);
+            categoryLookup.put(category, id);
+        }
+        return id;
+    }
+
+    private void ensureCapacity(int needed) {
+        if (needed <= alive.length) {
+            return;
+        }
+        int newCapacity = Math.max(needed, alive.length + (alive.length >> 1));
+        amountCents = Arrays.copyOf(amountCents, newCapacity);
+        dates = Arrays.copyOf(dates, newCapacity);
+        categoryIds = Arrays.copyOf(categoryIds, newCapacity);
+        descriptions = Arrays.copyOf(descriptions, newCapacity);
+        descStart = Arrays.copyOf(descStart, newCapacity);
+        descLength = Arrays.copyOf(descLength, newCapacity);
+        alive = Arrays.copyOf(alive, newCapacity);
+    }
+}
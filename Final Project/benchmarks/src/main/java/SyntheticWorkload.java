@@ -0,0 +1,191 @@
+/*
+    SyntheticWorkload class for Personal Finance Budget App benchmarks
+    Name: Brenda Romero Torres
+*/
+
+import budget.bench.Workload;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.stream.Stream;
+
+// The benchmarks' side of the app (see budget.bench.Workload for why this is in the default package).
+//
+// The ledger is made up but always the same for the same size: a fixed seed, 12 categories with a
+// paycheck now and then, dates spread over 5 years, and a handful of descriptions. Rows go in
+// through RowBatch like an import would, so even 10 million of them only take a few seconds.
+public class SyntheticWorkload implements Workload {
+
+    private static final long SEED = 20251208L;
+    private static final int FIRST_DAY = DateKey.toEpochDay(2020, 1, 1);
+    private static final int DAYS = DateKey.toEpochDay(2025, 1, 1) - FIRST_DAY;
+    private static final int BATCH_ROWS = 8192;
+
+    private static final String[] CATEGORIES = {
+        "Food", "Rent", "Gas", "Utilities", "Fun", "Shopping", "Health", "Travel", "Gifts", "Insurance",
+        "Phone", "Pay"
+    };
+    private static final String[] DESCRIPTIONS = {
+        "", "Groceries", "Lunch out", "Monthly payment", "Card purchase", "Online order", "Paycheck"
+    };
+
+    // Spare transactions for the add/remove benchmarks (not in the ledger)
+    private static final int SPARE = 1024;
+
+    private final PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+
+    private Ledger ledger;
+    private Budget budget;
+    private Transaction[] spare;
+    private int[] months;        // year * 12 + month - 1 of every month that has rows
+
+    private Path directory;
+    private ScheduledExecutorService scheduler;  // what an AccountBook would share; just this one here
+    private LedgerPersistence persistence;
+    private Ledger loaded;       // load() reads into these so the ledger above stays the same
+    private Budget loadedBudget;
+
+    @Override
+    public void build(int rows) {
+        ledger = new Ledger();
+        budget = new Budget();
+        Random random = new Random(SEED);
+
+        RowBatch batch = new RowBatch(BATCH_ROWS, BATCH_ROWS * 12);
+        for (int i = 0; i < rows; i++) {
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            long cents = category.equals("Pay") ? 150_000 + random.nextInt(350_000) : -(100 + random.nextInt(20_000));
+            int day = FIRST_DAY + random.nextInt(DAYS);
+            batch.appendDescription(DESCRIPTIONS[random.nextInt(DESCRIPTIONS.length)]);
+            batch.add(category, cents, day);
+            budget.addRow(category, cents, day);
+            if (batch.size() == BATCH_ROWS) {
+                batch.appendTo(ledger);
+                batch.clear();
+            }
+        }
+        batch.appendTo(ledger);
+
+        spare = new Transaction[SPARE];
+        for (int i = 0; i < SPARE; i++) {
+            String category = CATEGORIES[random.nextInt(CATEGORIES.length)];
+            spare[i] = new Transaction(category, -(100 + random.nextInt(20_000)) / 100.0, "Spare",
+                                       FIRST_DAY + random.nextInt(DAYS));
+        }
+
+        months = new int[ledger.getAllPartitions().size()];
+        int m = 0;
+        for (MonthPartition partition : ledger.getAllPartitions()) {
+            months[m++] = partition.getYear() * 12 + partition.getMonth() - 1;
+        }
+    }
+
+    @Override
+    public int size() {
+        return ledger.size();
+    }
+
+    @Override
+    public void budgetAdd(int i) {
+        budget.addTransaction(spare[i & (SPARE - 1)]);
+    }
+
+    @Override
+    public void budgetRemove(int i) {
+        budget.removeTransaction(spare[i & (SPARE - 1)]);
+    }
+
+    @Override
+    public double totalSpendingRecursive() {
+        return budget.calculateTotalSpendingRecursive(ledger);
+    }
+
+    @Override
+    public void monthlyReport(int i) {
+        int month = months[Math.floorMod(i, months.length)];
+        PrintStream console = System.out;
+        System.setOut(quiet);
+        try {
+            budget.showMonthlyReport(ledger, month / 12, month % 12 + 1);
+        } finally {
+            System.setOut(console);
+        }
+    }
+
+    @Override
+    public void clearReportCache() {
+        budget.getReportCache().clear();
+    }
+
+    @Override
+    public int removeAndRestore(int position) {
+        PrintStream console = System.out;
+        System.setOut(quiet);
+        Transaction removed;
+        try {
+            removed = ledger.removeTransaction(position);
+        } finally {
+            System.setOut(console);
+        }
+        return ledger.reviveHandle(removed.getHandle());
+    }
+
+    @Override
+    public long save() throws IOException {
+        openStorage();
+        persistence.waitFor(persistence.compact(ledger, budget));
+        return persistence.snapshotSize();
+    }
+
+    @Override
+    public int load() throws IOException {
+        openStorage();
+        persistence.recover(loaded, loadedBudget);
+        return loaded.size();
+    }
+
+    @Override
+    public void close() {
+        if (persistence == null) {
+            return;
+        }
+        try {
+            persistence.close();
+            try (Stream<Path> files = Files.walk(directory)) {
+                for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                    Files.delete(file);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            persistence = null;
+            scheduler.shutdown();
+        }
+    }
+
+    // A temp folder with one save in it, so load() always has something to read
+    private void openStorage() throws IOException {
+        if (persistence != null) {
+            return;
+        }
+        directory = Files.createTempDirectory("budget-bench");
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "bench-io");
+            thread.setDaemon(true);
+            return thread;
+        });
+        persistence = new LedgerPersistence(directory, scheduler);
+        loaded = new Ledger();
+        loadedBudget = new Budget();
+        persistence.recover(loaded, loadedBudget); // opens the (empty) journal
+        persistence.waitFor(persistence.compact(ledger, budget));
+    }
+}
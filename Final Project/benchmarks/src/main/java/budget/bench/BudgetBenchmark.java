@@ -0,0 +1,54 @@
+/*
+    BudgetBenchmark class for Personal Finance Budget App benchmarks
+    Name: Brenda Romero Torres
+*/
+package budget.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+// Budget's hot paths: keeping the totals up to date on every add/remove, and the reports
+@BenchmarkMode(Mode.AverageTime)
+public class BudgetBenchmark extends SyntheticLedger {
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void addTransaction() {
+        workload.budgetAdd(next++);
+    }
+
+    // Subtract addTransaction's time to get removeTransaction's (removing on its own would
+    // eventually take away more than was ever added)
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public void addThenRemoveTransaction() {
+        int i = next++;
+        workload.budgetAdd(i);
+        workload.budgetRemove(i);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public double calculateTotalSpendingRecursive() {
+        return workload.totalSpendingRecursive();
+    }
+
+    // The report worked out from the rows: the cache is emptied first (that's just clearing a
+    // map with an entry or two, nothing next to the report itself)
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void showMonthlyReport() {
+        workload.clearReportCache();
+        workload.monthlyReport(next++);
+    }
+
+    // The same report straight from the report cache (after the first round of months)
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void showMonthlyReportCached() {
+        workload.monthlyReport(next++);
+    }
+}
@@ -0,0 +1,24 @@
+/*
+    LedgerBenchmark class for Personal Finance Budget App benchmarks
+    Name: Brenda Romero Torres
+*/
+package budget.bench;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class LedgerBenchmark extends SyntheticLedger {
+
+    // Ledger.removeTransaction(int) at positions spread over the whole ledger. The row is put back
+    // right away (reviveHandle, same as undo) so every call sees the same size
+    @Benchmark
+    public int removeTransaction() {
+        int position = (int) Math.floorMod(next++ * 2_654_435_761L, (long) rows);
+        return workload.removeAndRestore(position);
+    }
+}
@@ -0,0 +1,33 @@
+/*
+    PersistenceBenchmark class for Personal Finance Budget App benchmarks
+    Name: Brenda Romero Torres
+*/
+package budget.bench;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The menu's save and load (snapshot + budget checkpoint, in a temp folder). A big ledger takes
+// seconds per call, so each iteration gets a little longer
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class PersistenceBenchmark extends SyntheticLedger {
+
+    @Benchmark
+    public long save() throws IOException {
+        return workload.save();
+    }
+
+    @Benchmark
+    public int load() throws IOException {
+        return workload.load();
+    }
+}
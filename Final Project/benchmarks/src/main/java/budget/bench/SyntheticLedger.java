@@ -0,0 +1,41 @@
+/*
+    SyntheticLedger class for Personal Finance Budget App benchmarks
+    Name: Brenda Romero Torres
+*/
+package budget.bench;
+
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The setup every benchmark class shares: one made-up ledger per size, built once per fork.
+// 10 million rows need a few GB of heap; pass -jvmArgsAppend -Xmx... to go bigger than the default
+@State(Scope.Thread)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1g", "-Xmx4g"})
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public abstract class SyntheticLedger {
+
+    @Param({"1000", "10000", "100000", "1000000", "10000000"})
+    public int rows;
+
+    protected Workload workload;
+    protected int next;   // walks through spare rows / positions / months from one call to the next
+
+    @Setup(Level.Trial)
+    public void build() {
+        workload = Workload.create();
+        workload.build(rows);
+    }
+
+    @TearDown(Level.Trial)
+    public void close() {
+        workload.close();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+    Workload interface for Personal Finance Budget App benchmarks
+    Name: Brenda Romero Torres
+*/
+package budget.bench;
+
+import java.io.IOException;
+
+// Everything the benchmarks do to the budget engine.
+//
+// The app's classes are all in the default package, and code inside a package (like these
+// benchmarks and the classes JMH generates for them) can't name those. So SyntheticWorkload, which
+// sits in the default package, implements this, and create() looks it up by name once. After that
+// each call is a plain interface call with one implementation, which the JIT inlines like a direct one.
+public interface Workload {
+
+    static Workload create() {
+        try {
+            return (Workload) Class.forName("SyntheticWorkload").getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("SyntheticWorkload isn't on the classpath", e);
+        }
+    }
+
+    // Fills a ledger + budget with this many made-up rows (the same rows every time)
+    void build(int rows);
+
+    int size();
+
+    // Budget.addTransaction / removeTransaction with the i-th of a few spare transactions
+    void budgetAdd(int i);
+
+    void budgetRemove(int i);
+
+    // Budget.calculateTotalSpendingRecursive over the whole ledger
+    double totalSpendingRecursive();
+
+    // Budget.showMonthlyReport for the i-th month that has rows (the printing goes nowhere)
+    void monthlyReport(int i);
+
+    // Empties the budget's report cache, so the next report is worked out from scratch
+    void clearReportCache();
+
+    // Ledger.removeTransaction(int) at this position, then the row goes back so the size stays the same
+    int removeAndRestore(int position);
+
+    // The menu's save: a snapshot + budget checkpoint, waiting until it's on disk. Gives back its size
+    long save() throws IOException;
+
+    // The menu's load: snapshot + checkpoint + journal into a second ledger. Gives back its row count
+    int load() throws IOException;
+
+    // Deletes the temporary save folder
+    void close();
+}